@@ -21,52 +21,50 @@
  */
 
 grammar Query;
- 
+
+/*
+ * CUSTOM_OPERATOR tokens are not matched by a lexer rule.
+ * The lexer used by the compiler changes the type of VAR tokens that are custom term operator aliases.
+ */
+tokens { CUSTOM_OPERATOR }
+
 /*
  * Parser Rules
  */
- @header {
-   import java.util.*;
- }
-@members {
-    Set<String> customOperators = new HashSet<>();
-
-    public Set<String> getCustomOperators(){
-        return customOperators;
-    }
-     public boolean validOperator(String id){
-        return customOperators.contains(id);
-    }
-}
 compilationUnit   : (query|full_search) EOF ;
 
-term :
-NEGATE? OPEN_BRACKET term CLOSE_BRACKET|
+/*
+ * Logical operators are parsed on two precedence levels: AND binds tighter than OR and NOR.
+ * Operators of the same level are left associative.
+ */
+query: and_query (OR_OPERATOR and_query)*;
+and_query: unary_query (AND_OPERATOR unary_query)*;
+unary_query:
+NEGATE? OPEN_BRACKET query CLOSE_BRACKET|
+term;
+
+term:
 variable term_operation value|
-regex_term
-;
+in_term|
+regex_term;
 
+//the value list is parsed from the token text (see ValueSetParser)
+in_term :
+variable IN_LIST;
 
 regex_term :
 variable MATCH REGEX;
 
-query:
-NEGATE? OPEN_BRACKET query CLOSE_BRACKET |
-OPEN_BRACKET query LOGICAL_OPERATOR query CLOSE_BRACKET|
-query LOGICAL_OPERATOR query|
-term;
-
-
 value: (NUMBER | BOOLEAN_VALUE | TEXT_VALUE | NULL);
-variable: VAR | COLUMN | TEXT_VALUE;
+variable: VAR | COLUMN | TEXT_VALUE | CUSTOM_OPERATOR;
 
-term_operation: TERM_OPERATOR | custom_operator;
-custom_operator: VAR {validOperator($VAR.getText())}?;
+//unknown operator names (VAR) are rejected when the query nodes are created
+term_operation: TERM_OPERATOR | CUSTOM_OPERATOR | VAR;
 
 full_search: full_search_part+;
 full_search_modifier: NEGATE;
 full_search_part: full_search_modifier? full_search_value;
-full_search_value: VAR | NUMBER | BOOLEAN_VALUE | TEXT_VALUE | NULL;
+full_search_value: VAR | NUMBER | BOOLEAN_VALUE | TEXT_VALUE | NULL | CUSTOM_OPERATOR;
 /*
  * Lexer Rules
  */
@@ -101,10 +99,20 @@ CLOSE_BRACKET: ')';
 NEGATE: ('!'|'-');
 POSITIVE: '+';
 
-LOGICAL_OPERATOR : AND | OR | NOR;
+AND_OPERATOR : AND;
+OR_OPERATOR : OR | NOR;
 
 TERM_OPERATOR : EQ | NE | LE | LT | GT | GE | TM;
 
+/*
+ * Value lists are matched as a single token: x IN (1, 2, 3), x NOT IN ('a', 'b')
+ * Quoted strings in the list may contain brackets and commas, a backslash escapes the next character.
+ */
+fragment IN : ('IN' | 'in');
+fragment NOT_IN : ('NOT' | 'not') [ \t\n]+ IN;
+fragment LIST_STRING : '\'' ('\\' . | ~('\'' | '\\'))* '\'' | '"' ('\\' . | ~('"' | '\\'))* '"';
+IN_LIST : (IN | NOT_IN) [ \t\n]* '(' (LIST_STRING | ~('(' | ')' | '\'' | '"'))* ')';
+
 NUMBER : '-'? DIGIT+([.,]DIGIT+)?;
 BOOLEAN_VALUE: 'true' | 'false';
 TEXT_VALUE : STRING;
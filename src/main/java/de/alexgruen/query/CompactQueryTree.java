@@ -0,0 +1,242 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query;
+
+import de.alexgruen.query.term.Term;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Read-only query tree that stores all nodes in flat arrays instead of {@link QueryNode} objects.
+ * <p>
+ * Nodes are addressed by their index in pre-order: the root is 0 and the first child of a node
+ * directly follows the node. The next sibling of a node follows its subtree, at <tt>node + getSubtreeSize(node)</tt>.
+ * A node takes 12 bytes plus its term, which is shared with the tree it was created from.
+ * Node attributes are not stored.
+ */
+public final class CompactQueryTree {
+    private static final int NEGATE = 1;
+    private static final int OPERATOR_SHIFT = 1;
+    private static final int OPERATOR_MASK = 0x7F;
+    private static final int CHILD_COUNT_SHIFT = 8;
+    private static final int MAX_CHILD_COUNT = -1 >>> CHILD_COUNT_SHIFT;
+
+    //negate flag, operator index + 1 and number of children of each node
+    private final int[] info;
+    private final int[] subtreeSizes;
+    private final Term[] terms;
+    private final LogicalOperator[] operators;
+
+    private CompactQueryTree(int[] info, int[] subtreeSizes, Term[] terms, LogicalOperator[] operators) {
+        this.info = info;
+        this.subtreeSizes = subtreeSizes;
+        this.terms = terms;
+        this.operators = operators;
+    }
+
+    /**
+     * Creates the compact form of a query tree
+     * @param tree query tree
+     * @return compact tree
+     */
+    public static CompactQueryTree of(QueryTree tree) {
+        return of(tree.getRoot());
+    }
+
+    /**
+     * Creates the compact form of the tree below a node
+     * @param root root node
+     * @return compact tree
+     */
+    public static CompactQueryTree of(QueryNode root) {
+        int[] info = new int[16];
+        Term[] terms = new Term[16];
+        List<LogicalOperator> operators = new ArrayList<>(4);
+        int size = 0;
+        //pre-order with an explicit stack, children are pushed in reverse order
+        Deque<QueryNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            QueryNode node = stack.pop();
+            List<QueryNode> children = node.getChildren();
+            if (children.size() > MAX_CHILD_COUNT) {
+                throw new IllegalArgumentException(String.format("node has more than %d children", MAX_CHILD_COUNT));
+            }
+            if (size == info.length) {
+                info = Arrays.copyOf(info, size * 2);
+                terms = Arrays.copyOf(terms, size * 2);
+            }
+            info[size] = (children.size() << CHILD_COUNT_SHIFT)
+                    | (operatorIndex(operators, node.getOperator()) << OPERATOR_SHIFT)
+                    | (node.isNegate() ? NEGATE : 0);
+            terms[size] = node.getTerm();
+            size++;
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+        //children follow their parent, so the sizes are computed from the last node to the first
+        int[] subtreeSizes = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            int subtreeSize = 1;
+            for (int c = 0, n = info[i] >>> CHILD_COUNT_SHIFT; c < n; c++) {
+                subtreeSize += subtreeSizes[i + subtreeSize];
+            }
+            subtreeSizes[i] = subtreeSize;
+        }
+        return new CompactQueryTree(Arrays.copyOf(info, size), subtreeSizes, Arrays.copyOf(terms, size),
+                operators.toArray(new LogicalOperator[0]));
+    }
+
+    /**
+     * Returns the index + 1 of an operator in the operator table or 0 for null, the operator is added if required
+     */
+    private static int operatorIndex(List<LogicalOperator> operators, LogicalOperator operator) {
+        if (operator == null) {
+            return 0;
+        }
+        int index = operators.indexOf(operator);
+        if (index < 0) {
+            if (operators.size() == OPERATOR_MASK) {
+                throw new IllegalArgumentException(String.format("tree contains more than %d operators", OPERATOR_MASK));
+            }
+            operators.add(operator);
+            index = operators.size() - 1;
+        }
+        return index + 1;
+    }
+
+    /**
+     * Returns the number of nodes
+     * @return number of nodes
+     */
+    public int size() {
+        return info.length;
+    }
+
+    /**
+     * Returns true if a node is negated
+     * @param node node index
+     * @return true if negated
+     */
+    public boolean isNegate(int node) {
+        return (info[node] & NEGATE) != 0;
+    }
+
+    /**
+     * Returns the logical operator of a node or null
+     * @param node node index
+     * @return operator or null
+     */
+    public LogicalOperator getOperator(int node) {
+        int index = (info[node] >>> OPERATOR_SHIFT) & OPERATOR_MASK;
+        return index == 0 ? null : operators[index - 1];
+    }
+
+    /**
+     * Returns the term of a node or null
+     * @param node node index
+     * @return term or null
+     */
+    public Term getTerm(int node) {
+        return terms[node];
+    }
+
+    /**
+     * Returns the number of children of a node
+     * @param node node index
+     * @return number of children
+     */
+    public int getChildCount(int node) {
+        return info[node] >>> CHILD_COUNT_SHIFT;
+    }
+
+    /**
+     * Returns the number of nodes of the subtree of a node, including the node
+     * @param node node index
+     * @return subtree size
+     */
+    public int getSubtreeSize(int node) {
+        return subtreeSizes[node];
+    }
+
+    /**
+     * Returns the index of a child. Siblings are skipped, so the cost grows with the child index.
+     * @param node node index
+     * @param index child index
+     * @return node index of the child
+     */
+    public int getChild(int node, int index) {
+        if (index < 0 || index >= getChildCount(node)) {
+            throw new IndexOutOfBoundsException(String.format("child %d of node %d with %d children",
+                    index, node, getChildCount(node)));
+        }
+        int child = node + 1;
+        for (int i = 0; i < index; i++) {
+            child += subtreeSizes[child];
+        }
+        return child;
+    }
+
+    /**
+     * Creates a mutable query tree with new nodes. Terms are shared.
+     * @return query tree
+     */
+    public QueryTree toQueryTree() {
+        //nodes are created from the last to the first, the children of a node are on top of the stack
+        QueryNode[] stack = new QueryNode[16];
+        int top = 0;
+        for (int i = info.length - 1; i >= 0; i--) {
+            int childCount = getChildCount(i);
+            QueryNode node;
+            if (childCount == 0 && terms[i] != null) {
+                node = new QueryNode(terms[i]);
+                node.setOperator(getOperator(i));
+            } else {
+                List<QueryNode> children = new ArrayList<>(Math.max(childCount, 2));
+                for (int c = 0; c < childCount; c++) {
+                    children.add(stack[--top]);
+                    stack[top] = null;
+                }
+                node = new QueryNode(false, getOperator(i), terms[i], children);
+            }
+            node.setNegate(isNegate(i));
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, top * 2);
+            }
+            stack[top++] = node;
+        }
+        return new QueryTree(stack[0]);
+    }
+
+    @Override
+    public String toString() {
+        return toQueryTree().toString();
+    }
+}
@@ -25,8 +25,10 @@
 package de.alexgruen.query;
 
 import de.alexgruen.query.compiler.QueryCompilerException;
+import de.alexgruen.query.compiler.QueryError;
 import de.alexgruen.query.term.Field;
 import de.alexgruen.query.term.Value;
+import de.alexgruen.query.term.ValueSet;
 
 public abstract class DefaultCreator<T> {
 
@@ -50,7 +52,7 @@ public abstract class DefaultCreator<T> {
      * @return created query object
      */
     public T ne(Field field, Value value) {
-        throw new QueryCompilerException("'ne' operator is not allowed");
+        throw new QueryCompilerException(QueryError.invalidInput("'ne' operator is not allowed"));
     }
 
     /**
@@ -61,7 +63,7 @@ public abstract class DefaultCreator<T> {
      * @return created query object
      */
     public T eq(Field field, Value value) {
-        throw new QueryCompilerException("'eq' operator is not allowed");
+        throw new QueryCompilerException(QueryError.invalidInput("'eq' operator is not allowed"));
     }
 
 
@@ -97,7 +99,7 @@ public abstract class DefaultCreator<T> {
      * @return created query object
      */
     public T ge(Field field, Value value) {
-        throw new QueryCompilerException("'ge' operator is not allowed");
+        throw new QueryCompilerException(QueryError.invalidInput("'ge' operator is not allowed"));
     }
 
     /**
@@ -120,7 +122,7 @@ public abstract class DefaultCreator<T> {
      * @return created query object
      */
     public T gt(Field field, Value value) {
-        throw new QueryCompilerException("'gt' operator is not allowed");
+        throw new QueryCompilerException(QueryError.invalidInput("'gt' operator is not allowed"));
     }
 
     /**
@@ -143,7 +145,7 @@ public abstract class DefaultCreator<T> {
      * @return created query object
      */
     public T lt(Field field, Value value) {
-        throw new QueryCompilerException("'lt' operator is not allowed");
+        throw new QueryCompilerException(QueryError.invalidInput("'lt' operator is not allowed"));
     }
 
     /**
@@ -167,7 +169,7 @@ public abstract class DefaultCreator<T> {
      * @return created query object
      */
     public T le(Field field, Value value) {
-        throw new QueryCompilerException("'le' operator is not allowed");
+        throw new QueryCompilerException(QueryError.invalidInput("'le' operator is not allowed"));
     }
 
     /**
@@ -191,7 +193,7 @@ public abstract class DefaultCreator<T> {
      * @return created query object
      */
     public T regex(Field field, Value value) {
-        throw new QueryCompilerException("'regex' operator is not allowed");
+        throw new QueryCompilerException(QueryError.invalidInput("'regex' operator is not allowed"));
     }
 
     /**
@@ -214,7 +216,54 @@ public abstract class DefaultCreator<T> {
      * @return created query object
      */
     public T text(Field field, Value value) {
-        throw new QueryCompilerException("'text' operator is not allowed");
+        throw new QueryCompilerException(QueryError.invalidInput("'text' operator is not allowed"));
+    }
+
+    /**
+     * Query creator for the IN operator
+     *
+     * @param queryNode current query node
+     * @param field input field
+     * @param values input values
+     * @return created query object
+     */
+    public T in(QueryNode queryNode, Field field, ValueSet values) {
+        return in(field, values);
+    }
+
+    /**
+     * Query creator for the IN operator
+     *
+     * @param field input field
+     * @param values input values
+     * @return created query object
+     */
+    public T in(Field field, ValueSet values) {
+        throw new QueryCompilerException(QueryError.invalidInput("'in' operator is not allowed"));
+    }
+
+    /**
+     * Query creator for the NOT IN operator
+     *
+     * @param queryNode current query node
+     * @param field input field
+     * @param values input values
+     * @return created query object
+     */
+    public T notIn(QueryNode queryNode, Field field, ValueSet values) {
+        return notIn(field, values);
+    }
+
+    /**
+     * Query creator for the NOT IN operator.
+     * The default implementation negates the query created by {@link #in(Field, ValueSet)}.
+     *
+     * @param field input field
+     * @param values input values
+     * @return created query object
+     */
+    public T notIn(Field field, ValueSet values) {
+        return not(in(field, values));
     }
 
     /**
@@ -235,7 +284,7 @@ public abstract class DefaultCreator<T> {
      * @return created query object
      */
     public T not(T v) {
-        throw new QueryCompilerException("'not' operator is not allowed");
+        throw new QueryCompilerException(QueryError.invalidInput("'not' operator is not allowed"));
     }
 
     /**
@@ -256,7 +305,7 @@ public abstract class DefaultCreator<T> {
      * @return created query object
      */
     public T and(T... v) {
-        throw new QueryCompilerException("'and' operator is not allowed");
+        throw new QueryCompilerException(QueryError.invalidInput("'and' operator is not allowed"));
     }
 
     /**
@@ -277,7 +326,7 @@ public abstract class DefaultCreator<T> {
      * @return created query object
      */
     public T or(T... v) {
-        throw new QueryCompilerException("'or' operator is not allowed");
+        throw new QueryCompilerException(QueryError.invalidInput("'or' operator is not allowed"));
     }
 
     /**
@@ -298,7 +347,7 @@ public abstract class DefaultCreator<T> {
      * @return created query object
      */
     public T xor(T... v) {
-        throw new QueryCompilerException("'xor' operator is not allowed");
+        throw new QueryCompilerException(QueryError.invalidInput("'xor' operator is not allowed"));
     }
 
     /**
@@ -319,7 +368,7 @@ public abstract class DefaultCreator<T> {
      * @return created query object
      */
     public T nor(T... v) {
-        throw new QueryCompilerException("'nor' operator is not allowed");
+        throw new QueryCompilerException(QueryError.invalidInput("'nor' operator is not allowed"));
     }
 
     /**
@@ -329,7 +378,7 @@ public abstract class DefaultCreator<T> {
      * @return created query object
      */
     public T fullSearch(Value value) {
-        throw new QueryCompilerException("fullSearch is not allowed");
+        throw new QueryCompilerException(QueryError.invalidInput("fullSearch is not allowed"));
     }
 
     /**
@@ -338,7 +387,7 @@ public abstract class DefaultCreator<T> {
      * @return created query object
      */
     public T empty() {
-        throw new QueryCompilerException("empty is not defined");
+        throw new QueryCompilerException(QueryError.invalidInput("empty is not defined"));
     }
 
 
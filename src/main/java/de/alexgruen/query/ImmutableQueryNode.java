@@ -0,0 +1,294 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query;
+
+import de.alexgruen.query.term.ImmutableTerm;
+import de.alexgruen.query.term.Term;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Query node that cannot be changed. Immutable nodes can be read by many threads without copying,
+ * e.g. trees that are shared by a cache.
+ * <p>
+ * The setters throw an {@link UnsupportedOperationException}, the child list and the attributes are unmodifiable
+ * and terms are {@link ImmutableTerm}s. The <tt>with</tt> methods return a new node that shares all unchanged
+ * children with this node, so changing a node deep in a tree only copies the nodes on the path to the root
+ * ({@link ImmutableQueryTree#replace(int[], QueryNode)}).
+ * The fingerprint is computed when the node is created.
+ */
+public final class ImmutableQueryNode extends QueryNode {
+    private static final ImmutableQueryNode[] NO_CHILDREN = new ImmutableQueryNode[0];
+
+    private final ImmutableQueryNode[] children;
+    //unmodifiable or null
+    private final Map<String, Object> attributes;
+
+    private ImmutableQueryNode(boolean negate, LogicalOperator operator, Term term,
+                               ImmutableQueryNode[] children, Map<String, Object> attributes) {
+        super(negate, operator, ImmutableTerm.of(term), children.length == 0 ? Collections.emptyList()
+                : Arrays.<QueryNode>asList(children));
+        this.children = children;
+        this.attributes = attributes == null || attributes.isEmpty() ? null
+                : Collections.unmodifiableMap(new HashMap<>(attributes));
+        getFingerprint();
+    }
+
+    /**
+     * Returns an immutable copy of a subtree. Immutable subtrees are not copied, attributes are copied.
+     * @param node root of the subtree
+     * @return immutable node
+     */
+    public static ImmutableQueryNode of(QueryNode node) {
+        if (node instanceof ImmutableQueryNode) {
+            return (ImmutableQueryNode) node;
+        }
+        return new QueryTreeWalker().fold(node, n -> n == 0 ? NO_CHILDREN : new ImmutableQueryNode[n],
+                (n, children) -> n instanceof ImmutableQueryNode ? (ImmutableQueryNode) n
+                        : new ImmutableQueryNode(n.isNegate(), n.getOperator(), n.getTerm(), children,
+                        n.hasAttributes() ? n.getAttributes() : null));
+    }
+
+    /**
+     * Creates a leaf node
+     * @param term term
+     * @return immutable leaf
+     */
+    public static ImmutableQueryNode leaf(Term term) {
+        return new ImmutableQueryNode(false, null, term, NO_CHILDREN, null);
+    }
+
+    /**
+     * Creates a node from an operator and children, mutable children are copied
+     * @param operator logical operator
+     * @param children child nodes
+     * @return immutable node
+     */
+    public static ImmutableQueryNode of(LogicalOperator operator, QueryNode... children) {
+        return new ImmutableQueryNode(false, operator, null, toImmutable(Arrays.asList(children)), null);
+    }
+
+    private static ImmutableQueryNode[] toImmutable(List<? extends QueryNode> nodes) {
+        if (nodes.isEmpty()) {
+            return NO_CHILDREN;
+        }
+        ImmutableQueryNode[] result = new ImmutableQueryNode[nodes.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = of(nodes.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Returns a child
+     * @param index child index
+     * @return child node
+     */
+    public ImmutableQueryNode getChild(int index) {
+        return children[index];
+    }
+
+    /**
+     * Returns the number of children
+     * @return number of children
+     */
+    public int getChildCount() {
+        return children.length;
+    }
+
+    /**
+     * Returns a node with another negation
+     * @param negate negate
+     * @return new node or this node if the negation is equal
+     */
+    public ImmutableQueryNode withNegate(boolean negate) {
+        return negate == isNegate() ? this : new ImmutableQueryNode(negate, getOperator(), getTerm(), children, attributes);
+    }
+
+    /**
+     * Returns a node with another operator
+     * @param operator logical operator
+     * @return new node or this node if the operator is the same
+     */
+    public ImmutableQueryNode withOperator(LogicalOperator operator) {
+        return operator == getOperator() ? this : new ImmutableQueryNode(isNegate(), operator, getTerm(), children, attributes);
+    }
+
+    /**
+     * Returns a node with another term
+     * @param term term or null
+     * @return new node or this node if the term is the same
+     */
+    public ImmutableQueryNode withTerm(Term term) {
+        return term == getTerm() ? this : new ImmutableQueryNode(isNegate(), getOperator(), term, children, attributes);
+    }
+
+    /**
+     * Returns a node with other children, mutable children are copied
+     * @param children child nodes
+     * @return new node
+     */
+    public ImmutableQueryNode withChildren(List<? extends QueryNode> children) {
+        return new ImmutableQueryNode(isNegate(), getOperator(), getTerm(), toImmutable(children), attributes);
+    }
+
+    /**
+     * Returns a node where one child is replaced, all other children are shared
+     * @param index child index
+     * @param child new child, copied if it is mutable
+     * @return new node or this node if the child is the same
+     */
+    public ImmutableQueryNode withChild(int index, QueryNode child) {
+        ImmutableQueryNode replacement = of(child);
+        if (children[index] == replacement) {
+            return this;
+        }
+        ImmutableQueryNode[] copy = children.clone();
+        copy[index] = replacement;
+        return new ImmutableQueryNode(isNegate(), getOperator(), getTerm(), copy, attributes);
+    }
+
+    /**
+     * Returns a node with an additional last child
+     * @param child new child, copied if it is mutable
+     * @return new node
+     */
+    public ImmutableQueryNode withChildAdded(QueryNode child) {
+        ImmutableQueryNode[] copy = Arrays.copyOf(children, children.length + 1);
+        copy[children.length] = of(child);
+        return new ImmutableQueryNode(isNegate(), getOperator(), getTerm(), copy, attributes);
+    }
+
+    /**
+     * Returns a node without a child
+     * @param index child index
+     * @return new node
+     */
+    public ImmutableQueryNode withoutChild(int index) {
+        if (index < 0 || index >= children.length) {
+            throw new IndexOutOfBoundsException(String.format("child %d of %d", index, children.length));
+        }
+        ImmutableQueryNode[] copy = new ImmutableQueryNode[children.length - 1];
+        System.arraycopy(children, 0, copy, 0, index);
+        System.arraycopy(children, index + 1, copy, index, copy.length - index);
+        return new ImmutableQueryNode(isNegate(), getOperator(), getTerm(), copy, attributes);
+    }
+
+    /**
+     * Creates a mutable copy of the subtree with new nodes and terms. Fields and values are shared.
+     * @return mutable node
+     */
+    public QueryNode toMutable() {
+        return new QueryTreeWalker().fold(this, QueryNode[]::new, (n, children) -> {
+            Term term = n.getTerm() == null ? null
+                    : new Term(n.getTerm().getField(), n.getTerm().getOperator(), n.getTerm().getValue());
+            QueryNode node;
+            if (children.length == 0 && term != null) {
+                node = new QueryNode(term);
+                node.setOperator(n.getOperator());
+                node.setNegate(n.isNegate());
+            } else {
+                node = new QueryNode(n.isNegate(), n.getOperator(), term, new ArrayList<>(Arrays.asList(children)));
+            }
+            if (n.hasAttributes()) {
+                node.getAttributes().putAll(n.getAttributes());
+            }
+            return node;
+        });
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes == null ? Collections.emptyMap() : attributes;
+    }
+
+    @Override
+    public boolean hasAttributes() {
+        return attributes != null;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes == null ? null : attributes.get(name);
+    }
+
+    @Override
+    public Object setAttribute(String name, Object value) {
+        throw new UnsupportedOperationException("node is immutable");
+    }
+
+    @Override
+    public void setNegate(boolean negate) {
+        throw new UnsupportedOperationException("node is immutable");
+    }
+
+    @Override
+    public void setOperator(LogicalOperator operator) {
+        throw new UnsupportedOperationException("node is immutable");
+    }
+
+    @Override
+    public void setTerm(Term term) {
+        throw new UnsupportedOperationException("node is immutable");
+    }
+
+    @Override
+    public void addChild(QueryNode child) {
+        throw new UnsupportedOperationException("node is immutable");
+    }
+
+    @Override
+    public void addChildren(Collection<? extends QueryNode> children) {
+        throw new UnsupportedOperationException("node is immutable");
+    }
+
+    @Override
+    public QueryNode setChild(int index, QueryNode child) {
+        throw new UnsupportedOperationException("node is immutable");
+    }
+
+    @Override
+    public void setChildren(List<QueryNode> children) {
+        throw new UnsupportedOperationException("node is immutable");
+    }
+
+    /**
+     * Does nothing, the fingerprint of an immutable node is always up to date
+     */
+    @Override
+    public void updateFingerprint() {
+    }
+
+    @Override
+    boolean isFingerprintCurrent() {
+        return true;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query;
+
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+/**
+ * Query tree of {@link ImmutableQueryNode}s. The tree can be shared by many threads, e.g. in a cache,
+ * and compiled like any other tree ({@link de.alexgruen.query.compiler.QueryCompiler#compile(QueryTree)}).
+ * <p>
+ * Changes return a new tree that shares all unchanged subtrees with this tree.
+ * Replacing a node copies the nodes on the path from the node to the root, the rest of the tree is not copied.
+ * Optimizations that change trees in place ({@link de.alexgruen.query.optimization.QueryOptimization})
+ * fail with an {@link UnsupportedOperationException} before they change anything,
+ * they are applied to a mutable copy ({@link #toQueryTree()}).
+ */
+public final class ImmutableQueryTree extends QueryTree {
+
+    /**
+     * Creates a tree from an immutable root node
+     * @param root root node
+     */
+    public ImmutableQueryTree(ImmutableQueryNode root) {
+        super(root);
+    }
+
+    /**
+     * Returns an immutable copy of a tree, immutable trees are returned as they are
+     * @param tree query tree
+     * @return immutable tree
+     */
+    public static ImmutableQueryTree of(QueryTree tree) {
+        if (tree instanceof ImmutableQueryTree) {
+            return (ImmutableQueryTree) tree;
+        }
+        return new ImmutableQueryTree(ImmutableQueryNode.of(tree.getRoot()));
+    }
+
+    @Override
+    public ImmutableQueryNode getRoot() {
+        return (ImmutableQueryNode) super.getRoot();
+    }
+
+    /**
+     * Not supported, use {@link #replace(int[], QueryNode)}
+     * @param root root node
+     */
+    @Override
+    public void setRoot(QueryNode root) {
+        throw new UnsupportedOperationException("tree is immutable");
+    }
+
+    /**
+     * Returns the node at a path of child indices, the empty path is the root
+     * @param path child index on each level
+     * @return node
+     */
+    public ImmutableQueryNode get(int... path) {
+        ImmutableQueryNode node = getRoot();
+        for (int index : path) {
+            node = node.getChild(index);
+        }
+        return node;
+    }
+
+    /**
+     * Returns a tree where the node at a path is replaced. Only the ancestors of the node are copied.
+     * @param path child index on each level, the empty path replaces the root
+     * @param replacement new node, copied if it is mutable
+     * @return new tree or this tree if the node is the same
+     */
+    public ImmutableQueryTree replace(int[] path, QueryNode replacement) {
+        return update(path, node -> ImmutableQueryNode.of(replacement));
+    }
+
+    /**
+     * Returns a tree where the node at a path is replaced by the result of a function.
+     * Only the ancestors of the node are copied.
+     * @param path child index on each level, the empty path updates the root
+     * @param function computes the new node from the current node
+     * @return new tree or this tree if the function returns the current node
+     */
+    public ImmutableQueryTree update(int[] path, UnaryOperator<ImmutableQueryNode> function) {
+        ImmutableQueryNode[] nodes = new ImmutableQueryNode[path.length + 1];
+        nodes[0] = getRoot();
+        for (int i = 0; i < path.length; i++) {
+            nodes[i + 1] = nodes[i].getChild(path[i]);
+        }
+        ImmutableQueryNode node = function.apply(nodes[path.length]);
+        for (int i = path.length - 1; i >= 0; i--) {
+            node = nodes[i].withChild(path[i], node);
+        }
+        return node == getRoot() ? this : new ImmutableQueryTree(node);
+    }
+
+    /**
+     * Rewrites the tree bottom-up. The function is called for every node after its children were rewritten,
+     * nodes whose children are unchanged are passed as they are. Unchanged subtrees are shared with this tree.
+     * @param function returns the node itself or a replacement
+     * @return new tree or this tree if no node was replaced
+     */
+    public ImmutableQueryTree rewrite(UnaryOperator<ImmutableQueryNode> function) {
+        ImmutableQueryNode root = new QueryTreeWalker().fold(getRoot(), ImmutableQueryNode[]::new, (n, children) -> {
+            ImmutableQueryNode node = (ImmutableQueryNode) n;
+            for (int i = 0; i < children.length; i++) {
+                if (children[i] != node.getChild(i)) {
+                    node = node.withChildren(Arrays.asList(children));
+                    break;
+                }
+            }
+            return ImmutableQueryNode.of(function.apply(node));
+        });
+        return root == getRoot() ? this : new ImmutableQueryTree(root);
+    }
+
+    /**
+     * Creates a mutable copy of the tree with new nodes and terms
+     * @return mutable tree
+     */
+    public QueryTree toQueryTree() {
+        return new QueryTree(getRoot().toMutable());
+    }
+}
@@ -68,6 +68,16 @@ public class LogicalOperators {
             };
 
 
+    /**
+     * Returns true if consecutive operations of this operator can be joined in a single node
+     * with more than two children ((a AND b) AND c == AND(a, b, c)).
+     * @param operator logical operator
+     * @return true for {@link #AND} and {@link #OR}
+     */
+    public static boolean isAssociative(LogicalOperator operator) {
+        return AND.equals(operator) || OR.equals(operator);
+    }
+
     /**
      * Returns a list with the default operators
      * @return default operators
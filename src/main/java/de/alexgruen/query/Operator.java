@@ -24,6 +24,8 @@
 
 package de.alexgruen.query;
 
+import de.alexgruen.query.util.FingerprintUtil;
+
 import java.util.Arrays;
 import java.util.Objects;
 
@@ -37,6 +39,9 @@ public class Operator {
     //Aliases of the operator
     private String[] aliases;
 
+    private final int hashCode;
+    private final long fingerprint;
+
     /**
      * Creates an operator from a name and array of aliases
      * @param name operator name
@@ -45,6 +50,8 @@ public class Operator {
     public Operator(String name, String... aliases){
         this.name = name;
         this.aliases = aliases;
+        this.hashCode = 31 * Objects.hashCode(name) + Arrays.hashCode(aliases);
+        this.fingerprint = FingerprintUtil.hash(name);
     }
 
 
@@ -64,6 +71,14 @@ public class Operator {
         return name;
     }
 
+    /**
+     * Returns the 64 bit fingerprint of the name. Equal operators have equal fingerprints.
+     * @return fingerprint
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
     /**
      * True if o equals this operator
      * @param o other operator
@@ -79,14 +94,11 @@ public class Operator {
     }
 
     /**
-     * Calculates the hashcode of this operator object
+     * Returns the hashcode of name and aliases, it is computed when the operator is created
      * @return hashcode
      */
     @Override
     public int hashCode() {
-
-        int result = Objects.hash(name);
-        result = 31 * result + Arrays.hashCode(aliases);
-        return result;
+        return hashCode;
     }
 }
@@ -26,6 +26,7 @@ package de.alexgruen.query;
 
 import de.alexgruen.query.term.Field;
 import de.alexgruen.query.term.Value;
+import de.alexgruen.query.term.ValueSet;
 
 /**
  * Default creator for {@link PrintQuery}
@@ -118,6 +119,16 @@ public class PrintQueryCreator extends DefaultCreator<PrintQuery> {
         };
     }
 
+    @Override
+    public PrintQuery in(Field field, ValueSet values) {
+        return new PrintQuery() {
+            @Override
+            public String toString() {
+                return String.format("(%s IN %s)", field, values);
+            }
+        };
+    }
+
     @Override
     public PrintQuery not(PrintQuery a) {
         return new PrintQuery() {
@@ -25,17 +25,40 @@
 package de.alexgruen.query;
 
 import de.alexgruen.query.term.Term;
+import de.alexgruen.query.util.FingerprintUtil;
 
 import java.util.*;
 
+/**
+ * Node of a {@link QueryTree}: a logical operator with child nodes or a leaf with a {@link Term}.
+ * <p>
+ * Leaf nodes share an immutable empty child list, children are added to leaves with {@link #addChild(QueryNode)}.
+ * {@link #getChildren()} returns a read-only view, children are changed with the methods of the node,
+ * which reset its fingerprint.
+ * The attribute map is created when the first attribute is set.
+ * <p>
+ * Each node caches a 64 bit structural fingerprint ({@link #getFingerprint()}) that is computed bottom-up on first use.
+ * The setters and child mutators of a node reset its fingerprint. The fingerprints of the ancestors
+ * of a changed node are updated with {@link #updateFingerprint()}.
+ * Nodes may be shared by several trees, so a change below a node can not reset the cached fingerprints above it.
+ * {@link #equals(Object)} and {@link #hashCode()} therefore only use cached fingerprints of immutable nodes.
+ */
 public class QueryNode {
+    private static final List<QueryNode> NO_CHILDREN = Collections.emptyList();
+
     private boolean negate;
     private LogicalOperator operator;
     private Term term;
-    private List<QueryNode> children = new ArrayList<>();
-    private Map<String, Object> attributes = new HashMap<>();
+    private List<QueryNode> children;
+    //read-only view of children
+    private List<QueryNode> childrenView;
+    //null until the first attribute is set
+    private Map<String, Object> attributes;
+    //0 until the fingerprint is computed
+    private long fingerprint;
 
     public QueryNode() {
+        this(false, null, null, new ArrayList<>(2));
     }
 
     /**
@@ -43,13 +66,13 @@ public class QueryNode {
      * @param negate negate
      * @param operator operator
      * @param term term
-     * @param children children
+     * @param children children, the list is owned by the node and must not be changed afterwards
      */
     public QueryNode(boolean negate, LogicalOperator operator, Term term, List<QueryNode> children) {
         this.negate = negate;
         this.operator = operator;
         this.term = term;
-        this.children = children;
+        initChildren(children);
     }
 
     /**
@@ -57,7 +80,7 @@ public class QueryNode {
      * @param term term
      */
     public QueryNode(Term term) {
-        this(false, null, term, new ArrayList<>(0));
+        this(false, null, term, NO_CHILDREN);
     }
 
     /**
@@ -70,20 +93,32 @@ public class QueryNode {
     }
 
     /**
-     * Returns the attributes map
+     * Returns the attributes map. The map is created if no attribute is set yet,
+     * use {@link #hasAttributes()} or {@link #getAttribute(String)} to read attributes without creating it.
      * @return attributes map
      */
     public Map<String, Object> getAttributes() {
+        if (attributes == null) {
+            attributes = new HashMap<>(4);
+        }
         return attributes;
     }
 
+    /**
+     * Returns true if at least one attribute is set
+     * @return true if attributes are set
+     */
+    public boolean hasAttributes() {
+        return attributes != null && !attributes.isEmpty();
+    }
+
     /**
      * Returns an attribute value or null if no attribute with the specified name is found.
      * @param name attribute name
      * @return value
      */
     public Object getAttribute(String name){
-        return attributes.get(name);
+        return attributes == null ? null : attributes.get(name);
     }
 
     /**
@@ -93,12 +128,9 @@ public class QueryNode {
      * @return previous value or null
      */
     public Object setAttribute(String name, Object value){
-        return attributes.put(name,value);
+        return getAttributes().put(name,value);
     }
-    /**
-     * Creates a new leaf node from a term
-     * @param term term
-     */
+
 
     /**
      * Returns <tt>true</tt> if this node is negated
@@ -115,6 +147,7 @@ public class QueryNode {
      */
     public void setNegate(boolean negate) {
         this.negate = negate;
+        this.fingerprint = 0;
     }
 
     /**
@@ -131,6 +164,7 @@ public class QueryNode {
      */
     public void setOperator(LogicalOperator operator) {
         this.operator = operator;
+        this.fingerprint = 0;
     }
 
 
@@ -149,24 +183,245 @@ public class QueryNode {
      */
     public void setTerm(Term term) {
         this.term = term;
+        this.fingerprint = 0;
     }
 
 
     /**
-     * Returns all child nodes
+     * Returns a read-only view of all child nodes
      * @return all child nodes
      */
     public List<QueryNode> getChildren() {
-        return children;
+        return childrenView;
     }
 
 
     /**
-     * Sets the child nodes
+     * Returns true if this node has no children
+     * @return true if leaf
+     */
+    public boolean isLeaf() {
+        return children.isEmpty();
+    }
+
+    /**
+     * Appends a child node. The shared empty child list of a leaf is replaced by a new list.
+     * @param child child node
+     */
+    public void addChild(QueryNode child) {
+        if (children == NO_CHILDREN) {
+            initChildren(new ArrayList<>(2));
+        }
+        children.add(child);
+        fingerprint = 0;
+    }
+
+    /**
+     * Appends child nodes
      * @param children child nodes
      */
+    public void addChildren(Collection<? extends QueryNode> children) {
+        if (this.children == NO_CHILDREN) {
+            initChildren(new ArrayList<>(Math.max(children.size(), 2)));
+        }
+        this.children.addAll(children);
+        fingerprint = 0;
+    }
+
+    /**
+     * Replaces a child node
+     * @param index child index
+     * @param child new child node
+     * @return previous child node
+     */
+    public QueryNode setChild(int index, QueryNode child) {
+        QueryNode previous = children.set(index, child);
+        fingerprint = 0;
+        return previous;
+    }
+
+    /**
+     * Sets the child nodes
+     * @param children child nodes, the list is owned by the node and must not be changed afterwards
+     */
     public void setChildren(List<QueryNode> children) {
+        initChildren(children);
+        this.fingerprint = 0;
+    }
+
+    private void initChildren(List<QueryNode> children) {
         this.children = children;
+        this.childrenView = children == NO_CHILDREN ? NO_CHILDREN : Collections.unmodifiableList(children);
+    }
+
+    /**
+     * Returns the 64 bit structural fingerprint of this node: negation, operator, term and the fingerprints
+     * of the children in order. Attributes are not included. Structurally equal nodes have equal fingerprints.
+     * <p>
+     * The fingerprint is computed once for each node of the subtree that has none and then cached.
+     * A cached fingerprint is not updated when a node below this node is changed, see {@link #updateFingerprint()}.
+     * @return fingerprint
+     */
+    public long getFingerprint() {
+        if (fingerprint == 0) {
+            computeFingerprints(this);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Recomputes the cached fingerprint of this node from its term and the fingerprints of its children.
+     * Optimizations that change nodes in place call this for each changed node and its ancestors, children first.
+     * The cost is linear in the number of children. Nothing is computed if the node has no fingerprint yet.
+     */
+    public void updateFingerprint() {
+        if (fingerprint != 0) {
+            fingerprint = 0;
+            computeFingerprints(this);
+        }
+    }
+
+    /**
+     * Computes the fingerprints of all nodes below a root that have none, children first.
+     * Subtrees with a cached fingerprint are not visited.
+     */
+    private static void computeFingerprints(QueryNode root) {
+        Deque<QueryNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            QueryNode node = stack.peek();
+            if (node.fingerprint != 0) {
+                //a shared node that was pushed twice
+                stack.pop();
+                continue;
+            }
+            boolean ready = true;
+            for (int i = node.children.size() - 1; i >= 0; i--) {
+                QueryNode child = node.children.get(i);
+                if (child.fingerprint == 0) {
+                    stack.push(child);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                stack.pop();
+                node.fingerprint = node.computeFingerprint();
+            }
+        }
+    }
+
+    /**
+     * Computes the fingerprint of this node from the cached fingerprints of the children
+     */
+    private long computeFingerprint() {
+        long result = shallowFingerprint();
+        for (int i = 0; i < children.size(); i++) {
+            result = FingerprintUtil.combine(result, children.get(i).fingerprint);
+        }
+        //0 marks a missing fingerprint
+        return result == 0 ? 1 : result;
+    }
+
+    /**
+     * Fingerprint of negation, operator, term and number of children
+     */
+    private long shallowFingerprint() {
+        long result = FingerprintUtil.combine(negate ? 1 : 2, operator == null ? 0 : operator.getFingerprint());
+        result = FingerprintUtil.combine(result, term == null ? 0 : term.getFingerprint());
+        return FingerprintUtil.combine(result, children.size());
+    }
+
+    /**
+     * Computes the fingerprint of the current subtree without using or changing cached fingerprints
+     * of mutable nodes. The result equals {@link #getFingerprint()} if all cached fingerprints are up to date.
+     */
+    private long currentFingerprint() {
+        if (isFingerprintCurrent()) {
+            return getFingerprint();
+        }
+        return new QueryTreeWalker().fold(this, Long[]::new, (node, children) -> {
+            if (node.isFingerprintCurrent()) {
+                return node.getFingerprint();
+            }
+            long result = node.shallowFingerprint();
+            for (Long child : children) {
+                result = FingerprintUtil.combine(result, child);
+            }
+            return result == 0 ? 1 : result;
+        });
+    }
+
+    /**
+     * Returns true if the cached fingerprint always matches the subtree, which is only known for immutable nodes
+     * @return true if the fingerprint is current
+     */
+    boolean isFingerprintCurrent() {
+        return false;
+    }
+
+    /**
+     * True if o is a node with the same negation, operator and term and equal children in the same order.
+     * Attributes are not compared. The trees are compared with an explicit stack, so the depth is not limited
+     * by the thread stack. Immutable nodes with different fingerprints are told apart without visiting their children.
+     * Immutable nodes ({@link ImmutableQueryNode}) are equal to mutable nodes with the same structure.
+     * @param o other node
+     * @return true if structurally equal
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof QueryNode)) return false;
+        Deque<QueryNode> stack = new ArrayDeque<>();
+        stack.push(this);
+        stack.push((QueryNode) o);
+        while (!stack.isEmpty()) {
+            QueryNode other = stack.pop();
+            QueryNode node = stack.pop();
+            if (node == other) {
+                continue;
+            }
+            if (node.isFingerprintCurrent() && other.isFingerprintCurrent() && node.fingerprint != other.fingerprint) {
+                return false;
+            }
+            if (!node.shallowEquals(other)) {
+                return false;
+            }
+            for (int i = 0; i < node.children.size(); i++) {
+                stack.push(node.children.get(i));
+                stack.push(other.children.get(i));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the hashcode of the fingerprint of the current subtree, consistent with {@link #equals(Object)}.
+     * The fingerprint is computed for every call, only cached fingerprints of immutable subtrees are reused.
+     * @return hashcode
+     */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(currentFingerprint());
+    }
+
+    /**
+     * True if negation, operator, term and number of children are equal, the children are not compared
+     */
+    boolean shallowEquals(QueryNode other) {
+        return negate == other.negate
+                && Objects.equals(operator, other.operator)
+                && Objects.equals(term, other.term)
+                && children.size() == other.children.size();
+    }
+
+    /**
+     * Hashcode of negation, operator, term and number of children
+     */
+    int shallowHashCode() {
+        int result = Boolean.hashCode(negate);
+        result = 31 * result + Objects.hashCode(operator);
+        result = 31 * result + Objects.hashCode(term);
+        return 31 * result + children.size();
     }
 
     /**
@@ -0,0 +1,169 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query;
+
+import de.alexgruen.query.term.Field;
+import de.alexgruen.query.term.Term;
+import de.alexgruen.query.term.Value;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares structurally equal subtrees (hash-consing). After interning, equal subtrees of a tree are the same
+ * {@link QueryNode} object and equal terms, fields and values are the same objects,
+ * so duplicates can be detected with an identity check.
+ * <p>
+ * Nodes are interned bottom-up: the children of a node are replaced by their canonical nodes first,
+ * then the node is looked up by its negation, operator, term and the identities of its children.
+ * Each node is hashed once, interning is linear in the size of the tree.
+ * Nodes with attributes are not shared, but their children are.
+ * <p>
+ * Interned nodes may be referenced several times and must not be modified.
+ * An interner keeps its canonical objects until {@link #clear()} is called, so it can share subtrees
+ * across several trees. It is not thread safe.
+ */
+public class QueryNodeInterner {
+    private final Map<NodeKey, QueryNode> nodes = new HashMap<>();
+    private final Map<Term, Term> terms = new HashMap<>();
+    private final Map<Field, Field> fields = new HashMap<>();
+    private final Map<Value, Value> values = new HashMap<>();
+    private final QueryTreeWalker walker = new QueryTreeWalker();
+
+    /**
+     * Interns all nodes of a tree and replaces the root by its canonical node
+     * @param tree query tree
+     * @return the same tree
+     */
+    public QueryTree intern(QueryTree tree) {
+        tree.setRoot(intern(tree.getRoot()));
+        return tree;
+    }
+
+    /**
+     * Interns all nodes below a node. Child lists are changed in place.
+     * @param root root node
+     * @return canonical node of the root
+     */
+    public QueryNode intern(QueryNode root) {
+        return walker.fold(root, QueryNode[]::new, this::internNode);
+    }
+
+    /**
+     * Returns the number of distinct nodes
+     * @return number of canonical nodes
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Removes all canonical objects
+     */
+    public void clear() {
+        nodes.clear();
+        terms.clear();
+        fields.clear();
+        values.clear();
+    }
+
+    private QueryNode internNode(QueryNode node, QueryNode[] canonicalChildren) {
+        List<QueryNode> children = node.getChildren();
+        for (int i = 0; i < canonicalChildren.length; i++) {
+            if (children.get(i) != canonicalChildren[i]) {
+                node.setChild(i, canonicalChildren[i]);
+            }
+        }
+        if (node.getTerm() != null) {
+            node.setTerm(internTerm(node.getTerm()));
+        }
+        if (node.hasAttributes()) {
+            return node;
+        }
+        QueryNode canonical = nodes.putIfAbsent(new NodeKey(node), node);
+        return canonical == null ? node : canonical;
+    }
+
+    private Term internTerm(Term term) {
+        Term canonical = terms.get(term);
+        if (canonical != null) {
+            return canonical;
+        }
+        term.setField(intern(fields, term.getField()));
+        term.setValue(intern(values, term.getValue()));
+        terms.put(term, term);
+        return term;
+    }
+
+    private static <K> K intern(Map<K, K> map, K key) {
+        if (key == null) {
+            return null;
+        }
+        K canonical = map.putIfAbsent(key, key);
+        return canonical == null ? key : canonical;
+    }
+
+    /**
+     * Node whose children are already canonical, children are compared by identity
+     */
+    private static final class NodeKey {
+        private final QueryNode node;
+        private final int hash;
+
+        NodeKey(QueryNode node) {
+            this.node = node;
+            int h = node.shallowHashCode();
+            for (QueryNode child : node.getChildren()) {
+                h = 31 * h + System.identityHashCode(child);
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof NodeKey)) {
+                return false;
+            }
+            QueryNode other = ((NodeKey) o).node;
+            if (!node.shallowEquals(other)) {
+                return false;
+            }
+            List<QueryNode> children = node.getChildren();
+            List<QueryNode> otherChildren = other.getChildren();
+            for (int i = 0; i < children.size(); i++) {
+                if (children.get(i) != otherChildren.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
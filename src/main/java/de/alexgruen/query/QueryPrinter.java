@@ -26,6 +26,9 @@ package de.alexgruen.query;
 
 import de.alexgruen.query.util.StringUtil;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
 import java.util.function.Function;
 
 public class QueryPrinter {
@@ -50,14 +53,34 @@ public class QueryPrinter {
 
     public String toString(QueryNode root) {
         StringBuilder sb = new StringBuilder();
-        printRec("",true,root,sb,false);
+        String verticalConnection = String.format("%s%s",verticalLine,
+                StringUtil.repeatChar(
+                        cornerNext.length()+horizontalLine.length()-verticalLine.length(), ' '
+                ));
+        //lines that still have to be printed, the next line is on top
+        Deque<Line> stack = new ArrayDeque<>();
+        stack.push(new Line("", true, root, false));
+        while (!stack.isEmpty()) {
+            Line line = stack.pop();
+            String indentation = printLine(line, sb);
+            List<QueryNode> children = line.node.getChildren();
+            String childPrefix = line.prefix + (line.lastChild || line.isRoot ? indentation : verticalConnection);
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(new Line(childPrefix, false, children.get(i), i == children.size() - 1));
+            }
+        }
         return sb.toString();
     }
 
-    private void printRec(String prefix,boolean isRoot, QueryNode node, StringBuilder sb, boolean lastChild){
+    /**
+     * Prints the line of a node
+     * @return indentation of the children
+     */
+    private String printLine(Line line, StringBuilder sb){
+        QueryNode node = line.node;
         StringBuilder nodeLine = new StringBuilder();
-        if(!isRoot){
-            nodeLine.append(lastChild ? cornerLast : tLine);
+        if(!line.isRoot){
+            nodeLine.append(line.lastChild ? cornerLast : tLine);
         }
 
         nodeLine.append(horizontalLine);
@@ -69,21 +92,25 @@ public class QueryPrinter {
         nodeLine.append(labelPrefix);
         nodeLine.append(node.getLabel());
         nodeLine.append(labelPostfix);
-        sb.append(prefix);
+        sb.append(line.prefix);
         sb.append(nodeLine);
         sb.append(lineSeparator);
-        String verticalConnection = String.format("%s%s",verticalLine,
-                StringUtil.repeatChar(
-                        cornerNext.length()+horizontalLine.length()-verticalLine.length(), ' '
-                ));
-        int i = 0;
-        for(QueryNode child : node.getChildren()){
-            printRec(prefix + (lastChild || isRoot ? indentation : verticalConnection), false,child,sb, i++ == node.getChildren().size() - 1);
-        }
-
+        return indentation;
     }
 
-
+    private static final class Line {
+        private final String prefix;
+        private final boolean isRoot;
+        private final QueryNode node;
+        private final boolean lastChild;
+
+        private Line(String prefix, boolean isRoot, QueryNode node, boolean lastChild) {
+            this.prefix = prefix;
+            this.isRoot = isRoot;
+            this.node = node;
+            this.lastChild = lastChild;
+        }
+    }
 
     public static final class Builder {
         private String horizontalLine   = "──";
@@ -40,6 +40,44 @@ public class QueryTree {
         this.root = root;
     }
 
+    /**
+     * Returns the structural fingerprint of the root node ({@link QueryNode#getFingerprint()})
+     * @return fingerprint
+     */
+    public long getFingerprint() {
+        return root.getFingerprint();
+    }
+
+    /**
+     * Recomputes the fingerprints of all nodes, children first. Use this after nodes were changed
+     * without updating the fingerprints of their ancestors.
+     */
+    public void updateFingerprints() {
+        new QueryTreeWalker().postOrder(root, QueryNode::updateFingerprint);
+        root.getFingerprint();
+    }
+
+    /**
+     * True if o is a tree with a structurally equal root node ({@link QueryNode#equals(Object)})
+     * @param o other tree
+     * @return true if equal
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof QueryTree)) return false;
+        return root.equals(((QueryTree) o).root);
+    }
+
+    /**
+     * Returns the hashcode of the root node
+     * @return hashcode
+     */
+    @Override
+    public int hashCode() {
+        return root.hashCode();
+    }
+
     @Override
     public String toString() {
         return QueryPrinter.DEFAULT.toString(root);
@@ -0,0 +1,235 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * Traverses query trees with an explicit stack instead of recursion,
+ * so the depth of a tree is only limited by the heap and not by the thread stack.
+ * The first levels of a tree are traversed recursively, which is faster for the shallow trees of most queries,
+ * deeper subtrees use the explicit stack.
+ * <p>
+ * A walker keeps its stack between traversals and can be reused. It is neither thread safe nor reentrant,
+ * callbacks must not start another traversal with the same walker.
+ * Nodes must not be added to or removed from the children of nodes that have not been visited yet.
+ */
+public class QueryTreeWalker {
+    //number of levels that are traversed recursively
+    private static final int RECURSION_DEPTH = 32;
+
+    //the stack is created when the first subtree below the recursion depth is traversed
+    private QueryNode[] nodes;
+    //index of the next child of each node on the stack
+    private int[] next;
+    private int top;
+    //results of completed children (fold only)
+    private Object[] values;
+    private int valueCount;
+
+    /**
+     * Computes a value for each node from the values of its children (bottom-up)
+     * @param <R> result type
+     */
+    @FunctionalInterface
+    public interface Folder<R> {
+        /**
+         * Computes the value of a node
+         * @param node node
+         * @param children values of the children, in the order of the children
+         * @return value of the node
+         */
+        R fold(QueryNode node, R[] children);
+    }
+
+    /**
+     * Computes the value of the root node bottom-up. Every node is folded after all of its children.
+     * @param root root node
+     * @param arrayFactory creates arrays for the values of the children
+     * @param folder computes the value of a node
+     * @param <R> result type
+     * @return value of the root node
+     */
+    public <R> R fold(QueryNode root, IntFunction<R[]> arrayFactory, Folder<R> folder) {
+        return fold(root, arrayFactory, folder, arrayFactory.apply(0), 0);
+    }
+
+    private <R> R fold(QueryNode node, IntFunction<R[]> arrayFactory, Folder<R> folder, R[] empty, int depth) {
+        List<QueryNode> children = node.getChildren();
+        if (children.isEmpty()) {
+            return folder.fold(node, empty);
+        }
+        if (depth == RECURSION_DEPTH) {
+            return foldWithStack(node, arrayFactory, folder, empty);
+        }
+        R[] args = arrayFactory.apply(children.size());
+        for (int i = 0; i < args.length; i++) {
+            args[i] = fold(children.get(i), arrayFactory, folder, empty, depth + 1);
+        }
+        return folder.fold(node, args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> R foldWithStack(QueryNode root, IntFunction<R[]> arrayFactory, Folder<R> folder, R[] empty) {
+        top = 0;
+        valueCount = 0;
+        push(root);
+        try {
+            while (top > 0) {
+                QueryNode node = nodes[top - 1];
+                List<QueryNode> children = node.getChildren();
+                int i = next[top - 1];
+                if (i < children.size()) {
+                    next[top - 1] = i + 1;
+                    QueryNode child = children.get(i);
+                    if (child.getChildren().isEmpty()) {
+                        pushValue(folder.fold(child, empty));
+                    } else {
+                        push(child);
+                    }
+                    continue;
+                }
+                R[] args = arrayFactory.apply(children.size());
+                valueCount -= args.length;
+                System.arraycopy(values, valueCount, args, 0, args.length);
+                Arrays.fill(values, valueCount, valueCount + args.length, null);
+                nodes[--top] = null;
+                pushValue(folder.fold(node, args));
+            }
+            return (R) values[0];
+        } finally {
+            clear();
+        }
+    }
+
+    /**
+     * Visits all nodes depth-first, every node is visited after all of its children.
+     * The visitor may change the children of the visited node.
+     * @param root root node
+     * @param visitor node visitor
+     */
+    public void postOrder(QueryNode root, Consumer<QueryNode> visitor) {
+        postOrder(root, null, visitor);
+    }
+
+    /**
+     * Visits all nodes depth-first, every node is visited after all of its children.
+     * Nodes that are not accepted by the filter are skipped together with their subtrees.
+     * The visitor may change the children of the visited node.
+     * @param root root node
+     * @param filter returns false for subtrees that are skipped, null visits all nodes
+     * @param visitor node visitor
+     */
+    public void postOrder(QueryNode root, Predicate<QueryNode> filter, Consumer<QueryNode> visitor) {
+        if (filter == null || filter.test(root)) {
+            postOrder(root, filter, visitor, 0);
+        }
+    }
+
+    private void postOrder(QueryNode node, Predicate<QueryNode> filter, Consumer<QueryNode> visitor, int depth) {
+        if (depth == RECURSION_DEPTH) {
+            postOrderWithStack(node, filter, visitor);
+            return;
+        }
+        List<QueryNode> children = node.getChildren();
+        for (int i = 0; i < children.size(); i++) {
+            QueryNode child = children.get(i);
+            if (filter == null || filter.test(child)) {
+                postOrder(child, filter, visitor, depth + 1);
+            }
+        }
+        visitor.accept(node);
+    }
+
+    private void postOrderWithStack(QueryNode root, Predicate<QueryNode> filter, Consumer<QueryNode> visitor) {
+        top = 0;
+        push(root);
+        try {
+            while (top > 0) {
+                QueryNode node = nodes[top - 1];
+                List<QueryNode> children = node.getChildren();
+                int i = next[top - 1];
+                if (i < children.size()) {
+                    next[top - 1] = i + 1;
+                    QueryNode child = children.get(i);
+                    if (filter != null && !filter.test(child)) {
+                        continue;
+                    }
+                    if (child.getChildren().isEmpty()) {
+                        visitor.accept(child);
+                    } else {
+                        push(child);
+                    }
+                    continue;
+                }
+                nodes[--top] = null;
+                visitor.accept(node);
+            }
+        } finally {
+            clear();
+        }
+    }
+
+    private void push(QueryNode node) {
+        if (nodes == null) {
+            nodes = new QueryNode[16];
+            next = new int[16];
+        } else if (top == nodes.length) {
+            nodes = Arrays.copyOf(nodes, top * 2);
+            next = Arrays.copyOf(next, top * 2);
+        }
+        nodes[top] = node;
+        next[top] = 0;
+        top++;
+    }
+
+    private void pushValue(Object value) {
+        if (values == null) {
+            values = new Object[16];
+        } else if (valueCount == values.length) {
+            values = Arrays.copyOf(values, valueCount * 2);
+        }
+        values[valueCount++] = value;
+    }
+
+    /**
+     * Releases the references to nodes and values of the last traversal.
+     * Completed nodes and folded values are released during the traversal, only an exception leaves references.
+     */
+    private void clear() {
+        if (nodes != null) {
+            Arrays.fill(nodes, 0, top, null);
+        }
+        if (values != null) {
+            Arrays.fill(values, 0, valueCount, null);
+        }
+        top = 0;
+        valueCount = 0;
+    }
+}
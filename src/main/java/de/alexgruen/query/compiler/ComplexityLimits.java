@@ -0,0 +1,282 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler;
+
+/**
+ * Upper bounds for the size and complexity of compiled queries.
+ * <p>
+ * The limits are checked while an input is tokenized and parsed, an input that exceeds a limit is rejected
+ * with a {@link QueryCompilerException} of type {@link QueryError.Type#LIMIT_EXCEEDED}
+ * as soon as the limit is reached, so the work done for an oversized input is proportional to the limit.
+ * <ul>
+ *     <li>input length: number of characters of the input (including whitespace)</li>
+ *     <li>depth: number of nested brackets</li>
+ *     <li>terms: number of terms and full text search values</li>
+ *     <li>value set size: number of values of an IN or NOT IN list</li>
+ *     <li>regex length: number of characters of a regular expression</li>
+ *     <li>regex complexity: number of groups, alternatives, quantifiers and back references of a regular expression</li>
+ * </ul>
+ * All limits are unlimited by default.
+ */
+public class ComplexityLimits {
+    /**
+     * No limits
+     */
+    public static final ComplexityLimits UNLIMITED = builder().build();
+
+    private final int maxInputLength;
+    private final int maxDepth;
+    private final int maxTerms;
+    private final int maxValueSetSize;
+    private final int maxRegexLength;
+    private final int maxRegexComplexity;
+
+    private ComplexityLimits(Builder builder) {
+        this.maxInputLength = builder.maxInputLength;
+        this.maxDepth = builder.maxDepth;
+        this.maxTerms = builder.maxTerms;
+        this.maxValueSetSize = builder.maxValueSetSize;
+        this.maxRegexLength = builder.maxRegexLength;
+        this.maxRegexComplexity = builder.maxRegexComplexity;
+    }
+
+    /**
+     * Creates a builder without limits
+     * @return builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the maximum number of characters of an input
+     * @return maximum input length
+     */
+    public int getMaxInputLength() {
+        return maxInputLength;
+    }
+
+    /**
+     * Returns the maximum number of nested brackets
+     * @return maximum depth
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Returns the maximum number of terms and full text search values
+     * @return maximum number of terms
+     */
+    public int getMaxTerms() {
+        return maxTerms;
+    }
+
+    /**
+     * Returns the maximum number of values of an IN or NOT IN list
+     * @return maximum value set size
+     */
+    public int getMaxValueSetSize() {
+        return maxValueSetSize;
+    }
+
+    /**
+     * Returns the maximum number of characters of a regular expression
+     * @return maximum regex length
+     */
+    public int getMaxRegexLength() {
+        return maxRegexLength;
+    }
+
+    /**
+     * Returns the maximum number of groups, alternatives, quantifiers and back references of a regular expression
+     * @return maximum regex complexity
+     */
+    public int getMaxRegexComplexity() {
+        return maxRegexComplexity;
+    }
+
+    /**
+     * Returns true if no limit is set
+     * @return true if unlimited
+     */
+    public boolean isUnlimited() {
+        return maxInputLength == Integer.MAX_VALUE && maxDepth == Integer.MAX_VALUE && maxTerms == Integer.MAX_VALUE
+                && maxValueSetSize == Integer.MAX_VALUE && maxRegexLength == Integer.MAX_VALUE
+                && maxRegexComplexity == Integer.MAX_VALUE;
+    }
+
+    /**
+     * Throws a {@link QueryCompilerException} if an input is too long
+     * @param length input length
+     */
+    public void checkInputLength(int length) {
+        if (length > maxInputLength) {
+            throw limitExceeded(maxInputLength, "input length of %d characters exceeds the limit of %d", length, maxInputLength);
+        }
+    }
+
+    /**
+     * Throws a {@link QueryCompilerException} if a regular expression (with or without enclosing slashes)
+     * is too long or too complex. The expression is read once and stops at the limit.
+     * @param regex regular expression
+     * @param offset position of the expression in the input or -1
+     */
+    public void checkRegex(CharSequence regex, int offset) {
+        if (regex.length() > maxRegexLength) {
+            throw limitExceeded(offset, "regular expression of %d characters exceeds the limit of %d", regex.length(), maxRegexLength);
+        }
+        if (maxRegexComplexity == Integer.MAX_VALUE) {
+            return;
+        }
+        int complexity = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+                if (i < regex.length() && regex.charAt(i) >= '1' && regex.charAt(i) <= '9') {
+                    complexity++;
+                }
+            } else if (c == '(' || c == '|' || c == '*' || c == '+' || c == '?' || c == '{') {
+                complexity++;
+            }
+            if (complexity > maxRegexComplexity) {
+                throw limitExceeded(offset, "regular expression exceeds the complexity limit of %d", maxRegexComplexity);
+            }
+        }
+    }
+
+    /**
+     * Creates the exception for an exceeded limit
+     * @param offset position in the input or -1
+     * @param format message format
+     * @param args message arguments
+     * @return exception
+     */
+    public static QueryCompilerException limitExceeded(int offset, String format, Object... args) {
+        return new QueryCompilerException(QueryError.limitExceeded(offset, format, args));
+    }
+
+    @Override
+    public String toString() {
+        return "ComplexityLimits{" +
+                "maxInputLength=" + maxInputLength +
+                ", maxDepth=" + maxDepth +
+                ", maxTerms=" + maxTerms +
+                ", maxValueSetSize=" + maxValueSetSize +
+                ", maxRegexLength=" + maxRegexLength +
+                ", maxRegexComplexity=" + maxRegexComplexity +
+                '}';
+    }
+
+    public static final class Builder {
+        private int maxInputLength = Integer.MAX_VALUE;
+        private int maxDepth = Integer.MAX_VALUE;
+        private int maxTerms = Integer.MAX_VALUE;
+        private int maxValueSetSize = Integer.MAX_VALUE;
+        private int maxRegexLength = Integer.MAX_VALUE;
+        private int maxRegexComplexity = Integer.MAX_VALUE;
+
+        private Builder() {
+        }
+
+        /**
+         * Limits the number of characters of an input
+         * @param maxInputLength maximum input length
+         * @return <tt>self</tt> for method chaining
+         */
+        public Builder maxInputLength(int maxInputLength) {
+            this.maxInputLength = positive(maxInputLength, "input length");
+            return this;
+        }
+
+        /**
+         * Limits the number of nested brackets
+         * @param maxDepth maximum depth
+         * @return <tt>self</tt> for method chaining
+         */
+        public Builder maxDepth(int maxDepth) {
+            if (maxDepth < 0) {
+                throw new IllegalArgumentException("maximum depth must not be negative");
+            }
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        /**
+         * Limits the number of terms and full text search values
+         * @param maxTerms maximum number of terms
+         * @return <tt>self</tt> for method chaining
+         */
+        public Builder maxTerms(int maxTerms) {
+            this.maxTerms = positive(maxTerms, "number of terms");
+            return this;
+        }
+
+        /**
+         * Limits the number of values of IN and NOT IN lists
+         * @param maxValueSetSize maximum number of values
+         * @return <tt>self</tt> for method chaining
+         */
+        public Builder maxValueSetSize(int maxValueSetSize) {
+            this.maxValueSetSize = positive(maxValueSetSize, "value set size");
+            return this;
+        }
+
+        /**
+         * Limits the number of characters of regular expressions
+         * @param maxRegexLength maximum regex length
+         * @return <tt>self</tt> for method chaining
+         */
+        public Builder maxRegexLength(int maxRegexLength) {
+            this.maxRegexLength = positive(maxRegexLength, "regex length");
+            return this;
+        }
+
+        /**
+         * Limits the number of groups, alternatives, quantifiers and back references of regular expressions
+         * @param maxRegexComplexity maximum regex complexity
+         * @return <tt>self</tt> for method chaining
+         */
+        public Builder maxRegexComplexity(int maxRegexComplexity) {
+            if (maxRegexComplexity < 0) {
+                throw new IllegalArgumentException("maximum regex complexity must not be negative");
+            }
+            this.maxRegexComplexity = maxRegexComplexity;
+            return this;
+        }
+
+        public ComplexityLimits build() {
+            return new ComplexityLimits(this);
+        }
+
+        private static int positive(int value, String name) {
+            if (value <= 0) {
+                throw new IllegalArgumentException(String.format("maximum %s must be positive", name));
+            }
+            return value;
+        }
+    }
+}
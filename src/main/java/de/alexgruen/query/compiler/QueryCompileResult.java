@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler;
+
+import de.alexgruen.query.Query;
+import de.alexgruen.query.QueryTree;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Result of {@link QueryCompiler#validate(String)} and {@link QueryCompiler#tryCompile(String)}.
+ * Contains either the compiled query tree (and query) or the errors of an invalid input.
+ * @param <T> target class
+ */
+public class QueryCompileResult<T extends Query> {
+    private QueryTree tree;
+    //compiles the tree when it is first requested, null if the tree is known
+    private Supplier<QueryTree> treeSupplier;
+    private final T query;
+    private final List<QueryError> errors;
+
+    private QueryCompileResult(QueryTree tree, T query, List<QueryError> errors) {
+        this.tree = tree;
+        this.query = query;
+        this.errors = errors;
+    }
+
+    /**
+     * Creates the result of a valid input
+     * @param tree query tree
+     * @param query query or null if only the tree was compiled
+     * @param <T> target class
+     * @return result
+     */
+    public static <T extends Query> QueryCompileResult<T> valid(QueryTree tree, T query) {
+        return new QueryCompileResult<>(tree, query, Collections.emptyList());
+    }
+
+    /**
+     * Creates the result of a valid input whose query tree is compiled when it is first requested,
+     * e.g. for a query that was found in a query cache
+     * @param tree compiles the query tree
+     * @param query query
+     * @param <T> target class
+     * @return result
+     */
+    static <T extends Query> QueryCompileResult<T> valid(Supplier<QueryTree> tree, T query) {
+        QueryCompileResult<T> result = new QueryCompileResult<>(null, query, Collections.emptyList());
+        result.treeSupplier = tree;
+        return result;
+    }
+
+    /**
+     * Creates the result of an invalid input
+     * @param error error
+     * @param <T> target class
+     * @return result
+     */
+    public static <T extends Query> QueryCompileResult<T> invalid(QueryError error) {
+        return new QueryCompileResult<>(null, null, Collections.singletonList(error));
+    }
+
+    /**
+     * Returns true if the input was compiled without errors
+     * @return true if valid
+     */
+    public boolean isValid() {
+        return errors.isEmpty();
+    }
+
+    /**
+     * Returns the query tree or null if the input is invalid.
+     * If the query was found in a query cache, the tree is compiled by the first call.
+     * @return query tree or null
+     */
+    public QueryTree getTree() {
+        if (treeSupplier != null) {
+            tree = treeSupplier.get();
+            treeSupplier = null;
+        }
+        return tree;
+    }
+
+    /**
+     * Returns the query or null if the input is invalid or only validated
+     * @return query or null
+     */
+    public T getQuery() {
+        return query;
+    }
+
+    /**
+     * Returns the errors of an invalid input. Compilation stops at the first error, so the list contains at most one error.
+     * @return errors, empty if the input is valid
+     */
+    public List<QueryError> getErrors() {
+        return errors;
+    }
+
+    @Override
+    public String toString() {
+        return isValid() ? String.valueOf(query != null ? query : getTree()) : errors.toString();
+    }
+}
@@ -25,12 +25,26 @@
 package de.alexgruen.query.compiler;
 
 import de.alexgruen.query.*;
+import de.alexgruen.query.compiler.cache.QueryCache;
+import de.alexgruen.query.compiler.cache.QueryTreeStore;
+import de.alexgruen.query.compiler.engine.ParserEngines;
+import de.alexgruen.query.compiler.engine.QueryParserEngine;
 import de.alexgruen.query.creator.LogicCreator;
 import de.alexgruen.query.creator.TermCreator;
 import de.alexgruen.query.optimization.QueryOptimization;
 import de.alexgruen.query.term.Term;
 import de.alexgruen.query.util.CompilerUtil;
+import de.alexgruen.query.util.StringUtil;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.List;
 
 public class QueryCompiler<T extends Query> {
@@ -38,11 +52,29 @@ public class QueryCompiler<T extends Query> {
     private QueryContext<T> context;
     private List<QueryOptimization> optimizations;
     private QueryTreeCompiler queryTreeCompiler;
+    private QueryCache<QueryTree> treeCache;
+    private QueryCache<T> queryCache;
+    private boolean subtreeInterning;
+    private QueryTreeStore treeStore;
 
     protected QueryCompiler(QueryContext<T> context, List<QueryOptimization> optimizations) {
         this.context = context;
         this.optimizations = optimizations;
-        this.queryTreeCompiler = new QueryTreeCompiler(context);
+        this.queryTreeCompiler = new QueryTreeCompiler(context, ParserEngines.ANTLR);
+    }
+
+    /**
+     * Creates a compiler with the settings of a builder, the tree store of the builder is opened
+     * @param builder builder
+     */
+    protected QueryCompiler(QueryCompilerBuilder<T> builder) {
+        this.context = builder.createContext();
+        this.optimizations = builder.getOptimizations();
+        this.queryTreeCompiler = new QueryTreeCompiler(context, builder.getParserEngineFactory());
+        this.treeCache = builder.getTreeCache();
+        this.queryCache = builder.getQueryCache();
+        this.subtreeInterning = builder.isSubtreeInterning();
+        this.treeStore = builder.openTreeStore(context);
     }
 
     /**
@@ -84,24 +116,299 @@ public class QueryCompiler<T extends Query> {
     }
 
     /**
-     * Compiles an input string to the target class
+     * Returns the {@link QueryParserEngine} used to parse input strings
+     * @return parser engine
+     */
+    public QueryParserEngine getParserEngine() {
+        return queryTreeCompiler.getParserEngine();
+    }
+
+    /**
+     * Returns the cache for compiled query trees or null if no cache is used
+     * @return query tree cache
+     */
+    public QueryCache<QueryTree> getTreeCache() {
+        return treeCache;
+    }
+
+    /**
+     * Returns the cache for compiled objects of the target class or null if no cache is used
+     * @return query cache
+     */
+    public QueryCache<T> getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Returns the persistent store for compiled query trees or null if no store is used.
+     * The store is not closed by the compiler.
+     * @return query tree store
+     */
+    public QueryTreeStore getTreeStore() {
+        return treeStore;
+    }
+
+    /**
+     * Returns true if structurally equal subtrees of compiled trees are shared ({@link QueryNodeInterner})
+     * @return true if subtrees are interned
+     */
+    public boolean isSubtreeInterning() {
+        return subtreeInterning;
+    }
+
+    /**
+     * Compiles an input string to the target class.
+     * If a query cache is used, the cached object is returned.
      * @param str input string
      * @return object of target class
      */
     public T compile(String str) {
+        if (queryCache != null) {
+            return queryCache.get(str, s -> compile(compileTree(s)));
+        }
         QueryTree tree = compileTree(str);
         return compile(tree);
     }
 
     /**
-     * Compiles an input string to a query tree ({@link QueryTree}
+     * Compiles input characters to the target class.
+     * The characters are read in place. If a query cache is used, the characters are converted to a string key.
+     * @param chars input characters
+     * @return object of target class
+     */
+    public T compile(CharSequence chars) {
+        if (chars instanceof String || queryCache != null) {
+            return compile(chars.toString());
+        }
+        return compile(compileTree(chars));
+    }
+
+    /**
+     * Compiles a slice of a char array to the target class. The array is not copied.
+     * @param chars input characters
+     * @param offset index of the first character
+     * @param length number of characters
+     * @return object of target class
+     */
+    public T compile(char[] chars, int offset, int length) {
+        return compile(CharBuffer.wrap(chars, offset, length));
+    }
+
+    /**
+     * Compiles the UTF-8 encoded bytes between position and limit of a buffer to the target class.
+     * ASCII input is read in place (see {@link StringUtil#fromUtf8(ByteBuffer)}), the position of the buffer is not changed.
+     * @param utf8 UTF-8 encoded input
+     * @return object of target class
+     */
+    public T compile(ByteBuffer utf8) {
+        return compile(StringUtil.fromUtf8(utf8));
+    }
+
+    /**
+     * Compiles a slice of UTF-8 encoded bytes to the target class. ASCII input is read in place.
+     * @param utf8 UTF-8 encoded input
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @return object of target class
+     */
+    public T compile(byte[] utf8, int offset, int length) {
+        return compile(ByteBuffer.wrap(utf8, offset, length));
+    }
+
+    /**
+     * Compiles a query that is read from a stream to the target class.
+     * The input is parsed incrementally with bounded memory (see {@link #compileTree(Reader)}), caches are not used.
+     * The reader is not closed.
+     * @param reader input characters
+     * @return object of target class
+     */
+    public T compile(Reader reader) {
+        return compile(compileTree(reader));
+    }
+
+    /**
+     * Compiles a query that is read from a stream of encoded characters to the target class.
+     * Malformed input causes a {@link QueryCompilerException}. The stream is not closed.
+     * @param in input stream
+     * @param charset charset of the input
+     * @return object of target class
+     */
+    public T compile(InputStream in, Charset charset) {
+        return compile(compileTree(in, charset));
+    }
+
+    /**
+     * Compiles an input string to a query tree ({@link QueryTree}.
+     * If a tree cache is used, the cached tree is returned. Cached trees are shared and must not be modified.
+     * If a tree store is used, a stored tree is decoded instead of parsing the input.
      * @param str input string
      * @return query tree
      */
     public QueryTree compileTree(String str) {
+        if (treeCache != null) {
+            return treeCache.get(str, this::parseTree);
+        }
+        return parseTree(str);
+    }
+
+    /**
+     * Compiles input characters to a query tree ({@link QueryTree}.
+     * The characters are read in place. If a tree cache or store is used, the characters are converted to a string key.
+     * @param chars input characters
+     * @return query tree
+     */
+    public QueryTree compileTree(CharSequence chars) {
+        if (chars instanceof String || treeCache != null || treeStore != null) {
+            return compileTree(chars.toString());
+        }
+        QueryTree tree = queryTreeCompiler.compile(chars);
+        optimize(tree);
+        return intern(tree);
+    }
+
+    /**
+     * Compiles the UTF-8 encoded bytes between position and limit of a buffer to a query tree.
+     * ASCII input is read in place, the position of the buffer is not changed.
+     * @param utf8 UTF-8 encoded input
+     * @return query tree
+     */
+    public QueryTree compileTree(ByteBuffer utf8) {
+        return compileTree(StringUtil.fromUtf8(utf8));
+    }
+
+    /**
+     * Compiles a query that is read from a stream to a query tree ({@link QueryTree}.
+     * Tokens are read on demand and query nodes are created while reading,
+     * the complete input and a parse tree are never held in memory.
+     * Memory usage is proportional to the resulting tree, not to the input size.
+     * Caches are not used, the reader is not closed.
+     * @param reader input characters
+     * @return query tree
+     */
+    public QueryTree compileTree(Reader reader) {
+        QueryTree tree = queryTreeCompiler.compile(reader);
+        optimize(tree);
+        return intern(tree);
+    }
+
+    /**
+     * Compiles a query that is read from a stream of encoded characters to a query tree ({@link QueryTree}.
+     * Malformed input causes a {@link QueryCompilerException}. The stream is not closed.
+     * @param in input stream
+     * @param charset charset of the input
+     * @return query tree
+     */
+    public QueryTree compileTree(InputStream in, Charset charset) {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        return compileTree(new InputStreamReader(in, decoder));
+    }
+
+    /**
+     * Parses representative queries to fill the prediction caches of the parser before the first request.
+     * The resulting trees are neither optimized nor stored in the caches, invalid queries are ignored.
+     * @param corpus representative queries
+     * @return number of queries that were parsed without errors
+     */
+    public int warmUp(Iterable<String> corpus) {
+        int parsed = 0;
+        for (String str : corpus) {
+            try {
+                queryTreeCompiler.compile(str);
+                parsed++;
+            } catch (RuntimeException e) {
+                //invalid queries also fill the caches
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Checks if an input string is a valid query without throwing an exception.
+     * The input is compiled to a query tree (using the tree cache), but not to the target class.
+     * Creators that reject terms or operators are not called, use {@link #tryCompile(String)} to check them.
+     * @param str input string
+     * @return result with the query tree or the error
+     */
+    public QueryCompileResult<T> validate(String str) {
+        try {
+            return QueryCompileResult.valid(compileTree(str), null);
+        } catch (QueryCompilerException e) {
+            return QueryCompileResult.invalid(toError(e));
+        }
+    }
+
+    /**
+     * Compiles an input string to the target class without throwing an exception for invalid input.
+     * Syntax errors contain the position, the offending text and the expected tokens ({@link QueryError}).
+     * If the query is found in the query cache, the input is not parsed and the tree of the result
+     * is compiled when it is requested.
+     * @param str input string
+     * @return result with the query or the error
+     */
+    public QueryCompileResult<T> tryCompile(String str) {
+        try {
+            if (queryCache == null) {
+                QueryTree tree = compileTree(str);
+                return QueryCompileResult.valid(tree, compile(tree));
+            }
+            QueryTree[] compiled = new QueryTree[1];
+            T query = queryCache.get(str, s -> compile(compiled[0] = compileTree(s)));
+            if (compiled[0] != null) {
+                return QueryCompileResult.valid(compiled[0], query);
+            }
+            return QueryCompileResult.valid(() -> compileTree(str), query);
+        } catch (QueryCompilerException e) {
+            return QueryCompileResult.invalid(toError(e));
+        }
+    }
+
+    private static QueryError toError(QueryCompilerException e) {
+        return e.getError() != null ? e.getError() : QueryError.invalidInput(e.getMessage());
+    }
+
+    /**
+     * Creates a session for a query that is edited step by step (e.g. typeahead filtering).
+     * Edits only parse the changed part of the query again, see {@link QueryEditSession}.
+     * @return new edit session
+     */
+    public QueryEditSession<T> createEditSession() {
+        return new QueryEditSession<>(this);
+    }
+
+    /**
+     * Parses and optimizes an input string without using the tree cache. If a tree store is used,
+     * stored trees are decoded and new trees are added.
+     * @param str input string
+     * @return query tree
+     */
+    private QueryTree parseTree(String str) {
+        if (treeStore != null) {
+            QueryTree stored = treeStore.get(str, context);
+            if (stored != null) {
+                return intern(stored);
+            }
+        }
         QueryTree tree = queryTreeCompiler.compile(str);
         optimize(tree);
-        return tree;
+        if (treeStore != null) {
+            store(str, tree);
+        }
+        return intern(tree);
+    }
+
+    /**
+     * Adds an optimized tree to the tree store. The compilation does not fail if the store cannot grow.
+     * @param str input string
+     * @param tree optimized tree
+     */
+    private void store(String str, QueryTree tree) {
+        try {
+            treeStore.put(str, tree);
+        } catch (IOException | IllegalStateException e) {
+            //the tree is compiled again after the next restart
+        }
     }
 
 
@@ -111,15 +418,17 @@ public class QueryCompiler<T extends Query> {
      * @return object of target class
      */
     public T compile(QueryTree tree) {
-        return compileTreeRec(tree.getRoot());
+        return new QueryTreeWalker().fold(tree.getRoot(),
+                n -> CompilerUtil.createArray(context.getCl(), n), this::compileNode);
     }
 
     /**
-     * Recursive function for converting query trees to target objects
+     * Converts a node to the target object. The children of the node are already converted.
      * @param node current node
+     * @param terms target objects of the children
      * @return target object
      */
-    private T compileTreeRec(QueryNode node) {
+    private T compileNode(QueryNode node, T[] terms) {
         if(node.getChildren().isEmpty() && node.getTerm() == null){
             if(context.getEmptyCreator() == null){
                 throw new QueryCompilerException("no empty creator defined");
@@ -136,14 +445,6 @@ public class QueryCompiler<T extends Query> {
             return t;
         }
 
-        //Create array for results of child terms
-        T[] terms = CompilerUtil.createArray(context.getCl(), node.getChildren().size());
-
-        //recursive calculation of child terms
-        for (int i = 0; i < node.getChildren().size(); i++) {
-            terms[i] = compileTreeRec(node.getChildren().get(i));
-        }
-
         //Create new term using child terms and logical operation
         LogicCreator<T> logicCreator = context.getLogicCreator(node.getOperator());
         T t = logicCreator.create(node, terms);
@@ -183,4 +484,14 @@ public class QueryCompiler<T extends Query> {
             optimization.apply(tree);
         }
     }
+
+    /**
+     * Shares structurally equal subtrees of an optimized tree if subtree interning is enabled.
+     * Optimizations change nodes in place, so interning is the last step.
+     * @param tree optimized tree
+     * @return tree with shared subtrees
+     */
+    private QueryTree intern(QueryTree tree) {
+        return subtreeInterning ? new QueryNodeInterner().intern(tree) : tree;
+    }
 }
@@ -28,14 +28,24 @@ import de.alexgruen.query.DefaultCreator;
 import de.alexgruen.query.LogicalOperator;
 import de.alexgruen.query.LogicalOperators;
 import de.alexgruen.query.Query;
+import de.alexgruen.query.QueryNodeInterner;
+import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.compiler.cache.QueryCache;
+import de.alexgruen.query.compiler.cache.QueryTreeStore;
+import de.alexgruen.query.compiler.engine.ParserEngineFactory;
+import de.alexgruen.query.compiler.engine.ParserEngines;
 import de.alexgruen.query.creator.LogicCreator;
 import de.alexgruen.query.creator.OperatorCreatorMap;
 import de.alexgruen.query.creator.TermCreator;
 import de.alexgruen.query.optimization.QueryOptimization;
 import de.alexgruen.query.optimization.RemoveRedundantBrackets;
+import de.alexgruen.query.term.FieldTable;
 import de.alexgruen.query.term.TermOperator;
 import de.alexgruen.query.term.TermOperators;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -45,6 +55,15 @@ public class QueryCompilerBuilder<T extends Query> {
     private Class<T> cl;
     private List<QueryOptimization> optimizations = new ArrayList<>();
     private TermCreator<T> emptyCreator;
+    private QueryCache<QueryTree> treeCache;
+    private QueryCache<T> queryCache;
+    private ParserEngineFactory parserEngineFactory = ParserEngines.ANTLR;
+    private ComplexityLimits complexityLimits = ComplexityLimits.UNLIMITED;
+    private boolean subtreeInterning;
+    private FieldTable fieldTable;
+    private Path treeStoreFile;
+    private int treeStoreMaxSize = QueryTreeStore.DEFAULT_MAX_SIZE;
+    private int treeStoreMaxEntries = QueryTreeStore.DEFAULT_MAX_ENTRIES;
 
     private QueryCompilerBuilder(Class<T> cl) {
         this.cl = cl;
@@ -97,6 +116,8 @@ public class QueryCompilerBuilder<T extends Query> {
         withTermCreator(TermOperators.GE, dc::ge);
         withTermCreator(TermOperators.REGEX, dc::regex);
         withTermCreator(TermOperators.TEXT, dc::text);
+        withTermCreator(TermOperators.IN, (n, f, v) -> dc.in(n, f, v.getValueSet()));
+        withTermCreator(TermOperators.NOT_IN, (n, f, v) -> dc.notIn(n, f, v.getValueSet()));
         withTermCreator(TermOperators.FULL_TEXT, (n, f, v) -> dc.fullSearch(v));
         withEmptyCreator((n, f, v) -> dc.empty());
         return this;
@@ -115,6 +136,107 @@ public class QueryCompilerBuilder<T extends Query> {
         return this;
     }
 
+    /**
+     * Sets the {@link de.alexgruen.query.compiler.engine.QueryParserEngine} used to parse input strings.
+     * The default engine is {@link ParserEngines#ANTLR}.
+     *
+     * @param parserEngineFactory parser engine factory (see {@link ParserEngines})
+     * @return <tt>self</tt> for method chaining
+     */
+    public QueryCompilerBuilder<T> withParserEngine(ParserEngineFactory parserEngineFactory) {
+        this.parserEngineFactory = parserEngineFactory;
+        return this;
+    }
+
+    /**
+     * Uses a {@link QueryCache} to cache optimized {@link QueryTree}s by their input string.
+     * Cached trees are shared between all callers and must not be modified.
+     *
+     * @param treeCache query tree cache
+     * @return <tt>self</tt> for method chaining
+     */
+    public QueryCompilerBuilder<T> withTreeCache(QueryCache<QueryTree> treeCache) {
+        this.treeCache = treeCache;
+        return this;
+    }
+
+    /**
+     * Uses a {@link QueryCache} to cache compiled queries by their input string.
+     * Cached queries are shared between all callers and must not be modified.
+     *
+     * @param queryCache query cache
+     * @return <tt>self</tt> for method chaining
+     */
+    public QueryCompilerBuilder<T> withQueryCache(QueryCache<T> queryCache) {
+        this.queryCache = queryCache;
+        return this;
+    }
+
+    /**
+     * Sets the limits for the size and complexity of compiled queries.
+     * Inputs that exceed a limit are rejected while they are parsed.
+     *
+     * @param complexityLimits complexity limits
+     * @return <tt>self</tt> for method chaining
+     */
+    public QueryCompilerBuilder<T> withComplexityLimits(ComplexityLimits complexityLimits) {
+        this.complexityLimits = complexityLimits;
+        return this;
+    }
+
+    /**
+     * Sets the table of canonical fields. By default each compiler creates its own table.
+     * Fields that are added to the table before it is used keep their ids in all compilations.
+     *
+     * @param fieldTable field table
+     * @return <tt>self</tt> for method chaining
+     */
+    public QueryCompilerBuilder<T> withFieldTable(FieldTable fieldTable) {
+        this.fieldTable = fieldTable;
+        return this;
+    }
+
+    /**
+     * Stores optimized {@link QueryTree}s in a memory-mapped file ({@link QueryTreeStore}), so they are decoded
+     * instead of compiled after a restart. The file is opened by {@link #build()} and cleared if it was written
+     * with another configuration. The store has to be closed with {@link QueryCompiler#getTreeStore()}.
+     *
+     * @param file store file
+     * @return <tt>self</tt> for method chaining
+     */
+    public QueryCompilerBuilder<T> withTreeStore(Path file) {
+        return withTreeStore(file, QueryTreeStore.DEFAULT_MAX_SIZE, QueryTreeStore.DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Stores optimized {@link QueryTree}s in a memory-mapped file with a maximum size and number of trees,
+     * see {@link #withTreeStore(Path)}
+     *
+     * @param file store file
+     * @param maxSize maximum size of the file in bytes
+     * @param maxEntries maximum number of stored trees
+     * @return <tt>self</tt> for method chaining
+     */
+    public QueryCompilerBuilder<T> withTreeStore(Path file, int maxSize, int maxEntries) {
+        this.treeStoreFile = file;
+        this.treeStoreMaxSize = maxSize;
+        this.treeStoreMaxEntries = maxEntries;
+        return this;
+    }
+
+    /**
+     * Shares structurally equal subtrees, terms, fields and values of compiled trees ({@link QueryNodeInterner}).
+     * Repeated sub queries then cost one object graph and can be detected with an identity check.
+     * Interned trees must not be modified. Trees of edit sessions ({@link QueryEditSession}) are not interned.
+     *
+     * @param subtreeInterning true to intern subtrees
+     * @return <tt>self</tt> for method chaining
+     */
+    public QueryCompilerBuilder<T> withSubtreeInterning(boolean subtreeInterning) {
+        this.subtreeInterning = subtreeInterning;
+        return this;
+    }
+
     /**
      * Adds an {@link TermCreator} that is used to create 'empty' terms (match all)
      *
@@ -198,19 +320,58 @@ public class QueryCompilerBuilder<T extends Query> {
      *
      * @return query context
      */
-    private QueryContext<T> createContext() {
+    QueryContext<T> createContext() {
         return new QueryContext<T>(
-                termCreators, logicCreators, emptyCreator, cl
+                termCreators, logicCreators, emptyCreator, cl, complexityLimits,
+                fieldTable != null ? fieldTable : new FieldTable()
         );
     }
 
+    /**
+     * Opens the tree store for a context of the resulting compiler
+     *
+     * @param context query context
+     * @return tree store or null if no store is used
+     */
+    QueryTreeStore openTreeStore(QueryContext<T> context) {
+        if (treeStoreFile == null) {
+            return null;
+        }
+        try {
+            return QueryTreeStore.open(treeStoreFile, QueryTreeStore.fingerprint(context, optimizations),
+                    treeStoreMaxSize, treeStoreMaxEntries);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    List<QueryOptimization> getOptimizations() {
+        return optimizations;
+    }
+
+    ParserEngineFactory getParserEngineFactory() {
+        return parserEngineFactory;
+    }
+
+    QueryCache<QueryTree> getTreeCache() {
+        return treeCache;
+    }
+
+    QueryCache<T> getQueryCache() {
+        return queryCache;
+    }
+
+    boolean isSubtreeInterning() {
+        return subtreeInterning;
+    }
+
     /**
      * Creates a compiler using all variables set in the builder
      *
      * @return query compiler
      */
     public QueryCompiler<T> build() {
-        return new QueryCompiler<>(createContext(), optimizations);
+        return new QueryCompiler<>(this);
     }
 
 }
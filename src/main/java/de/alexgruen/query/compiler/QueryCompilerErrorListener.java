@@ -25,8 +25,20 @@
 package de.alexgruen.query.compiler;
 
 import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.LexerNoViableAltException;
+import org.antlr.v4.runtime.NoViableAltException;
+import org.antlr.v4.runtime.Parser;
 import org.antlr.v4.runtime.RecognitionException;
 import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.Vocabulary;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.IntervalSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
 
 
 /**
@@ -34,7 +46,10 @@ import org.antlr.v4.runtime.Recognizer;
  */
 public class QueryCompilerErrorListener extends BaseErrorListener {
     //Query String that lead to an error
-    private String queryString;
+    private CharSequence queryString;
+
+    public QueryCompilerErrorListener() {
+    }
 
     public QueryCompilerErrorListener(String queryString) {
         this.queryString = queryString;
@@ -42,7 +57,7 @@ public class QueryCompilerErrorListener extends BaseErrorListener {
 
     /**
      * Listener method that gets evoked if an error occurs during query compilation.
-     * This method throws {@link QueryCompilerException} if called by the compiler
+     * This method throws {@link QueryCompilerException} with a {@link QueryError} if called by the compiler
      * @param recognizer recognizer
      * @param offendingSymbol offending symbol
      * @param line line in input string
@@ -52,7 +67,53 @@ public class QueryCompilerErrorListener extends BaseErrorListener {
      */
     @Override
     public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
-        throw new QueryCompilerException(String.format("syntax error (%s : %s) line:%s, pos:%s ", msg, queryString, line, charPositionInLine));
+        QueryError.Type type;
+        int offset = -1;
+        String offendingText = null;
+        Supplier<List<String>> expected = null;
+        if (recognizer instanceof Lexer) {
+            type = QueryError.Type.TOKEN_RECOGNITION;
+            if (e instanceof LexerNoViableAltException) {
+                offset = ((LexerNoViableAltException) e).getStartIndex();
+                offendingText = ((Lexer) recognizer).getInputStream().getText(Interval.of(offset, e.getInputStream().index()));
+            }
+        } else {
+            if (e instanceof NoViableAltException) {
+                type = QueryError.Type.NO_VIABLE_ALTERNATIVE;
+            } else if (e != null) {
+                type = QueryError.Type.MISMATCHED_INPUT;
+            } else {
+                //reported by single token insertion or deletion
+                type = msg.startsWith("missing") ? QueryError.Type.MISSING_TOKEN : QueryError.Type.EXTRANEOUS_INPUT;
+            }
+            if (offendingSymbol instanceof Token) {
+                offset = ((Token) offendingSymbol).getStartIndex();
+                offendingText = ((Token) offendingSymbol).getText();
+            }
+            if (recognizer instanceof Parser) {
+                Vocabulary vocabulary = recognizer.getVocabulary();
+                if (e != null) {
+                    //the exception keeps the parser state of the error, expected tokens are computed on request
+                    expected = () -> tokenNames(e.getExpectedTokens(), vocabulary);
+                } else {
+                    IntervalSet tokens = ((Parser) recognizer).getExpectedTokens();
+                    expected = () -> tokenNames(tokens, vocabulary);
+                }
+            }
+        }
+        throw new QueryCompilerException(QueryError.syntaxError(type, msg, queryString, offset, line, charPositionInLine,
+                offendingText, expected));
+    }
+
+    private static List<String> tokenNames(IntervalSet tokens, Vocabulary vocabulary) {
+        if (tokens == null) {
+            return null;
+        }
+        List<String> names = new ArrayList<>(tokens.size());
+        for (int token : tokens.toArray()) {
+            names.add(token == Token.EOF ? "<EOF>" : vocabulary.getDisplayName(token));
+        }
+        return names;
     }
 
     /**
@@ -60,6 +121,15 @@ public class QueryCompilerErrorListener extends BaseErrorListener {
      * @return
      */
     public String getQueryString() {
-        return queryString;
+        return queryString == null ? null : queryString.toString();
+    }
+
+    /**
+     * Sets the query string that is reported in errors. Used if the listener is reused for several inputs.
+     * The characters are only converted to a string if an error occurs.
+     * @param queryString query string
+     */
+    public void setQueryString(CharSequence queryString) {
+        this.queryString = queryString;
     }
 }
@@ -31,11 +31,39 @@ package de.alexgruen.query.compiler;
  */
 
 public class QueryCompilerException extends RuntimeException {
+    private final QueryError error;
+
     public QueryCompilerException(String message) {
         super(message);
+        this.error = null;
     }
 
     public QueryCompilerException(String message, Throwable throwable) {
         super(message, throwable);
+        this.error = null;
+    }
+
+    /**
+     * Creates an exception for an invalid input.
+     * The stack trace is not captured and the message is only formatted if it is requested,
+     * rejecting invalid input is cheap.
+     * @param error error
+     */
+    public QueryCompilerException(QueryError error) {
+        super(null, null, false, false);
+        this.error = error;
+    }
+
+    /**
+     * Returns the error of an invalid input or null if the exception has another cause
+     * @return error or null
+     */
+    public QueryError getError() {
+        return error;
+    }
+
+    @Override
+    public String getMessage() {
+        return error != null ? error.getMessage() : super.getMessage();
     }
 }
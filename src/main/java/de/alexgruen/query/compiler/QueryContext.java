@@ -29,9 +29,15 @@ import de.alexgruen.query.Query;
 import de.alexgruen.query.creator.LogicCreator;
 import de.alexgruen.query.creator.OperatorCreatorMap;
 import de.alexgruen.query.creator.TermCreator;
+import de.alexgruen.query.term.FieldTable;
 import de.alexgruen.query.term.TermOperator;
+import de.alexgruen.query.term.TermOperators;
+import de.alexgruen.query.util.KeywordTable;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Contains all creators an information required by the query compiler
@@ -42,15 +48,55 @@ public class QueryContext<T extends Query> {
     private OperatorCreatorMap<LogicalOperator, LogicCreator<T>> logicCreators;
     private TermCreator<T> emptyCreator;
     private Class<T> cl;
+    private ComplexityLimits complexityLimits;
+    private FieldTable fieldTable;
+    private volatile Set<String> customTermOperatorAliases;
+    private volatile KeywordTable customTermOperatorTable;
 
     protected QueryContext(OperatorCreatorMap<TermOperator, TermCreator<T>> termCreators,
                            OperatorCreatorMap<LogicalOperator, LogicCreator<T>> logicCreators,
                            TermCreator<T> emptyCreator,
                            Class<T> cl) {
+        this(termCreators, logicCreators, emptyCreator, cl, ComplexityLimits.UNLIMITED);
+    }
+
+    protected QueryContext(OperatorCreatorMap<TermOperator, TermCreator<T>> termCreators,
+                           OperatorCreatorMap<LogicalOperator, LogicCreator<T>> logicCreators,
+                           TermCreator<T> emptyCreator,
+                           Class<T> cl,
+                           ComplexityLimits complexityLimits) {
+        this(termCreators, logicCreators, emptyCreator, cl, complexityLimits, new FieldTable());
+    }
+
+    protected QueryContext(OperatorCreatorMap<TermOperator, TermCreator<T>> termCreators,
+                           OperatorCreatorMap<LogicalOperator, LogicCreator<T>> logicCreators,
+                           TermCreator<T> emptyCreator,
+                           Class<T> cl,
+                           ComplexityLimits complexityLimits,
+                           FieldTable fieldTable) {
         this.emptyCreator = emptyCreator;
         this.termCreators = termCreators;
         this.logicCreators = logicCreators;
         this.cl = cl;
+        this.complexityLimits = complexityLimits;
+        this.fieldTable = fieldTable;
+    }
+
+    /**
+     * Returns the limits for the size and complexity of compiled queries
+     * @return complexity limits
+     */
+    public ComplexityLimits getComplexityLimits() {
+        return complexityLimits;
+    }
+
+    /**
+     * Returns the table of canonical fields that is used for all compilations.
+     * Creators can use the field ids ({@link de.alexgruen.query.term.Field#getId()}) as array indices.
+     * @return field table
+     */
+    public FieldTable getFieldTable() {
+        return fieldTable;
     }
 
     /**
@@ -99,6 +145,49 @@ public class QueryContext<T extends Query> {
         return termCreators.getAllAliases();
     }
 
+    /**
+     * Return all names and aliases of available {@link LogicalOperator}
+     * @return list of names and aliases
+     */
+    public List<String> getAllLogicalOperatorAliases(){
+        return logicCreators.getAllAliases();
+    }
+
+    /**
+     * Returns all names and aliases of available {@link TermOperator} that are not default aliases
+     * (see {@link TermOperators#isDefaultAlias(String)}).
+     * The set is computed once and shared by all compilations using this context.
+     * @return unmodifiable set of custom names and aliases
+     */
+    public Set<String> getCustomTermOperatorAliases() {
+        Set<String> aliases = customTermOperatorAliases;
+        if (aliases == null) {
+            Set<String> operators = new HashSet<>();
+            for (String a : getAllTermOperatorAliases()) {
+                if (!TermOperators.isDefaultAlias(a)) {
+                    operators.add(a);
+                }
+            }
+            aliases = Collections.unmodifiableSet(operators);
+            customTermOperatorAliases = aliases;
+        }
+        return aliases;
+    }
+
+    /**
+     * Returns a {@link KeywordTable} with all custom names and aliases of {@link TermOperator}
+     * (see {@link #getCustomTermOperatorAliases()}). The lexers use the table to recognize custom operators.
+     * @return keyword table
+     */
+    public KeywordTable getCustomTermOperatorTable() {
+        KeywordTable table = customTermOperatorTable;
+        if (table == null) {
+            table = KeywordTable.of(getCustomTermOperatorAliases());
+            customTermOperatorTable = table;
+        }
+        return table;
+    }
+
     /**
      * Returns the {@link TermCreator} assigned for empty terms (match all)
      * @return term creator
@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler;
+
+import de.alexgruen.query.Query;
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.QueryTreeWalker;
+import de.alexgruen.query.compiler.engine.IncrementalParseSession;
+import de.alexgruen.query.optimization.QueryOptimization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiles a query that is edited step by step, e.g. in a typeahead filter box.
+ * <p>
+ * The session keeps the text and the tokens and nodes of the last parse ({@link IncrementalParseSession}),
+ * an edit only tokenizes and parses the changed part of the query again.
+ * If the compiler has optimizations, they are applied to a copy of the nodes,
+ * otherwise the returned trees share their nodes with the session and must not be modified.
+ * Caches of the compiler are not used. A session is not thread-safe.
+ * @param <T> target class
+ */
+public class QueryEditSession<T extends Query> {
+    private final QueryCompiler<T> compiler;
+    private final IncrementalParseSession session;
+
+    QueryEditSession(QueryCompiler<T> compiler) {
+        this.compiler = compiler;
+        this.session = new IncrementalParseSession(compiler.getContext());
+    }
+
+    /**
+     * Replaces the whole text and compiles it to a query tree
+     * @param text new text
+     * @return query tree
+     */
+    public QueryTree setText(CharSequence text) {
+        return createTree(session.setText(text));
+    }
+
+    /**
+     * Applies an edit to the text and compiles the result to a query tree.
+     * If the edited text is not a valid query, a {@link QueryCompilerException} is thrown
+     * and the session can still be edited.
+     * @param offset start of the edit
+     * @param removed number of removed characters
+     * @param inserted inserted characters
+     * @return query tree
+     */
+    public QueryTree edit(int offset, int removed, CharSequence inserted) {
+        return createTree(session.edit(offset, removed, inserted));
+    }
+
+    /**
+     * Compiles the current text to the target class
+     * @return query
+     */
+    public T compile() {
+        QueryNode root = session.getRoot();
+        if (root == null) {
+            throw new QueryCompilerException(String.format("query is not valid: %s", session.getText()));
+        }
+        return compiler.compile(createTree(root));
+    }
+
+    /**
+     * Returns the current text
+     * @return text
+     */
+    public String getText() {
+        return session.getText();
+    }
+
+    /**
+     * Returns the underlying parse session, e.g. for statistics about reused tokens and nodes
+     * @return parse session
+     */
+    public IncrementalParseSession getParseSession() {
+        return session;
+    }
+
+    private QueryTree createTree(QueryNode root) {
+        List<QueryOptimization> optimizations = compiler.getOptimizations();
+        if (optimizations.isEmpty()) {
+            return new QueryTree(root);
+        }
+        QueryTree tree = new QueryTree(copy(root));
+        for (QueryOptimization optimization : optimizations) {
+            optimization.apply(tree);
+        }
+        return tree;
+    }
+
+    /**
+     * Copies the nodes of a tree, terms are shared
+     */
+    private static QueryNode copy(QueryNode root) {
+        return new QueryTreeWalker().fold(root, QueryNode[]::new, (node, children) -> {
+            if (children.length == 0 && node.getTerm() != null) {
+                //leaves keep the shared empty child list
+                QueryNode leaf = new QueryNode(node.getTerm());
+                leaf.setNegate(node.isNegate());
+                leaf.setOperator(node.getOperator());
+                return leaf;
+            }
+            return new QueryNode(node.isNegate(), node.getOperator(), node.getTerm(), new ArrayList<>(Arrays.asList(children)));
+        });
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Describes why an input could not be compiled.
+ * <p>
+ * Syntax errors contain the position of the offending token, its text and the tokens that were expected instead.
+ * Errors in valid syntax (e.g. a value that can not be parsed or an operator that is not allowed)
+ * are of type {@link Type#INVALID_INPUT} and usually have no position.
+ * Descriptions and messages are only formatted if they are requested.
+ */
+public class QueryError {
+
+    /**
+     * Kind of an error
+     */
+    public enum Type {
+        /**
+         * no token matches the input
+         */
+        TOKEN_RECOGNITION,
+        /**
+         * a token does not match the expected tokens
+         */
+        MISMATCHED_INPUT,
+        /**
+         * a token was found after a complete query
+         */
+        EXTRANEOUS_INPUT,
+        /**
+         * an expected token is missing
+         */
+        MISSING_TOKEN,
+        /**
+         * no rule of the grammar matches the input
+         */
+        NO_VIABLE_ALTERNATIVE,
+        /**
+         * the syntax is valid, but a value, operator or field is not
+         */
+        INVALID_INPUT,
+        /**
+         * the input exceeds a {@link ComplexityLimits limit}
+         */
+        LIMIT_EXCEEDED
+    }
+
+    private final Type type;
+    private final String input;
+    private final int offset;
+    private final int line;
+    private final int column;
+    private final String offendingText;
+    private List<String> expected;
+    private Supplier<List<String>> expectedSupplier;
+    private final String format;
+    private final Object[] args;
+    private String description;
+
+    /**
+     * Creates a syntax error
+     * @param type error type
+     * @param input query input (the part that was parsed)
+     * @param offset index of the offending text in the input
+     * @param line line of the offending text (starting at 1)
+     * @param column position of the offending text in its line (starting at 0)
+     * @param offendingText offending token or character
+     * @param expected names of the expected tokens
+     */
+    public QueryError(Type type, CharSequence input, int offset, int line, int column, String offendingText, List<String> expected) {
+        this(type, input, offset, line, column, offendingText, expected, null, null);
+    }
+
+    private QueryError(Type type, CharSequence input, int offset, int line, int column, String offendingText,
+                       Supplier<List<String>> expected, String format) {
+        this(type, input, offset, line, column, offendingText, null, format, null);
+        this.expectedSupplier = expected;
+    }
+
+    private QueryError(Type type, CharSequence input, int offset, int line, int column, String offendingText,
+                       List<String> expected, String format, Object[] args) {
+        this.type = type;
+        this.input = input == null ? null : input.toString();
+        this.offset = offset;
+        this.line = line;
+        this.column = column;
+        this.offendingText = offendingText;
+        this.expected = expected == null ? Collections.<String>emptyList() : expected;
+        this.format = format;
+        this.args = args;
+    }
+
+    /**
+     * Creates a syntax error with a given description (e.g. a message of the ANTLR parser).
+     * The expected tokens are only computed if they are requested.
+     * @param type error type
+     * @param description description
+     * @param input query input (the part that was parsed)
+     * @param offset index of the offending text in the input
+     * @param line line of the offending text (starting at 1)
+     * @param column position of the offending text in its line (starting at 0)
+     * @param offendingText offending token or character
+     * @param expected computes the names of the expected tokens
+     * @return error
+     */
+    public static QueryError syntaxError(Type type, String description, CharSequence input, int offset, int line, int column,
+                                         String offendingText, Supplier<List<String>> expected) {
+        return new QueryError(type, input, offset, line, column, offendingText, expected, description);
+    }
+
+    /**
+     * Creates an error for an input with valid syntax. The description is formatted ({@link String#format(String, Object...)})
+     * if it is requested.
+     * @param format description format
+     * @param args format arguments
+     * @return error
+     */
+    public static QueryError invalidInput(String format, Object... args) {
+        return new QueryError(Type.INVALID_INPUT, null, -1, -1, -1, null, null, format, args);
+    }
+
+    /**
+     * Creates an error for an input that exceeds a {@link ComplexityLimits limit}.
+     * The description is formatted if it is requested.
+     * @param offset position in the input at which the limit was exceeded or -1
+     * @param format description format
+     * @param args format arguments
+     * @return error
+     */
+    public static QueryError limitExceeded(int offset, String format, Object... args) {
+        return new QueryError(Type.LIMIT_EXCEEDED, null, offset, -1, -1, null, null, format, args);
+    }
+
+    /**
+     * Returns a copy of this error with a position that is moved by a number of characters,
+     * e.g. if leading whitespace was removed before parsing. The column is moved if the error is in the first line.
+     * @param shift number of characters
+     * @return moved error
+     */
+    public QueryError shift(int shift) {
+        if (offset < 0 || shift == 0) {
+            return this;
+        }
+        QueryError error = new QueryError(type, input, offset + shift, line, line == 1 ? column + shift : column,
+                offendingText, expected, format, args);
+        error.expectedSupplier = expectedSupplier;
+        error.description = description;
+        return error;
+    }
+
+    /**
+     * Returns the type of this error
+     * @return type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns true for syntax errors, false for invalid values or operators and exceeded limits
+     * @return true for syntax errors
+     */
+    public boolean isSyntaxError() {
+        return type != Type.INVALID_INPUT && type != Type.LIMIT_EXCEEDED;
+    }
+
+    /**
+     * Returns the index of the offending text in the input or -1 if the position is unknown
+     * @return offset or -1
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the line of the offending text (starting at 1) or -1 if the position is unknown
+     * @return line or -1
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Returns the position of the offending text in its line (starting at 0) or -1 if the position is unknown
+     * @return column or -1
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Returns the offending token or character or null
+     * @return offending text or null
+     */
+    public String getOffendingText() {
+        return offendingText;
+    }
+
+    /**
+     * Returns the names of the tokens that were expected instead of the offending text
+     * @return expected tokens, empty if not known
+     */
+    public List<String> getExpected() {
+        if (expectedSupplier != null) {
+            List<String> tokens = expectedSupplier.get();
+            expected = tokens == null ? Collections.emptyList() : tokens;
+            expectedSupplier = null;
+        }
+        return expected;
+    }
+
+    /**
+     * Returns the parsed input or null
+     * @return input or null
+     */
+    public String getInput() {
+        return input;
+    }
+
+    /**
+     * Returns a short description of the error (e.g. "mismatched input ')' expecting VAR")
+     * @return description
+     */
+    public String getDescription() {
+        if (description == null) {
+            description = format != null ? (args == null || args.length == 0 ? format : String.format(format, args)) : describe();
+        }
+        return description;
+    }
+
+    private String describe() {
+        switch (type) {
+            case TOKEN_RECOGNITION:
+                return "token recognition error at: '" + offendingText + "'";
+            case MISMATCHED_INPUT:
+                return "mismatched input '" + offendingText + "' expecting " + expectedString();
+            case EXTRANEOUS_INPUT:
+                return "extraneous input '" + offendingText + "' expecting " + expectedString();
+            case MISSING_TOKEN:
+                return "missing " + expectedString() + " at '" + offendingText + "'";
+            case NO_VIABLE_ALTERNATIVE:
+                return "no viable alternative at input '" + offendingText + "'";
+            default:
+                return "invalid input";
+        }
+    }
+
+    private String expectedString() {
+        List<String> tokens = getExpected();
+        if (tokens.size() == 1) {
+            return tokens.get(0);
+        }
+        return "{" + String.join(", ", tokens) + "}";
+    }
+
+    /**
+     * Returns the message of the {@link QueryCompilerException} for this error
+     * @return message
+     */
+    public String getMessage() {
+        if (!isSyntaxError()) {
+            return getDescription();
+        }
+        return "syntax error (" + getDescription() + " : " + input + ") line:" + line + ", pos:" + column + " ";
+    }
+
+    @Override
+    public String toString() {
+        return getMessage();
+    }
+}
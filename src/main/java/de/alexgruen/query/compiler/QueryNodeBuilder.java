@@ -0,0 +1,275 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler;
+
+import de.alexgruen.query.LogicalOperator;
+import de.alexgruen.query.LogicalOperators;
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.generated.QueryParser;
+import de.alexgruen.query.term.Field;
+import de.alexgruen.query.term.FieldTable;
+import de.alexgruen.query.term.Term;
+import de.alexgruen.query.term.TermOperator;
+import de.alexgruen.query.term.TermOperators;
+import de.alexgruen.query.term.Value;
+import de.alexgruen.query.term.ValueSet;
+import de.alexgruen.query.util.CompilerUtil;
+import de.alexgruen.query.util.ValueSetParser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts the parse tree of the generated parser to query nodes in a single pass.
+ * <p>
+ * Consecutive AND or OR operations of the same precedence level are joined in one n-ary node
+ * (a &amp;&amp; b &amp;&amp; c is converted to AND(a, b, c)), other logical operators create binary nodes.
+ * Bracketed sub queries are not merged into their parent.
+ * The builder holds no state besides the context and can be reused for several parse trees.
+ */
+public class QueryNodeBuilder {
+
+    private final QueryContext<?> context;
+
+    public QueryNodeBuilder(QueryContext<?> context) {
+        this.context = context;
+    }
+
+    /**
+     * Converts the root compilation context to the root query node
+     * @param ctx root context
+     * @return root node
+     */
+    public QueryNode build(QueryParser.CompilationUnitContext ctx) {
+        ParseTree first = ctx.getChild(0);
+        if (first instanceof QueryParser.QueryContext) {
+            return query((QueryParser.QueryContext) first);
+        }
+        if (first instanceof QueryParser.Full_searchContext) {
+            return fullSearch((QueryParser.Full_searchContext) first);
+        }
+        throw new QueryCompilerException(QueryError.invalidInput("no valid query found"));
+    }
+
+    /**
+     * Converts a query context (OR level) to a query node
+     * @param ctx query context
+     * @return query node
+     */
+    public QueryNode query(QueryParser.QueryContext ctx) {
+        QueryNode node = null;
+        QueryNode chain = null;
+        LogicalOperator operator = null;
+        //children alternate between and_query contexts and OR_OPERATOR tokens
+        for (ParseTree child : ctx.children) {
+            if (child instanceof TerminalNode) {
+                operator = context.getLogicalOperator(child.getText());
+                continue;
+            }
+            QueryNode right = andQuery((QueryParser.And_queryContext) child);
+            if (node == null) {
+                node = right;
+                continue;
+            }
+            chain = CompilerUtil.joinChain(node, chain, operator, right);
+            node = chain;
+        }
+        return node;
+    }
+
+    /**
+     * Converts an and query context (AND level) to a query node
+     * @param ctx and query context
+     * @return query node
+     */
+    private QueryNode andQuery(QueryParser.And_queryContext ctx) {
+        QueryNode node = null;
+        QueryNode chain = null;
+        LogicalOperator operator = null;
+        //children alternate between unary_query contexts and AND_OPERATOR tokens
+        for (ParseTree child : ctx.children) {
+            if (child instanceof TerminalNode) {
+                operator = context.getLogicalOperator(child.getText());
+                continue;
+            }
+            QueryNode right = unaryQuery((QueryParser.Unary_queryContext) child);
+            if (node == null) {
+                node = right;
+                continue;
+            }
+            chain = CompilerUtil.joinChain(node, chain, operator, right);
+            node = chain;
+        }
+        return node;
+    }
+
+    /**
+     * Converts a term or a (negated) query in brackets to a query node
+     * @param ctx unary query context
+     * @return query node
+     */
+    private QueryNode unaryQuery(QueryParser.Unary_queryContext ctx) {
+        QueryParser.TermContext term = ctx.term();
+        if (term != null) {
+            return term(term);
+        }
+        QueryNode node = query(ctx.query());
+        if (ctx.NEGATE() != null) {
+            node.setNegate(true);
+        }
+        return node;
+    }
+
+    /**
+     * Creates a query node from a term context.
+     * Term query nodes represent the leafs in the query tree
+     * @param ctx term context
+     * @return query node
+     */
+    public QueryNode term(QueryParser.TermContext ctx) {
+        QueryParser.Regex_termContext regexTerm = ctx.regex_term();
+        if (regexTerm != null) {
+            return regexTerm(regexTerm, context.getComplexityLimits(), context.getFieldTable());
+        }
+        QueryParser.In_termContext inTerm = ctx.in_term();
+        if (inTerm != null) {
+            return inTerm(inTerm, context.getComplexityLimits(), context.getFieldTable());
+        }
+        Field field = createField(ctx.variable(), context.getFieldTable());
+        String operation = ctx.term_operation().getStart().getText();
+        Value value = createValue(ctx.value());
+        TermOperator termOperator = context.getTermOperator(operation);
+        //set operators require a value list
+        if (termOperator == null || TermOperators.isSetOperator(termOperator)) {
+            throw new QueryCompilerException(QueryError.invalidInput("unsupported filter operation '%s'", operation));
+        }
+        return new QueryNode(new Term(field, termOperator, value));
+    }
+
+    /**
+     * Creates a {@link QueryNode} that represents a regex term.
+     * An exception is thrown if the context can not be converted to a node
+     * @param ctx input regex context
+     * @return query node
+     */
+    public static QueryNode regexTerm(QueryParser.Regex_termContext ctx) {
+        return regexTerm(ctx, ComplexityLimits.UNLIMITED, null);
+    }
+
+    /**
+     * Creates a {@link QueryNode} that represents a regex term with a canonical field of a field table.
+     * The regular expression is checked against the complexity limits before it is compiled.
+     * @param ctx input regex context
+     * @param limits complexity limits
+     * @param fields field table or null to create a new field
+     * @return query node
+     */
+    public static QueryNode regexTerm(QueryParser.Regex_termContext ctx, ComplexityLimits limits, FieldTable fields) {
+        Field field = createField(ctx.variable(), fields);
+        String regex = ctx.REGEX().getText();
+        limits.checkRegex(regex, ctx.REGEX().getSymbol().getStartIndex());
+        Value value = new Value(CompilerUtil.createPattern(regex));
+        return new QueryNode(new Term(field, TermOperators.REGEX, value));
+    }
+
+    /**
+     * Creates a {@link QueryNode} that represents an IN or NOT IN term with a canonical field of a field table.
+     * The value list is parsed from the token text by the {@link ValueSetParser},
+     * parsing stops as soon as it exceeds the maximum value set size.
+     * @param ctx input in term context
+     * @param limits complexity limits
+     * @param fields field table or null to create a new field
+     * @return query node
+     */
+    public static QueryNode inTerm(QueryParser.In_termContext ctx, ComplexityLimits limits, FieldTable fields) {
+        Field field = createField(ctx.variable(), fields);
+        String list = ctx.IN_LIST().getText();
+        TermOperator operator = ValueSetParser.isNegated(list) ? TermOperators.NOT_IN : TermOperators.IN;
+        ValueSet values = ValueSetParser.parse(list, limits.getMaxValueSetSize(), ctx.IN_LIST().getSymbol().getStartIndex());
+        return new QueryNode(new Term(field, operator, new Value(values)));
+    }
+
+    /**
+     * Creates the root query node from a full text search context
+     * A text search query tree only consists of a root node and leafs.
+     * All children are joined using the AND operation.
+     * @param ctx text search context
+     * @return root query node
+     */
+    public static QueryNode fullSearch(QueryParser.Full_searchContext ctx) {
+        List<Value> required = new ArrayList<>();
+        List<Value> forbidden = new ArrayList<>();
+        for (ParseTree child : ctx.children) {
+            QueryParser.Full_search_partContext part = (QueryParser.Full_search_partContext) child;
+            Value value = createValue(part.full_search_value());
+            //the only modifier is NEGATE
+            if (part.full_search_modifier() == null) {
+                required.add(value);
+            } else {
+                forbidden.add(value);
+            }
+        }
+        QueryNode node = new QueryNode();
+        node.setOperator(LogicalOperators.AND);
+        for (Value value : required) {
+            node.addChild(new QueryNode(new Term(Field.ALL_FIELDS, TermOperators.FULL_TEXT, value)));
+        }
+        for (Value value : forbidden) {
+            QueryNode childNode = new QueryNode(new Term(Field.ALL_FIELDS, TermOperators.FULL_TEXT, value));
+            childNode.setNegate(true);
+            node.addChild(childNode);
+        }
+        return node;
+    }
+
+    /**
+     * Returns the canonical field of a variable or creates a new field if no field table is used
+     * @param ctx variable context
+     * @param fields field table or null
+     * @return field
+     */
+    private static Field createField(QueryParser.VariableContext ctx, FieldTable fields) {
+        String text = ctx.getStart().getText();
+        return fields != null ? fields.intern(text) : CompilerUtil.createField(text);
+    }
+
+    /**
+     * Creates a value from a context that consists of a single value token
+     * @param ctx value or full search value context
+     * @return value
+     */
+    private static Value createValue(ParserRuleContext ctx) {
+        Token token = ctx.getStart();
+        int type = token.getType();
+        return CompilerUtil.createValue(token.getText(),
+                type == QueryParser.NULL,
+                type == QueryParser.NUMBER,
+                type == QueryParser.BOOLEAN_VALUE);
+    }
+}
@@ -28,13 +28,13 @@ package de.alexgruen.query.compiler;
 import de.alexgruen.query.Query;
 import de.alexgruen.query.QueryNode;
 import de.alexgruen.query.QueryTree;
-import de.alexgruen.query.generated.QueryLexer;
-import de.alexgruen.query.generated.QueryParser;
-import de.alexgruen.query.term.TermOperators;
-import org.antlr.v4.runtime.CharStream;
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.ConsoleErrorListener;
+import de.alexgruen.query.compiler.engine.ParserEngineFactory;
+import de.alexgruen.query.compiler.engine.ParserEngines;
+import de.alexgruen.query.compiler.engine.QueryParserEngine;
+import de.alexgruen.query.compiler.engine.RecursiveDescentParserEngine;
+import de.alexgruen.query.util.StringUtil;
+
+import java.io.Reader;
 
 /**
  * Created by Alex on 18.05.2017.
@@ -42,9 +42,29 @@ import org.antlr.v4.runtime.ConsoleErrorListener;
 public class QueryTreeCompiler {
 
     private QueryContext<? extends Query> context;
+    private QueryParserEngine parserEngine;
+    private volatile RecursiveDescentParserEngine streamParserEngine;
+
+    public QueryTreeCompiler(QueryContext<? extends Query> context) {
+        this(context, ParserEngines.ANTLR);
+    }
 
-    public QueryTreeCompiler(QueryContext context) {
+    /**
+     * Creates a query tree compiler that uses the parser engine created by a {@link ParserEngineFactory}
+     * @param context query context
+     * @param parserEngineFactory parser engine factory
+     */
+    public QueryTreeCompiler(QueryContext<? extends Query> context, ParserEngineFactory parserEngineFactory) {
         this.context = context;
+        this.parserEngine = context == null ? null : parserEngineFactory.create(context);
+    }
+
+    /**
+     * Returns the {@link QueryParserEngine} used by this compiler
+     * @return parser engine
+     */
+    public QueryParserEngine getParserEngine() {
+        return parserEngine;
     }
 
     /**
@@ -54,37 +74,67 @@ public class QueryTreeCompiler {
      * @return resulting query tree
      */
     public QueryTree compile(String queryString) {
+        return compile((CharSequence) queryString);
+    }
+
+    /**
+     * Compiles input characters into a {@link QueryTree}.
+     * The characters are read in place, only token texts that are part of the tree are materialized.
+     * A {@link QueryCompilerException} is thrown if an error occurs.
+     * @param queryString input characters
+     * @return resulting query tree
+     */
+    public QueryTree compile(CharSequence queryString) {
         if (context == null) {
             throw new RuntimeException("context required");
         }
-       
-        queryString = queryString.trim();
+        context.getComplexityLimits().checkInputLength(queryString.length());
+
+        CharSequence trimmed = StringUtil.trim(queryString);
         //return "empty" query tree if input string is empty
-        if (queryString.isEmpty()) {
+        if (trimmed.length() == 0) {
             return new QueryTree(new QueryNode());
         }
-        QueryCompilerErrorListener errorListener = new QueryCompilerErrorListener(queryString);
-        CharStream stream = CharStreams.fromString(queryString);
-        QueryLexer lexer = new QueryLexer(stream);
-
-        //Don't print errors to stderr
-        lexer.removeErrorListener(ConsoleErrorListener.INSTANCE);
-        lexer.addErrorListener(errorListener);
-        CommonTokenStream tokens = new CommonTokenStream(lexer);
-        QueryParser parser = new QueryParser(tokens);
-
-        //Add all non-default operator names to the parser.
-        for (String a : context.getAllTermOperatorAliases()) {
-            if (!TermOperators.isDefaultAlias(a)) {
-                parser.getCustomOperators().add(a);
+        try {
+            return new QueryTree(parserEngine.parse(trimmed));
+        } catch (QueryCompilerException e) {
+            //error positions refer to the untrimmed input
+            int start = 0;
+            while (queryString.charAt(start) <= ' ') {
+                start++;
+            }
+            if (start > 0 && e.getError() != null) {
+                throw new QueryCompilerException(e.getError().shift(start));
             }
+            throw e;
         }
+    }
 
-        //Don't print errors to stderr
-        parser.removeErrorListener(ConsoleErrorListener.INSTANCE);
-        parser.addErrorListener(errorListener);
-        TermQueryVisitor filterPredicateVisitor = new TermQueryVisitor(context);
-        return new QueryTree(filterPredicateVisitor.visit(parser.compilationUnit()));
+    /**
+     * Compiles a query that is read from a stream into a {@link QueryTree}.
+     * Query nodes are created while the input is read, the complete input string and a parse tree are never held in memory.
+     * Streams are always parsed by a {@link RecursiveDescentParserEngine}, which accepts the same language as the other engines.
+     * The reader is not closed. A {@link QueryCompilerException} is thrown if an error occurs.
+     * @param reader input characters
+     * @return resulting query tree
+     */
+    public QueryTree compile(Reader reader) {
+        if (context == null) {
+            throw new RuntimeException("context required");
+        }
+        return new QueryTree(getStreamParserEngine().parse(reader));
+    }
+
+    private RecursiveDescentParserEngine getStreamParserEngine() {
+        if (parserEngine instanceof RecursiveDescentParserEngine) {
+            return (RecursiveDescentParserEngine) parserEngine;
+        }
+        RecursiveDescentParserEngine engine = streamParserEngine;
+        if (engine == null) {
+            engine = new RecursiveDescentParserEngine(context);
+            streamParserEngine = engine;
+        }
+        return engine;
     }
 
 }
@@ -27,17 +27,12 @@ package de.alexgruen.query.compiler;
 import de.alexgruen.query.QueryNode;
 import de.alexgruen.query.generated.QueryBaseVisitor;
 import de.alexgruen.query.generated.QueryParser;
-import de.alexgruen.query.term.Field;
-import de.alexgruen.query.term.Term;
-import de.alexgruen.query.term.TermOperators;
-import de.alexgruen.query.term.Value;
-import de.alexgruen.query.util.CompilerUtil;
-
-import java.util.regex.Pattern;
 
 /**
  * Created by Alex on 21.05.2017.
+ * @deprecated parse trees are converted by {@link QueryNodeBuilder}, this visitor delegates to it
  */
+@Deprecated
 public class RegexTermVisitor extends QueryBaseVisitor<QueryNode> {
 
     /**
@@ -48,29 +43,7 @@ public class RegexTermVisitor extends QueryBaseVisitor<QueryNode> {
      */
     @Override
     public QueryNode visitRegex_term(QueryParser.Regex_termContext ctx) {
-        Field field = CompilerUtil.createField(ctx.variable());
-
-        Pattern pattern = convertPattern(ctx.REGEX().getText());
-        Value value = new Value(pattern);
-        return new QueryNode(new Term(field,TermOperators.REGEX, value));
+        return QueryNodeBuilder.regexTerm(ctx);
     }
 
-    /**
-     * Converts an input string to a {@link Pattern}.
-     * A {@link QueryCompilerException} is thrown if the input string is not in the right format
-     * @param text input string
-     * @return compiled pattern
-     */
-    private static Pattern convertPattern(String text){
-        String regex = text;
-        if(!regex.startsWith("/") || ! regex.endsWith("/")){
-            throw new QueryCompilerException(String.format("wrong pattern format: %s",text));
-        }
-        regex = regex.substring(1,regex.length()-1);
-        return Pattern.compile(regex);
-
-    }
-
-
-
 }
@@ -30,13 +30,15 @@ import de.alexgruen.query.generated.QueryParser;
 
 /**
  * Created by Alex on 21.05.2017.
+ * @deprecated parse trees are converted by {@link QueryNodeBuilder}, this visitor delegates to it
  */
+@Deprecated
 public class TermQueryVisitor extends QueryBaseVisitor<QueryNode> {
 
-    private QueryContext context;
+    private QueryNodeBuilder builder;
 
     public TermQueryVisitor(QueryContext context) {
-        this.context = context;
+        this.builder = new QueryNodeBuilder(context);
     }
 
 
@@ -47,95 +49,27 @@ public class TermQueryVisitor extends QueryBaseVisitor<QueryNode> {
      */
     @Override
     public QueryNode visitCompilationUnit(QueryParser.CompilationUnitContext ctx) {
-        if (ctx.query() == null && ctx.full_search() == null) {
-            throw new QueryCompilerException("no valid query found");
-        }
-        if (ctx.query() != null) {
-            return visitQuery(ctx.query());
-        } else {
-            return visitFull_search(ctx.full_search());
-        }
+        return builder.build(ctx);
     }
 
     /**
-     * Uses a {@link TextSearchVisitor} to convert a full text search context to a query node
+     * Converts a full text search context to a query node
      * @param ctx full search context
      * @return query node
      */
     @Override
     public QueryNode visitFull_search(QueryParser.Full_searchContext ctx) {
-        TextSearchVisitor textSearchVisitor = new TextSearchVisitor();
-        return textSearchVisitor.visitFull_search(ctx);
+        return QueryNodeBuilder.fullSearch(ctx);
     }
 
-
     /**
      * Creates a query node from a query context.
-     * Recursively creates all child query nodes for the root query context.
      * @param ctx root query context
      * @return query node
      */
+    @Override
     public QueryNode visitQuery(QueryParser.QueryContext ctx) {
-        if (ctx.term() != null) {
-            TermVisitor termVisitor = new TermVisitor(context);
-            return termVisitor.visitTerm(ctx.term());
-        }
-
-        if (ctx.query().size() == 1) {
-            TermQueryVisitor termQueryVisitor = new TermQueryVisitor(context);
-            QueryNode queryNode = termQueryVisitor.visit(ctx.query(0));
-            if (ctx.NEGATE() != null) {
-                queryNode.setNegate(true);
-            }
-            return queryNode;
-        }
-
-
-        QueryNode parent = new QueryNode();
-        QueryNode left = visitQueryRecursive(ctx.query(0));
-        QueryNode right = visitQueryRecursive(ctx.query(1));
-        parent.getChildren().add(left);
-        parent.getChildren().add(right);
-        parent.setOperator(context.getLogicalOperator(ctx.LOGICAL_OPERATOR().getText()));
-        return parent;
-    }
-
-
-    /**
-     * Recursive function to create query nodes from a query context
-     * @param ctx query context
-     * @return query node with all child query nodes
-     */
-    private QueryNode visitQueryRecursive(QueryParser.QueryContext ctx) {
-        if (ctx.term() != null) {
-            TermVisitor termVisitor = new TermVisitor(context);
-            QueryNode n = termVisitor.visitTerm(ctx.term());
-            if (ctx.NEGATE() != null) {
-                n.setNegate(true);
-            }
-            return n;
-        }
-
-        if (ctx.query().size() == 1) {
-            QueryNode n =  visitQueryRecursive(ctx.query(0));
-            if (ctx.NEGATE() != null) {
-                n.setNegate(true);
-            }
-            return n;
-        }
-
-
-        QueryNode parent = new QueryNode();
-        QueryNode left = visitQueryRecursive(ctx.query(0));
-        QueryNode right = visitQueryRecursive(ctx.query(1));
-        parent.getChildren().add(left);
-        parent.getChildren().add(right);
-        parent.setOperator(context.getLogicalOperator(ctx.LOGICAL_OPERATOR().getText()));
-
-        if (ctx.NEGATE() != null) {
-            parent.setNegate(true);
-        }
-        return parent;
+        return builder.query(ctx);
     }
 
 }
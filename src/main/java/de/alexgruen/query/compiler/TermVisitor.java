@@ -28,21 +28,18 @@ package de.alexgruen.query.compiler;
 import de.alexgruen.query.QueryNode;
 import de.alexgruen.query.generated.QueryBaseVisitor;
 import de.alexgruen.query.generated.QueryParser;
-import de.alexgruen.query.term.Field;
-import de.alexgruen.query.term.Term;
-import de.alexgruen.query.term.TermOperator;
-import de.alexgruen.query.term.Value;
-import de.alexgruen.query.util.CompilerUtil;
 
 /**
  * Created by Alex on 21.05.2017.
+ * @deprecated parse trees are converted by {@link QueryNodeBuilder}, this visitor delegates to it
  */
+@Deprecated
 public class TermVisitor extends QueryBaseVisitor<QueryNode> {
 
-    private QueryContext context;
+    private QueryNodeBuilder builder;
 
     public TermVisitor(QueryContext context) {
-        this.context = context;
+        this.builder = new QueryNodeBuilder(context);
     }
 
 
@@ -54,46 +51,7 @@ public class TermVisitor extends QueryBaseVisitor<QueryNode> {
      */
     @Override
     public QueryNode visitTerm(QueryParser.TermContext ctx) {
-        QueryNode queryNode;
-        if (ctx.regex_term() != null) {
-            //use regex visitor if necessary
-            RegexTermVisitor regexTermVisitor = new RegexTermVisitor();
-            queryNode = regexTermVisitor.visitRegex_term(ctx.regex_term());
-        } else {
-            queryNode = createFieldFilterNode(ctx);
-        }
-        if (ctx.NEGATE() != null) {
-            queryNode.setNegate(true);
-        }
-        return queryNode;
+        return builder.term(ctx);
     }
 
-    /**
-     * Creates a query node from a single term (field OPERATOR value)
-     * @param ctx term context
-     * @return query node
-     */
-    private QueryNode createFieldFilterNode(QueryParser.TermContext ctx) {
-        Field field = CompilerUtil.createField(ctx.variable());
-        String operation = ctx.term_operation().getText();
-        Value value = CompilerUtil.createValue(ctx.value());
-        return createFieldFilterNode(field, value, operation);
-    }
-
-    /**
-     * Creates a query node from a {@link Field}, operator and {@link Value}
-     * @param field term field
-     * @param value term value
-     * @param operation term operator
-     * @return query node
-     */
-    private QueryNode createFieldFilterNode(Field field, Value value, String operation) {
-        TermOperator termOperator = context.getTermOperator(operation);
-        if (termOperator == null) {
-            throw new QueryCompilerException(String.format("unsupported filter operation '%s'", operation));
-        }
-        return new QueryNode(new Term(field, termOperator, value));
-    }
-
-
 }
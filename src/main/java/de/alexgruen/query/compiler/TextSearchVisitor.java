@@ -25,22 +25,15 @@
 package de.alexgruen.query.compiler;
 
 
-import de.alexgruen.query.LogicalOperators;
 import de.alexgruen.query.QueryNode;
 import de.alexgruen.query.generated.QueryBaseVisitor;
 import de.alexgruen.query.generated.QueryParser;
-import de.alexgruen.query.term.Field;
-import de.alexgruen.query.term.Term;
-import de.alexgruen.query.term.TermOperators;
-import de.alexgruen.query.term.Value;
-import de.alexgruen.query.util.CompilerUtil;
-
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Created by Alex on 21.05.2017.
+ * @deprecated parse trees are converted by {@link QueryNodeBuilder}, this visitor delegates to it
  */
+@Deprecated
 public class TextSearchVisitor extends QueryBaseVisitor<QueryNode> {
 
     /**
@@ -52,55 +45,6 @@ public class TextSearchVisitor extends QueryBaseVisitor<QueryNode> {
      */
     @Override
     public QueryNode visitFull_search(QueryParser.Full_searchContext ctx) {
-        List<Value> required = new ArrayList<>();
-        List<Value> forbidden = new ArrayList<>();
-        for (QueryParser.Full_search_partContext vctx : ctx.full_search_part()) {
-            Value val = CompilerUtil.createValue(vctx.full_search_value());
-            if (vctx.full_search_modifier() == null) {
-                required.add(val);
-                continue;
-            }
-            if (vctx.full_search_modifier().NEGATE() != null) {
-                forbidden.add(val);
-            } else {
-                required.add(val);
-            }
-
-        }
-        QueryNode node = new QueryNode();
-        node.setOperator(LogicalOperators.AND);
-
-
-        if (required.size() > 0) {
-            for (int i = 0; i < required.size(); i++) {
-                node.getChildren().add(
-                        new QueryNode(
-                                new Term(
-                                        Field.ALL_FIELDS,
-                                        TermOperators.FULL_TEXT,
-                                        required.get(i)
-                                )
-                        )
-                );
-            }
-        }
-
-        if (forbidden.size() > 0) {
-            for (int i = 0; i < forbidden.size(); i++) {
-
-                QueryNode childNode = new QueryNode(
-                        new Term(
-                                Field.ALL_FIELDS,
-                                TermOperators.FULL_TEXT,
-                                forbidden.get(i)
-                        )
-                );
-                childNode.setNegate(true);
-                node.getChildren().add(childNode);
-
-            }
-        }
-
-        return node;
+        return QueryNodeBuilder.fullSearch(ctx);
     }
 }
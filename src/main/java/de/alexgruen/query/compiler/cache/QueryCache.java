@@ -0,0 +1,313 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler.cache;
+
+import de.alexgruen.query.compiler.QueryCompilerException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded cache for compiled queries, keyed by the input query string.
+ * <p>
+ * The cache is bounded either by the number of entries ({@link Builder#maximumSize(long)})
+ * or by the total weight of all entries ({@link Builder#maximumWeight(long, Weigher)}).
+ * If the bound is exceeded, the least recently used entries are evicted.
+ * <p>
+ * Concurrent misses for the same key share a single in-flight compilation.
+ * Failed compilations are not cached.
+ * <p>
+ * Cached values are shared between all callers and must not be modified.
+ *
+ * @param <V> type of cached values
+ */
+public class QueryCache<V> {
+
+    private final long maximumWeight;
+    private final Weigher<? super V> weigher;
+
+    //guarded by 'this'
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalWeight;
+
+    private final Map<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger waitingCount = new AtomicInteger();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    private QueryCache(long maximumWeight, Weigher<? super V> weigher) {
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Creates a new {@link Builder}
+     *
+     * @param <V> type of cached values
+     * @return cache builder
+     */
+    public static <V> Builder<V> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Returns the cached value for a query string.
+     * If no value is cached, the loader is used to compile it.
+     * Concurrent calls for the same query string wait for the same compilation.
+     *
+     * @param query  input query string
+     * @param loader function used to compile the query string
+     * @return cached or compiled value
+     */
+    public V get(String query, Function<String, ? extends V> loader) {
+        V value = getIfPresent(query);
+        if (value != null) {
+            hitCount.increment();
+            return value;
+        }
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(query, future);
+        if (running != null) {
+            //another thread is already compiling this query
+            hitCount.increment();
+            waitingCount.incrementAndGet();
+            try {
+                return await(running);
+            } finally {
+                waitingCount.decrementAndGet();
+            }
+        }
+        try {
+            //value may have been stored since the first lookup
+            value = getIfPresent(query);
+            if (value == null) {
+                missCount.increment();
+                value = loader.apply(query);
+                put(query, value);
+            } else {
+                hitCount.increment();
+            }
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(query, future);
+        }
+    }
+
+    /**
+     * Returns the cached value for a query string or null if no value is cached
+     *
+     * @param query input query string
+     * @return cached value or null
+     */
+    public synchronized V getIfPresent(String query) {
+        Entry<V> entry = entries.get(query);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Adds a value to the cache. Least recently used entries are evicted if the cache exceeds its bound.
+     *
+     * @param query input query string
+     * @param value compiled value
+     */
+    public void put(String query, V value) {
+        if (value == null) {
+            return;
+        }
+        int weight = weigher.weigh(query, value);
+        if (weight < 0) {
+            throw new QueryCompilerException(String.format("negative cache weight for '%s'", query));
+        }
+        synchronized (this) {
+            Entry<V> previous = entries.put(query, new Entry<>(value, weight));
+            if (previous != null) {
+                totalWeight -= previous.weight;
+            }
+            totalWeight += weight;
+            evict();
+        }
+    }
+
+    /**
+     * Removes all cached values
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        totalWeight = 0;
+    }
+
+    /**
+     * Returns the number of cached values
+     *
+     * @return number of cached values
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total weight of all cached values
+     *
+     * @return total weight
+     */
+    public synchronized long weight() {
+        return totalWeight;
+    }
+
+    /**
+     * Returns the number of callers that wait for a compilation started by another caller
+     *
+     * @return number of waiting callers
+     */
+    public int getWaitingCount() {
+        return waitingCount.get();
+    }
+
+    /**
+     * Returns a snapshot of the hit, miss and eviction counters
+     *
+     * @return cache statistics
+     */
+    public QueryCacheStats getStats() {
+        return new QueryCacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum());
+    }
+
+    /**
+     * Evicts the least recently used entries until the total weight is within the bound
+     */
+    private void evict() {
+        Iterator<Entry<V>> it = entries.values().iterator();
+        while (totalWeight > maximumWeight && it.hasNext()) {
+            Entry<V> eldest = it.next();
+            it.remove();
+            totalWeight -= eldest.weight;
+            evictionCount.increment();
+        }
+    }
+
+    /**
+     * Waits for a compilation started by another thread
+     *
+     * @param future in-flight compilation
+     * @return compiled value
+     */
+    private V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new QueryCompilerException("query compilation failed", cause);
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final int weight;
+
+        private Entry(V value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Calculates the weight of a cache entry
+     *
+     * @param <V> type of cached values
+     */
+    @FunctionalInterface
+    public interface Weigher<V> {
+        /**
+         * Returns the weight of a cache entry. The weight must not be negative.
+         *
+         * @param query input query string
+         * @param value cached value
+         * @return weight
+         */
+        int weigh(String query, V value);
+    }
+
+    public static final class Builder<V> {
+        private long maximumWeight = Long.MAX_VALUE;
+        private Weigher<? super V> weigher = (q, v) -> 1;
+
+        private Builder() {
+        }
+
+        /**
+         * Bounds the cache by the number of entries
+         *
+         * @param maximumSize maximum number of entries
+         * @return <tt>self</tt> for method chaining
+         */
+        public Builder<V> maximumSize(long maximumSize) {
+            if (maximumSize < 0) {
+                throw new IllegalArgumentException("maximum size must not be negative");
+            }
+            this.maximumWeight = maximumSize;
+            this.weigher = (q, v) -> 1;
+            return this;
+        }
+
+        /**
+         * Bounds the cache by the total weight of all entries
+         *
+         * @param maximumWeight maximum total weight
+         * @param weigher       function used to calculate the weight of an entry
+         * @return <tt>self</tt> for method chaining
+         */
+        public Builder<V> maximumWeight(long maximumWeight, Weigher<? super V> weigher) {
+            if (maximumWeight < 0) {
+                throw new IllegalArgumentException("maximum weight must not be negative");
+            }
+            this.maximumWeight = maximumWeight;
+            this.weigher = weigher;
+            return this;
+        }
+
+        public QueryCache<V> build() {
+            return new QueryCache<>(maximumWeight, weigher);
+        }
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler.cache;
+
+import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.compiler.QueryCompilerException;
+import de.alexgruen.query.compiler.QueryContext;
+import de.alexgruen.query.optimization.PassManager;
+import de.alexgruen.query.optimization.QueryOptimization;
+import de.alexgruen.query.optimization.RewritePass;
+import de.alexgruen.query.serialization.QueryTreeReader;
+import de.alexgruen.query.serialization.QueryTreeWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent store of compiled query trees in a memory-mapped, append-only file, keyed by the input query string.
+ * A compiler that uses a store ({@link de.alexgruen.query.compiler.QueryCompilerBuilder#withTreeStore(Path)})
+ * serves stored trees after a restart instead of parsing and optimizing the input again.
+ * <p>
+ * Opening a store reads the keys of all records to build an index, trees are decoded from the mapping
+ * ({@link QueryTreeReader}) only when they are requested. The file contains the fingerprint of the compiler
+ * configuration that created the trees ({@link #fingerprint(QueryContext, List)}). A file with another fingerprint
+ * is cleared when it is opened, so trees are never served to a compiler with different operators, optimizations
+ * or limits. A record becomes visible once it is completely written, records that were cut off by a crash
+ * or fail their checksum are dropped with all following records.
+ * <p>
+ * Records are never removed, the size of the file and the number of trees are bounded
+ * ({@link #open(Path, long, int, int)}). Every stored key is kept on the heap in the index,
+ * so the number of trees also bounds the memory of the index.
+ * <p>
+ * The file grows by mapping it again with a larger size. Previous mappings are not unmapped explicitly,
+ * they are released when they are garbage collected, until then they use address space and may keep
+ * pages of the file mapped.
+ * <p>
+ * Lookups are thread safe and lock free, additions are synchronized.
+ * A file must not be opened by more than one store at a time.
+ * <p>
+ * File layout:
+ * <pre>
+ * header: 'Q' 'T' 'S' 0, version:int, fingerprint:long, end:long, reserved:long
+ * record: length:int, crc32:int, keyLength:int, key:UTF-8, tree:{@link QueryTreeWriter} format
+ * </pre>
+ */
+public final class QueryTreeStore implements Closeable {
+    private static final int MAGIC = 0x51545300;
+    private static final int VERSION = 1;
+    private static final int FINGERPRINT_OFFSET = 8;
+    private static final int END_OFFSET = 16;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    /**
+     * Default maximum size of a store file in bytes (64 MB)
+     */
+    public static final int DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Default maximum number of stored trees
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+
+    private final FileChannel channel;
+    private final long fingerprint;
+    private final int maxSize;
+    private final int maxEntries;
+    //offsets of the records by their keys
+    private final Map<String, Integer> index = new ConcurrentHashMap<>();
+    private volatile MappedByteBuffer mapped;
+
+    //guarded by 'this'
+    private final QueryTreeWriter writer = new QueryTreeWriter();
+    private final CRC32 crc = new CRC32();
+    private int end;
+    private boolean closed;
+
+    private QueryTreeStore(FileChannel channel, long fingerprint, int maxSize, int maxEntries) {
+        this.channel = channel;
+        this.fingerprint = fingerprint;
+        this.maxSize = maxSize;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Opens or creates a store file with a size of at most {@link #DEFAULT_MAX_SIZE} bytes
+     * and at most {@link #DEFAULT_MAX_ENTRIES} trees
+     * @param file store file
+     * @param fingerprint fingerprint of the compiler configuration
+     * @return store
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public static QueryTreeStore open(Path file, long fingerprint) throws IOException {
+        return open(file, fingerprint, DEFAULT_MAX_SIZE, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Opens or creates a store file with at most {@link #DEFAULT_MAX_ENTRIES} trees
+     * @param file store file
+     * @param fingerprint fingerprint of the compiler configuration
+     * @param maxSize maximum size of the file in bytes
+     * @return store
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public static QueryTreeStore open(Path file, long fingerprint, int maxSize) throws IOException {
+        return open(file, fingerprint, maxSize, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Opens or creates a store file. Trees are not added once the file would exceed the maximum size
+     * or the store contains the maximum number of trees. Records of a larger file are dropped when it is opened.
+     * @param file store file
+     * @param fingerprint fingerprint of the compiler configuration
+     * @param maxSize maximum size of the file in bytes
+     * @param maxEntries maximum number of trees
+     * @return store
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public static QueryTreeStore open(Path file, long fingerprint, int maxSize, int maxEntries) throws IOException {
+        if (maxSize < HEADER_SIZE) {
+            throw new IllegalArgumentException(String.format("maximum size %d is smaller than the header", maxSize));
+        }
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException(String.format("maximum number of trees %d is negative", maxEntries));
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            QueryTreeStore store = new QueryTreeStore(channel, fingerprint, maxSize, maxEntries);
+            store.load();
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Computes the fingerprint of a compiler configuration from the names and aliases of all operators,
+     * the classes of the optimizations, the passes and rule names of {@link PassManager}s and the complexity limits.
+     * Rules without a name (lambdas) are rejected, they cannot be told apart after a restart.
+     * Other options of optimizations are not included,
+     * a new file has to be used if they change.
+     * @param context query context
+     * @param optimizations optimizations in the order they are applied
+     * @return 64 bit fingerprint
+     * @throws IllegalStateException if a rule of a pass has no name
+     */
+    public static long fingerprint(QueryContext<?> context, List<QueryOptimization> optimizations) {
+        StringBuilder sb = new StringBuilder("v").append(VERSION).append(";term:");
+        List<String> aliases = new ArrayList<>(context.getAllTermOperatorAliases());
+        Collections.sort(aliases);
+        for (String alias : aliases) {
+            sb.append(alias).append('=').append(context.getTermOperator(alias).getName()).append(',');
+        }
+        sb.append(";logic:");
+        aliases = new ArrayList<>(context.getAllLogicalOperatorAliases());
+        Collections.sort(aliases);
+        for (String alias : aliases) {
+            sb.append(alias).append('=').append(context.getLogicalOperator(alias).getName()).append(',');
+        }
+        sb.append(";optimizations:");
+        for (QueryOptimization optimization : optimizations) {
+            sb.append(optimization.getClass().getName());
+            //rules are part of the configuration
+            if (optimization instanceof PassManager) {
+                sb.append(((PassManager) optimization).getDescription());
+            } else if (optimization instanceof RewritePass) {
+                sb.append(((RewritePass) optimization).getDescription());
+            }
+            sb.append(',');
+        }
+        sb.append(";limits:").append(context.getComplexityLimits());
+        //FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < sb.length(); i++) {
+            hash = (hash ^ sb.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Maps the file and indexes all valid records, a file with another fingerprint or version is cleared
+     */
+    private void load() throws IOException {
+        long size = channel.size();
+        if (size > maxSize) {
+            size = maxSize;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (size >= HEADER_SIZE) {
+            channel.read(header, 0);
+            header.flip();
+        }
+        if (size < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                || header.getLong(FINGERPRINT_OFFSET) != fingerprint) {
+            channel.truncate(0);
+            map(Math.min(INITIAL_CAPACITY, maxSize));
+            mapped.putInt(0, MAGIC);
+            mapped.putInt(4, VERSION);
+            mapped.putLong(FINGERPRINT_OFFSET, fingerprint);
+            writeEnd(HEADER_SIZE);
+            return;
+        }
+        long storedEnd = header.getLong(END_OFFSET);
+        map((int) Math.max(size, Math.min(INITIAL_CAPACITY, maxSize)));
+        int position = HEADER_SIZE;
+        int limit = (int) Math.min(Math.max(storedEnd, HEADER_SIZE), size);
+        ByteBuffer buffer = mapped.duplicate();
+        while (position + RECORD_HEADER_SIZE + 4 <= limit && index.size() < maxEntries) {
+            int length = buffer.getInt(position);
+            if (length < 4 || length > limit - position - RECORD_HEADER_SIZE) {
+                break;
+            }
+            buffer.limit(position + RECORD_HEADER_SIZE + length);
+            buffer.position(position + RECORD_HEADER_SIZE);
+            crc.reset();
+            crc.update(buffer);
+            buffer.limit(buffer.capacity());
+            int keyLength = buffer.getInt(position + RECORD_HEADER_SIZE);
+            if ((int) crc.getValue() != buffer.getInt(position + 4) || keyLength < 0 || keyLength > length - 4) {
+                break;
+            }
+            byte[] key = new byte[keyLength];
+            buffer.position(position + RECORD_HEADER_SIZE + 4);
+            buffer.get(key);
+            index.putIfAbsent(new String(key, StandardCharsets.UTF_8), position);
+            position += RECORD_HEADER_SIZE + length;
+        }
+        if (position != storedEnd) {
+            writeEnd(position);
+        } else {
+            end = position;
+        }
+    }
+
+    /**
+     * Maps the first bytes of the file, the file grows if it is smaller
+     */
+    private void map(int capacity) throws IOException {
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * Publishes the records before an offset. Records after the end are ignored when the file is opened.
+     */
+    private void writeEnd(int end) {
+        this.end = end;
+        mapped.putLong(END_OFFSET, end);
+    }
+
+    /**
+     * Returns the fingerprint of the compiler configuration of the stored trees
+     * @return fingerprint
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Returns the number of stored trees
+     * @return number of trees
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Returns the number of bytes used by the header and all records
+     * @return used bytes
+     */
+    public synchronized int getUsedBytes() {
+        return end;
+    }
+
+    /**
+     * Returns true if a tree is stored for an input string
+     * @param query input string
+     * @return true if stored
+     */
+    public boolean contains(String query) {
+        return index.containsKey(query);
+    }
+
+    /**
+     * Decodes the tree that is stored for an input string. Each call creates a new tree.
+     * @param query input string
+     * @param context context to resolve operators and fields or null
+     * @return query tree or null if no tree is stored or the stored tree cannot be decoded
+     */
+    public QueryTree get(String query, QueryContext<?> context) {
+        Integer position = index.get(query);
+        if (position == null) {
+            return null;
+        }
+        ByteBuffer buffer = mapped.duplicate();
+        int length = buffer.getInt(position);
+        int keyLength = buffer.getInt(position + RECORD_HEADER_SIZE);
+        buffer.limit(position + RECORD_HEADER_SIZE + length);
+        buffer.position(position + RECORD_HEADER_SIZE + 4 + keyLength);
+        try {
+            return new QueryTreeReader(context).read(buffer);
+        } catch (QueryCompilerException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Appends a tree for an input string unless a tree is already stored.
+     * The tree is encoded immediately, later changes of the tree are not stored.
+     * @param query input string
+     * @param tree optimized query tree
+     * @return true if the tree was added, false if it was already stored or the store is full
+     * @throws IOException if the file cannot grow
+     */
+    public synchronized boolean put(String query, QueryTree tree) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("store is closed");
+        }
+        if (index.containsKey(query) || index.size() >= maxEntries) {
+            return false;
+        }
+        byte[] key = query.getBytes(StandardCharsets.UTF_8);
+        byte[] data = writer.write(tree);
+        long recordEnd = (long) end + RECORD_HEADER_SIZE + 4 + key.length + data.length;
+        if (recordEnd > maxSize) {
+            return false;
+        }
+        if (recordEnd > mapped.capacity()) {
+            map((int) Math.min(Math.max(recordEnd, mapped.capacity() * 2L), maxSize));
+        }
+        ByteBuffer buffer = mapped.duplicate();
+        buffer.position(end + RECORD_HEADER_SIZE);
+        buffer.putInt(key.length);
+        buffer.put(key);
+        buffer.put(data);
+        buffer.limit((int) recordEnd);
+        buffer.position(end + RECORD_HEADER_SIZE);
+        crc.reset();
+        crc.update(buffer);
+        buffer.putInt(end, 4 + key.length + data.length);
+        buffer.putInt(end + 4, (int) crc.getValue());
+        int position = end;
+        writeEnd((int) recordEnd);
+        index.put(query, position);
+        return true;
+    }
+
+    /**
+     * Writes all changes of the mapping to the storage device
+     */
+    public synchronized void force() {
+        if (!closed) {
+            mapped.force();
+        }
+    }
+
+    /**
+     * Writes all changes to the storage device and closes the file. Trees can no longer be added.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            mapped.force();
+            closed = true;
+            channel.close();
+        }
+    }
+}
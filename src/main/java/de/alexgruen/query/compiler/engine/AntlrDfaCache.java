@@ -0,0 +1,68 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler.engine;
+
+import de.alexgruen.query.generated.QueryLexer;
+import de.alexgruen.query.generated.QueryParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.dfa.DFA;
+
+/**
+ * Access to the DFA cache that is shared by all instances of {@link QueryLexer} and {@link QueryParser}
+ */
+public class AntlrDfaCache {
+    //the DFA arrays are static, the simulators of these instances share them with all other instances
+    private static final QueryLexer LEXER = new QueryLexer(CharStreams.fromString(""));
+    private static final QueryParser PARSER = new QueryParser(new CommonTokenStream(LEXER));
+
+    private AntlrDfaCache() {
+    }
+
+    /**
+     * Returns the number of cached DFA states of lexer and parser
+     * @return number of states
+     */
+    public static int getStateCount() {
+        return getStateCount(LEXER.getInterpreter().decisionToDFA) + getStateCount(PARSER.getInterpreter().decisionToDFA);
+    }
+
+    /**
+     * Removes all cached DFA states of lexer and parser.
+     * Inputs parsed concurrently are not affected, the cache is filled again by the following inputs.
+     */
+    public static void clear() {
+        LEXER.getInterpreter().clearDFA();
+        PARSER.getInterpreter().clearDFA();
+    }
+
+    private static int getStateCount(DFA[] decisionToDFA) {
+        int count = 0;
+        for (DFA dfa : decisionToDFA) {
+            count += dfa.states.size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler.engine;
+
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.compiler.ComplexityLimits;
+import de.alexgruen.query.compiler.QueryCompilerErrorListener;
+import de.alexgruen.query.compiler.QueryContext;
+import de.alexgruen.query.compiler.QueryNodeBuilder;
+import de.alexgruen.query.generated.QueryParser;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+/**
+ * Lexer, parser, error listener and query node builder that are reused for several inputs.
+ * A session is not thread safe, {@link AntlrParserEngine} keeps one session per thread.
+ */
+class AntlrParseSession {
+    private final QueryCompilerErrorListener errorListener = new QueryCompilerErrorListener();
+    private final CharSequenceCharStream stream = new CharSequenceCharStream("");
+    private final CustomOperatorLexer lexer;
+    private final CommonTokenStream tokens;
+    private final QueryParser parser;
+    private final QueryNodeBuilder builder;
+    private final BailErrorStrategy bailErrorStrategy = new StacklessBailErrorStrategy();
+    private final DefaultErrorStrategy defaultErrorStrategy = new DefaultErrorStrategy();
+    private final AntlrParseMode mode;
+    private final ParseModeCounter counter;
+    //null if depth and terms are unlimited
+    private final ComplexityListener complexityListener;
+
+    AntlrParseSession(QueryContext<?> context, AntlrParseMode mode, ParseModeCounter counter) {
+        this.mode = mode;
+        this.counter = counter;
+        //custom operator names are recognized by the lexer
+        lexer = new CustomOperatorLexer(stream, context.getCustomTermOperatorTable());
+        //Don't print errors to stderr
+        lexer.removeErrorListener(ConsoleErrorListener.INSTANCE);
+        lexer.addErrorListener(errorListener);
+        tokens = new CommonTokenStream(lexer);
+        parser = new QueryParser(tokens);
+        //error listeners are assigned for each prediction mode
+        builder = new QueryNodeBuilder(context);
+        ComplexityLimits limits = context.getComplexityLimits();
+        if (limits.getMaxDepth() != Integer.MAX_VALUE || limits.getMaxTerms() != Integer.MAX_VALUE) {
+            complexityListener = new ComplexityListener(limits);
+            parser.addParseListener(complexityListener);
+        } else {
+            complexityListener = null;
+        }
+    }
+
+    /**
+     * Resets lexer, token stream and parser to a new input and parses it.
+     * The input is read in place.
+     * @param queryString input characters
+     * @return root query node
+     */
+    QueryNode parse(CharSequence queryString) {
+        errorListener.setQueryString(queryString);
+        stream.reset(queryString);
+        lexer.setInputStream(stream);
+        tokens.setTokenSource(lexer);
+        parser.setTokenStream(tokens);
+        QueryParser.CompilationUnitContext compilationUnit;
+        if (mode == AntlrParseMode.SLL_THEN_LL) {
+            compilationUnit = parseSll();
+            if (compilationUnit != null) {
+                counter.sll();
+                return builder.build(compilationUnit);
+            }
+        }
+        compilationUnit = parseLl();
+        counter.ll();
+        return builder.build(compilationUnit);
+    }
+
+    /**
+     * Parses the current input with SLL prediction.
+     * Parser errors are not reported, the parser stops at the first error.
+     * @return compilation unit or null if the input could not be parsed with SLL prediction
+     */
+    private QueryParser.CompilationUnitContext parseSll() {
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.setErrorHandler(bailErrorStrategy);
+        parser.removeErrorListeners();
+        try {
+            //rewinds the token stream and resets the error strategy, this may already report lexer errors
+            parser.reset();
+            resetComplexity();
+            return parser.compilationUnit();
+        } catch (ParseCancellationException e) {
+            return null;
+        } catch (RuntimeException e) {
+            //lexer errors are reported in both modes
+            counter.error();
+            throw e;
+        }
+    }
+
+    /**
+     * Parses the current input with full LL prediction. Errors are reported to the {@link QueryCompilerErrorListener}.
+     * @return compilation unit
+     */
+    private QueryParser.CompilationUnitContext parseLl() {
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        parser.setErrorHandler(defaultErrorStrategy);
+        parser.removeErrorListeners();
+        parser.addErrorListener(errorListener);
+        try {
+            parser.reset();
+            resetComplexity();
+            return parser.compilationUnit();
+        } catch (RuntimeException e) {
+            counter.error();
+            throw e;
+        }
+    }
+
+    private void resetComplexity() {
+        if (complexityListener != null) {
+            complexityListener.budget.reset();
+        }
+    }
+
+    /**
+     * Checks the nesting depth and the number of terms while the parse tree is built,
+     * so deeply nested or oversized inputs are rejected before they are parsed completely.
+     */
+    private static final class ComplexityListener implements ParseTreeListener {
+        private final ComplexityBudget budget;
+
+        private ComplexityListener(ComplexityLimits limits) {
+            this.budget = new ComplexityBudget(limits);
+        }
+
+        @Override
+        public void enterEveryRule(ParserRuleContext ctx) {
+            int rule = ctx.getRuleIndex();
+            if (rule == QueryParser.RULE_query && ctx.getParent() instanceof QueryParser.Unary_queryContext) {
+                //position of the unary query (bracket or negation)
+                budget.enter(ctx.getParent().getStart().getStartIndex());
+            } else if (rule == QueryParser.RULE_term || rule == QueryParser.RULE_full_search_part) {
+                budget.term(ctx.getStart().getStartIndex());
+            }
+        }
+
+        @Override
+        public void exitEveryRule(ParserRuleContext ctx) {
+            if (ctx.getRuleIndex() == QueryParser.RULE_query && ctx.getParent() instanceof QueryParser.Unary_queryContext) {
+                budget.exit();
+            }
+        }
+
+        @Override
+        public void visitTerminal(TerminalNode node) {
+        }
+
+        @Override
+        public void visitErrorNode(ErrorNode node) {
+        }
+    }
+
+    /**
+     * Stops SLL parsing at the first error without creating an exception with a stack trace.
+     * The input is parsed again with LL prediction, which reports the error.
+     */
+    private static final class StacklessBailErrorStrategy extends BailErrorStrategy {
+        private static final ParseCancellationException BAIL = new ParseCancellationException() {
+            @Override
+            public synchronized Throwable fillInStackTrace() {
+                return this;
+            }
+        };
+
+        @Override
+        public void recover(Parser recognizer, RecognitionException e) {
+            throw BAIL;
+        }
+
+        @Override
+        public Token recoverInline(Parser recognizer) {
+            throw BAIL;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler.engine;
+
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.compiler.QueryContext;
+import de.alexgruen.query.compiler.QueryNodeBuilder;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Parser engine that uses the lexer and parser generated from Query.g4.
+ * The resulting parse tree is converted to query nodes by a {@link QueryNodeBuilder}.
+ * <p>
+ * Lexer and parser instances are reused: every thread keeps an {@link AntlrParseSession}
+ * that is reset to the next input instead of allocating new instances per compilation.
+ */
+public class AntlrParserEngine implements QueryParserEngine {
+
+    private final AntlrParseMode mode;
+    private final DfaCachePolicy dfaCachePolicy;
+    private final ParseModeCounter counter = new ParseModeCounter();
+    private final ThreadLocal<AntlrParseSession> sessions;
+    private final AtomicInteger parsesSinceCheck = new AtomicInteger();
+    private final LongAdder dfaClearCount = new LongAdder();
+
+    public AntlrParserEngine(QueryContext<?> context) {
+        this(context, AntlrParseMode.LL);
+    }
+
+    /**
+     * Creates an engine with a prediction strategy
+     * @param context query context
+     * @param mode prediction strategy
+     */
+    public AntlrParserEngine(QueryContext<?> context, AntlrParseMode mode) {
+        this(context, mode, DfaCachePolicy.UNBOUNDED);
+    }
+
+    /**
+     * Creates an engine with a prediction strategy and a policy for the shared DFA cache
+     * @param context query context
+     * @param mode prediction strategy
+     * @param dfaCachePolicy policy for the DFA cache
+     */
+    public AntlrParserEngine(QueryContext<?> context, AntlrParseMode mode, DfaCachePolicy dfaCachePolicy) {
+        this.mode = mode;
+        this.dfaCachePolicy = dfaCachePolicy;
+        //build the custom operator table once, before the first input is parsed
+        context.getCustomTermOperatorTable();
+        this.sessions = ThreadLocal.withInitial(() -> new AntlrParseSession(context, mode, counter));
+    }
+
+    /**
+     * Returns the prediction strategy of this engine
+     * @return prediction strategy
+     */
+    public AntlrParseMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns a snapshot of the counters that show which prediction mode parsed the inputs
+     * @return statistics
+     */
+    public ParseModeStats getParseModeStats() {
+        return counter.snapshot();
+    }
+
+    /**
+     * Returns the policy for the shared DFA cache
+     * @return DFA cache policy
+     */
+    public DfaCachePolicy getDfaCachePolicy() {
+        return dfaCachePolicy;
+    }
+
+    /**
+     * Returns how often this engine cleared the shared DFA cache
+     * @return number of clears
+     */
+    public long getDfaClearCount() {
+        return dfaClearCount.sum();
+    }
+
+    @Override
+    public QueryNode parse(CharSequence queryString) {
+        try {
+            return sessions.get().parse(queryString);
+        } finally {
+            if (dfaCachePolicy.isBounded()) {
+                checkDfaCache();
+            }
+        }
+    }
+
+    /**
+     * Clears the shared DFA cache if it exceeds the maximum number of states.
+     * The cache is only checked every {@link DfaCachePolicy#getCheckInterval()} inputs.
+     */
+    private void checkDfaCache() {
+        if (parsesSinceCheck.incrementAndGet() < dfaCachePolicy.getCheckInterval()) {
+            return;
+        }
+        parsesSinceCheck.set(0);
+        if (AntlrDfaCache.getStateCount() > dfaCachePolicy.getMaxStates()) {
+            AntlrDfaCache.clear();
+            dfaClearCount.increment();
+        }
+    }
+}
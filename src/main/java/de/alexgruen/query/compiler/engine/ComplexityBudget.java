@@ -0,0 +1,131 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler.engine;
+
+import de.alexgruen.query.compiler.ComplexityLimits;
+
+/**
+ * Counts the nesting depth and the number of terms of one parse and rejects the input
+ * as soon as a {@link ComplexityLimits limit} is exceeded.
+ */
+class ComplexityBudget {
+    private final ComplexityLimits limits;
+    private int depth;
+    //largest depth since the last mark
+    private int reached;
+    private int terms;
+
+    ComplexityBudget(ComplexityLimits limits) {
+        this.limits = limits;
+    }
+
+    /**
+     * Resets the counters before a new parse
+     */
+    void reset() {
+        depth = 0;
+        reached = 0;
+        terms = 0;
+    }
+
+    /**
+     * Enters a bracket
+     * @param offset position of the bracket
+     */
+    void enter(int offset) {
+        checkDepth(++depth, offset);
+        if (depth > reached) {
+            reached = depth;
+        }
+    }
+
+    /**
+     * Leaves a bracket
+     */
+    void exit() {
+        depth--;
+    }
+
+    /**
+     * Counts a term or full text search value
+     * @param offset position of the term
+     */
+    void term(int offset) {
+        checkTerms(++terms, offset);
+    }
+
+    /**
+     * Counts a reused sub query
+     * @param subTerms number of terms of the sub query
+     * @param subDepth depth of the sub query relative to its position
+     * @param offset position of the sub query
+     */
+    void add(int subTerms, int subDepth, int offset) {
+        terms += subTerms;
+        checkTerms(terms, offset);
+        checkDepth(depth + subDepth, offset);
+        if (depth + subDepth > reached) {
+            reached = depth + subDepth;
+        }
+    }
+
+    /**
+     * Starts measuring the depth of a sub query
+     * @return value to pass to {@link #unmark(int)}
+     */
+    int mark() {
+        int previous = reached;
+        reached = depth;
+        return previous;
+    }
+
+    /**
+     * Returns the depth of the sub query since {@link #mark()} relative to the current depth
+     * and restores the previous maximum
+     * @param previous value returned by {@link #mark()}
+     * @return relative depth
+     */
+    int unmark(int previous) {
+        int subDepth = reached - depth;
+        reached = Math.max(previous, reached);
+        return subDepth;
+    }
+
+    int getTerms() {
+        return terms;
+    }
+
+    private void checkDepth(int value, int offset) {
+        if (value > limits.getMaxDepth()) {
+            throw ComplexityLimits.limitExceeded(offset, "nesting depth exceeds the limit of %d", limits.getMaxDepth());
+        }
+    }
+
+    private void checkTerms(int value, int offset) {
+        if (value > limits.getMaxTerms()) {
+            throw ComplexityLimits.limitExceeded(offset, "number of terms exceeds the limit of %d", limits.getMaxTerms());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler.engine;
+
+import de.alexgruen.query.generated.QueryLexer;
+import de.alexgruen.query.generated.QueryParser;
+import de.alexgruen.query.util.KeywordTable;
+import org.antlr.v4.runtime.Token;
+
+/**
+ * Generated lexer that emits {@link QueryParser#CUSTOM_OPERATOR} tokens for custom term operator aliases.
+ * A VAR token is converted if its text is contained in the keyword table of the query context.
+ * The check reads the input in place, no token text is created.
+ */
+class CustomOperatorLexer extends QueryLexer {
+    private final KeywordTable customOperators;
+    private final CharSequenceCharStream stream;
+
+    CustomOperatorLexer(CharSequenceCharStream stream, KeywordTable customOperators) {
+        super(stream);
+        this.stream = stream;
+        this.customOperators = customOperators;
+    }
+
+    @Override
+    public Token emit() {
+        if (_type == VAR && customOperators.size() > 0
+                && customOperators.contains(stream.getInput(), _tokenStartCharIndex, getCharIndex())) {
+            _type = QueryParser.CUSTOM_OPERATOR;
+        }
+        return super.emit();
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler.engine;
+
+/**
+ * Bounds the DFA cache that is shared by all instances of the generated lexer and parser.
+ * <p>
+ * ANTLR caches prediction results in DFA states that are never removed.
+ * An {@link AntlrParserEngine} counts the states every {@link #getCheckInterval()} parsed inputs
+ * and clears the cache if more than {@link #getMaxStates()} states are found.
+ */
+public class DfaCachePolicy {
+    /**
+     * The DFA cache is never checked or cleared
+     */
+    public static final DfaCachePolicy UNBOUNDED = new DfaCachePolicy(Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    private final int maxStates;
+    private final int checkInterval;
+
+    /**
+     * Creates a new policy
+     * @param maxStates maximum number of DFA states of lexer and parser
+     * @param checkInterval number of parsed inputs between two checks
+     */
+    public DfaCachePolicy(int maxStates, int checkInterval) {
+        if (maxStates <= 0 || checkInterval <= 0) {
+            throw new IllegalArgumentException("maxStates and checkInterval must be positive");
+        }
+        this.maxStates = maxStates;
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * Returns the maximum number of DFA states of lexer and parser
+     * @return maximum number of states
+     */
+    public int getMaxStates() {
+        return maxStates;
+    }
+
+    /**
+     * Returns the number of parsed inputs between two checks
+     * @return check interval
+     */
+    public int getCheckInterval() {
+        return checkInterval;
+    }
+
+    /**
+     * Returns true if the DFA cache is bounded by this policy
+     * @return true if bounded
+     */
+    public boolean isBounded() {
+        return checkInterval != Integer.MAX_VALUE;
+    }
+}
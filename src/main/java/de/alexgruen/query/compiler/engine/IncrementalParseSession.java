@@ -0,0 +1,386 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler.engine;
+
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.compiler.QueryCompilerException;
+import de.alexgruen.query.compiler.QueryContext;
+import de.alexgruen.query.util.KeywordTable;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Stateful parser for an input that is edited step by step (e.g. a filter box that is parsed on every keystroke).
+ * <p>
+ * The session keeps the text, its tokens and the nodes of all parsed sub queries.
+ * After an edit only the tokens that can be affected are tokenized again:
+ * every token stores the largest input index that was examined to match it,
+ * tokenizing starts at the first token that examined an edited character and stops as soon as
+ * a new token starts at the (moved) position of an old token after the edit.
+ * Like a gap buffer, tokens and extents after the last edit are stored relative to the end of the text,
+ * so an edit does not touch the tokens after it, only those between the previous and the current edit are moved.
+ * The parser then reuses the nodes of all terms, bracketed sub queries and full text search parts
+ * whose tokens did not change, only logical operator nodes along the changed path are created again.
+ * <p>
+ * Returned nodes are shared between the results of consecutive edits and must not be modified.
+ * Like {@link de.alexgruen.query.compiler.QueryTreeCompiler}, leading and trailing whitespace is ignored
+ * and the remaining text is parsed like {@link RecursiveDescentParserEngine}. A session is not thread-safe.
+ */
+public class IncrementalParseSession {
+
+    private final QueryContext<?> context;
+    private final KeywordTable customOperators;
+    private final StringBuilder text = new StringBuilder();
+    private final SubtreeTable subtrees = new SubtreeTable();
+
+    //tokens of the text, the last token is EOF. null if the text could not be tokenized
+    private QueryToken[] tokens;
+    private int tokenCount;
+    //largest examined index of every token and the maximum over all previous tokens
+    private int[] extents;
+    private int[] maxExtents;
+    //tokens and extents at and after the gap are relative to the end of the text
+    private int gap;
+
+    private QueryNode root;
+    private int lastTokenizedCount;
+    private int lastReusedCount;
+    private int lastUpdatedCount;
+
+    /**
+     * Creates a session with an empty text
+     * @param context query context
+     */
+    public IncrementalParseSession(QueryContext<?> context) {
+        this.context = context;
+        this.customOperators = context.getCustomTermOperatorTable();
+    }
+
+    /**
+     * Replaces the whole text and parses it
+     * A {@link QueryCompilerException} is thrown if the text is not a valid query,
+     * the session can still be edited afterwards.
+     * @param newText new text
+     * @return root node of the text
+     */
+    public QueryNode setText(CharSequence newText) {
+        context.getComplexityLimits().checkInputLength(newText.length());
+        text.setLength(0);
+        text.append(newText);
+        tokens = null;
+        subtrees.clear();
+        return parse();
+    }
+
+    /**
+     * Applies an edit to the text and parses the result.
+     * A {@link QueryCompilerException} is thrown if the edited text is not a valid query,
+     * the session can still be edited afterwards.
+     * @param offset start of the edit
+     * @param removed number of removed characters
+     * @param inserted inserted characters
+     * @return root node of the edited text
+     */
+    public QueryNode edit(int offset, int removed, CharSequence inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > text.length()) {
+            throw new IndexOutOfBoundsException(String.format("edit [%d, %d) is outside of the text (length %d)",
+                    offset, offset + removed, text.length()));
+        }
+        context.getComplexityLimits().checkInputLength(text.length() - removed + inserted.length());
+        if (tokens == null) {
+            text.replace(offset, offset + removed, inserted.toString());
+            return parse();
+        }
+        try {
+            retokenize(offset, removed, inserted);
+        } catch (QueryCompilerException e) {
+            //the next edit tokenizes the whole text
+            tokens = null;
+            subtrees.clear();
+            root = null;
+            throw e;
+        }
+        return parseTokens();
+    }
+
+    /**
+     * Returns the current text
+     * @return text
+     */
+    public String getText() {
+        return text.toString();
+    }
+
+    /**
+     * Returns the root node of the current text or null if the text is not a valid query
+     * @return root node or null
+     */
+    public QueryNode getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns the number of tokens (without EOF) of the current text
+     * @return number of tokens
+     */
+    public int getTokenCount() {
+        return tokens == null ? 0 : tokenCount - 1;
+    }
+
+    /**
+     * Returns the number of tokens that were created by the last edit (including EOF)
+     * @return number of tokenized tokens
+     */
+    public int getLastTokenizedCount() {
+        return lastTokenizedCount;
+    }
+
+    /**
+     * Returns the number of sub query nodes that were reused by the last parse
+     * @return number of reused nodes
+     */
+    public int getLastReusedCount() {
+        return lastReusedCount;
+    }
+
+    /**
+     * Returns the number of tokens whose stored position or extent was changed by the last edit,
+     * tokens after the edit are only counted if the largest examined index before them changed
+     * @return number of updated tokens
+     */
+    public int getLastUpdatedCount() {
+        return lastUpdatedCount;
+    }
+
+    /**
+     * Tokenizes and parses the whole text
+     */
+    private QueryNode parse() {
+        tokens = null;
+        subtrees.clear();
+        root = null;
+        QueryTokenizer tokenizer = new QueryTokenizer(trimmed(), customOperators, true);
+        tokenizer.seek(trimmedStart());
+        QueryToken[] newTokens = new QueryToken[16];
+        int[] newExtents = new int[16];
+        int count = 0;
+        QueryToken token;
+        do {
+            token = tokenizer.next();
+            if (count == newTokens.length) {
+                newTokens = Arrays.copyOf(newTokens, count * 2);
+                newExtents = Arrays.copyOf(newExtents, count * 2);
+            }
+            newTokens[count] = token;
+            newExtents[count++] = tokenizer.getExtent();
+        } while (token.getType() != QueryTokenType.EOF);
+        tokens = newTokens;
+        extents = newExtents;
+        tokenCount = count;
+        gap = count;
+        maxExtents = new int[tokens.length];
+        int max = -1;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, extents[i]);
+            maxExtents[i] = max;
+        }
+        lastTokenizedCount = count;
+        lastUpdatedCount = count;
+        return parseTokens();
+    }
+
+    /**
+     * Applies an edit to the text and tokenizes the affected part again
+     */
+    private void retokenize(int offset, int removed, CharSequence inserted) {
+        int delta = inserted.length() - removed;
+        //first token that examined an edited character
+        //the last token also examined the end of the trimmed text, which moves if trailing whitespace is edited
+        int first = firstAffected(Math.min(offset, trimmedEnd()));
+        lastUpdatedCount = moveGap(first);
+        int restart = first == 0 ? 0 : tokens[first - 1].getEnd();
+        //tokens from first on are relative to the end and move with the edit
+        text.replace(offset, offset + removed, inserted.toString());
+
+        QueryTokenizer tokenizer = new QueryTokenizer(trimmed(), customOperators, true);
+        tokenizer.seek(Math.max(restart, trimmedStart()));
+        QueryToken[] newTokens = new QueryToken[8];
+        int[] newExtents = new int[8];
+        int count = 0;
+        int editEnd = offset + inserted.length();
+        int old = first;
+        while (true) {
+            QueryToken token = tokenizer.next();
+            int start = token.getStart();
+            if (start >= editEnd) {
+                //old tokens after the edit that may start at the same position
+                while (old < tokenCount && (tokens[old].getStart() - delta < offset + removed || tokens[old].getStart() < start)) {
+                    old++;
+                }
+                if (old < tokenCount && tokens[old].getStart() == start) {
+                    break;
+                }
+            }
+            if (count == newTokens.length) {
+                newTokens = Arrays.copyOf(newTokens, count * 2);
+                newExtents = Arrays.copyOf(newExtents, count * 2);
+            }
+            newTokens[count] = token;
+            newExtents[count++] = tokenizer.getExtent();
+            if (token.getType() == QueryTokenType.EOF) {
+                old = tokenCount;
+                break;
+            }
+        }
+        lastTokenizedCount = count;
+
+        //replace the tokens [first, old) with the new tokens, the following tokens keep their relative positions
+        int tail = tokenCount - old;
+        int newCount = first + count + tail;
+        if (newCount > tokens.length) {
+            int capacity = Math.max(newCount, tokens.length * 2);
+            tokens = Arrays.copyOf(tokens, capacity);
+            extents = Arrays.copyOf(extents, capacity);
+            maxExtents = Arrays.copyOf(maxExtents, capacity);
+        }
+        System.arraycopy(tokens, old, tokens, first + count, tail);
+        System.arraycopy(extents, old, extents, first + count, tail);
+        System.arraycopy(maxExtents, old, maxExtents, first + count, tail);
+        System.arraycopy(newTokens, 0, tokens, first, count);
+        System.arraycopy(newExtents, 0, extents, first, count);
+        Arrays.fill(tokens, newCount, Math.max(newCount, tokenCount), null);
+        tokenCount = newCount;
+        gap = first + count;
+        lastUpdatedCount += count + updateMaxExtents(first);
+        subtrees.replace(first, old, count);
+    }
+
+    /**
+     * Returns the index of the first token whose match examined a character at or after an offset
+     */
+    private int firstAffected(int offset) {
+        int low = 0;
+        int high = tokenCount - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (maxExtent(mid) >= offset) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the text without trailing whitespace, indexes are not changed
+     */
+    private CharSequence trimmed() {
+        return CharBuffer.wrap(text, 0, trimmedEnd());
+    }
+
+    private int trimmedStart() {
+        int start = 0;
+        while (start < text.length() && text.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private int trimmedEnd() {
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Moves the gap to a token index, the tokens in between are anchored at the other end of the text
+     * @return number of moved tokens
+     */
+    private int moveGap(int to) {
+        int length = text.length();
+        for (int i = gap; i < to; i++) {
+            tokens[i] = tokens[i].anchorAtStart();
+            extents[i] += length;
+            maxExtents[i] += length;
+        }
+        for (int i = to; i < gap; i++) {
+            tokens[i] = tokens[i].anchorAtEnd(text);
+            extents[i] -= length;
+            maxExtents[i] -= length;
+        }
+        int moved = Math.abs(gap - to);
+        gap = to;
+        return moved;
+    }
+
+    private int extent(int i) {
+        return i < gap ? extents[i] : extents[i] + text.length();
+    }
+
+    private int maxExtent(int i) {
+        return i < gap ? maxExtents[i] : maxExtents[i] + text.length();
+    }
+
+    /**
+     * Updates the maximum extents from a token index.
+     * Stops at the first token after the gap whose maximum did not change,
+     * the following maximums are relative to the end like their extents and are still valid.
+     * @return number of updated tokens
+     */
+    private int updateMaxExtents(int from) {
+        int length = text.length();
+        int max = from == 0 ? -1 : maxExtent(from - 1);
+        int i = from;
+        for (; i < tokenCount; i++) {
+            max = Math.max(max, extent(i));
+            int stored = i < gap ? max : max - length;
+            if (i >= gap && maxExtents[i] == stored) {
+                break;
+            }
+            maxExtents[i] = stored;
+        }
+        return Math.max(0, i - Math.max(from, gap));
+    }
+
+    /**
+     * Parses the current tokens and reuses unchanged sub queries
+     */
+    private QueryNode parseTokens() {
+        root = null;
+        subtrees.resetHits();
+        try {
+            QueryTokenizer errors = new QueryTokenizer(trimmed(), customOperators);
+            RecursiveDescentParser parser = new RecursiveDescentParser(context, errors, tokens, tokenCount, subtrees);
+            root = parser.isEmpty() ? new QueryNode() : parser.parse();
+            return root;
+        } finally {
+            lastReusedCount = subtrees.resetHits();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler.engine;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe counters for the prediction modes used by the {@link AntlrParseSession}s of an engine
+ */
+class ParseModeCounter {
+    private final LongAdder sllCount = new LongAdder();
+    private final LongAdder llCount = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+
+    void sll() {
+        sllCount.increment();
+    }
+
+    void ll() {
+        llCount.increment();
+    }
+
+    void error() {
+        errorCount.increment();
+    }
+
+    ParseModeStats snapshot() {
+        return new ParseModeStats(sllCount.sum(), llCount.sum(), errorCount.sum());
+    }
+}
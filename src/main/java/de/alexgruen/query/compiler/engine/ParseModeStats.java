@@ -0,0 +1,87 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler.engine;
+
+/**
+ * Snapshot of the counters of an {@link AntlrParserEngine} that show which prediction mode parsed the inputs
+ */
+public class ParseModeStats {
+    private final long sllCount;
+    private final long llCount;
+    private final long errorCount;
+
+    public ParseModeStats(long sllCount, long llCount, long errorCount) {
+        this.sllCount = sllCount;
+        this.llCount = llCount;
+        this.errorCount = errorCount;
+    }
+
+    /**
+     * Returns the number of inputs that were parsed with SLL prediction (fast path)
+     * @return number of SLL parses
+     */
+    public long getSllCount() {
+        return sllCount;
+    }
+
+    /**
+     * Returns the number of inputs that were successfully parsed with full LL prediction.
+     * In {@link AntlrParseMode#SLL_THEN_LL} mode these are the inputs that failed with SLL prediction.
+     * @return number of LL parses
+     */
+    public long getLlCount() {
+        return llCount;
+    }
+
+    /**
+     * Returns the number of inputs that were rejected with a syntax error
+     * @return number of errors
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Returns the total number of parsed inputs
+     * @return number of inputs
+     */
+    public long getParseCount() {
+        return sllCount + llCount + errorCount;
+    }
+
+    /**
+     * Returns the ratio of SLL parses to all parsed inputs or 0.0 if no input was parsed
+     * @return SLL rate
+     */
+    public double getSllRate() {
+        long parses = getParseCount();
+        return parses == 0 ? 0.0 : (double) sllCount / parses;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ParseModeStats{sll=%d, ll=%d, errors=%d}", sllCount, llCount, errorCount);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler.engine;
+
+public class ParserEngines {
+    /**
+     * Parser engine using the lexer and parser generated from Query.g4 (default)
+     */
+    public final static ParserEngineFactory ANTLR = AntlrParserEngine::new;
+
+    /**
+     * Parser engine using the lexer and parser generated from Query.g4.
+     * Inputs are parsed with SLL prediction first and only parsed again with full LL prediction if that fails
+     * (see {@link AntlrParseMode#SLL_THEN_LL}).
+     */
+    public final static ParserEngineFactory ANTLR_SLL_THEN_LL = c -> new AntlrParserEngine(c, AntlrParseMode.SLL_THEN_LL);
+
+    /**
+     * Hand-written lexer and recursive descent parser that builds query nodes directly.
+     * Accepts the same language as {@link #ANTLR}.
+     */
+    public final static ParserEngineFactory RECURSIVE_DESCENT = RecursiveDescentParserEngine::new;
+
+    /**
+     * Creates a factory for parser engines using the lexer and parser generated from Query.g4
+     * @param mode prediction strategy
+     * @param dfaCachePolicy policy for the DFA cache shared by all generated lexers and parsers
+     * @return parser engine factory
+     */
+    public static ParserEngineFactory antlr(AntlrParseMode mode, DfaCachePolicy dfaCachePolicy) {
+        return c -> new AntlrParserEngine(c, mode, dfaCachePolicy);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler.engine;
+
+import de.alexgruen.query.term.Field;
+import de.alexgruen.query.term.FieldTable;
+
+/**
+ * Token produced by the {@link QueryTokenizer}.
+ * The token text is only created if it is requested, unless the input is read from a stream.
+ * Tokens of an {@link IncrementalParseSession} after the last edit are anchored at the end of the text,
+ * their position follows edits before them without creating a new token.
+ */
+public class QueryToken {
+    private final QueryTokenType type;
+    private final CharSequence input;
+    private final String text;
+    private final int start;
+    private final int end;
+    //start and end are relative to the end of the input
+    private final boolean fromEnd;
+
+    /**
+     * Creates a new token
+     * @param type token type
+     * @param input input characters
+     * @param start start index in the input (inclusive)
+     * @param end end index in the input (exclusive)
+     */
+    public QueryToken(QueryTokenType type, CharSequence input, int start, int end) {
+        this(type, input, null, start, end, false);
+    }
+
+    private QueryToken(QueryTokenType type, CharSequence input, String text, int start, int end, boolean fromEnd) {
+        this.type = type;
+        this.input = input;
+        this.text = text;
+        this.start = start;
+        this.end = end;
+        this.fromEnd = fromEnd;
+    }
+
+    /**
+     * Creates a new token with a materialized text.
+     * Used for stream input, where the characters are released after the token is matched.
+     * @param type token type
+     * @param text token text
+     * @param start start index in the input (inclusive)
+     * @param end end index in the input (exclusive)
+     * @return token
+     */
+    static QueryToken materialized(QueryTokenType type, String text, int start, int end) {
+        return new QueryToken(type, text, text, start, end, false);
+    }
+
+    /**
+     * Returns a copy of this token whose position is relative to the end of a text,
+     * it moves with every edit of the text before the token.
+     * The token text is created if it is not materialized yet.
+     * @param anchor text that contains the token
+     * @return token anchored at the end of the text
+     */
+    QueryToken anchorAtEnd(CharSequence anchor) {
+        String t = type == QueryTokenType.EOF ? null : getText();
+        int length = anchor.length();
+        return new QueryToken(type, anchor, t, getStart() - length, getEnd() - length, true);
+    }
+
+    /**
+     * Returns a copy of this token at its current absolute position.
+     * The token text is created if it is not materialized yet.
+     * @return token anchored at the start of the text
+     */
+    QueryToken anchorAtStart() {
+        String t = type == QueryTokenType.EOF ? null : getText();
+        return new QueryToken(type, t, t, getStart(), getEnd(), false);
+    }
+
+    /**
+     * Returns the token type
+     * @return token type
+     */
+    public QueryTokenType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the start index in the input string (inclusive)
+     * @return start index
+     */
+    public int getStart() {
+        return fromEnd ? input.length() + start : start;
+    }
+
+    /**
+     * Returns the end index in the input string (exclusive)
+     * @return end index
+     */
+    public int getEnd() {
+        return fromEnd ? input.length() + end : end;
+    }
+
+    /**
+     * Returns the text of the token
+     * @return token text
+     */
+    public String getText() {
+        if (type == QueryTokenType.EOF) {
+            return "<EOF>";
+        }
+        if (text != null) {
+            return text;
+        }
+        return input.subSequence(start, end).toString();
+    }
+
+    /**
+     * Returns the canonical field for the text of this token, known fields are found without creating the text
+     * @param fields field table
+     * @return field
+     */
+    Field toField(FieldTable fields) {
+        return text != null ? fields.intern(text) : fields.intern(input, start, end);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s '%s' [%d,%d)", type, getText(), getStart(), getEnd());
+    }
+}
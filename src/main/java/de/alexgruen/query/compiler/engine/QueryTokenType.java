@@ -0,0 +1,56 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler.engine;
+
+/**
+ * Token types produced by the {@link QueryTokenizer}.
+ * The types correspond to the lexer rules of the query grammar (Query.g4).
+ * The declaration order is the order of the lexer rules and is used to resolve
+ * matches of equal length (the first declared type wins).
+ */
+public enum QueryTokenType {
+    REGEX,
+    MATCH,
+    OPEN_BRACKET,
+    CLOSE_BRACKET,
+    NEGATE,
+    POSITIVE,
+    AND_OPERATOR,
+    OR_OPERATOR,
+    TERM_OPERATOR,
+    IN_LIST,
+    NUMBER,
+    BOOLEAN_VALUE,
+    TEXT_VALUE,
+    NULL,
+    COLUMN,
+    VAR,
+    WS,
+    /**
+     * VAR token that is a custom term operator alias
+     */
+    CUSTOM_OPERATOR,
+    EOF
+}
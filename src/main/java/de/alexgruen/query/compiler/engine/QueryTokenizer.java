@@ -0,0 +1,585 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler.engine;
+
+import de.alexgruen.query.compiler.QueryCompilerException;
+import de.alexgruen.query.compiler.QueryError;
+import de.alexgruen.query.util.KeywordTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Hand-written lexer for the query language.
+ * <p>
+ * Recognizes the same tokens as the lexer generated from Query.g4:
+ * at every position the longest match wins, matches of equal length are resolved
+ * by the declaration order in {@link QueryTokenType}.
+ * Whitespace tokens are skipped.
+ */
+public class QueryTokenizer {
+
+    private static final String[] MATCH_OPERATORS = {"~=", "~"};
+    private static final String[] AND_OPERATORS = {"AND", "and", "&&", "&"};
+    private static final String[] OR_OPERATORS = {"OR", "or", "||", "|", "NOR", "nor"};
+    private static final String[] TERM_OPERATORS = {
+            "EQ", "eq", "==", "=",
+            "NE", "ne", "!=",
+            "LE", "le", "<=",
+            "LT", "lt", "<",
+            "GT", "gt", ">",
+            "GE", "ge", ">=",
+            "TEXT", "text", "*="
+    };
+    private static final String[] BOOLEAN_VALUES = {"true", "false"};
+    private static final String[] NULL_VALUES = {"null", "NULL", "NA", "na"};
+
+    private final CharSequence input;
+    private final KeywordTable customOperators;
+    //input read from a stream or null
+    private final ReaderCharSequence stream;
+    //true if token texts are created when the token is matched
+    private final boolean materialize;
+    //start positions of the last tokens, errors can be reported for tokens in the lookahead of the parser
+    private final int[] recentStarts = new int[4];
+    private int tokenCount;
+    //number of available characters, only changes for stream input
+    private int length;
+    private int position;
+    //largest index examined while matching the current token
+    private int examined;
+
+    //work list used to explore the possible ends of variable names
+    private int[] pending = new int[4];
+    private int pendingCount;
+    private final BitSet visited = new BitSet();
+    private int varNameStart;
+
+    /**
+     * Creates a tokenizer for input characters. The characters are read in place.
+     * @param input input characters
+     */
+    public QueryTokenizer(CharSequence input) {
+        this(input, KeywordTable.EMPTY);
+    }
+
+    /**
+     * Creates a tokenizer for input characters that recognizes custom term operators.
+     * VAR tokens contained in the keyword table are returned as {@link QueryTokenType#CUSTOM_OPERATOR}.
+     * @param input input characters
+     * @param customOperators custom term operator aliases
+     */
+    public QueryTokenizer(CharSequence input, KeywordTable customOperators) {
+        this(input, customOperators, false);
+    }
+
+    /**
+     * Creates a tokenizer for input characters that may change after the tokens are matched.
+     * Token texts are created when the token is matched.
+     * @param input input characters
+     * @param customOperators custom term operator aliases
+     * @param materialize true if token texts are created when the token is matched
+     */
+    QueryTokenizer(CharSequence input, KeywordTable customOperators, boolean materialize) {
+        this.input = input;
+        this.customOperators = customOperators;
+        this.stream = null;
+        this.materialize = materialize;
+        this.length = input.length();
+    }
+
+    /**
+     * Creates a tokenizer that reads the input from a stream.
+     * The characters are read on demand and released after a token is matched,
+     * so only the text of the current token has to fit into memory.
+     * Token texts are created when the token is matched.
+     * @param stream input characters
+     * @param customOperators custom term operator aliases
+     */
+    QueryTokenizer(ReaderCharSequence stream, KeywordTable customOperators) {
+        this.input = stream;
+        this.customOperators = customOperators;
+        this.stream = stream;
+        this.materialize = true;
+        this.length = stream.length();
+    }
+
+    /**
+     * Continues tokenizing at a position. Used to re-tokenize a part of an edited input.
+     * @param position start of the next token or whitespace
+     */
+    void seek(int position) {
+        this.position = position;
+    }
+
+    /**
+     * Returns the largest input index that was examined to match the last token returned by {@link #next()}.
+     * The token does not change if only characters after this index are edited.
+     * If the index is the input length, the token depends on the end of the input.
+     * @return largest examined index
+     */
+    int getExtent() {
+        return examined;
+    }
+
+    /**
+     * Returns all tokens of the input string. The last token is always {@link QueryTokenType#EOF}.
+     * A {@link QueryCompilerException} is thrown if the input contains characters that can not be matched.
+     * @return list of tokens
+     */
+    public List<QueryToken> tokenize() {
+        List<QueryToken> tokens = new ArrayList<>();
+        QueryToken token;
+        do {
+            token = next();
+            tokens.add(token);
+        } while (token.getType() != QueryTokenType.EOF);
+        return tokens;
+    }
+
+    /**
+     * Returns the next token. Whitespace is skipped.
+     * @return next token
+     */
+    public QueryToken next() {
+        if (stream != null) {
+            //previous tokens are materialized, their characters are only needed for error messages
+            stream.discard(tokenCount < recentStarts.length ? 0 : recentStarts[tokenCount % recentStarts.length]);
+        }
+        while (has(position)) {
+            examined = position;
+            QueryToken token = match(position);
+            position = token.getEnd();
+            if (token.getType() != QueryTokenType.WS) {
+                recentStarts[tokenCount++ % recentStarts.length] = token.getStart();
+                return token;
+            }
+        }
+        examined = length;
+        return new QueryToken(QueryTokenType.EOF, input, length, length);
+    }
+
+    /**
+     * Matches the longest token at a position
+     * @param p start position
+     * @return matched token
+     */
+    private QueryToken match(int p) {
+        QueryTokenType type = null;
+        int best = 0;
+        int l;
+        if ((l = regex(p)) > best) {
+            best = l;
+            type = QueryTokenType.REGEX;
+        }
+        if ((l = literal(p, MATCH_OPERATORS)) > best) {
+            best = l;
+            type = QueryTokenType.MATCH;
+        }
+        if ((l = character(p, '(')) > best) {
+            best = l;
+            type = QueryTokenType.OPEN_BRACKET;
+        }
+        if ((l = character(p, ')')) > best) {
+            best = l;
+            type = QueryTokenType.CLOSE_BRACKET;
+        }
+        if ((l = Math.max(character(p, '!'), character(p, '-'))) > best) {
+            best = l;
+            type = QueryTokenType.NEGATE;
+        }
+        if ((l = character(p, '+')) > best) {
+            best = l;
+            type = QueryTokenType.POSITIVE;
+        }
+        if ((l = literal(p, AND_OPERATORS)) > best) {
+            best = l;
+            type = QueryTokenType.AND_OPERATOR;
+        }
+        if ((l = literal(p, OR_OPERATORS)) > best) {
+            best = l;
+            type = QueryTokenType.OR_OPERATOR;
+        }
+        if ((l = literal(p, TERM_OPERATORS)) > best) {
+            best = l;
+            type = QueryTokenType.TERM_OPERATOR;
+        }
+        if ((l = inList(p)) > best) {
+            best = l;
+            type = QueryTokenType.IN_LIST;
+        }
+        if ((l = number(p)) > best) {
+            best = l;
+            type = QueryTokenType.NUMBER;
+        }
+        if ((l = literal(p, BOOLEAN_VALUES)) > best) {
+            best = l;
+            type = QueryTokenType.BOOLEAN_VALUE;
+        }
+        if ((l = quoted(p)) > best) {
+            best = l;
+            type = QueryTokenType.TEXT_VALUE;
+        }
+        if ((l = literal(p, NULL_VALUES)) > best) {
+            best = l;
+            type = QueryTokenType.NULL;
+        }
+        if ((l = column(p)) > best) {
+            best = l;
+            type = QueryTokenType.COLUMN;
+        }
+        if ((l = varName(p)) > best) {
+            best = l;
+            type = QueryTokenType.VAR;
+        }
+        if ((l = whitespace(p)) > best) {
+            best = l;
+            type = QueryTokenType.WS;
+        }
+        if (type == null) {
+            throw syntaxError(QueryError.Type.TOKEN_RECOGNITION, String.valueOf(input.charAt(p)), null, p);
+        }
+        if (type == QueryTokenType.VAR && customOperators.contains(input, p, p + best)) {
+            type = QueryTokenType.CUSTOM_OPERATOR;
+        }
+        if (materialize && type != QueryTokenType.WS) {
+            return QueryToken.materialized(type, input.subSequence(p, p + best).toString(), p, p + best);
+        }
+        return new QueryToken(type, input, p, p + best);
+    }
+
+    /**
+     * REGEX : '/' (~('/') | '\\/')+ '/'
+     */
+    private int regex(int p) {
+        if (input.charAt(p) != '/') {
+            return 0;
+        }
+        int best = 0;
+        for (int j = p + 1; has(j); j++) {
+            if (input.charAt(j) != '/') {
+                continue;
+            }
+            if (j == p + 1) {
+                break;
+            }
+            best = j + 1 - p;
+            //an escaped slash can also be part of the expression
+            if (input.charAt(j - 1) != '\\') {
+                break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * STRING : '\'' (~('\'')|'\\\'') * '\''|'"' (~('"')|'\\"')* '"'
+     */
+    private int quoted(int p) {
+        char quote = input.charAt(p);
+        if (quote != '\'' && quote != '"') {
+            return 0;
+        }
+        int best = 0;
+        for (int j = p + 1; has(j); j++) {
+            if (input.charAt(j) != quote) {
+                continue;
+            }
+            best = j + 1 - p;
+            //an escaped quote can also be part of the string
+            if (j - 1 == p || input.charAt(j - 1) != '\\') {
+                break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * IN_LIST : (IN | NOT_IN) [ \t\n]* '(' (LIST_STRING | ~('(' | ')' | '\'' | '"'))* ')'
+     */
+    private int inList(int p) {
+        int j = p;
+        if (startsWith("NOT", j) || startsWith("not", j)) {
+            int ws = whitespace(j + 3);
+            if (ws == 0) {
+                return 0;
+            }
+            j += 3 + ws;
+        }
+        if (!startsWith("IN", j) && !startsWith("in", j)) {
+            return 0;
+        }
+        j += 2;
+        j += whitespace(j);
+        if (!has(j) || input.charAt(j) != '(') {
+            return 0;
+        }
+        //LIST_STRING : '\'' ('\\' . | ~('\'' | '\\'))* '\'' | '"' ('\\' . | ~('"' | '\\'))* '"'
+        for (j++; has(j); j++) {
+            char c = input.charAt(j);
+            if (c == ')') {
+                return j + 1 - p;
+            }
+            if (c == '(') {
+                return 0;
+            }
+            if (isQuote(c)) {
+                j++;
+                while (has(j) && input.charAt(j) != c) {
+                    j += input.charAt(j) == '\\' ? 2 : 1;
+                }
+                if (!has(j)) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * NUMBER : '-'? DIGIT+([.,]DIGIT+)?
+     */
+    private int number(int p) {
+        int j = p;
+        if (input.charAt(j) == '-') {
+            j++;
+        }
+        int digits = digits(j);
+        if (digits == 0) {
+            return 0;
+        }
+        j += digits;
+        if (has(j) && (input.charAt(j) == '.' || input.charAt(j) == ',')) {
+            int fraction = digits(j + 1);
+            if (fraction > 0) {
+                j += fraction + 1;
+            }
+        }
+        return j - p;
+    }
+
+    private int digits(int p) {
+        int j = p;
+        while (has(j) && input.charAt(j) >= '0' && input.charAt(j) <= '9') {
+            j++;
+        }
+        return j - p;
+    }
+
+    /**
+     * COLUMN : '.' VAR_NAME
+     */
+    private int column(int p) {
+        if (input.charAt(p) != '.' || !has(p + 1)) {
+            return 0;
+        }
+        int l = varName(p + 1);
+        return l == 0 ? 0 : l + 1;
+    }
+
+    /**
+     * VAR_NAME : TEXT ('.' TEXT)*
+     * <p>
+     * All possible ends of the name are explored and the longest one is returned.
+     * Starts of TEXT parts that can not be reached by continuing an unescaped part are kept in a work list.
+     */
+    private int varName(int p) {
+        int max = -1;
+        pendingCount = 0;
+        visited.clear();
+        varNameStart = p;
+        int start = p;
+        while (true) {
+            char c = input.charAt(start);
+            if (c == '\'' || c == '"') {
+                for (int j = start + 1; has(j); j++) {
+                    if (input.charAt(j) != c) {
+                        continue;
+                    }
+                    int end = j + 1;
+                    max = Math.max(max, end);
+                    if (has(end + 1) && input.charAt(end) == '.') {
+                        addPending(end + 1);
+                    }
+                    if (j - 1 == start || input.charAt(j - 1) != '\\') {
+                        break;
+                    }
+                }
+            } else if (isUnescapedStart(c)) {
+                int q = start + 1;
+                while (has(q) && isUnescapedPart(input.charAt(q))) {
+                    //a quoted part can follow a dot
+                    if (input.charAt(q) == '.' && has(q + 1) && isQuote(input.charAt(q + 1))) {
+                        addPending(q + 1);
+                    }
+                    q++;
+                }
+                max = Math.max(max, q);
+            }
+            if (pendingCount == 0) {
+                break;
+            }
+            start = pending[--pendingCount];
+        }
+        return max < 0 ? 0 : max - p;
+    }
+
+    /**
+     * Adds the start of a TEXT part to the work list of {@link #varName(int)}
+     * @param start start position
+     */
+    private void addPending(int start) {
+        //positions are stored relative to the start of the name
+        if (visited.get(start - varNameStart)) {
+            return;
+        }
+        visited.set(start - varNameStart);
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pendingCount * 2);
+        }
+        pending[pendingCount++] = start;
+    }
+
+    /**
+     * WS : (' ' | '\t' | '\n')+
+     */
+    private int whitespace(int p) {
+        int j = p;
+        while (has(j)) {
+            char c = input.charAt(j);
+            if (c != ' ' && c != '\t' && c != '\n') {
+                break;
+            }
+            j++;
+        }
+        return j - p;
+    }
+
+    /**
+     * Returns true if the character at an index is available.
+     * Stream input is read until the index is reached or the stream ends.
+     * @param index index in the input
+     * @return true if available
+     */
+    private boolean has(int index) {
+        if (index > examined) {
+            examined = index;
+        }
+        if (index < length) {
+            return true;
+        }
+        if (stream == null || !stream.fill(index)) {
+            return false;
+        }
+        length = stream.length();
+        return true;
+    }
+
+    private int character(int p, char c) {
+        return input.charAt(p) == c ? 1 : 0;
+    }
+
+    private int literal(int p, String[] literals) {
+        int best = 0;
+        for (String literal : literals) {
+            if (literal.length() > best && startsWith(literal, p)) {
+                best = literal.length();
+            }
+        }
+        return best;
+    }
+
+    private boolean startsWith(String literal, int p) {
+        if (!has(p + literal.length() - 1)) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (input.charAt(p + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isQuote(char c) {
+        return c == '\'' || c == '"';
+    }
+
+    /**
+     * First character of UNESCAPED_STRING : ~('.' | ' '|')' | '(' | '!' | '-' | '+' | '"' | '\'')
+     */
+    private static boolean isUnescapedStart(char c) {
+        switch (c) {
+            case '.':
+            case ' ':
+            case ')':
+            case '(':
+            case '!':
+            case '-':
+            case '+':
+            case '"':
+            case '\'':
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Following characters of UNESCAPED_STRING : ~('\''|' '|')' | '(')
+     */
+    private static boolean isUnescapedPart(char c) {
+        return c != '\'' && c != ' ' && c != ')' && c != '(';
+    }
+
+    /**
+     * Creates a syntax error exception for a position in the input string
+     * @param type error type
+     * @param offendingText offending token or character
+     * @param expected names of the expected tokens or null
+     * @param index position in the input string
+     * @return exception
+     */
+    QueryCompilerException syntaxError(QueryError.Type type, String offendingText, List<String> expected, int index) {
+        int line = 1;
+        int lineStart = 0;
+        int i = 0;
+        if (stream != null) {
+            //lines of released characters are counted by the stream, the message shows the available characters
+            line = stream.getLine();
+            lineStart = stream.getLineStart();
+            i = stream.getOffset();
+        }
+        for (; i < index && i < length; i++) {
+            if (input.charAt(i) == '\n') {
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        return new QueryCompilerException(new QueryError(type, input, index, line, index - lineStart, offendingText, expected));
+    }
+}
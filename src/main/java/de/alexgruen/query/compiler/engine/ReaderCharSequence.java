@@ -0,0 +1,174 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler.engine;
+
+import de.alexgruen.query.compiler.ComplexityLimits;
+import de.alexgruen.query.compiler.QueryCompilerException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Sliding window over the characters of a {@link Reader}.
+ * <p>
+ * Characters are addressed by their absolute index in the stream. They are read on demand
+ * ({@link #fill(int)}) and released with {@link #discard(int)}, only the characters between
+ * the discarded part and the last read character are kept in memory.
+ * {@link #length()} returns the number of characters read so far.
+ * Line numbers of discarded characters are counted, so errors can still report the line of a position.
+ */
+class ReaderCharSequence implements CharSequence {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final int maxLength;
+    private char[] buffer = new char[BUFFER_SIZE];
+    //absolute index of buffer[0]
+    private int offset;
+    //number of characters in the buffer
+    private int count;
+    private boolean eof;
+
+    //line and line start of the first character in the buffer
+    private int line = 1;
+    private int lineStart;
+
+    ReaderCharSequence(Reader reader) {
+        this(reader, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a sequence that rejects streams with more than <tt>maxLength</tt> characters
+     * @param reader input characters
+     * @param maxLength maximum number of characters
+     */
+    ReaderCharSequence(Reader reader, int maxLength) {
+        this.reader = reader;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Reads characters until the character at an index is available or the end of the stream is reached
+     * @param index absolute index
+     * @return true if the character is available
+     */
+    boolean fill(int index) {
+        while (index >= offset + count) {
+            if (eof) {
+                return false;
+            }
+            if (count == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int n;
+            try {
+                n = reader.read(buffer, count, buffer.length - count);
+            } catch (IOException e) {
+                throw new QueryCompilerException(String.format("error reading query input: %s", e.getMessage()), e);
+            }
+            if (n < 0) {
+                eof = true;
+            } else {
+                count += n;
+                if (offset + count > maxLength) {
+                    throw ComplexityLimits.limitExceeded(maxLength, "input exceeds the limit of %d characters", maxLength);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Releases all characters before an index. The buffer is compacted if at least half of it can be released.
+     * @param index absolute index of the first character that is kept
+     */
+    void discard(int index) {
+        int n = index - offset;
+        if (n < buffer.length / 2) {
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            if (buffer[i] == '\n') {
+                line++;
+                lineStart = offset + i + 1;
+            }
+        }
+        System.arraycopy(buffer, n, buffer, 0, count - n);
+        offset = index;
+        count -= n;
+    }
+
+    /**
+     * Returns the absolute index of the first character that is still available
+     * @return index
+     */
+    int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the line of the first available character (starting at 1)
+     * @return line
+     */
+    int getLine() {
+        return line;
+    }
+
+    /**
+     * Returns the absolute index of the start of the line of the first available character
+     * @return index
+     */
+    int getLineStart() {
+        return lineStart;
+    }
+
+    @Override
+    public int length() {
+        return offset + count;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < offset) {
+            throw new IndexOutOfBoundsException(String.format("character %d has been discarded", index));
+        }
+        return buffer[index - offset];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(buffer, start - offset, end - start);
+    }
+
+    /**
+     * Returns the available characters
+     * @return window content
+     */
+    @Override
+    public String toString() {
+        return new String(buffer, 0, count);
+    }
+}
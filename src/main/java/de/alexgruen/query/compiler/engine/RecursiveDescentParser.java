@@ -0,0 +1,536 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler.engine;
+
+import de.alexgruen.query.LogicalOperator;
+import de.alexgruen.query.LogicalOperators;
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.compiler.ComplexityLimits;
+import de.alexgruen.query.compiler.QueryCompilerException;
+import de.alexgruen.query.compiler.QueryContext;
+import de.alexgruen.query.compiler.QueryError;
+import de.alexgruen.query.term.Field;
+import de.alexgruen.query.term.FieldTable;
+import de.alexgruen.query.term.Term;
+import de.alexgruen.query.term.TermOperator;
+import de.alexgruen.query.term.TermOperators;
+import de.alexgruen.query.term.Value;
+import de.alexgruen.query.term.ValueSet;
+import de.alexgruen.query.util.CompilerUtil;
+import de.alexgruen.query.util.ValueSetParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Recursive descent parser for a single query string.
+ * <p>
+ * Builds the same query nodes as the ANTLR parser and the {@link de.alexgruen.query.compiler.QueryNodeBuilder}:
+ * AND binds tighter than OR and NOR, operators of the same level are left associative,
+ * consecutive AND or OR operations are joined in one n-ary node,
+ * negated brackets set the negate flag of the enclosed node.
+ * At most four tokens of lookahead are used.
+ * <p>
+ * For incremental parsing the tokens are read from a list and sub queries (terms, bracketed queries and full text search parts)
+ * are looked up in a {@link SubtreeTable} before they are parsed.
+ */
+class RecursiveDescentParser {
+
+    private static final int LOOKAHEAD = 4;
+
+    //expected tokens of syntax errors
+    private static final List<String> EXPECTED_EOF = Collections.singletonList("<EOF>");
+    private static final List<String> EXPECTED_OPERATION = Collections.unmodifiableList(
+            Arrays.asList("MATCH", "TERM_OPERATOR", "IN_LIST", "CUSTOM_OPERATOR", "VAR"));
+    private static final List<String> EXPECTED_VALUE = Collections.unmodifiableList(
+            Arrays.asList("NUMBER", "BOOLEAN_VALUE", "TEXT_VALUE", "NULL"));
+    private static final List<String> EXPECTED_SEARCH_VALUE = Collections.unmodifiableList(
+            Arrays.asList("NUMBER", "BOOLEAN_VALUE", "TEXT_VALUE", "NULL", "VAR", "CUSTOM_OPERATOR"));
+
+    private final QueryContext<?> context;
+    private final QueryTokenizer tokenizer;
+    private final ComplexityLimits limits;
+    private final FieldTable fields;
+    private final ComplexityBudget budget;
+
+    //ring buffer with the next tokens
+    private final QueryToken[] buffer = new QueryToken[LOOKAHEAD];
+    private int head;
+    private int size;
+
+    //token list and sub query table of incremental parsing or null
+    private final QueryToken[] tokens;
+    private final int tokenCount;
+    private final SubtreeTable subtrees;
+    //number of consumed tokens
+    private int consumed;
+    //frames of the open brackets
+    private QueryFrame[] frames = new QueryFrame[8];
+    private int depth;
+
+    RecursiveDescentParser(QueryContext<?> context, QueryTokenizer tokenizer) {
+        this.context = context;
+        this.tokenizer = tokenizer;
+        this.limits = context.getComplexityLimits();
+        this.fields = context.getFieldTable();
+        this.budget = new ComplexityBudget(limits);
+        this.tokens = null;
+        this.tokenCount = 0;
+        this.subtrees = null;
+    }
+
+    /**
+     * Creates a parser for a list of tokens. Sub queries are reused from and stored in a table.
+     * Reused nodes are shared and are never modified by the parser.
+     * @param context query context
+     * @param tokenizer tokenizer of the input, only used to report errors
+     * @param tokens tokens, the last token is {@link QueryTokenType#EOF}
+     * @param tokenCount number of tokens
+     * @param subtrees sub queries indexed by their first token
+     */
+    RecursiveDescentParser(QueryContext<?> context, QueryTokenizer tokenizer, QueryToken[] tokens, int tokenCount,
+                           SubtreeTable subtrees) {
+        this.context = context;
+        this.tokenizer = tokenizer;
+        this.limits = context.getComplexityLimits();
+        this.fields = context.getFieldTable();
+        this.budget = new ComplexityBudget(limits);
+        this.tokens = tokens;
+        this.tokenCount = tokenCount;
+        this.subtrees = subtrees;
+    }
+
+    /**
+     * compilationUnit : (query|full_search) EOF
+     * @return root node
+     */
+    QueryNode parse() {
+        QueryNode node = isQuery() ? parseQuery() : parseFullSearch();
+        if (la(1) != QueryTokenType.EOF) {
+            throw error(QueryError.Type.EXTRANEOUS_INPUT, EXPECTED_EOF, lt(1));
+        }
+        return node;
+    }
+
+    /**
+     * Returns true if the input contains no tokens
+     * @return true if empty
+     */
+    boolean isEmpty() {
+        return la(1) == QueryTokenType.EOF;
+    }
+
+    /**
+     * Decides if the input is a query or a full text search.
+     * If both are possible (variable CUSTOM_OPERATOR|VAR value EOF), the input is parsed as a query.
+     * @return true if the input is parsed as a query
+     */
+    private boolean isQuery() {
+        switch (la(1)) {
+            case OPEN_BRACKET:
+                return true;
+            case NEGATE:
+                return la(2) == QueryTokenType.OPEN_BRACKET;
+            case VAR:
+            case COLUMN:
+            case TEXT_VALUE:
+            case CUSTOM_OPERATOR:
+                switch (la(2)) {
+                    case TERM_OPERATOR:
+                    case MATCH:
+                    case IN_LIST:
+                        return true;
+                    case CUSTOM_OPERATOR:
+                    case VAR:
+                        //operator names and values are also valid full text search values
+                        return isValue(la(3))
+                                && (la(4) == QueryTokenType.EOF || isLogicalOperator(la(4)));
+                    default:
+                        return false;
+                }
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * query : and_query (OR_OPERATOR and_query)*
+     * <br>
+     * and_query : unary_query (AND_OPERATOR unary_query)*
+     * <br>
+     * unary_query : NEGATE? OPEN_BRACKET query CLOSE_BRACKET | term
+     * <p>
+     * Brackets are parsed with an explicit stack of {@link QueryFrame frames} instead of recursion,
+     * so the nesting depth is only limited by the heap.
+     * @return query node
+     */
+    private QueryNode parseQuery() {
+        depth = 0;
+        QueryFrame frame = pushFrame(false, 0, 0, 0);
+        while (true) {
+            QueryNode operand = reuseUnaryQuery();
+            if (operand == null) {
+                int start = consumed;
+                int offset = lt(1).getStart();
+                boolean negate = la(1) == QueryTokenType.NEGATE && la(2) == QueryTokenType.OPEN_BRACKET;
+                if (negate || la(1) == QueryTokenType.OPEN_BRACKET) {
+                    int terms = budget.getTerms();
+                    int mark = budget.mark();
+                    if (negate) {
+                        consume();
+                    }
+                    consume();
+                    budget.enter(offset);
+                    frame = pushFrame(negate, start, terms, mark);
+                    continue;
+                }
+                operand = parseTermQuery();
+            }
+            //complete all queries that end after the operand
+            while (true) {
+                frame.addAnd(operand);
+                if (la(1) == QueryTokenType.AND_OPERATOR) {
+                    frame.andOperator = context.getLogicalOperator(consume().getText());
+                    break;
+                }
+                frame.completeAnd();
+                if (la(1) == QueryTokenType.OR_OPERATOR) {
+                    frame.orOperator = context.getLogicalOperator(consume().getText());
+                    break;
+                }
+                QueryNode node = frame.orLeft;
+                frame = popFrame();
+                if (frame == null) {
+                    return node;
+                }
+                operand = closeBracket(node);
+            }
+        }
+    }
+
+    /**
+     * Returns the reused node of the unary query at the current position or null
+     * @return reused node or null
+     */
+    private QueryNode reuseUnaryQuery() {
+        if (subtrees == null) {
+            return null;
+        }
+        int start = consumed;
+        QueryNode node = subtrees.get(start, false);
+        if (node != null) {
+            budget.add(subtrees.getTermCount(start), subtrees.getDepth(start), lt(1).getStart());
+            consumed += subtrees.getTokenCount(start);
+        }
+        return node;
+    }
+
+    /**
+     * Parses a term that is a unary query and stores it in the sub query table
+     * @return term node
+     */
+    private QueryNode parseTermQuery() {
+        if (subtrees == null) {
+            return parseTerm();
+        }
+        int start = consumed;
+        int terms = budget.getTerms();
+        int mark = budget.mark();
+        QueryNode node = parseTerm();
+        subtrees.put(start, consumed - start, node, false, budget.getTerms() - terms, budget.unmark(mark));
+        return node;
+    }
+
+    /**
+     * Completes the bracket of the frame that was popped last
+     * @param node query node inside the bracket
+     * @return unary query node
+     */
+    private QueryNode closeBracket(QueryNode node) {
+        QueryFrame bracket = frames[depth];
+        expect(QueryTokenType.CLOSE_BRACKET);
+        budget.exit();
+        if (bracket.negate) {
+            if (subtrees != null) {
+                //the node can be a reused sub query that is shared with other trees
+                node = new QueryNode(true, node.getOperator(), node.getTerm(), node.getChildren());
+            } else {
+                node.setNegate(true);
+            }
+        }
+        if (subtrees != null) {
+            subtrees.put(bracket.start, consumed - bracket.start, node, false,
+                    budget.getTerms() - bracket.terms, budget.unmark(bracket.mark));
+        }
+        return node;
+    }
+
+    private QueryFrame pushFrame(boolean negate, int start, int terms, int mark) {
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+        }
+        QueryFrame frame = frames[depth];
+        if (frame == null) {
+            frame = new QueryFrame();
+            frames[depth] = frame;
+        }
+        frame.reset(negate, start, terms, mark);
+        depth++;
+        return frame;
+    }
+
+    /**
+     * Removes the top frame. The removed frame stays readable at <tt>frames[depth]</tt> until the next push.
+     * @return new top frame or null if the stack is empty
+     */
+    private QueryFrame popFrame() {
+        depth--;
+        return depth == 0 ? null : frames[depth - 1];
+    }
+
+    /**
+     * State of a query in brackets (or of the root query): the OR and AND operator chains parsed so far
+     * and the position of the bracket.
+     */
+    private static final class QueryFrame {
+        private QueryNode orLeft;
+        private QueryNode orChain;
+        private LogicalOperator orOperator;
+        private QueryNode andLeft;
+        private QueryNode andChain;
+        private LogicalOperator andOperator;
+        private boolean negate;
+        //token index, term count and depth mark at the start of the bracket
+        private int start;
+        private int terms;
+        private int mark;
+
+        private void reset(boolean negate, int start, int terms, int mark) {
+            this.orLeft = null;
+            this.orChain = null;
+            this.andLeft = null;
+            this.andChain = null;
+            this.negate = negate;
+            this.start = start;
+            this.terms = terms;
+            this.mark = mark;
+        }
+
+        private void addAnd(QueryNode right) {
+            if (andLeft == null) {
+                andLeft = right;
+            } else {
+                andChain = CompilerUtil.joinChain(andLeft, andChain, andOperator, right);
+                andLeft = andChain;
+            }
+        }
+
+        private void completeAnd() {
+            if (orLeft == null) {
+                orLeft = andLeft;
+            } else {
+                orChain = CompilerUtil.joinChain(orLeft, orChain, orOperator, andLeft);
+                orLeft = orChain;
+            }
+            andLeft = null;
+            andChain = null;
+        }
+    }
+
+    /**
+     * term : variable term_operation value | variable IN_LIST | variable MATCH REGEX
+     * @return query node
+     */
+    private QueryNode parseTerm() {
+        if (!isVariable(la(1))) {
+            throw error(QueryError.Type.NO_VIABLE_ALTERNATIVE, null, lt(1));
+        }
+        budget.term(lt(1).getStart());
+        Field field = consume().toField(fields);
+        QueryToken op = lt(1);
+        switch (op.getType()) {
+            case MATCH:
+                consume();
+                QueryToken regex = expect(QueryTokenType.REGEX);
+                limits.checkRegex(regex.getText(), regex.getStart());
+                Value pattern = new Value(CompilerUtil.createPattern(regex.getText()));
+                return new QueryNode(new Term(field, TermOperators.REGEX, pattern));
+            case IN_LIST:
+                consume();
+                TermOperator setOperator = ValueSetParser.isNegated(op.getText()) ? TermOperators.NOT_IN : TermOperators.IN;
+                ValueSet values = ValueSetParser.parse(op.getText(), limits.getMaxValueSetSize(), op.getStart());
+                return new QueryNode(new Term(field, setOperator, new Value(values)));
+            case TERM_OPERATOR:
+                consume();
+                break;
+            case CUSTOM_OPERATOR:
+            case VAR:
+                //unknown operator names are rejected after the value is parsed
+                consume();
+                break;
+            default:
+                throw error(QueryError.Type.MISMATCHED_INPUT, EXPECTED_OPERATION, op);
+        }
+        if (!isValue(la(1))) {
+            throw error(QueryError.Type.MISMATCHED_INPUT, EXPECTED_VALUE, lt(1));
+        }
+        Value value = createValue(consume());
+        TermOperator termOperator = context.getTermOperator(op.getText());
+        //set operators require a value list
+        if (termOperator == null || TermOperators.isSetOperator(termOperator)) {
+            throw new QueryCompilerException(QueryError.invalidInput("unsupported filter operation '%s'", op.getText()));
+        }
+        return new QueryNode(new Term(field, termOperator, value));
+    }
+
+    /**
+     * full_search : (NEGATE? full_search_value)+
+     * <p>
+     * A text search query tree only consists of a root node and leafs.
+     * All children are joined using the AND operation.
+     * @return root query node
+     */
+    private QueryNode parseFullSearch() {
+        List<QueryNode> required = new ArrayList<>();
+        List<QueryNode> forbidden = new ArrayList<>();
+        do {
+            QueryNode childNode = parseFullSearchPart();
+            if (childNode.isNegate()) {
+                forbidden.add(childNode);
+            } else {
+                required.add(childNode);
+            }
+        } while (la(1) == QueryTokenType.NEGATE || isFullSearchValue(la(1)));
+
+        QueryNode node = new QueryNode();
+        node.setOperator(LogicalOperators.AND);
+        node.addChildren(required);
+        node.addChildren(forbidden);
+        return node;
+    }
+
+    /**
+     * full_search_part : NEGATE? full_search_value
+     * @return leaf node, negated if the value is forbidden
+     */
+    private QueryNode parseFullSearchPart() {
+        int start = consumed;
+        if (subtrees != null) {
+            QueryNode node = subtrees.get(start, true);
+            if (node != null) {
+                budget.add(1, 0, lt(1).getStart());
+                consumed += subtrees.getTokenCount(start);
+                return node;
+            }
+        }
+        budget.term(lt(1).getStart());
+        boolean negate = false;
+        if (la(1) == QueryTokenType.NEGATE) {
+            consume();
+            negate = true;
+        }
+        if (!isFullSearchValue(la(1))) {
+            throw error(QueryError.Type.MISMATCHED_INPUT, EXPECTED_SEARCH_VALUE, lt(1));
+        }
+        QueryNode node = new QueryNode(new Term(Field.ALL_FIELDS, TermOperators.FULL_TEXT, createValue(consume())));
+        node.setNegate(negate);
+        if (subtrees != null) {
+            subtrees.put(start, consumed - start, node, true, 1, 0);
+        }
+        return node;
+    }
+
+    private static Value createValue(QueryToken token) {
+        QueryTokenType type = token.getType();
+        return CompilerUtil.createValue(token.getText(),
+                type == QueryTokenType.NULL,
+                type == QueryTokenType.NUMBER,
+                type == QueryTokenType.BOOLEAN_VALUE);
+    }
+
+    private static boolean isLogicalOperator(QueryTokenType type) {
+        return type == QueryTokenType.AND_OPERATOR || type == QueryTokenType.OR_OPERATOR;
+    }
+
+    private static boolean isVariable(QueryTokenType type) {
+        return type == QueryTokenType.VAR || type == QueryTokenType.COLUMN || type == QueryTokenType.TEXT_VALUE
+                || type == QueryTokenType.CUSTOM_OPERATOR;
+    }
+
+    private static boolean isValue(QueryTokenType type) {
+        return type == QueryTokenType.NUMBER || type == QueryTokenType.BOOLEAN_VALUE
+                || type == QueryTokenType.TEXT_VALUE || type == QueryTokenType.NULL;
+    }
+
+    private static boolean isFullSearchValue(QueryTokenType type) {
+        return type == QueryTokenType.VAR || type == QueryTokenType.CUSTOM_OPERATOR || isValue(type);
+    }
+
+    /**
+     * Returns the token at a lookahead position (1 = next token)
+     * @param i lookahead position
+     * @return token
+     */
+    private QueryToken lt(int i) {
+        if (tokens != null) {
+            int k = consumed + i - 1;
+            return tokens[k < tokenCount ? k : tokenCount - 1];
+        }
+        while (size < i) {
+            buffer[(head + size) % LOOKAHEAD] = tokenizer.next();
+            size++;
+        }
+        return buffer[(head + i - 1) % LOOKAHEAD];
+    }
+
+    private QueryTokenType la(int i) {
+        return lt(i).getType();
+    }
+
+    private QueryToken consume() {
+        QueryToken token = lt(1);
+        consumed++;
+        if (tokens != null) {
+            return token;
+        }
+        buffer[head] = null;
+        head = (head + 1) % LOOKAHEAD;
+        size--;
+        return token;
+    }
+
+    private QueryToken expect(QueryTokenType type) {
+        if (la(1) != type) {
+            throw error(QueryError.Type.MISMATCHED_INPUT, Collections.singletonList(type.name()), lt(1));
+        }
+        return consume();
+    }
+
+    private QueryCompilerException error(QueryError.Type type, List<String> expected, QueryToken token) {
+        return tokenizer.syntaxError(type, token.getText(), expected, token.getStart());
+    }
+}
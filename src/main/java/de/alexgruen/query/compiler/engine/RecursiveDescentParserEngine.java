@@ -0,0 +1,68 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler.engine;
+
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.compiler.QueryContext;
+import de.alexgruen.query.util.KeywordTable;
+
+import java.io.Reader;
+
+/**
+ * Parser engine that uses the hand-written {@link QueryTokenizer} and a recursive descent parser.
+ * Query nodes are created directly while parsing, no parse tree is built.
+ * Input can also be read from a stream ({@link #parse(Reader)}).
+ */
+public class RecursiveDescentParserEngine implements QueryParserEngine {
+
+    private QueryContext<?> context;
+    private KeywordTable customOperators;
+
+    public RecursiveDescentParserEngine(QueryContext<?> context) {
+        this.context = context;
+        this.customOperators = context.getCustomTermOperatorTable();
+    }
+
+    @Override
+    public QueryNode parse(CharSequence queryString) {
+        QueryTokenizer tokenizer = new QueryTokenizer(queryString, customOperators);
+        return new RecursiveDescentParser(context, tokenizer).parse();
+    }
+
+    /**
+     * Parses a query that is read from a stream.
+     * The input is tokenized on demand and query nodes are created while reading,
+     * only the characters of the current tokens are kept in memory.
+     * An empty input (only whitespace) results in an empty node. The reader is not closed.
+     * @param reader input characters
+     * @return root node
+     */
+    public QueryNode parse(Reader reader) {
+        QueryTokenizer tokenizer = new QueryTokenizer(
+                new ReaderCharSequence(reader, context.getComplexityLimits().getMaxInputLength()), customOperators);
+        RecursiveDescentParser parser = new RecursiveDescentParser(context, tokenizer);
+        return parser.isEmpty() ? new QueryNode() : parser.parse();
+    }
+}
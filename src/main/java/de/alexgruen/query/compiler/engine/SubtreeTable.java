@@ -0,0 +1,174 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.compiler.engine;
+
+import de.alexgruen.query.QueryNode;
+
+import java.util.Arrays;
+
+/**
+ * Query nodes of parsed sub queries, indexed by the first token of the sub query.
+ * <p>
+ * Used by the {@link IncrementalParseSession}: a sub query only depends on its own tokens,
+ * so its node can be reused as long as none of the tokens changed.
+ * If tokens are replaced ({@link #replace(int, int, int)}), entries that contain replaced tokens are removed
+ * and entries after the replaced range are moved.
+ */
+class SubtreeTable {
+    private QueryNode[] nodes = new QueryNode[16];
+    private int[] tokenCounts = new int[16];
+    //number of terms and nesting depth, used to check complexity limits for reused nodes
+    private int[] termCounts = new int[16];
+    private int[] depths = new int[16];
+    //true for full text search parts, false for unary queries
+    private boolean[] searchParts = new boolean[16];
+    private int size;
+    private int hits;
+
+    /**
+     * Returns the node of a sub query
+     * @param index index of the first token
+     * @param searchPart true for full text search parts, false for unary queries
+     * @return node or null
+     */
+    QueryNode get(int index, boolean searchPart) {
+        if (index >= size || nodes[index] == null || searchParts[index] != searchPart) {
+            return null;
+        }
+        hits++;
+        return nodes[index];
+    }
+
+    /**
+     * Returns the number of tokens of a sub query
+     * @param index index of the first token
+     * @return number of tokens
+     */
+    int getTokenCount(int index) {
+        return tokenCounts[index];
+    }
+
+    /**
+     * Returns the number of terms of a sub query
+     * @param index index of the first token
+     * @return number of terms
+     */
+    int getTermCount(int index) {
+        return termCounts[index];
+    }
+
+    /**
+     * Returns the number of nested brackets of a sub query
+     * @param index index of the first token
+     * @return depth
+     */
+    int getDepth(int index) {
+        return depths[index];
+    }
+
+    /**
+     * Stores the node of a sub query
+     * @param index index of the first token
+     * @param tokenCount number of tokens
+     * @param node query node
+     * @param searchPart true for full text search parts, false for unary queries
+     * @param termCount number of terms
+     * @param depth number of nested brackets
+     */
+    void put(int index, int tokenCount, QueryNode node, boolean searchPart, int termCount, int depth) {
+        ensureSize(index + 1);
+        nodes[index] = node;
+        tokenCounts[index] = tokenCount;
+        termCounts[index] = termCount;
+        depths[index] = depth;
+        searchParts[index] = searchPart;
+    }
+
+    /**
+     * Replaces a range of tokens with new tokens.
+     * Entries that contain a replaced token are removed, entries after the range are moved.
+     * @param from index of the first replaced token
+     * @param to index after the last replaced token
+     * @param count number of new tokens
+     */
+    void replace(int from, int to, int count) {
+        //sub queries that start before the range and end in or after it
+        for (int i = 0; i < Math.min(from, size); i++) {
+            if (nodes[i] != null && i + tokenCounts[i] > from) {
+                nodes[i] = null;
+            }
+        }
+        if (from >= size) {
+            return;
+        }
+        int tail = Math.max(size - to, 0);
+        int newSize = from + count + tail;
+        ensureSize(newSize);
+        if (tail > 0) {
+            System.arraycopy(nodes, to, nodes, from + count, tail);
+            System.arraycopy(tokenCounts, to, tokenCounts, from + count, tail);
+            System.arraycopy(termCounts, to, termCounts, from + count, tail);
+            System.arraycopy(depths, to, depths, from + count, tail);
+            System.arraycopy(searchParts, to, searchParts, from + count, tail);
+        }
+        Arrays.fill(nodes, from, from + count, null);
+        if (newSize < size) {
+            Arrays.fill(nodes, newSize, size, null);
+        }
+        size = newSize;
+    }
+
+    /**
+     * Removes all entries
+     */
+    void clear() {
+        Arrays.fill(nodes, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Returns the number of reused nodes since the last call and resets the counter
+     * @return number of reused nodes
+     */
+    int resetHits() {
+        int h = hits;
+        hits = 0;
+        return h;
+    }
+
+    private void ensureSize(int newSize) {
+        if (newSize > nodes.length) {
+            int capacity = Math.max(newSize, nodes.length * 2);
+            nodes = Arrays.copyOf(nodes, capacity);
+            tokenCounts = Arrays.copyOf(tokenCounts, capacity);
+            termCounts = Arrays.copyOf(termCounts, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+            searchParts = Arrays.copyOf(searchParts, capacity);
+        }
+        if (newSize > size) {
+            size = newSize;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.optimization;
+
+import de.alexgruen.query.LogicalOperator;
+import de.alexgruen.query.LogicalOperators;
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.QueryTreeWalker;
+import de.alexgruen.query.term.Field;
+import de.alexgruen.query.term.Term;
+import de.alexgruen.query.term.Value;
+import de.alexgruen.query.term.ValueSet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Rewrites a query tree to a canonical form, so equivalent spellings of a query result in equal trees and
+ * equal keys ({@link #key(QueryTree)}). <tt>x &gt; 1 &amp;&amp; y == 'a'</tt>, <tt>(y == "a") AND x gt 1</tt> and
+ * <tt>y = 'a' &amp; x &gt; 1.0</tt> have the same canonical form.
+ * <ul>
+ * <li>Children of AND and OR nodes with the same operator are moved to their parent
+ * (as in {@link RemoveRedundantBrackets}).</li>
+ * <li>Children of AND and OR nodes are sorted by their structural fingerprints ({@link QueryNode#getFingerprint()}),
+ * which are computed after the children are canonical.</li>
+ * <li>Decimal numbers without a fraction are replaced by long values, other numbers lose their input text.</li>
+ * </ul>
+ * Operator aliases are resolved by the parser, keys contain the names of the operators.
+ * The tree is changed in a single bottom-up pass, the cost is linear in the size of the tree plus sorting.
+ * The fingerprints of all changed nodes are updated.
+ */
+public class Canonicalize implements QueryOptimization {
+
+    /**
+     * Canonicalizes a query tree in place
+     * @param queryTree input query tree
+     */
+    @Override
+    public void apply(QueryTree queryTree) {
+        new QueryTreeWalker().postOrder(queryTree.getRoot(), Canonicalize::canonicalize);
+    }
+
+    /**
+     * Canonicalizes a node whose children are already canonical
+     * @param node node
+     */
+    private static void canonicalize(QueryNode node) {
+        Term term = node.getTerm();
+        if (term != null) {
+            Value value = term.getValue();
+            Value normalized = normalize(value);
+            if (normalized != value) {
+                term.setValue(normalized);
+            }
+        }
+        if (!node.getChildren().isEmpty() && isCommutative(node.getOperator())) {
+            flatten(node);
+            sort(node);
+        }
+        node.updateFingerprint();
+    }
+
+    /**
+     * Moves the children of children with the same operator to the node
+     */
+    private static void flatten(QueryNode node) {
+        List<QueryNode> children = node.getChildren();
+        int count = 0;
+        boolean flatten = false;
+        for (QueryNode child : children) {
+            if (canFlatten(node, child)) {
+                count += child.getChildren().size();
+                flatten = true;
+            } else {
+                count++;
+            }
+        }
+        if (!flatten) {
+            return;
+        }
+        List<QueryNode> flattened = new ArrayList<>(count);
+        for (QueryNode child : children) {
+            if (canFlatten(node, child)) {
+                flattened.addAll(child.getChildren());
+            } else {
+                flattened.add(child);
+            }
+        }
+        node.setChildren(flattened);
+    }
+
+    private static boolean canFlatten(QueryNode parent, QueryNode child) {
+        return child.getOperator() != null && child.getOperator().equals(parent.getOperator())
+                && !child.isNegate() && !parent.isNegate() && !child.getChildren().isEmpty();
+    }
+
+    private static boolean isCommutative(LogicalOperator operator) {
+        return operator != null && (operator.getName().equals(LogicalOperators.AND.getName())
+                || operator.getName().equals(LogicalOperators.OR.getName()));
+    }
+
+    /**
+     * Sorts the children of a node by their fingerprints. The sort is stable, so equal nodes keep their order.
+     */
+    private static void sort(QueryNode node) {
+        List<QueryNode> nodes = node.getChildren();
+        int n = nodes.size();
+        long[] hashes = new long[n];
+        boolean sorted = true;
+        for (int i = 0; i < n; i++) {
+            hashes[i] = nodes.get(i).getFingerprint();
+            sorted &= i == 0 || hashes[i - 1] <= hashes[i];
+        }
+        if (sorted) {
+            return;
+        }
+        QueryNode[] array = nodes.toArray(new QueryNode[0]);
+        mergeSort(hashes, array, hashes.clone(), array.clone(), 0, n);
+        for (int i = 0; i < n; i++) {
+            node.setChild(i, array[i]);
+        }
+    }
+
+    /**
+     * Sorts a range of keys and values, the temporary arrays contain a copy of the range
+     */
+    private static void mergeSort(long[] keys, QueryNode[] values, long[] tmpKeys, QueryNode[] tmpValues,
+                                  int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        //the halves are sorted in the temporary arrays and merged into the target arrays
+        mergeSort(tmpKeys, tmpValues, keys, values, from, mid);
+        mergeSort(tmpKeys, tmpValues, keys, values, mid, to);
+        for (int i = from, l = from, r = mid; i < to; i++) {
+            if (r >= to || (l < mid && tmpKeys[l] <= tmpKeys[r])) {
+                keys[i] = tmpKeys[l];
+                values[i] = tmpValues[l++];
+            } else {
+                keys[i] = tmpKeys[r];
+                values[i] = tmpValues[r++];
+            }
+        }
+    }
+
+    /**
+     * Replaces decimal numbers without a fraction by longs and removes the input text of numbers
+     * @param value input value or null
+     * @return canonical value
+     */
+    static Value normalize(Value value) {
+        if (value == null) {
+            return null;
+        }
+        switch (value.getType()) {
+            case Double:
+                double d = value.doubleValue();
+                if (isIntegral(d)) {
+                    return Value.of((long) d);
+                }
+                return value.getText() != null ? Value.of(d) : value;
+            case Long:
+                return value.getText() != null ? Value.of(value.longValue()) : value;
+            case ValueSet:
+                ValueSet set = value.getValueSet();
+                if (set.getType() != ValueSet.Type.Double) {
+                    return value;
+                }
+                double[] doubles = set.toDoubleArray();
+                long[] longs = new long[doubles.length];
+                for (int i = 0; i < doubles.length; i++) {
+                    if (!isIntegral(doubles[i])) {
+                        return value;
+                    }
+                    longs[i] = (long) doubles[i];
+                }
+                return new Value(ValueSet.ofLongs(longs));
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * True if a double is a whole number in the range of a long, -0.0 is kept as a double
+     */
+    private static boolean isIntegral(double d) {
+        return d >= -0x1p63 && d < 0x1p63 && d == Math.rint(d)
+                && (d != 0 || Double.doubleToRawLongBits(d) == 0);
+    }
+
+    /**
+     * Creates the key of a canonical tree. Trees have equal keys if they are structurally equal,
+     * so the keys of canonicalized trees can be used as keys of caches or to find duplicates.
+     * Strings, fields and patterns are escaped, so distinct trees have distinct keys.
+     * <pre>
+     * OR((x &gt; 1), !AND((y == 'a'), (z IN (1, 2))))
+     * </pre>
+     * @param queryTree canonical query tree
+     * @return canonical key
+     */
+    public static String key(QueryTree queryTree) {
+        StringBuilder sb = new StringBuilder();
+        //nodes and the strings between them, in the order they are printed
+        Deque<Object> stack = new ArrayDeque<>();
+        stack.push(queryTree.getRoot());
+        while (!stack.isEmpty()) {
+            Object top = stack.pop();
+            if (top instanceof String) {
+                sb.append((String) top);
+                continue;
+            }
+            QueryNode node = (QueryNode) top;
+            if (node.isNegate()) {
+                sb.append('!');
+            }
+            List<QueryNode> children = node.getChildren();
+            if (children.isEmpty()) {
+                appendTerm(sb, node.getTerm());
+                continue;
+            }
+            sb.append(node.getOperator() == null ? "" : node.getOperator().getName());
+            if (node.getTerm() != null) {
+                sb.append('[');
+                appendTerm(sb, node.getTerm());
+                sb.append(']');
+            }
+            sb.append('(');
+            stack.push(")");
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+                if (i > 0) {
+                    stack.push(", ");
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendTerm(StringBuilder sb, Term term) {
+        if (term == null) {
+            sb.append('*');
+            return;
+        }
+        sb.append('(');
+        appendField(sb, term.getField());
+        sb.append(' ').append(term.getOperator() == null ? "" : term.getOperator().getName()).append(' ');
+        appendValue(sb, term.getValue());
+        sb.append(')');
+    }
+
+    private static void appendValue(StringBuilder sb, Value value) {
+        if (value == null || value.isNull()) {
+            sb.append("null");
+            return;
+        }
+        switch (value.getType()) {
+            case String:
+                appendQuoted(sb, value.getString(), '\'');
+                break;
+            case Pattern:
+                Pattern pattern = value.getPattern();
+                appendQuoted(sb, pattern.pattern(), '/');
+                if (pattern.flags() != 0) {
+                    sb.append(pattern.flags());
+                }
+                break;
+            case ValueSet:
+                ValueSet set = value.getValueSet();
+                sb.append('(');
+                for (int i = 0; i < set.size(); i++) {
+                    if (i > 0) {
+                        sb.append(", ");
+                    }
+                    if (set.getType() == ValueSet.Type.String) {
+                        appendQuoted(sb, set.getString(i), '\'');
+                    } else if (set.getType() == ValueSet.Type.Long) {
+                        sb.append(set.getLong(i));
+                    } else {
+                        sb.append(set.getDouble(i));
+                    }
+                }
+                sb.append(')');
+                break;
+            default:
+                sb.append(value.getString());
+        }
+    }
+
+    /**
+     * Appends the parts of the field path joined by dots, parts that are not plain names are quoted,
+     * so <tt>a.b</tt> (two parts) and <tt>'a.b'</tt> (one part) have different keys
+     */
+    private static void appendField(StringBuilder sb, Field field) {
+        String[] path = field == null ? null : field.getPath();
+        if (path == null) {
+            path = new String[]{field == null ? "" : field.getFullPath()};
+        }
+        for (int i = 0; i < path.length; i++) {
+            if (i > 0) {
+                sb.append('.');
+            }
+            if (isPlain(path[i])) {
+                sb.append(path[i]);
+            } else {
+                appendQuoted(sb, path[i], '"');
+            }
+        }
+    }
+
+    private static boolean isPlain(String part) {
+        if (part == null) {
+            return false;
+        }
+        for (int i = 0; i < part.length(); i++) {
+            char c = part.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '*' && c != '-') {
+                return false;
+            }
+        }
+        return !part.isEmpty();
+    }
+
+    private static void appendQuoted(StringBuilder sb, String s, char quote) {
+        sb.append(quote);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == quote || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        sb.append(quote);
+    }
+}
@@ -29,4 +29,9 @@ public class Optimizations {
      * Removes redundant brackets from a query tree.
      */
     public final static QueryOptimization RemoveRedundantBrackets = new RemoveRedundantBrackets();
+
+    /**
+     * Rewrites a query tree to a canonical form, so equivalent spellings of a query result in equal trees.
+     */
+    public final static QueryOptimization Canonicalize = new Canonicalize();
 }
@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.optimization;
+
+import de.alexgruen.query.QueryTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Optimization that applies {@link RewritePass}es in order, each pass runs until its rules reach a fixpoint.
+ * New rewrites are added as {@link RewriteRule}s instead of optimizations that walk the whole tree.
+ * <pre>
+ * PassManager passes = new PassManager(
+ *         new RewritePass("flatten", new RemoveRedundantBrackets()),
+ *         new RewritePass("simplify", rule1, rule2));
+ * QueryCompiler.create(MyQuery.class).withOptimization(passes)
+ * </pre>
+ * Time and rewrite counts of every pass are available from {@link #getStats()}.
+ */
+public class PassManager implements QueryOptimization {
+    private final List<RewritePass> passes;
+
+    /**
+     * Creates a pass manager
+     * @param passes passes in the order they are applied
+     */
+    public PassManager(RewritePass... passes) {
+        this(Arrays.asList(passes));
+    }
+
+    /**
+     * Creates a pass manager
+     * @param passes passes in the order they are applied
+     */
+    public PassManager(List<RewritePass> passes) {
+        this.passes = Collections.unmodifiableList(new ArrayList<>(passes));
+    }
+
+    /**
+     * Returns the passes in the order they are applied
+     * @return passes
+     */
+    public List<RewritePass> getPasses() {
+        return passes;
+    }
+
+    /**
+     * Returns a snapshot of the counters of every pass
+     * @return statistics in the order of the passes
+     */
+    public List<RewritePassStats> getStats() {
+        List<RewritePassStats> stats = new ArrayList<>(passes.size());
+        for (RewritePass pass : passes) {
+            stats.add(pass.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Applies all passes to a query tree
+     * @param queryTree input query tree
+     */
+    @Override
+    public void apply(QueryTree queryTree) {
+        for (RewritePass pass : passes) {
+            pass.apply(queryTree);
+        }
+    }
+
+    /**
+     * Lists the passes with the names of their rules, used in the fingerprint of a
+     * {@link de.alexgruen.query.compiler.cache.QueryTreeStore}
+     * @return description of the passes
+     * @throws IllegalStateException if a rule has no name
+     */
+    public String getDescription() {
+        StringBuilder sb = new StringBuilder("[");
+        for (RewritePass pass : passes) {
+            sb.append(pass.getDescription()).append(';');
+        }
+        return sb.append(']').toString();
+    }
+
+    @Override
+    public String toString() {
+        return "PassManager" + passes;
+    }
+}
@@ -24,13 +24,23 @@
 
 package de.alexgruen.query.optimization;
 
+import de.alexgruen.query.LogicalOperators;
 import de.alexgruen.query.QueryNode;
 import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.QueryTreeWalker;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 
-public class RemoveRedundantBrackets implements QueryOptimization {
+/**
+ * Moves the children of AND and OR nodes to their parent if the parent has the same operator.
+ * Other operators are not associative (e.g. NOR) and are not changed.
+ * The optimization can be used as a {@link RewriteRule} in a {@link RewritePass}.
+ */
+public class RemoveRedundantBrackets implements QueryOptimization, RewriteRule {
 
 
     /**
@@ -47,34 +57,84 @@ public class RemoveRedundantBrackets implements QueryOptimization {
      *    ├── (x > 1)
      *    ├── (y > 2)
      *    └── (z < 3)
+     *
+     * The tree is compressed top-down, the children of a chain of nested nodes with the same operator are
+     * collected once at the top of the chain, so the cost is linear in the size of the tree.
      * @param queryTree input query tree
      */
     @Override
     public void apply(QueryTree queryTree) {
-        compressRec(queryTree.getRoot());
+        QueryNode root = queryTree.getRoot();
+        Deque<QueryNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        boolean changed = false;
+        while (!stack.isEmpty()) {
+            QueryNode node = stack.pop();
+            changed |= compress(node);
+            for (QueryNode child : node.getChildren()) {
+                if (!child.isLeaf()) {
+                    stack.push(child);
+                }
+            }
+        }
+        if (changed) {
+            //cached fingerprints of ancestors of changed nodes are recomputed, children first
+            new QueryTreeWalker().postOrder(root, QueryNode::updateFingerprint);
+        }
     }
 
     /**
-     * Recursive function used to remove all redundant brackets
+     * Moves the children of child nodes with the same operator to the node.
+     * In a {@link RewritePass} the children are already compressed, so only one level is merged.
+     * @param node node
+     * @return the node if it was changed, otherwise null
+     */
+    @Override
+    public QueryNode rewrite(QueryNode node) {
+        return compress(node) ? node : null;
+    }
+
+    /**
+     * Replaces the children of a node with the children of all nested descendants that have the same operator.
+     * The new child list is created once.
      * @param parent parent node
+     * @return true if the children were changed
      */
-    private void compressRec(QueryNode parent){
-        List<QueryNode> children = new ArrayList<>(parent.getChildren());
-        int c = -1;
-        for (QueryNode child : children) {
-            c++;
-            if (child.getOperator() == null) {
+    private static boolean compress(QueryNode parent) {
+        if (!LogicalOperators.isAssociative(parent.getOperator()) || parent.isNegate()) {
+            return false;
+        }
+        boolean merge = false;
+        for (QueryNode child : parent.getChildren()) {
+            if (isMerged(parent, child)) {
+                merge = true;
+                break;
+            }
+        }
+        if (!merge) {
+            return false;
+        }
+        List<QueryNode> compressed = new ArrayList<>();
+        Deque<Iterator<QueryNode>> stack = new ArrayDeque<>();
+        stack.push(parent.getChildren().iterator());
+        while (!stack.isEmpty()) {
+            Iterator<QueryNode> children = stack.peek();
+            if (!children.hasNext()) {
+                stack.pop();
                 continue;
             }
-            compressRec(child);
-            if (child.getOperator().equals(parent.getOperator()) && !child.isNegate() && !parent.isNegate()) {
-                parent.getChildren().remove(child);
-                for (int i = 0; i < child.getChildren().size(); i++) {
-
-                    parent.getChildren().add(c + i, child.getChildren().get(i));
-                }
-                c += child.getChildren().size() - 1;
+            QueryNode child = children.next();
+            if (isMerged(parent, child)) {
+                stack.push(child.getChildren().iterator());
+            } else {
+                compressed.add(child);
             }
         }
+        parent.setChildren(compressed);
+        return true;
+    }
+
+    private static boolean isMerged(QueryNode parent, QueryNode child) {
+        return child.getOperator() != null && child.getOperator().equals(parent.getOperator()) && !child.isNegate();
     }
 }
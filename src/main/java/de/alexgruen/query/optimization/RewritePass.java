@@ -0,0 +1,260 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.optimization;
+
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.QueryTreeWalker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies a set of {@link RewriteRule}s to a query tree until no rule matches (fixpoint).
+ * <p>
+ * Every iteration rewrites the tree bottom-up. The rules are applied to a node until none of them matches,
+ * then the node is replaced in its parent. After the first iteration only changed parts of the tree are visited:
+ * a subtree is skipped if its root is the same node with the same fingerprint ({@link QueryNode#getFingerprint()})
+ * as after an iteration in which no rule matched in the subtree. The iterations stop when no rule matched or at
+ * the iteration limit, which also bounds the rewrites of a single node.
+ * <p>
+ * A pass can be used by many threads, it counts runs, iterations, rewrites and time ({@link #getStats()}).
+ */
+public class RewritePass implements QueryOptimization {
+    /**
+     * Default limit of iterations per run
+     */
+    public static final int DEFAULT_MAX_ITERATIONS = 32;
+
+    private final String name;
+    private final List<RewriteRule> rules;
+    private final int maxIterations;
+    private final RewritePassCounter counter = new RewritePassCounter();
+
+    /**
+     * Creates a pass with the default iteration limit
+     * @param name name of the pass
+     * @param rules rules in the order they are tried
+     */
+    public RewritePass(String name, RewriteRule... rules) {
+        this(name, DEFAULT_MAX_ITERATIONS, Arrays.asList(rules));
+    }
+
+    /**
+     * Creates a pass
+     * @param name name of the pass
+     * @param maxIterations maximum number of iterations per run and rewrites per node
+     * @param rules rules in the order they are tried
+     */
+    public RewritePass(String name, int maxIterations, List<RewriteRule> rules) {
+        if (maxIterations < 1) {
+            throw new IllegalArgumentException("maxIterations must be positive: " + maxIterations);
+        }
+        this.name = name;
+        this.maxIterations = maxIterations;
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+    }
+
+    /**
+     * Returns the name of the pass
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the rules in the order they are tried
+     * @return rules
+     */
+    public List<RewriteRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Returns the maximum number of iterations per run
+     * @return iteration limit
+     */
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Returns a snapshot of the counters of this pass
+     * @return statistics
+     */
+    public RewritePassStats getStats() {
+        return counter.snapshot(name);
+    }
+
+    /**
+     * Rewrites a query tree until no rule matches or the iteration limit is reached
+     * @param queryTree input query tree
+     */
+    @Override
+    public void apply(QueryTree queryTree) {
+        long start = System.nanoTime();
+        Run run = new Run();
+        int iterations = 0;
+        boolean fixpoint = false;
+        while (!fixpoint && iterations < maxIterations) {
+            iterations++;
+            long rewrites = run.rewrites;
+            run.walker.postOrder(queryTree.getRoot(), run::isChanged, run::rewriteChildren);
+            QueryNode root = queryTree.getRoot();
+            if (run.isChanged(root)) {
+                QueryNode rewritten = run.rewrite(root);
+                if (rewritten != root) {
+                    queryTree.setRoot(rewritten);
+                }
+            }
+            fixpoint = run.rewrites == rewrites;
+        }
+        counter.run(iterations, run.visits, run.rewrites, !fixpoint, System.nanoTime() - start);
+    }
+
+    /**
+     * Returns the name of the pass and the names of its rules ({@link RewriteRule#getName()}).
+     * The description is part of the fingerprint of a {@link de.alexgruen.query.compiler.cache.QueryTreeStore}.
+     * @return description of the pass
+     * @throws IllegalStateException if a rule has no name
+     */
+    public String getDescription() {
+        StringBuilder sb = new StringBuilder(name).append('(');
+        for (int i = 0; i < rules.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            String ruleName = rules.get(i).getName();
+            if (ruleName == null) {
+                throw new IllegalStateException(String.format(
+                        "rule %d of pass %s has no name, lambdas are named with RewriteRule.named", i, name));
+            }
+            sb.append(ruleName);
+        }
+        return sb.append(')').toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(name).append('(');
+        for (int i = 0; i < rules.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            String ruleName = rules.get(i).getName();
+            sb.append(ruleName == null ? "lambda" : ruleName);
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * State of a single run
+     */
+    private class Run {
+        private final QueryTreeWalker walker = new QueryTreeWalker();
+        //nodes whose subtree is at a fixpoint and their fingerprint at that time
+        private final Map<QueryNode, Long> unchanged = new IdentityHashMap<>();
+        private long visits;
+        private long rewrites;
+        //set by rewrite
+        private boolean matched;
+
+        private boolean isChanged(QueryNode node) {
+            Long fingerprint = unchanged.get(node);
+            return fingerprint == null || fingerprint != node.getFingerprint();
+        }
+
+        /**
+         * Rewrites the changed children of a node and updates its fingerprint
+         * @param parent parent node, the children of its children are already rewritten
+         */
+        private void rewriteChildren(QueryNode parent) {
+            List<QueryNode> children = parent.getChildren();
+            boolean changed = false;
+            for (int i = 0; i < children.size(); i++) {
+                QueryNode child = children.get(i);
+                if (!isChanged(child)) {
+                    continue;
+                }
+                QueryNode rewritten = rewrite(child);
+                if (rewritten != child) {
+                    parent.setChild(i, rewritten);
+                }
+                changed = true;
+            }
+            if (changed) {
+                parent.updateFingerprint();
+            }
+        }
+
+        /**
+         * Applies the rules to a node until none matches or the iteration limit is reached.
+         * The node is marked as unchanged if no rule matched and all children are unchanged.
+         * @param node node
+         * @return the rewritten node
+         */
+        private QueryNode rewrite(QueryNode node) {
+            visits++;
+            matched = false;
+            for (int i = 0; i < maxIterations; i++) {
+                QueryNode rewritten = null;
+                for (RewriteRule rule : rules) {
+                    rewritten = rule.rewrite(node);
+                    if (rewritten != null) {
+                        break;
+                    }
+                }
+                if (rewritten == null) {
+                    break;
+                }
+                rewrites++;
+                matched = true;
+                for (QueryNode child : rewritten.getChildren()) {
+                    child.updateFingerprint();
+                }
+                rewritten.updateFingerprint();
+                node = rewritten;
+            }
+            if (!matched && !hasChangedChild(node)) {
+                unchanged.put(node, node.getFingerprint());
+            }
+            return node;
+        }
+
+        private boolean hasChangedChild(QueryNode node) {
+            for (QueryNode child : node.getChildren()) {
+                if (isChanged(child)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.optimization;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe counters of a {@link RewritePass}
+ */
+class RewritePassCounter {
+    private final LongAdder runCount = new LongAdder();
+    private final LongAdder iterationCount = new LongAdder();
+    private final LongAdder visitCount = new LongAdder();
+    private final LongAdder rewriteCount = new LongAdder();
+    private final LongAdder limitCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    void run(int iterations, long visits, long rewrites, boolean limit, long nanos) {
+        runCount.increment();
+        iterationCount.add(iterations);
+        visitCount.add(visits);
+        rewriteCount.add(rewrites);
+        if (limit) {
+            limitCount.increment();
+        }
+        totalNanos.add(nanos);
+    }
+
+    RewritePassStats snapshot(String name) {
+        return new RewritePassStats(name, runCount.sum(), iterationCount.sum(), visitCount.sum(),
+                rewriteCount.sum(), limitCount.sum(), totalNanos.sum());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.optimization;
+
+/**
+ * Snapshot of the counters of a {@link RewritePass}
+ */
+public class RewritePassStats {
+    private final String name;
+    private final long runCount;
+    private final long iterationCount;
+    private final long visitCount;
+    private final long rewriteCount;
+    private final long limitCount;
+    private final long totalNanos;
+
+    public RewritePassStats(String name, long runCount, long iterationCount, long visitCount,
+                            long rewriteCount, long limitCount, long totalNanos) {
+        this.name = name;
+        this.runCount = runCount;
+        this.iterationCount = iterationCount;
+        this.visitCount = visitCount;
+        this.rewriteCount = rewriteCount;
+        this.limitCount = limitCount;
+        this.totalNanos = totalNanos;
+    }
+
+    /**
+     * Returns the name of the pass
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of trees the pass was applied to
+     * @return number of runs
+     */
+    public long getRunCount() {
+        return runCount;
+    }
+
+    /**
+     * Returns the number of bottom-up iterations of all runs, every run needs at least one
+     * @return number of iterations
+     */
+    public long getIterationCount() {
+        return iterationCount;
+    }
+
+    /**
+     * Returns the number of nodes the rules were applied to. Unchanged subtrees are not visited again.
+     * @return number of visited nodes
+     */
+    public long getVisitCount() {
+        return visitCount;
+    }
+
+    /**
+     * Returns the number of rule applications that changed a node
+     * @return number of rewrites
+     */
+    public long getRewriteCount() {
+        return rewriteCount;
+    }
+
+    /**
+     * Returns the number of runs that stopped at the iteration limit before a fixpoint was reached
+     * @return number of runs without fixpoint
+     */
+    public long getLimitCount() {
+        return limitCount;
+    }
+
+    /**
+     * Returns the total time of all runs in nanoseconds
+     * @return time in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Returns the average time of a run in nanoseconds or 0.0 if the pass was not applied
+     * @return average time in nanoseconds
+     */
+    public double getAverageNanos() {
+        return runCount == 0 ? 0.0 : (double) totalNanos / runCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RewritePassStats{name=%s, runs=%d, iterations=%d, visits=%d, rewrites=%d, limits=%d, nanos=%d}",
+                name, runCount, iterationCount, visitCount, rewriteCount, limitCount, totalNanos);
+    }
+}
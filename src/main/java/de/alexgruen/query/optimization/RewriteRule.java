@@ -0,0 +1,76 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.optimization;
+
+import de.alexgruen.query.QueryNode;
+
+/**
+ * Rule of a {@link RewritePass} that replaces a single node. Rules are applied bottom-up,
+ * the children of a node are rewritten before the node.
+ * <p>
+ * A rule may change the node and its children in place or return new nodes. Nodes below the children
+ * must not be changed in place, they are replaced by new nodes. The result of a rule may only depend on
+ * the subtree of the node, so subtrees that did not change are not rewritten again.
+ */
+@FunctionalInterface
+public interface RewriteRule {
+    /**
+     * Rewrites a node whose children are already rewritten
+     * @param node node
+     * @return replacement, the node itself if it was changed in place or null if the rule does not match
+     */
+    QueryNode rewrite(QueryNode node);
+
+    /**
+     * Returns the name of the rule, which identifies the rule in the fingerprint of a
+     * {@link de.alexgruen.query.compiler.cache.QueryTreeStore}. A rule whose behavior changes needs a new name.
+     * The default is the class name, lambdas have no stable class name and return null.
+     * @return name or null
+     */
+    default String getName() {
+        Class<?> type = getClass();
+        return type.isSynthetic() ? null : type.getName();
+    }
+
+    /**
+     * Gives a rule a name, e.g. a lambda
+     * @param name name of the rule
+     * @param rule rule
+     * @return named rule
+     */
+    static RewriteRule named(String name, RewriteRule rule) {
+        return new RewriteRule() {
+            @Override
+            public QueryNode rewrite(QueryNode node) {
+                return rule.rewrite(node);
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+        };
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.serialization;
+
+/**
+ * Constants of the binary query tree format.
+ * <pre>
+ * tree     := 'Q' 'T' version:varint length:varint body       (length is the number of bytes of the body)
+ * body     := fieldCount:varint field*
+ *             termOperatorCount:varint operator*
+ *             logicalOperatorCount:varint operator*
+ *             nodeCount:varint node*                          (nodes in pre-order)
+ * field    := fullPath:string partCount:varint part:string*
+ * operator := name:string aliasCount:varint alias:string*
+ * node     := header:varint                                   (childCount &lt;&lt; 2 | hasTerm &lt;&lt; 1 | negate)
+ *             logicalOperator:varint                          (dictionary index + 1, 0 for none)
+ *             [field:varint termOperator:varint value]        (if hasTerm, indices + 1, 0 for null)
+ * value    := tag:byte payload
+ * string   := length:varint UTF-8 bytes
+ * </pre>
+ * Varints store 7 bits per byte, least significant group first. Signed longs are zigzag encoded,
+ * doubles are stored as 8 bytes (big endian). Regular expressions are stored as source and flags.
+ * Node attributes are not stored.
+ */
+final class QueryTreeFormat {
+    static final byte MAGIC_0 = 'Q';
+    static final byte MAGIC_1 = 'T';
+    static final int VERSION = 1;
+
+    static final int NEGATE = 1;
+    static final int HAS_TERM = 2;
+    static final int CHILD_COUNT_SHIFT = 2;
+
+    //value tags
+    static final byte NO_VALUE = 0;
+    static final byte NULL = 1;
+    static final byte LONG = 2;
+    static final byte DOUBLE = 3;
+    static final byte STRING = 4;
+    static final byte FALSE = 5;
+    static final byte TRUE = 6;
+    static final byte PATTERN = 7;
+    static final byte LONG_SET = 8;
+    static final byte DOUBLE_SET = 9;
+    static final byte STRING_SET = 10;
+
+    private QueryTreeFormat() {
+    }
+}
@@ -0,0 +1,439 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.serialization;
+
+import de.alexgruen.query.LogicalOperator;
+import de.alexgruen.query.LogicalOperators;
+import de.alexgruen.query.Operator;
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.compiler.QueryCompilerException;
+import de.alexgruen.query.compiler.QueryContext;
+import de.alexgruen.query.compiler.QueryError;
+import de.alexgruen.query.term.Field;
+import de.alexgruen.query.term.FieldTable;
+import de.alexgruen.query.term.Term;
+import de.alexgruen.query.term.TermOperator;
+import de.alexgruen.query.term.TermOperators;
+import de.alexgruen.query.term.Value;
+import de.alexgruen.query.term.ValueSet;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static de.alexgruen.query.serialization.QueryTreeFormat.*;
+
+/**
+ * Decodes query trees written by {@link QueryTreeWriter}.
+ * <p>
+ * Operators are resolved by name to the operators of a {@link QueryContext} or to the default operators,
+ * unknown operators are created from the stored name and aliases. Fields are canonical fields of the
+ * field table of the context ({@link FieldTable}) if a context is used.
+ * Invalid or truncated input causes a {@link QueryCompilerException}.
+ * <p>
+ * A reader is not thread safe.
+ */
+public class QueryTreeReader {
+    private static final int READ_CHUNK_SIZE = 8192;
+
+    private final QueryContext<?> context;
+    private byte[] bytes;
+    private int position;
+    private int limit;
+
+    /**
+     * Creates a reader that resolves the default operators
+     */
+    public QueryTreeReader() {
+        this(null);
+    }
+
+    /**
+     * Creates a reader that resolves the operators and fields of a context
+     * @param context query context or null
+     */
+    public QueryTreeReader(QueryContext<?> context) {
+        this.context = context;
+    }
+
+    /**
+     * Decodes a query tree from an array
+     * @param data encoded tree
+     * @return query tree
+     */
+    public QueryTree read(byte[] data) {
+        return read(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Decodes a query tree starting at the position of a buffer. The position is moved behind the tree.
+     * @param in input buffer
+     * @return query tree
+     */
+    public QueryTree read(ByteBuffer in) {
+        if (in.hasArray()) {
+            bytes = in.array();
+            position = in.arrayOffset() + in.position();
+            limit = in.arrayOffset() + in.limit();
+        } else {
+            //the header is at most 12 bytes, the body is copied once its length is known
+            bytes = new byte[Math.min(in.remaining(), 12)];
+            in.duplicate().get(bytes);
+            position = 0;
+            limit = bytes.length;
+        }
+        try {
+            int start = position;
+            int length = readHeader();
+            int headerLength = position - start;
+            if (length > in.remaining() - headerLength) {
+                throw invalid("truncated input");
+            }
+            if (!in.hasArray()) {
+                bytes = new byte[length];
+                ByteBuffer source = in.duplicate();
+                source.position(in.position() + headerLength);
+                source.get(bytes);
+                position = 0;
+                limit = length;
+            } else {
+                limit = position + length;
+            }
+            QueryTree tree = readBody();
+            in.position(in.position() + headerLength + length);
+            return tree;
+        } finally {
+            bytes = null;
+        }
+    }
+
+    /**
+     * Decodes a query tree from a data input
+     * @param in input
+     * @return query tree
+     * @throws IOException if the input fails
+     */
+    public QueryTree read(DataInput in) throws IOException {
+        if (in.readByte() != MAGIC_0 || in.readByte() != MAGIC_1) {
+            throw invalid("no query tree");
+        }
+        checkVersion(readVarint(in));
+        long length = readVarint(in);
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw invalid("invalid length");
+        }
+        try {
+            //the body is read in growing chunks, so a corrupt length fails at the end of the input
+            //instead of allocating an array of the stated length
+            bytes = new byte[(int) Math.min(length, READ_CHUNK_SIZE)];
+            in.readFully(bytes);
+            while (bytes.length < length) {
+                int read = bytes.length;
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * read));
+                in.readFully(bytes, read, bytes.length - read);
+            }
+            position = 0;
+            limit = bytes.length;
+            return readBody();
+        } finally {
+            bytes = null;
+        }
+    }
+
+    /**
+     * Reads magic bytes, version and length of the body
+     */
+    private int readHeader() {
+        if (limit - position < 2 || bytes[position] != MAGIC_0 || bytes[position + 1] != MAGIC_1) {
+            throw invalid("no query tree");
+        }
+        position += 2;
+        checkVersion(readVarint());
+        return count(readVarint(), Integer.MAX_VALUE);
+    }
+
+    private static void checkVersion(long version) {
+        if (version != VERSION) {
+            throw invalid(String.format("unsupported version %d", version));
+        }
+    }
+
+    private QueryTree readBody() {
+        Field[] fields = new Field[count(readVarint(), limit - position)];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = readField();
+        }
+        TermOperator[] termOperators = new TermOperator[count(readVarint(), limit - position)];
+        for (int i = 0; i < termOperators.length; i++) {
+            String name = readString();
+            termOperators[i] = termOperator(name, readAliases());
+        }
+        LogicalOperator[] logicalOperators = new LogicalOperator[count(readVarint(), limit - position)];
+        for (int i = 0; i < logicalOperators.length; i++) {
+            String name = readString();
+            logicalOperators[i] = logicalOperator(name, readAliases());
+        }
+        int nodeCount = count(readVarint(), limit - position);
+        //nodes are in pre-order, the stack holds the nodes whose children are not complete
+        QueryNode root = null;
+        QueryNode[] parents = new QueryNode[16];
+        int[] remaining = new int[16];
+        int top = 0;
+        for (int n = 0; n < nodeCount; n++) {
+            long header = readVarint();
+            int childCount = count(header >>> CHILD_COUNT_SHIFT, nodeCount - n - 1);
+            LogicalOperator operator = entry(logicalOperators, readVarint());
+            Term term = null;
+            if ((header & HAS_TERM) != 0) {
+                Field field = entry(fields, readVarint());
+                TermOperator termOperator = entry(termOperators, readVarint());
+                term = new Term(field, termOperator, readValue());
+            }
+            QueryNode node;
+            if (childCount == 0 && term != null) {
+                node = new QueryNode(term);
+                node.setOperator(operator);
+            } else {
+                node = new QueryNode(false, operator, term, new ArrayList<>(Math.max(childCount, 2)));
+            }
+            node.setNegate((header & NEGATE) != 0);
+            if (top == 0) {
+                if (root != null) {
+                    throw invalid("more than one root node");
+                }
+                root = node;
+            } else {
+                parents[top - 1].addChild(node);
+                if (--remaining[top - 1] == 0) {
+                    parents[--top] = null;
+                }
+            }
+            if (childCount > 0) {
+                if (top == parents.length) {
+                    parents = Arrays.copyOf(parents, top * 2);
+                    remaining = Arrays.copyOf(remaining, top * 2);
+                }
+                parents[top] = node;
+                remaining[top] = childCount;
+                top++;
+            }
+        }
+        if (root == null || top > 0 || position != limit) {
+            throw invalid("inconsistent node count");
+        }
+        return new QueryTree(root);
+    }
+
+    private Field readField() {
+        String fullPath = readString();
+        String[] path = new String[count(readVarint(), limit - position)];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = readString();
+        }
+        if (Arrays.equals(Field.ALL_FIELDS.getPath(), path) && Field.ALL_FIELDS.getFullPath().equals(fullPath)) {
+            return Field.ALL_FIELDS;
+        }
+        if (context != null) {
+            Field field = context.getFieldTable().intern(fullPath);
+            if (Arrays.equals(field.getPath(), path)) {
+                return field;
+            }
+        }
+        return new Field(fullPath, path);
+    }
+
+    private String[] readAliases() {
+        String[] aliases = new String[count(readVarint(), limit - position)];
+        for (int i = 0; i < aliases.length; i++) {
+            aliases[i] = readString();
+        }
+        return aliases;
+    }
+
+    private TermOperator termOperator(String name, String[] aliases) {
+        TermOperator operator = context != null ? context.getTermOperator(name) : null;
+        if (matches(operator, name, aliases)) {
+            return operator;
+        }
+        for (TermOperator defaultOperator : TermOperators.getDefaultOperators()) {
+            if (matches(defaultOperator, name, aliases)) {
+                return defaultOperator;
+            }
+        }
+        return new TermOperator(name, aliases);
+    }
+
+    private LogicalOperator logicalOperator(String name, String[] aliases) {
+        LogicalOperator operator = context != null ? context.getLogicalOperator(name) : null;
+        if (matches(operator, name, aliases)) {
+            return operator;
+        }
+        for (LogicalOperator defaultOperator : LogicalOperators.getDefaultOperations()) {
+            if (matches(defaultOperator, name, aliases)) {
+                return defaultOperator;
+            }
+        }
+        return new LogicalOperator(name, aliases);
+    }
+
+    private static boolean matches(Operator operator, String name, String[] aliases) {
+        return operator != null && operator.getName().equals(name) && Arrays.equals(operator.getAliases(), aliases);
+    }
+
+    private Value readValue() {
+        byte tag = readByte();
+        switch (tag) {
+            case NO_VALUE:
+                return null;
+            case NULL:
+                return new Value(null);
+            case LONG:
+                return Value.of(readSignedVarint());
+            case DOUBLE:
+                return Value.of(Double.longBitsToDouble(readLong()));
+            case STRING:
+                return new Value(readString());
+            case FALSE:
+                return Value.of(false);
+            case TRUE:
+                return Value.of(true);
+            case PATTERN:
+                String regex = readString();
+                int flags = (int) readVarint();
+                try {
+                    return new Value(Pattern.compile(regex, flags));
+                } catch (IllegalArgumentException e) {
+                    throw invalid(String.format("invalid regular expression /%s/", regex));
+                }
+            case LONG_SET: {
+                long[] values = new long[count(readVarint(), limit - position)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = readSignedVarint();
+                }
+                return new Value(ValueSet.ofLongs(values));
+            }
+            case DOUBLE_SET: {
+                double[] values = new double[count(readVarint(), (limit - position) / 8)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = Double.longBitsToDouble(readLong());
+                }
+                return new Value(ValueSet.ofDoubles(values));
+            }
+            case STRING_SET: {
+                String[] values = new String[count(readVarint(), limit - position)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = readString();
+                }
+                return new Value(ValueSet.ofStrings(values));
+            }
+            default:
+                throw invalid(String.format("unknown value tag %d", tag));
+        }
+    }
+
+    private static <E> E entry(E[] dictionary, long index) {
+        if (index == 0) {
+            return null;
+        }
+        if (index < 0 || index > dictionary.length) {
+            throw invalid(String.format("dictionary index %d out of range", index - 1));
+        }
+        return dictionary[(int) index - 1];
+    }
+
+    /**
+     * Checks a count against an upper bound, e.g. the remaining bytes, so corrupt input can not allocate large arrays
+     */
+    private static int count(long count, int max) {
+        if (count < 0 || count > max) {
+            throw invalid(String.format("invalid count %d", count));
+        }
+        return (int) count;
+    }
+
+    private byte readByte() {
+        if (position >= limit) {
+            throw invalid("truncated input");
+        }
+        return bytes[position++];
+    }
+
+    private long readVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw invalid("invalid varint");
+    }
+
+    private static long readVarint(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw invalid("invalid varint");
+    }
+
+    private long readSignedVarint() {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long readLong() {
+        if (limit - position < 8) {
+            throw invalid("truncated input");
+        }
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[position++] & 0xFF);
+        }
+        return value;
+    }
+
+    private String readString() {
+        int length = count(readVarint(), limit - position);
+        String s = new String(bytes, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return s;
+    }
+
+    private static QueryCompilerException invalid(String message) {
+        return new QueryCompilerException(QueryError.invalidInput("invalid query tree encoding: %s", message));
+    }
+}
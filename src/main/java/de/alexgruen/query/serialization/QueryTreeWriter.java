@@ -0,0 +1,336 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.serialization;
+
+import de.alexgruen.query.Operator;
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.term.Field;
+import de.alexgruen.query.term.Term;
+import de.alexgruen.query.term.Value;
+import de.alexgruen.query.term.ValueSet;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static de.alexgruen.query.serialization.QueryTreeFormat.*;
+
+/**
+ * Encodes query trees in a compact, versioned binary format that is read by {@link QueryTreeReader}.
+ * <p>
+ * Fields and operators are written once per tree in dictionaries, nodes refer to them by index.
+ * Numbers, lengths and indices are written as varints. The format is described in {@link QueryTreeFormat}.
+ * Node attributes are not written.
+ * <p>
+ * A writer keeps its buffers between trees and can be reused. It is not thread safe.
+ */
+public class QueryTreeWriter {
+    private final Buffer nodes = new Buffer();
+    private final Buffer body = new Buffer();
+    private final Map<Field, Integer> fields = new HashMap<>();
+    private final List<Field> fieldList = new ArrayList<>();
+    private final Map<Operator, Integer> termOperators = new HashMap<>();
+    private final List<Operator> termOperatorList = new ArrayList<>();
+    private final Map<Operator, Integer> logicalOperators = new HashMap<>();
+    private final List<Operator> logicalOperatorList = new ArrayList<>();
+    private final Deque<QueryNode> stack = new ArrayDeque<>();
+
+    /**
+     * Encodes a query tree to a new array
+     * @param tree query tree
+     * @return encoded tree
+     */
+    public byte[] write(QueryTree tree) {
+        encode(tree);
+        byte[] header = header();
+        byte[] result = Arrays.copyOf(header, header.length + body.size);
+        System.arraycopy(body.bytes, 0, result, header.length, body.size);
+        return result;
+    }
+
+    /**
+     * Encodes a query tree to a buffer, starting at its position. The position is moved behind the tree.
+     * @param tree query tree
+     * @param out output buffer
+     * @throws BufferOverflowException if the tree does not fit into the buffer
+     */
+    public void write(QueryTree tree, ByteBuffer out) {
+        encode(tree);
+        byte[] header = header();
+        if (out.remaining() < header.length + body.size) {
+            throw new BufferOverflowException();
+        }
+        out.put(header);
+        out.put(body.bytes, 0, body.size);
+    }
+
+    /**
+     * Encodes a query tree to a data output
+     * @param tree query tree
+     * @param out output
+     * @throws IOException if the output fails
+     */
+    public void write(QueryTree tree, DataOutput out) throws IOException {
+        encode(tree);
+        out.write(header());
+        out.write(body.bytes, 0, body.size);
+    }
+
+    private byte[] header() {
+        Buffer header = new Buffer();
+        header.writeByte(MAGIC_0);
+        header.writeByte(MAGIC_1);
+        header.writeVarint(VERSION);
+        header.writeVarint(body.size);
+        return Arrays.copyOf(header.bytes, header.size);
+    }
+
+    private void encode(QueryTree tree) {
+        nodes.size = 0;
+        body.size = 0;
+        try {
+            int nodeCount = writeNodes(tree.getRoot());
+            body.writeVarint(fieldList.size());
+            for (Field field : fieldList) {
+                body.writeString(field.getFullPath());
+                body.writeVarint(field.getLength());
+                for (String part : field.getPath()) {
+                    body.writeString(part);
+                }
+            }
+            writeOperators(termOperatorList);
+            writeOperators(logicalOperatorList);
+            body.writeVarint(nodeCount);
+            body.write(nodes);
+        } finally {
+            fields.clear();
+            fieldList.clear();
+            termOperators.clear();
+            termOperatorList.clear();
+            logicalOperators.clear();
+            logicalOperatorList.clear();
+            stack.clear();
+        }
+    }
+
+    /**
+     * Writes the nodes in pre-order with an explicit stack, children are pushed in reverse order
+     * @return number of nodes
+     */
+    private int writeNodes(QueryNode root) {
+        int count = 0;
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            QueryNode node = stack.pop();
+            List<QueryNode> children = node.getChildren();
+            Term term = node.getTerm();
+            nodes.writeVarint(((long) children.size() << CHILD_COUNT_SHIFT)
+                    | (term != null ? HAS_TERM : 0)
+                    | (node.isNegate() ? NEGATE : 0));
+            nodes.writeVarint(index(logicalOperators, logicalOperatorList, node.getOperator()));
+            if (term != null) {
+                nodes.writeVarint(index(fields, fieldList, term.getField()));
+                nodes.writeVarint(index(termOperators, termOperatorList, term.getOperator()));
+                writeValue(term.getValue());
+            }
+            count++;
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+        return count;
+    }
+
+    private void writeValue(Value value) {
+        if (value == null) {
+            nodes.writeByte(NO_VALUE);
+            return;
+        }
+        switch (value.getType()) {
+            case Null:
+                nodes.writeByte(NULL);
+                break;
+            case Long:
+                nodes.writeByte(LONG);
+                nodes.writeSignedVarint(value.longValue());
+                break;
+            case Double:
+                nodes.writeByte(DOUBLE);
+                nodes.writeLong(Double.doubleToRawLongBits(value.doubleValue()));
+                break;
+            case String:
+                nodes.writeByte(STRING);
+                nodes.writeString(value.getString());
+                break;
+            case Boolean:
+                nodes.writeByte(value.booleanValue() ? TRUE : FALSE);
+                break;
+            case Pattern:
+                Pattern pattern = value.getPattern();
+                nodes.writeByte(PATTERN);
+                nodes.writeString(pattern.pattern());
+                nodes.writeVarint(pattern.flags());
+                break;
+            case ValueSet:
+                writeValueSet(value.getValueSet());
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported value type " + value.getType());
+        }
+    }
+
+    private void writeValueSet(ValueSet set) {
+        int size = set.size();
+        switch (set.getType()) {
+            case Long:
+                nodes.writeByte(LONG_SET);
+                nodes.writeVarint(size);
+                for (int i = 0; i < size; i++) {
+                    nodes.writeSignedVarint(set.getLong(i));
+                }
+                break;
+            case Double:
+                nodes.writeByte(DOUBLE_SET);
+                nodes.writeVarint(size);
+                for (int i = 0; i < size; i++) {
+                    nodes.writeLong(Double.doubleToRawLongBits(set.getDouble(i)));
+                }
+                break;
+            default:
+                nodes.writeByte(STRING_SET);
+                nodes.writeVarint(size);
+                for (int i = 0; i < size; i++) {
+                    nodes.writeString(set.getString(i));
+                }
+                break;
+        }
+    }
+
+    private void writeOperators(List<Operator> operators) {
+        body.writeVarint(operators.size());
+        for (Operator operator : operators) {
+            body.writeString(operator.getName());
+            String[] aliases = operator.getAliases();
+            body.writeVarint(aliases.length);
+            for (String alias : aliases) {
+                body.writeString(alias);
+            }
+        }
+    }
+
+    /**
+     * Returns the dictionary index + 1 of an entry or 0 for null, the entry is added if required
+     */
+    private static <E> int index(Map<E, Integer> indices, List<E> list, E entry) {
+        if (entry == null) {
+            return 0;
+        }
+        Integer index = indices.get(entry);
+        if (index == null) {
+            index = list.size();
+            indices.put(entry, index);
+            list.add(entry);
+        }
+        return index + 1;
+    }
+
+    /**
+     * Growable byte array
+     */
+    private static final class Buffer {
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        void writeByte(int b) {
+            ensure(1);
+            bytes[size++] = (byte) b;
+        }
+
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeSignedVarint(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeString(String s) {
+            //ASCII strings are written without creating a byte array
+            int length = s.length();
+            boolean ascii = true;
+            for (int i = 0; i < length && ascii; i++) {
+                ascii = s.charAt(i) < 0x80;
+            }
+            if (ascii) {
+                writeVarint(length);
+                ensure(length);
+                for (int i = 0; i < length; i++) {
+                    bytes[size++] = (byte) s.charAt(i);
+                }
+                return;
+            }
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        void write(Buffer other) {
+            ensure(other.size);
+            System.arraycopy(other.bytes, 0, bytes, size, other.size);
+            size += other.size;
+        }
+
+        private void ensure(int n) {
+            if (size + n > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + n));
+            }
+        }
+    }
+}
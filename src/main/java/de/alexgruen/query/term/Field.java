@@ -24,8 +24,11 @@
 
 package de.alexgruen.query.term;
 
+import de.alexgruen.query.util.FingerprintUtil;
 import de.alexgruen.query.util.StringUtil;
 
+import java.util.Arrays;
+
 /**
  * Represents the field in a query term (field operator value)
  */
@@ -34,6 +37,7 @@ public class Field {
     private String fullPath;
     private String[] path;
     private String joinedPath;
+    private final int id;
 
     /**
      * Creates a field from a path string and a path array.
@@ -44,6 +48,21 @@ public class Field {
     public Field(String fullPath, String... path) {
         this.fullPath = fullPath;
         this.path = path;
+        this.id = -1;
+    }
+
+    /**
+     * Creates a canonical field of a {@link FieldTable}. The full path is the joined path, so it does not depend
+     * on the spelling the field was seen with first.
+     * Canonical fields are shared, their setters throw an {@link UnsupportedOperationException}
+     * @param path path array
+     * @param id id in the field table
+     */
+    Field(String[] path, int id) {
+        this.joinedPath = toJoinedPath(path, 0, path.length);
+        this.fullPath = joinedPath;
+        this.path = path;
+        this.id = id;
     }
 
     /**
@@ -55,6 +74,15 @@ public class Field {
         this(name, name);
     }
 
+    /**
+     * Returns the id of this field in its {@link FieldTable} or -1 if the field is not part of a table.
+     * Ids are dense, they start at 0 and can be used as array indices.
+     * @return field id or -1
+     */
+    public int getId() {
+        return id;
+    }
+
     /**
      * Returns the full path string (e.g. "test.field")
      * @return path string
@@ -72,19 +100,30 @@ public class Field {
     }
 
     /**
-     * Sets the full path
+     * Sets the full path.
+     * An {@link UnsupportedOperationException} is thrown if this is a canonical field of a {@link FieldTable}
      * @param fullPath full path
      */
     public void setFullPath(String fullPath) {
+        checkMutable();
         this.fullPath = fullPath;
     }
 
     /**
-     * Sets the path array
+     * Sets the path array.
+     * An {@link UnsupportedOperationException} is thrown if this is a canonical field of a {@link FieldTable}
      * @param path
      */
     public void setPath(String[] path) {
+        checkMutable();
         this.path = path;
+        this.joinedPath = null;
+    }
+
+    private void checkMutable() {
+        if (id >= 0) {
+            throw new UnsupportedOperationException("canonical field is immutable");
+        }
     }
 
     /**
@@ -106,7 +145,8 @@ public class Field {
             if (sb.length() > 0) {
                 sb.append(".");
             }
-            if (StringUtil.requiresQuotation(p)) {
+            //parts with dots are quoted as well, so the joined path splits into the same path again
+            if (StringUtil.requiresQuotation(p) || (p.indexOf('.') >= 0 && !StringUtil.isQuoted(p))) {
                 p = StringUtil.putInQuotes(p, '\'');
             }
             sb.append(p);
@@ -152,13 +192,50 @@ public class Field {
      * @return joined path string
      */
     public String getJoinedPath(int from, int to) {
-        if (joinedPath != null) {
-            return joinedPath;
+        //only the complete path is cached
+        if (from != 0 || to != path.length) {
+            return toJoinedPath(path, from, to);
+        }
+        if (joinedPath == null) {
+            joinedPath = toJoinedPath(path, from, to);
         }
-        joinedPath = toJoinedPath(path, from, to);
         return joinedPath;
     }
 
+    /**
+     * True if o is a field with the same path array. The full path is not compared,
+     * it may differ in quotation for the same path.
+     * @param o other field
+     * @return true if equal
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Arrays.equals(path, ((Field) o).path);
+    }
+
+    /**
+     * Computes the 64 bit fingerprint of the path array. Equal fields have equal fingerprints.
+     * @return fingerprint
+     */
+    public long getFingerprint() {
+        long fingerprint = path.length;
+        for (String part : path) {
+            fingerprint = FingerprintUtil.combine(fingerprint, FingerprintUtil.hash(part));
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Calculates the hashcode from the path array
+     * @return hashcode
+     */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(path);
+    }
+
     /**
      * Returns the joined path  ({@link #getJoinedPath()})
      * @return joined path
@@ -0,0 +1,231 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.term;
+
+import de.alexgruen.query.util.StringUtil;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Symbol table that maps the text of field references to canonical {@link Field} objects with dense ids.
+ * <p>
+ * A field is split into its path once, when its text is seen for the first time. Later lookups of a known text
+ * only hash the characters of the text and allocate nothing, also for ranges of a {@link CharSequence}.
+ * Texts that differ only in quotation (<tt>a.b</tt> and <tt>'a'.b</tt>) map to the same field, its full path
+ * is the normalized spelling of the path ({@link Field#toJoinedPath(String[], int, int)}).
+ * Ids are assigned in the order fields are added, so fields that are added before the first query have stable ids.
+ * <p>
+ * The table is owned by a query context and shared by all compilations. Lookups do not lock, new fields are added
+ * under a lock. Once the maximum number of fields is reached, unknown fields are created without an id (-1),
+ * so queries with arbitrary field names can not grow the table without bounds.
+ * Canonical fields are shared, their setters throw an {@link UnsupportedOperationException}.
+ */
+public final class FieldTable {
+    /**
+     * Default maximum number of fields
+     */
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+    private final int maxSize;
+    //texts of field references in an open addressing table, written under the lock and read without locking
+    private volatile AtomicReferenceArray<Entry> slots = new AtomicReferenceArray<>(64);
+    private int entryCount;
+    private volatile Field[] fields = new Field[16];
+    private volatile int size;
+    //canonical fields by path (guarded by this)
+    private final Map<Field, Field> byPath = new HashMap<>();
+
+    /**
+     * Creates a table with at most {@link #DEFAULT_MAX_SIZE} fields
+     */
+    public FieldTable() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates a table with a maximum number of fields
+     * @param maxSize maximum number of fields
+     */
+    public FieldTable(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must not be negative");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the canonical field for the text of a field reference (e.g. <tt>test.'field 1'</tt>)
+     * @param text field text
+     * @return field
+     */
+    public Field intern(String text) {
+        return intern(text, 0, text.length());
+    }
+
+    /**
+     * Returns the canonical field for the characters in the range [start, end).
+     * A string is only created for the range if the text is not known yet.
+     * @param input input characters
+     * @param start start index (inclusive)
+     * @param end end index (exclusive)
+     * @return field
+     */
+    public Field intern(CharSequence input, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + input.charAt(i);
+        }
+        Entry entry = find(slots, input, start, end, hash);
+        if (entry != null) {
+            return entry.field;
+        }
+        return add(input.subSequence(start, end).toString(), hash);
+    }
+
+    /**
+     * Returns the field with an id
+     * @param id field id
+     * @return field
+     */
+    public Field get(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException(String.format("field id %d of %d fields", id, size));
+        }
+        return fields[id];
+    }
+
+    /**
+     * Returns the number of fields with an id, ids are in the range [0, size)
+     * @return number of fields
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the maximum number of fields
+     * @return maximum number of fields
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    private synchronized Field add(String text, int hash) {
+        //the text may have been added by another thread
+        Entry entry = find(slots, text, 0, text.length(), hash);
+        if (entry != null) {
+            return entry.field;
+        }
+        String[] path = StringUtil.splitQuoted(text, '.');
+        Field field = byPath.get(new Field(text, path));
+        if (field == null) {
+            if (size == maxSize) {
+                return new Field(Field.toJoinedPath(path, 0, path.length), path);
+            }
+            field = new Field(path, size);
+            if (size == fields.length) {
+                fields = Arrays.copyOf(fields, size * 2);
+            }
+            fields[size] = field;
+            size++;
+            byPath.put(field, field);
+        }
+        //other spellings of known fields are limited as well
+        if (entryCount < maxSize * 2) {
+            put(new Entry(text, hash, field));
+        }
+        return field;
+    }
+
+    private void put(Entry entry) {
+        AtomicReferenceArray<Entry> table = slots;
+        if ((entryCount + 1) * 2 > table.length()) {
+            AtomicReferenceArray<Entry> grown = new AtomicReferenceArray<>(table.length() * 2);
+            for (int i = 0; i < table.length(); i++) {
+                Entry e = table.get(i);
+                if (e != null) {
+                    insert(grown, e);
+                }
+            }
+            insert(grown, entry);
+            slots = grown;
+        } else {
+            insert(table, entry);
+        }
+        entryCount++;
+    }
+
+    private static void insert(AtomicReferenceArray<Entry> table, Entry entry) {
+        int mask = table.length() - 1;
+        int i = entry.hash & mask;
+        while (table.get(i) != null) {
+            i = (i + 1) & mask;
+        }
+        table.set(i, entry);
+    }
+
+    private static Entry find(AtomicReferenceArray<Entry> table, CharSequence input, int start, int end, int hash) {
+        int mask = table.length() - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            Entry entry = table.get(i);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.hash == hash && entry.matches(input, start, end)) {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Text of a field reference and its canonical field
+     */
+    private static final class Entry {
+        private final String text;
+        private final int hash;
+        private final Field field;
+
+        Entry(String text, int hash, Field field) {
+            this.text = text;
+            this.hash = hash;
+            this.field = field;
+        }
+
+        boolean matches(CharSequence input, int start, int end) {
+            if (text.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) != input.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
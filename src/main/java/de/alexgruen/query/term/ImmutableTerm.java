@@ -0,0 +1,65 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.term;
+
+/**
+ * Term that cannot be changed, used by {@link de.alexgruen.query.ImmutableQueryNode}.
+ * The setters throw an {@link UnsupportedOperationException}. Field and value are shared with the source term
+ * and must not be changed. The fingerprint is computed when the term is created.
+ */
+public final class ImmutableTerm extends Term {
+
+    private ImmutableTerm(Field field, TermOperator operator, Value value) {
+        super(field, operator, value);
+        getFingerprint();
+    }
+
+    /**
+     * Returns an immutable term with the field, operator and value of a term
+     * @param term term or null
+     * @return the term if it is immutable, a new immutable term or null
+     */
+    public static ImmutableTerm of(Term term) {
+        if (term == null || term instanceof ImmutableTerm) {
+            return (ImmutableTerm) term;
+        }
+        return new ImmutableTerm(term.getField(), term.getOperator(), term.getValue());
+    }
+
+    @Override
+    public void setField(Field field) {
+        throw new UnsupportedOperationException("term is immutable");
+    }
+
+    @Override
+    public void setOperator(TermOperator operator) {
+        throw new UnsupportedOperationException("term is immutable");
+    }
+
+    @Override
+    public void setValue(Value value) {
+        throw new UnsupportedOperationException("term is immutable");
+    }
+}
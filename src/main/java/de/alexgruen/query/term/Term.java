@@ -24,6 +24,10 @@
 
 package de.alexgruen.query.term;
 
+import de.alexgruen.query.util.FingerprintUtil;
+
+import java.util.Objects;
+
 /**
  * Represents a term within the query (field operator value)
  */
@@ -31,6 +35,8 @@ public class Term {
     private Field field;
     private TermOperator operator;
     private Value value;
+    //0 until the fingerprint is computed
+    private long fingerprint;
 
     /**
      * Creates a new term object from a field, operator and value
@@ -58,6 +64,7 @@ public class Term {
      */
     public void setField(Field field) {
         this.field = field;
+        this.fingerprint = 0;
     }
 
     /**
@@ -74,6 +81,7 @@ public class Term {
      */
     public void setOperator(TermOperator operator) {
         this.operator = operator;
+        this.fingerprint = 0;
     }
 
     /**
@@ -90,6 +98,50 @@ public class Term {
      */
     public void setValue(Value value) {
         this.value = value;
+        this.fingerprint = 0;
+    }
+
+    /**
+     * Returns the 64 bit fingerprint of field, operator name and value. Equal terms have equal fingerprints.
+     * The fingerprint is computed once and recomputed after a setter of the term is called,
+     * values must not be changed while they are part of a term.
+     * @return fingerprint
+     */
+    public long getFingerprint() {
+        long fingerprint = this.fingerprint;
+        if (fingerprint == 0) {
+            fingerprint = FingerprintUtil.combine(field == null ? 0 : field.getFingerprint(),
+                    operator == null ? 0 : operator.getFingerprint());
+            fingerprint = FingerprintUtil.combine(fingerprint, value == null ? 0 : value.getFingerprint());
+            //0 marks a missing fingerprint
+            fingerprint = fingerprint == 0 ? 1 : fingerprint;
+            this.fingerprint = fingerprint;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * True if o is a term with an equal field, operator and value
+     * @param o other term
+     * @return true if equal
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Term)) return false;
+        Term term = (Term) o;
+        return Objects.equals(field, term.field) &&
+                Objects.equals(operator, term.operator) &&
+                Objects.equals(value, term.value);
+    }
+
+    /**
+     * Calculates the hashcode from field, operator and value
+     * @return hashcode
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(field, operator, value);
     }
 
     /**
@@ -67,6 +67,16 @@ public class TermOperators {
      */
     public static final TermOperator REGEX = new TermOperator("~=","REGEX", "regex");
 
+    /**
+     * Set operator (field IN (v1, v2, ...)), the value is a {@link ValueSet}
+     */
+    public static final TermOperator IN = new TermOperator("IN", "in");
+
+    /**
+     * Negated set operator (field NOT IN (v1, v2, ...)), the value is a {@link ValueSet}
+     */
+    public static final TermOperator NOT_IN = new TermOperator("NOT_IN", "not in", "NOT IN");
+
     /**
      * Dummy operator for text search terms
      */
@@ -85,6 +95,8 @@ public class TermOperators {
                     GT,
                     TEXT,
                     REGEX,
+                    IN,
+                    NOT_IN,
                     FULL_TEXT
             };
 
@@ -110,6 +122,16 @@ public class TermOperators {
         }
     }
 
+    /**
+     * Returns true if the operator expects a {@link ValueSet} (IN and NOT IN).
+     * Set operators can only be used with a value list and not with a single value.
+     * @param operator term operator
+     * @return true if set operator
+     */
+    public static boolean isSetOperator(TermOperator operator) {
+        return IN.equals(operator) || NOT_IN.equals(operator);
+    }
+
     /**
      * Returns true if a given string is name or alias of a default operator
      * @param name input name
@@ -26,19 +26,33 @@ package de.alexgruen.query.term;
 
 
 import de.alexgruen.query.compiler.QueryCompilerException;
+import de.alexgruen.query.compiler.QueryError;
+import de.alexgruen.query.util.FingerprintUtil;
 
+import java.util.Objects;
 import java.util.regex.Pattern;
 
 /**
  * Represents a value within a term (field operator value)
+ * <p>
+ * Numbers and booleans are stored as primitives and are only boxed if {@link #getValue()} or one of the boxed
+ * accessors is called, use {@link #longValue()}, {@link #doubleValue()} and {@link #booleanValue()} to read them
+ * without allocation. Values parsed from number tokens keep the token text ({@link #getText()}),
+ * decimal numbers are decoded when they are read for the first time.
  */
 public class Value {
     //Value types
     public enum Type{
-        Double, Long, String, Boolean, Pattern, Null
+        Double, Long, String, Boolean, Pattern, ValueSet, Null
     }
     private Object value;
     private Type type;
+    //long value, bits of a double value or 1 for true
+    private long bits;
+    //token text of a parsed number or boolean
+    private String text;
+    //false until the text of a decimal number is decoded
+    private volatile boolean decoded = true;
 
     /**
      * Creates a new value object from an input object.
@@ -49,6 +63,101 @@ public class Value {
         setValue(value);
     }
 
+    private Value(Type type, long bits, String text, boolean decoded) {
+        this.type = type;
+        this.bits = bits;
+        this.text = text;
+        this.decoded = decoded;
+    }
+
+    /**
+     * Creates a long value without boxing
+     * @param value long value
+     * @return value
+     */
+    public static Value of(long value) {
+        return new Value(Type.Long, value, null, true);
+    }
+
+    /**
+     * Creates a double value without boxing
+     * @param value double value
+     * @return value
+     */
+    public static Value of(double value) {
+        return new Value(Type.Double, Double.doubleToRawLongBits(value), null, true);
+    }
+
+    /**
+     * Creates a boolean value without boxing
+     * @param value boolean value
+     * @return value
+     */
+    public static Value of(boolean value) {
+        return new Value(Type.Boolean, value ? 1 : 0, null, true);
+    }
+
+    /**
+     * Creates a value from the text of a number token (<tt>'-'? DIGIT+ ('.' DIGIT+)?</tt>).
+     * Integers are converted to a long immediately, decimal numbers are decoded when they are read.
+     * A {@link QueryCompilerException} is thrown if the text is not a number or exceeds the range of a long.
+     * @param text number text
+     * @return long or double value
+     */
+    public static Value parseNumber(String text) {
+        int length = text.length();
+        boolean negative = length > 0 && text.charAt(0) == '-';
+        int i = negative ? 1 : 0;
+        int digitsStart = i;
+        //digits are accumulated as a negative number, so Long.MIN_VALUE can be parsed
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long result = 0;
+        boolean overflow = false;
+        for (; i < length; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            if (result < limit / 10 || result * 10 < limit + digit) {
+                overflow = true;
+            }
+            result = result * 10 - digit;
+        }
+        if (i > digitsStart && i == length && !overflow) {
+            return new Value(Type.Long, negative ? result : -result, text, true);
+        }
+        if (i > digitsStart && i < length - 1 && text.charAt(i) == '.' && isDigits(text, i + 1)) {
+            return new Value(Type.Double, 0, text, false);
+        }
+        throw new QueryCompilerException(QueryError.invalidInput("error parsing value '%s'", text));
+    }
+
+    /**
+     * Creates a value from the text of a boolean token (true, false, t or f, case insensitive).
+     * A {@link QueryCompilerException} is thrown if the text is not a boolean.
+     * @param text boolean text
+     * @return boolean value
+     */
+    public static Value parseBoolean(String text) {
+        boolean value;
+        if ("true".equalsIgnoreCase(text) || "t".equalsIgnoreCase(text)) {
+            value = true;
+        } else if ("false".equalsIgnoreCase(text) || "f".equalsIgnoreCase(text)) {
+            value = false;
+        } else {
+            throw new QueryCompilerException(QueryError.invalidInput("error parsing value '%s'", text));
+        }
+        return new Value(Type.Boolean, value ? 1 : 0, text, true);
+    }
+
+    private static boolean isDigits(String text, int from) {
+        for (int i = from; i < text.length(); i++) {
+            if (text.charAt(i) < '0' || text.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
 
     /**
      * Sets the value object and updates the type.
@@ -57,15 +166,43 @@ public class Value {
      */
     public void setValue(Object value) {
         this.value = value;
+        this.text = null;
+        this.decoded = true;
         updateType();
     }
 
     /**
-     * Returns the value object
+     * Returns the value object. Numbers and booleans are boxed when this method is called for the first time.
      * @return value object
      */
     public Object getValue() {
-        return value;
+        Object v = value;
+        if (v == null && type != Type.Null) {
+            switch (type) {
+                case Long:
+                    v = bits;
+                    break;
+                case Double:
+                    v = doubleValue();
+                    break;
+                case Boolean:
+                    v = bits != 0;
+                    break;
+                default:
+                    break;
+            }
+            value = v;
+        }
+        return v;
+    }
+
+    /**
+     * Returns the text of the number or boolean token this value was parsed from
+     * ({@link #parseNumber(String)}, {@link #parseBoolean(String)}) or null
+     * @return token text or null
+     */
+    public String getText() {
+        return text;
     }
 
     /**
@@ -81,7 +218,7 @@ public class Value {
      * @return true if null
      */
     public boolean isNull(){
-        return value == null;
+        return type == Type.Null;
     }
 
     /**
@@ -116,16 +253,38 @@ public class Value {
         return type == Type.Pattern;
     }
 
+    /**
+     * Returns true if the value is a {@link ValueSet} (IN and NOT IN operators).
+     * @return true if value set
+     */
+    public boolean isValueSet(){
+        return type == Type.ValueSet;
+    }
+
     /**
      * Returns the value as Double. If the value is neither Long or Double a {@link QueryCompilerException} is thrown.
      * @return double value
      */
     public Double getDouble(){
+        return doubleValue();
+    }
+
+    /**
+     * Returns the value as double without boxing.
+     * If the value is neither Long or Double a {@link QueryCompilerException} is thrown.
+     * @return double value
+     */
+    public double doubleValue(){
         if(type == Type.Double){
-            return (Double)value;
+            if (!decoded) {
+                //concurrent readers decode the same bits
+                bits = Double.doubleToRawLongBits(Double.parseDouble(text));
+                decoded = true;
+            }
+            return Double.longBitsToDouble(bits);
         }
         if(type == Type.Long){
-            return ((Long)value).doubleValue();
+            return bits;
         }
         throw new QueryCompilerException(String.format("value is not available as double (%s)",type.name()));
     }
@@ -135,11 +294,20 @@ public class Value {
      * @return long value
      */
     public Long getLong(){
+        return longValue();
+    }
+
+    /**
+     * Returns the value as long without boxing.
+     * If the value is neither Long or Double a {@link QueryCompilerException} is thrown.
+     * @return long value
+     */
+    public long longValue(){
         if(type == Type.Long){
-            return (Long)value;
+            return bits;
         }
         if(type == Type.Double){
-            return ((Double)value).longValue();
+            return (long) doubleValue();
         }
         throw new QueryCompilerException(String.format("value is not available as long (%s)",type.name()));
     }
@@ -149,8 +317,16 @@ public class Value {
      * @return boolean value
      */
     public Boolean getBoolean(){
+        return booleanValue();
+    }
+
+    /**
+     * Returns the value as boolean without boxing. If the value is not a Boolean a {@link QueryCompilerException} is thrown.
+     * @return boolean value
+     */
+    public boolean booleanValue(){
         if(type == Type.Boolean){
-            return (Boolean)value;
+            return bits != 0;
         }
 
         throw new QueryCompilerException(String.format("value is not available as boolean (%s)",type.name()));
@@ -168,20 +344,40 @@ public class Value {
         throw new QueryCompilerException(String.format("value is not available as pattern (%s)",type.name()));
     }
 
+    /**
+     * Returns the value as ValueSet. If the value is not a ValueSet a {@link QueryCompilerException} is thrown.
+     * @return ValueSet value
+     */
+    public ValueSet getValueSet(){
+        if(type == Type.ValueSet){
+            return (ValueSet)value;
+        }
+
+        throw new QueryCompilerException(String.format("value is not available as value set (%s)",type.name()));
+    }
+
     /**
      * Returns the value as String. If the value is not a String the respective <tt>toString()</tt> value is returned.
      * @return String value
      */
     public String getString(){
-        if(type == Type.Null){
-            return null;
+        switch (type) {
+            case Null:
+                return null;
+            case Long:
+                return Long.toString(bits);
+            case Double:
+                return Double.toString(doubleValue());
+            case Boolean:
+                return Boolean.toString(bits != 0);
+            default:
+                return value.toString();
         }
-        return value.toString();
     }
 
     /**
      * Updates the type of the value.
-     * Supported types are: Double, Long, String, Boolean, Integer, Float and Pattern.
+     * Supported types are: Double, Long, String, Boolean, Integer, Float, Pattern and ValueSet.
      */
     private void updateType(){
         if(value == null){
@@ -190,38 +386,120 @@ public class Value {
         }
         if(value instanceof Double){
             type = Type.Double;
+            bits = Double.doubleToRawLongBits((Double) value);
         }
         else if(value instanceof Long){
             type = Type.Long;
+            bits = (Long) value;
         }
         else if(value instanceof String){
             type = Type.String;
         }
         else if(value instanceof Boolean){
             type = Type.Boolean;
+            bits = (Boolean) value ? 1 : 0;
         }
         else if(value instanceof Pattern){
             type = Type.Pattern;
         }
+        else if(value instanceof ValueSet){
+            type = Type.ValueSet;
+        }
         else if(value instanceof Integer){
             type = Type.Long;
-            value = ((Integer) value).longValue();
+            bits = (Integer) value;
+            value = bits;
         }
         else if(value instanceof Float){
             type = Type.Double;
-            value = ((Float) value).doubleValue();
+            bits = Double.doubleToRawLongBits((Float) value);
+            value = Double.longBitsToDouble(bits);
         }
         else {
             throw new QueryCompilerException(String.format("unknown value type %s",value.getClass()));
         }
     }
 
+    /**
+     * True if o is a value of the same type with an equal value object.
+     * Patterns are equal if their regular expressions and flags are equal.
+     * @param o other value
+     * @return true if equal
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Value other = (Value) o;
+        if (type != other.type) return false;
+        switch (type) {
+            case Long:
+            case Boolean:
+                return bits == other.bits;
+            case Double:
+                return Double.doubleToLongBits(doubleValue()) == Double.doubleToLongBits(other.doubleValue());
+            case Pattern:
+                Pattern pattern = (Pattern) value;
+                Pattern otherPattern = (Pattern) other.value;
+                return pattern.pattern().equals(otherPattern.pattern()) && pattern.flags() == otherPattern.flags();
+            default:
+                return Objects.equals(value, other.value);
+        }
+    }
+
+    /**
+     * Computes the 64 bit fingerprint of type and value. Equal values have equal fingerprints.
+     * @return fingerprint
+     */
+    public long getFingerprint() {
+        long fingerprint = FingerprintUtil.mix(type.ordinal() + 1);
+        switch (type) {
+            case Long:
+            case Boolean:
+                return FingerprintUtil.combine(fingerprint, bits);
+            case Double:
+                return FingerprintUtil.combine(fingerprint, Double.doubleToLongBits(doubleValue()));
+            case Pattern:
+                Pattern pattern = (Pattern) value;
+                fingerprint = FingerprintUtil.combine(fingerprint, FingerprintUtil.hash(pattern.pattern()));
+                return FingerprintUtil.combine(fingerprint, pattern.flags());
+            case ValueSet:
+                return FingerprintUtil.combine(fingerprint, ((ValueSet) value).getFingerprint());
+            case Null:
+                return fingerprint;
+            default:
+                return FingerprintUtil.combine(fingerprint, FingerprintUtil.hash(value.toString()));
+        }
+    }
+
+    /**
+     * Calculates the hashcode from type and value
+     * @return hashcode
+     */
+    @Override
+    public int hashCode() {
+        int result = 31 * type.hashCode();
+        switch (type) {
+            case Long:
+                return result + Long.hashCode(bits);
+            case Boolean:
+                return result + Boolean.hashCode(bits != 0);
+            case Double:
+                return result + Double.hashCode(doubleValue());
+            case Pattern:
+                Pattern pattern = (Pattern) value;
+                return 31 * (result + pattern.pattern().hashCode()) + pattern.flags();
+            default:
+                return result + Objects.hashCode(value);
+        }
+    }
+
     /**
      * Returns the string representation of the value
      * @return value string
      */
     @Override
     public String toString() {
-        return isNull() ? null : value.toString();
+        return getString();
     }
 }
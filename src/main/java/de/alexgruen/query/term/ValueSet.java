@@ -0,0 +1,408 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.term;
+
+import de.alexgruen.query.compiler.QueryCompilerException;
+import de.alexgruen.query.util.FingerprintUtil;
+import de.alexgruen.query.util.StringUtil;
+
+import java.util.Arrays;
+
+/**
+ * Set of values used by the IN and NOT IN operators (field IN (v1, v2, ...)).
+ * <p>
+ * Numbers are stored in sorted primitive arrays (long[] or double[]), strings in a sorted array.
+ * Duplicates are removed, lookups use a binary search.
+ * The set is immutable, values are accessed by index in ascending order.
+ */
+public final class ValueSet {
+    //value set types
+    public enum Type {
+        Long, Double, String
+    }
+
+    private final Type type;
+    private final long[] longs;
+    private final double[] doubles;
+    private final String[] strings;
+
+    private ValueSet(Type type, long[] longs, double[] doubles, String[] strings) {
+        this.type = type;
+        this.longs = longs;
+        this.doubles = doubles;
+        this.strings = strings;
+    }
+
+    /**
+     * Creates a set of long values
+     * @param values input values, the array is not modified
+     * @return value set
+     */
+    public static ValueSet ofLongs(long... values) {
+        return ofLongs(values, values.length);
+    }
+
+    /**
+     * Creates a set of long values from the first <tt>count</tt> entries of an array
+     * @param values input values, the array is not modified
+     * @param count number of values
+     * @return value set
+     */
+    public static ValueSet ofLongs(long[] values, int count) {
+        long[] a = Arrays.copyOf(values, count);
+        Arrays.sort(a);
+        int size = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (size == 0 || a[size - 1] != a[i]) {
+                a[size++] = a[i];
+            }
+        }
+        return new ValueSet(Type.Long, size == a.length ? a : Arrays.copyOf(a, size), null, null);
+    }
+
+    /**
+     * Creates a set of double values
+     * @param values input values, the array is not modified
+     * @return value set
+     */
+    public static ValueSet ofDoubles(double... values) {
+        return ofDoubles(values, values.length);
+    }
+
+    /**
+     * Creates a set of double values from the first <tt>count</tt> entries of an array
+     * @param values input values, the array is not modified
+     * @param count number of values
+     * @return value set
+     */
+    public static ValueSet ofDoubles(double[] values, int count) {
+        double[] a = Arrays.copyOf(values, count);
+        Arrays.sort(a);
+        int size = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (size == 0 || Double.compare(a[size - 1], a[i]) != 0) {
+                a[size++] = a[i];
+            }
+        }
+        return new ValueSet(Type.Double, null, size == a.length ? a : Arrays.copyOf(a, size), null);
+    }
+
+    /**
+     * Creates a set of string values
+     * @param values input values, the array is not modified
+     * @return value set
+     */
+    public static ValueSet ofStrings(String... values) {
+        return ofStrings(values, values.length);
+    }
+
+    /**
+     * Creates a set of string values from the first <tt>count</tt> entries of an array.
+     * A {@link QueryCompilerException} is thrown if a value is null.
+     * @param values input values, the array is not modified
+     * @param count number of values
+     * @return value set
+     */
+    public static ValueSet ofStrings(String[] values, int count) {
+        String[] a = Arrays.copyOf(values, count);
+        for (String s : a) {
+            if (s == null) {
+                throw new QueryCompilerException("null is not allowed in a value set");
+            }
+        }
+        Arrays.sort(a);
+        int size = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (size == 0 || !a[size - 1].equals(a[i])) {
+                a[size++] = a[i];
+            }
+        }
+        return new ValueSet(Type.String, null, null, size == a.length ? a : Arrays.copyOf(a, size));
+    }
+
+    /**
+     * Returns the type of the values
+     * @return value type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns true if the set contains numbers (Long or Double)
+     * @return true if number set
+     */
+    public boolean isNumber() {
+        return type != Type.String;
+    }
+
+    /**
+     * Returns the number of distinct values
+     * @return number of values
+     */
+    public int size() {
+        switch (type) {
+            case Long:
+                return longs.length;
+            case Double:
+                return doubles.length;
+            default:
+                return strings.length;
+        }
+    }
+
+    /**
+     * Returns true if the set contains no values
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the value at an index as long. Double values are truncated.
+     * A {@link QueryCompilerException} is thrown for string sets.
+     * @param index index in ascending order
+     * @return long value
+     */
+    public long getLong(int index) {
+        switch (type) {
+            case Long:
+                return longs[index];
+            case Double:
+                return (long) doubles[index];
+            default:
+                throw new QueryCompilerException(String.format("value set is not available as long (%s)", type.name()));
+        }
+    }
+
+    /**
+     * Returns the value at an index as double.
+     * A {@link QueryCompilerException} is thrown for string sets.
+     * @param index index in ascending order
+     * @return double value
+     */
+    public double getDouble(int index) {
+        switch (type) {
+            case Long:
+                return longs[index];
+            case Double:
+                return doubles[index];
+            default:
+                throw new QueryCompilerException(String.format("value set is not available as double (%s)", type.name()));
+        }
+    }
+
+    /**
+     * Returns the value at an index as String. Numbers are converted with <tt>toString()</tt>.
+     * @param index index in ascending order
+     * @return string value
+     */
+    public String getString(int index) {
+        switch (type) {
+            case Long:
+                return Long.toString(longs[index]);
+            case Double:
+                return Double.toString(doubles[index]);
+            default:
+                return strings[index];
+        }
+    }
+
+    /**
+     * Returns a copy of the values as long array. Double values are truncated.
+     * A {@link QueryCompilerException} is thrown for string sets.
+     * @return long values in ascending order
+     */
+    public long[] toLongArray() {
+        if (type == Type.Long) {
+            return longs.clone();
+        }
+        long[] a = new long[size()];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = getLong(i);
+        }
+        return a;
+    }
+
+    /**
+     * Returns a copy of the values as double array.
+     * A {@link QueryCompilerException} is thrown for string sets.
+     * @return double values in ascending order
+     */
+    public double[] toDoubleArray() {
+        if (type == Type.Double) {
+            return doubles.clone();
+        }
+        double[] a = new double[size()];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = getDouble(i);
+        }
+        return a;
+    }
+
+    /**
+     * Returns a copy of the values as string array
+     * @return string values in ascending order
+     */
+    public String[] toStringArray() {
+        if (type == Type.String) {
+            return strings.clone();
+        }
+        String[] a = new String[size()];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = getString(i);
+        }
+        return a;
+    }
+
+    /**
+     * Returns true if the set contains a number
+     * @param value number
+     * @return true if contained
+     */
+    public boolean contains(long value) {
+        switch (type) {
+            case Long:
+                return Arrays.binarySearch(longs, value) >= 0;
+            case Double:
+                return Arrays.binarySearch(doubles, (double) value) >= 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns true if the set contains a number
+     * @param value number
+     * @return true if contained
+     */
+    public boolean contains(double value) {
+        switch (type) {
+            case Long:
+                return value == (long) value && Arrays.binarySearch(longs, (long) value) >= 0;
+            case Double:
+                return Arrays.binarySearch(doubles, value) >= 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns true if the set contains a string
+     * @param value string
+     * @return true if contained
+     */
+    public boolean contains(String value) {
+        return type == Type.String && value != null && Arrays.binarySearch(strings, value) >= 0;
+    }
+
+    /**
+     * Returns true if the set contains a value. Numbers are compared by their numeric value.
+     * @param value value
+     * @return true if contained
+     */
+    public boolean contains(Value value) {
+        if (value == null || value.isNull()) {
+            return false;
+        }
+        switch (value.getType()) {
+            case Long:
+                return contains(value.longValue());
+            case Double:
+                return contains(value.doubleValue());
+            case String:
+                return contains(value.getString());
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Computes the 64 bit fingerprint of type and values. Equal sets have equal fingerprints.
+     * @return fingerprint
+     */
+    public long getFingerprint() {
+        int size = size();
+        long fingerprint = FingerprintUtil.combine(type.ordinal(), size);
+        for (int i = 0; i < size; i++) {
+            long value;
+            if (type == Type.Long) {
+                value = longs[i];
+            } else if (type == Type.Double) {
+                value = Double.doubleToLongBits(doubles[i]);
+            } else {
+                value = FingerprintUtil.hash(strings[i]);
+            }
+            fingerprint = FingerprintUtil.combine(fingerprint, value);
+        }
+        return fingerprint;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ValueSet)) {
+            return false;
+        }
+        ValueSet other = (ValueSet) o;
+        return type == other.type
+                && Arrays.equals(longs, other.longs)
+                && Arrays.equals(doubles, other.doubles)
+                && Arrays.equals(strings, other.strings);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = type.hashCode();
+        h = 31 * h + Arrays.hashCode(longs);
+        h = 31 * h + Arrays.hashCode(doubles);
+        return 31 * h + Arrays.hashCode(strings);
+    }
+
+    /**
+     * Returns the values in brackets: (1, 2, 3) or ('a', 'b')
+     * @return string representation
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("(");
+        int size = size();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            if (type == Type.String) {
+                //backslashes are escaped as well, so the list can be parsed again
+                sb.append(StringUtil.putInQuotes(strings[i].replace("\\", "\\\\"), '\''));
+            } else {
+                sb.append(getString(i));
+            }
+        }
+        return sb.append(')').toString();
+    }
+}
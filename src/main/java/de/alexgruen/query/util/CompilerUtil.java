@@ -24,14 +24,19 @@
 
 package de.alexgruen.query.util;
 
+import de.alexgruen.query.LogicalOperator;
+import de.alexgruen.query.LogicalOperators;
+import de.alexgruen.query.QueryNode;
 import de.alexgruen.query.compiler.QueryCompilerException;
-import de.alexgruen.query.compiler.parser.ParserUtil;
+import de.alexgruen.query.compiler.QueryError;
 import de.alexgruen.query.generated.QueryParser;
 import de.alexgruen.query.term.Field;
 import de.alexgruen.query.term.Value;
 import org.antlr.v4.runtime.tree.TerminalNode;
 
 import java.lang.reflect.Array;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 
 public class CompilerUtil {
@@ -75,29 +80,26 @@ public class CompilerUtil {
      * @return value object
      */
     public static Value createValue(String text, TerminalNode NULL, TerminalNode NUMBER, TerminalNode BOOL) {
-        if (NULL != null) {
+        return createValue(text, NULL != null, NUMBER != null, BOOL != null);
+    }
+
+    /**
+     * Creates a Value object from the text of a value token
+     * @param text token text
+     * @param isNull true if the token is a null token
+     * @param isNumber true if the token is a number token
+     * @param isBoolean true if the token is a boolean token
+     * @return value object
+     */
+    public static Value createValue(String text, boolean isNull, boolean isNumber, boolean isBoolean) {
+        if (isNull) {
             return null;
         }
-        if (NUMBER != null) {
-            String n = NUMBER.getText();
-            try {
-                if (n.contains(".")) {
-                    return new Value(ParserUtil.parse(Double.class, n));
-                } else {
-                    return new Value(ParserUtil.parse(Long.class, n));
-                }
-            } catch (Exception e) {
-                throw new QueryCompilerException(String.format("error parsing value '%s'", n));
-            }
+        if (isNumber) {
+            return Value.parseNumber(text);
         }
-        if (BOOL != null) {
-            try {
-                return new Value(
-                        ParserUtil.parse(Boolean.class, BOOL.getText())
-                );
-            } catch (Exception e) {
-                throw new QueryCompilerException(String.format("error parsing value '%s'", BOOL.getText()));
-            }
+        if (isBoolean) {
+            return Value.parseBoolean(text);
         }
         String value = text;
         if (StringUtil.isQuoted(value)) {
@@ -123,10 +125,59 @@ public class CompilerUtil {
      * @return field object
      */
     public static Field createField(QueryParser.VariableContext ctx) {
-        String fullPath = ctx.getText();
+        return createField(ctx.getText());
+    }
+
+    /**
+     * Creates a field from the text of a variable token
+     * @param fullPath variable text
+     * @return field object
+     */
+    public static Field createField(String fullPath) {
         String[] path = StringUtil.splitQuoted(fullPath, '.');
         return new Field(fullPath, path);
     }
 
+    /**
+     * Converts the text of a regex token (/regex/) to a {@link Pattern}.
+     * A {@link QueryCompilerException} is thrown if the input string is not in the right format
+     * @param text input string
+     * @return compiled pattern
+     */
+    public static Pattern createPattern(String text) {
+        String regex = text;
+        if (!regex.startsWith("/") || !regex.endsWith("/")) {
+            throw new QueryCompilerException(QueryError.invalidInput("wrong pattern format: %s", text));
+        }
+        regex = regex.substring(1, regex.length() - 1);
+        try {
+            return Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw new QueryCompilerException(QueryError.invalidInput("invalid regular expression %s: %s", text, e.getDescription()));
+        }
+    }
+
+    /**
+     * Appends a node to the logic node created for the current operator chain.
+     * A new node is created if there is no chain yet or the operator changes or is not associative.
+     * Used by both parser engines, so they build the same trees.
+     * @param left query node of all previous operations
+     * @param chain logic node created for the current chain or null
+     * @param operator logical operator
+     * @param right node that is appended
+     * @return logic node of the chain
+     */
+    public static QueryNode joinChain(QueryNode left, QueryNode chain, LogicalOperator operator, QueryNode right) {
+        if (chain != null && operator.equals(chain.getOperator()) && LogicalOperators.isAssociative(operator)) {
+            chain.addChild(right);
+            return chain;
+        }
+        QueryNode parent = new QueryNode();
+        parent.addChild(left);
+        parent.addChild(right);
+        parent.setOperator(operator);
+        return parent;
+    }
+
 
 }
@@ -0,0 +1,77 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.util;
+
+/**
+ * Functions to compute 64 bit structural fingerprints of query nodes, terms, fields and values.
+ * Fingerprints are stable across runs and JVMs, they do not depend on identity hashcodes.
+ */
+public class FingerprintUtil {
+    //multiplier of combine, the golden ratio in fixed point
+    private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+    private FingerprintUtil() {
+    }
+
+    /**
+     * Finalizer of MurmurHash3, spreads all bits of the input over the result
+     * @param h input
+     * @return mixed value
+     */
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Adds a value to a fingerprint. The result depends on the order in which values are added.
+     * @param fingerprint fingerprint
+     * @param value added value
+     * @return new fingerprint
+     */
+    public static long combine(long fingerprint, long value) {
+        return mix(fingerprint * GOLDEN + value);
+    }
+
+    /**
+     * Computes the fingerprint of a string (FNV-1a of the characters)
+     * @param s string or null
+     * @return fingerprint
+     */
+    public static long hash(String s) {
+        if (s == null) {
+            return 0;
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            hash = (hash ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+}
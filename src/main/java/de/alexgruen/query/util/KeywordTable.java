@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.util;
+
+import java.util.Collection;
+
+/**
+ * Immutable set of keywords that can be queried with a range of a {@link CharSequence}
+ * without creating a string for the range.
+ * Keywords are stored in an open addressing hash table, the hash of a range is computed like {@link String#hashCode()}.
+ */
+public final class KeywordTable {
+    /**
+     * Table without keywords
+     */
+    public static final KeywordTable EMPTY = new KeywordTable(new String[0]);
+
+    private final String[] slots;
+    private final int mask;
+    private final int minLength;
+    private final int maxLength;
+    private final int size;
+
+    private KeywordTable(String[] keywords) {
+        int capacity = 2;
+        while (capacity < keywords.length * 2) {
+            capacity <<= 1;
+        }
+        this.slots = new String[capacity];
+        this.mask = capacity - 1;
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        int count = 0;
+        for (String keyword : keywords) {
+            int i = keyword.hashCode() & mask;
+            while (slots[i] != null && !slots[i].equals(keyword)) {
+                i = (i + 1) & mask;
+            }
+            if (slots[i] == null) {
+                slots[i] = keyword;
+                count++;
+                min = Math.min(min, keyword.length());
+                max = Math.max(max, keyword.length());
+            }
+        }
+        this.minLength = min;
+        this.maxLength = max;
+        this.size = count;
+    }
+
+    /**
+     * Creates a table that contains all keywords of a collection
+     * @param keywords keywords
+     * @return keyword table
+     */
+    public static KeywordTable of(Collection<String> keywords) {
+        return keywords.isEmpty() ? EMPTY : new KeywordTable(keywords.toArray(new String[0]));
+    }
+
+    /**
+     * Returns true if the characters in the range [start, end) are a keyword
+     * @param input input characters
+     * @param start start index (inclusive)
+     * @param end end index (exclusive)
+     * @return true if the range is a keyword
+     */
+    public boolean contains(CharSequence input, int start, int end) {
+        int length = end - start;
+        if (length < minLength || length > maxLength) {
+            return false;
+        }
+        int hash = 0;
+        for (int j = start; j < end; j++) {
+            hash = 31 * hash + input.charAt(j);
+        }
+        for (int i = hash & mask; slots[i] != null; i = (i + 1) & mask) {
+            if (matches(slots[i], input, start, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if a string is a keyword
+     * @param keyword string
+     * @return true if keyword
+     */
+    public boolean contains(String keyword) {
+        return contains(keyword, 0, keyword.length());
+    }
+
+    /**
+     * Returns the number of keywords
+     * @return number of keywords
+     */
+    public int size() {
+        return size;
+    }
+
+    private static boolean matches(String keyword, CharSequence input, int start, int length) {
+        if (keyword.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (keyword.charAt(i) != input.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
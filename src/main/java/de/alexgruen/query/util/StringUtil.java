@@ -24,6 +24,14 @@
 
 package de.alexgruen.query.util;
 
+import de.alexgruen.query.compiler.QueryCompilerException;
+import de.alexgruen.query.compiler.QueryError;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -54,6 +62,57 @@ public class StringUtil {
         return sb.toString();
     }
 
+    /**
+     * Removes leading and trailing whitespace (all characters &lt;= ' ', like {@link String#trim()}).
+     * Strings are trimmed with {@link String#trim()}, other inputs are returned as view without copying the characters.
+     * @param input input characters
+     * @return trimmed characters
+     */
+    public static CharSequence trim(CharSequence input) {
+        if (input instanceof String) {
+            return ((String) input).trim();
+        }
+        int start = 0;
+        int end = input.length();
+        while (start < end && input.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && input.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == 0 && end == input.length()) {
+            return input;
+        }
+        return CharBuffer.wrap(input, start, end);
+    }
+
+    /**
+     * Returns the characters of the UTF-8 encoded bytes between position and limit of a buffer.
+     * If all bytes are ASCII, a view of the buffer is returned ({@link AsciiCharSequence}) and nothing is copied.
+     * Otherwise the bytes are decoded once.
+     * The position of the buffer is not changed.
+     * A {@link QueryCompilerException} is thrown if the bytes are not valid UTF-8.
+     * @param buffer input bytes
+     * @return characters
+     */
+    public static CharSequence fromUtf8(ByteBuffer buffer) {
+        int start = buffer.position();
+        int end = buffer.limit();
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) < 0) {
+                try {
+                    return StandardCharsets.UTF_8.newDecoder()
+                            .onMalformedInput(CodingErrorAction.REPORT)
+                            .onUnmappableCharacter(CodingErrorAction.REPORT)
+                            .decode(buffer.duplicate());
+                } catch (CharacterCodingException e) {
+                    throw new QueryCompilerException(QueryError.invalidInput("invalid UTF-8 input"));
+                }
+            }
+        }
+        return new AsciiCharSequence(buffer, start, end - start);
+    }
+
     /**
      * Returns parsed Number if the input string is a valid number representation.
      * If the string can not be parsed null is returned.
@@ -0,0 +1,306 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2018 Alexander Grün
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.alexgruen.query.util;
+
+import de.alexgruen.query.compiler.ComplexityLimits;
+import de.alexgruen.query.compiler.QueryCompilerException;
+import de.alexgruen.query.compiler.QueryError;
+import de.alexgruen.query.term.ValueSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses the value list of IN_LIST tokens (field IN (v1, v2, ...)) into a {@link ValueSet}.
+ * <p>
+ * The list is read in place in a single pass. Numbers are collected in primitive arrays,
+ * only quoted and unquoted strings create objects.
+ * Values are separated by commas, so decimal numbers have to use a point (1.5, not 1,5).
+ * Quoted strings may contain commas and brackets, a backslash escapes the next character.
+ * Unquoted values that are not numbers are strings. Strings and numbers can not be mixed.
+ */
+public class ValueSetParser {
+
+    private ValueSetParser() {
+    }
+
+    /**
+     * Returns true if the token text starts with NOT (NOT IN list)
+     * @param text token text
+     * @return true if negated
+     */
+    public static boolean isNegated(CharSequence text) {
+        return text.length() > 0 && (text.charAt(0) == 'n' || text.charAt(0) == 'N');
+    }
+
+    /**
+     * Returns the end of a value list that starts with an open bracket
+     * ('(' (STRING | ~('(' | ')' | '\'' | '"'))* ')').
+     * @param input input characters
+     * @param open index of the open bracket
+     * @param end end of the input
+     * @return index after the close bracket or -1 if the list is not closed
+     */
+    public static int listEnd(CharSequence input, int open, int end) {
+        int i = open + 1;
+        while (i < end) {
+            char c = input.charAt(i);
+            if (c == ')') {
+                return i + 1;
+            }
+            if (c == '(') {
+                return -1;
+            }
+            if (c == '\'' || c == '"') {
+                i = stringEnd(input, i, end);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the end of a quoted string. A backslash escapes the next character.
+     * @param input input characters
+     * @param start index of the opening quote
+     * @param end end of the input
+     * @return index after the closing quote or -1 if the string is not closed
+     */
+    private static int stringEnd(CharSequence input, int start, int end) {
+        char quote = input.charAt(start);
+        for (int i = start + 1; i < end; i++) {
+            char c = input.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == quote) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses the text of an IN_LIST token ([NOT] IN (v1, v2, ...)).
+     * A {@link QueryCompilerException} is thrown if the list is empty, contains empty values
+     * or mixes strings and numbers.
+     * @param text token text
+     * @return value set
+     */
+    public static ValueSet parse(CharSequence text) {
+        return parse(text, Integer.MAX_VALUE, -1);
+    }
+
+    /**
+     * Parses the text of an IN_LIST token ([NOT] IN (v1, v2, ...)).
+     * Parsing stops with a {@link QueryCompilerException} as soon as the list contains more than <tt>maxValues</tt> values.
+     * @param text token text
+     * @param maxValues maximum number of values
+     * @param offset position of the token in the input, reported if the list is too long, or -1
+     * @return value set
+     */
+    public static ValueSet parse(CharSequence text, int maxValues, int offset) {
+        int open = 0;
+        int length = text.length();
+        while (open < length && text.charAt(open) != '(') {
+            open++;
+        }
+        if (open == length || listEnd(text, open, length) != length) {
+            throw new QueryCompilerException(QueryError.invalidInput("wrong value list format: %s", text));
+        }
+        return new ValueSetParser.Values(text, maxValues, offset).parse(open + 1, length - 1);
+    }
+
+    /**
+     * Collects the values of one list
+     */
+    private static final class Values {
+        private final CharSequence text;
+        private final int maxValues;
+        private final int offset;
+        private int count;
+        private long[] longs = new long[16];
+        private int longCount;
+        private double[] doubles;
+        private int doubleCount;
+        private List<String> strings;
+
+        private Values(CharSequence text, int maxValues, int offset) {
+            this.text = text;
+            this.maxValues = maxValues;
+            this.offset = offset;
+        }
+
+        private ValueSet parse(int start, int end) {
+            int i = start;
+            while (i < end && isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            if (i == end) {
+                throw new QueryCompilerException(QueryError.invalidInput("empty value list: %s", text));
+            }
+            do {
+                int valueEnd = i;
+                while (valueEnd < end && text.charAt(valueEnd) != ',') {
+                    char c = text.charAt(valueEnd);
+                    valueEnd = c == '\'' || c == '"' ? stringEnd(text, valueEnd, end) : valueEnd + 1;
+                }
+                add(i, valueEnd);
+                i = valueEnd + 1;
+            } while (i <= end);
+
+            if (strings != null) {
+                if (longCount + doubleCount > 0) {
+                    throw new QueryCompilerException(QueryError.invalidInput("value list contains strings and numbers: %s", text));
+                }
+                return ValueSet.ofStrings(strings.toArray(new String[0]));
+            }
+            if (doubleCount > 0) {
+                double[] values = Arrays.copyOf(doubles, doubleCount + longCount);
+                for (int j = 0; j < longCount; j++) {
+                    values[doubleCount + j] = longs[j];
+                }
+                return ValueSet.ofDoubles(values, values.length);
+            }
+            return ValueSet.ofLongs(longs, longCount);
+        }
+
+        /**
+         * Adds the value between two positions, surrounding whitespace is ignored
+         */
+        private void add(int start, int end) {
+            while (start < end && isWhitespace(text.charAt(start))) {
+                start++;
+            }
+            while (end > start && isWhitespace(text.charAt(end - 1))) {
+                end--;
+            }
+            if (start == end) {
+                throw new QueryCompilerException(QueryError.invalidInput("empty value in value list: %s", text));
+            }
+            if (++count > maxValues) {
+                throw ComplexityLimits.limitExceeded(offset, "value list exceeds the limit of %d values", maxValues);
+            }
+            char c = text.charAt(start);
+            if ((c == '\'' || c == '"') && stringEnd(text, start, end) == end) {
+                addString(unescape(start + 1, end - 1));
+                return;
+            }
+            if (!addNumber(start, end)) {
+                addString(text.subSequence(start, end).toString());
+            }
+        }
+
+        /**
+         * Adds a number (-?[0-9]+(.[0-9]+)?) without creating a string for integers
+         * @return false if the value is not a number
+         */
+        private boolean addNumber(int start, int end) {
+            int i = start;
+            boolean negative = text.charAt(i) == '-';
+            if (negative) {
+                i++;
+            }
+            int digitsStart = i;
+            long value = 0;
+            boolean overflow = false;
+            while (i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                int digit = text.charAt(i) - '0';
+                //accumulate negative values, the range of negative longs is larger
+                if (value < (Long.MIN_VALUE + digit) / 10) {
+                    overflow = true;
+                }
+                value = value * 10 - digit;
+                i++;
+            }
+            if (i == digitsStart) {
+                return false;
+            }
+            if (i == end) {
+                if (overflow || (!negative && value == Long.MIN_VALUE)) {
+                    throw new QueryCompilerException(QueryError.invalidInput("error parsing value '%s'", text.subSequence(start, end).toString()));
+                }
+                addLong(negative ? value : -value);
+                return true;
+            }
+            if (text.charAt(i) != '.' || i + 1 == end) {
+                return false;
+            }
+            for (int j = i + 1; j < end; j++) {
+                if (text.charAt(j) < '0' || text.charAt(j) > '9') {
+                    return false;
+                }
+            }
+            addDouble(Double.parseDouble(text.subSequence(start, end).toString()));
+            return true;
+        }
+
+        private void addLong(long value) {
+            if (longCount == longs.length) {
+                longs = Arrays.copyOf(longs, longCount * 2);
+            }
+            longs[longCount++] = value;
+        }
+
+        private void addDouble(double value) {
+            if (doubles == null) {
+                doubles = new double[16];
+            } else if (doubleCount == doubles.length) {
+                doubles = Arrays.copyOf(doubles, doubleCount * 2);
+            }
+            doubles[doubleCount++] = value;
+        }
+
+        private void addString(String value) {
+            if (strings == null) {
+                strings = new ArrayList<>();
+            }
+            strings.add(value);
+        }
+
+        /**
+         * Returns the characters between two positions, a backslash escapes the next character
+         */
+        private String unescape(int start, int end) {
+            StringBuilder sb = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                if (c == '\\' && i + 1 < end) {
+                    c = text.charAt(++i);
+                }
+                sb.append(c);
+            }
+            return sb.toString();
+        }
+
+        private static boolean isWhitespace(char c) {
+            return c == ' ' || c == '\t' || c == '\n';
+        }
+    }
+}
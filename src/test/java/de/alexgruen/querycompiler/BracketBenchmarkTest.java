@@ -0,0 +1,132 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.compiler.engine.ParserEngineFactory;
+import de.alexgruen.query.compiler.engine.ParserEngines;
+import de.alexgruen.query.compiler.engine.QueryParserEngine;
+import de.alexgruen.query.generated.QueryLexer;
+import de.alexgruen.query.generated.QueryParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.DecisionInfo;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Parses deeply bracketed inputs. Before the grammar used precedence levels, ALL(*) prediction scanned
+ * to the end of the input for every bracket. Lookahead of the ANTLR parser at depth 200
+ * (ANTLR profiler, total / largest lookahead of one decision / input tokens):
+ * <pre>
+ *                 before                   after
+ * left nested     407006 / 2005 / 2006     604 / 3 / 2006
+ * right nested    606006 / 2005 / 2006     604 / 3 / 2006
+ * negated         122807 /  605 /  606       5 / 3 /  606
+ * </pre>
+ * The grammar before the change needed about a second per input. Timings are printed by
+ * {@link #testParseTime()}, which runs with <tt>mvn test -P benchmark</tt>.
+ */
+public class BracketBenchmarkTest {
+    private static final int DEPTH = 200;
+    private static final int ITERATIONS = 20;
+    //largest lookahead of a single decision
+    private static final int MAX_LOOKAHEAD = 3;
+
+    private static final QueryCompiler<PrintQuery> COMPILER = QueryCompiler.create(PrintQuery.class)
+            .withDefaultCreator(new PrintQueryCreator())
+            .build();
+
+    @Test
+    public void testLookahead() {
+        for (String query : new String[]{leftNested(DEPTH), rightNested(DEPTH), negated(DEPTH)}) {
+            CommonTokenStream tokens = new CommonTokenStream(new QueryLexer(CharStreams.fromString(query)));
+            QueryParser parser = new QueryParser(tokens);
+            parser.setProfile(true);
+            parser.compilationUnit();
+            Assertions.assertEquals(0, parser.getNumberOfSyntaxErrors());
+            long total = 0;
+            long max = 0;
+            for (DecisionInfo info : parser.getParseInfo().getDecisionInfo()) {
+                total += info.SLL_TotalLook + info.LL_TotalLook;
+                max = Math.max(max, Math.max(info.SLL_MaxLook, info.LL_MaxLook));
+            }
+            //every decision is made with a few tokens, the lookahead grows linearly with the input
+            Assertions.assertTrue(max <= MAX_LOOKAHEAD, "largest lookahead " + max);
+            Assertions.assertTrue(total <= tokens.size(), "lookahead " + total + " for " + tokens.size() + " tokens");
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void testParseTime() {
+        for (ParserEngineFactory factory : new ParserEngineFactory[]{
+                ParserEngines.ANTLR, ParserEngines.ANTLR_SLL_THEN_LL, ParserEngines.RECURSIVE_DESCENT}) {
+            QueryParserEngine engine = factory.create(COMPILER.getContext());
+            benchmark(engine, "left nested", leftNested(DEPTH));
+            benchmark(engine, "right nested", rightNested(DEPTH));
+            benchmark(engine, "negated", negated(DEPTH));
+        }
+    }
+
+    private static void benchmark(QueryParserEngine engine, String name, String query) {
+        //warm up
+        engine.parse(query);
+        long start = System.nanoTime();
+        QueryNode node = null;
+        for (int i = 0; i < ITERATIONS; i++) {
+            node = engine.parse(query);
+        }
+        long time = System.nanoTime() - start;
+        Assertions.assertNotNull(node);
+        System.out.println(String.format("%s %s depth %d: %.1f us", engine.getClass().getSimpleName(), name, DEPTH,
+                time / 1000.0 / ITERATIONS));
+    }
+
+    /**
+     * (((x > 1 && y0 > 2) && y1 > 2) ...)
+     */
+    private static String leftNested(int depth) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append('(');
+        }
+        sb.append("x > 1");
+        for (int i = 0; i < depth; i++) {
+            sb.append(" && y").append(i).append(" > 2)");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * (x0 > 1 || (x1 > 1 || ... y > 2))
+     */
+    private static String rightNested(int depth) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append("(x").append(i).append(" > 1 || ");
+        }
+        sb.append("y > 2");
+        for (int i = 0; i < depth; i++) {
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * !(!(... x > 1))
+     */
+    private static String negated(int depth) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append("!(");
+        }
+        sb.append("x > 1");
+        for (int i = 0; i < depth; i++) {
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,132 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.compiler.QueryCompileResult;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.compiler.QueryCompilerException;
+import de.alexgruen.query.compiler.cache.QueryCache;
+import de.alexgruen.query.compiler.cache.QueryCacheStats;
+import de.alexgruen.query.optimization.Optimizations;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CacheTest {
+
+    @Test
+    public void testQueryCache() {
+        QueryCache<PrintQuery> cache = QueryCache.<PrintQuery>builder().maximumSize(2).build();
+        QueryCompiler<PrintQuery> compiler = QueryCompiler.create(PrintQuery.class)
+                .withDefaultCreator(new PrintQueryCreator())
+                .withOptimization(Optimizations.RemoveRedundantBrackets)
+                .withQueryCache(cache)
+                .build();
+
+        PrintQuery a = compiler.compile("x > 0 && y < 1");
+        Assertions.assertEquals("((x > 0) && (y < 1))", a.toString());
+        Assertions.assertSame(a, compiler.compile("x > 0 && y < 1"));
+
+        compiler.compile("x > 1");
+        compiler.compile("x > 2");
+        Assertions.assertEquals(2, cache.size());
+
+        QueryCacheStats stats = cache.getStats();
+        Assertions.assertEquals(1, stats.getHitCount());
+        Assertions.assertEquals(3, stats.getMissCount());
+        Assertions.assertEquals(1, stats.getEvictionCount());
+
+        //failed compilations are not cached
+        Assertions.assertThrows(QueryCompilerException.class, () -> compiler.compile("x > a"));
+        Assertions.assertNull(cache.getIfPresent("x > a"));
+    }
+
+    @Test
+    public void testTryCompileCacheHit() {
+        AtomicInteger parses = new AtomicInteger();
+        QueryCompiler<PrintQuery> compiler = QueryCompiler.create(PrintQuery.class)
+                .withDefaultCreator(new PrintQueryCreator())
+                .withOptimization(tree -> parses.incrementAndGet())
+                .withQueryCache(QueryCache.<PrintQuery>builder().maximumSize(10).build())
+                .build();
+
+        QueryCompileResult<PrintQuery> result = compiler.tryCompile("x > 0 && y < 1");
+        Assertions.assertEquals(1, parses.get());
+        Assertions.assertEquals("((x > 0) && (y < 1))", result.getQuery().toString());
+
+        //a cache hit does not parse the input, the tree is compiled when it is requested
+        QueryCompileResult<PrintQuery> hit = compiler.tryCompile("x > 0 && y < 1");
+        Assertions.assertSame(result.getQuery(), hit.getQuery());
+        Assertions.assertEquals(1, parses.get());
+        Assertions.assertEquals(result.getTree(), hit.getTree());
+        Assertions.assertEquals(2, parses.get());
+        Assertions.assertSame(hit.getTree(), hit.getTree());
+        Assertions.assertEquals(2, parses.get());
+        Assertions.assertFalse(compiler.tryCompile("x >").isValid());
+    }
+
+    @Test
+    public void testTreeCacheWeight() {
+        QueryCache<QueryTree> cache = QueryCache.<QueryTree>builder()
+                .maximumWeight(20, (query, tree) -> query.length())
+                .build();
+        QueryCompiler<PrintQuery> compiler = QueryCompiler.create(PrintQuery.class)
+                .withDefaultCreator(new PrintQueryCreator())
+                .withTreeCache(cache)
+                .build();
+
+        QueryTree tree = compiler.compileTree("x > 0 && y < 1");
+        Assertions.assertSame(tree, compiler.compileTree("x > 0 && y < 1"));
+        compiler.compileTree("z == 'abc'");
+        Assertions.assertEquals(1, cache.size());
+        Assertions.assertEquals(10, cache.weight());
+        Assertions.assertEquals(1, cache.getStats().getEvictionCount());
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        QueryCache<String> cache = QueryCache.<String>builder().maximumSize(10).build();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> first = executor.submit(() -> cache.get("x > 1", q -> {
+                loads.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return q.toUpperCase();
+            }));
+            started.await();
+            Future<String> second = executor.submit(() -> cache.get("x > 1", q -> {
+                loads.incrementAndGet();
+                return q;
+            }));
+            //release the first compilation once the second lookup waits for it
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (cache.getWaitingCount() == 0) {
+                Assertions.assertTrue(System.nanoTime() < deadline, "second lookup does not wait");
+                Thread.yield();
+            }
+            Assertions.assertEquals(1, cache.getWaitingCount());
+            release.countDown();
+            Assertions.assertEquals("X > 1", first.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals("X > 1", second.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(1, loads.get());
+            Assertions.assertEquals(0, cache.getWaitingCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.optimization.Canonicalize;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+public class CanonicalizeTest {
+    private static final QueryCompiler<PrintQuery> COMPILER = QueryCompiler.create(PrintQuery.class)
+            .withDefaultCreator(new PrintQueryCreator())
+            .withOptimization(new Canonicalize())
+            .build();
+
+    private static String key(String query) {
+        return Canonicalize.key(COMPILER.compileTree(query));
+    }
+
+    @Test
+    public void testEquivalentQueries() {
+        String key = key("x > 1 && y == 'a'");
+        Assertions.assertEquals(key, key("(y == \"a\") AND x gt 1"));
+        Assertions.assertEquals(key, key("y = 'a' & x > 1.0"));
+        Assertions.assertEquals(key, key("((x > 1.00)) && y eq 'a'"));
+        Assertions.assertNotEquals(key, key("x > 1 || y == 'a'"));
+        Assertions.assertNotEquals(key, key("x > 1.5 && y == 'a'"));
+        Assertions.assertNotEquals(key, key("x > 1 && y == 'b'"));
+        Assertions.assertNotEquals(key, key("x > 1 && !(y == 'a')"));
+
+        //nested operators are flattened before sorting
+        key = key("a > 1 && (b > 1 && (c > 1 || d > 1))");
+        Assertions.assertEquals(key, key("(d > 1 || c > 1) && a > 1 && b > 1"));
+        Assertions.assertEquals(key, key("b > 1 && ((c > 1 || d > 1) && a > 1)"));
+        Assertions.assertNotEquals(key, key("a > 1 && b > 1 && (c > 1 && d > 1)"));
+        //negated nodes are not flattened
+        Assertions.assertNotEquals(key("a > 1 && !(b > 1 && c > 1)"), key("a > 1 && b > 1 && c > 1"));
+        Assertions.assertEquals(key("x IN (3, 1.0, 2)"), key("x in (1, 2, 3)"));
+    }
+
+    @Test
+    public void testCanonicalTrees() {
+        QueryTree tree = COMPILER.compileTree("y == 'a' && x > 1.0 && z ~= /a\\/b/");
+        QueryTree other = COMPILER.compileTree("z ~= /a\\/b/ && x > 1 && y == 'a'");
+        Assertions.assertEquals(tree.getRoot(), other.getRoot());
+        Assertions.assertEquals(tree.toString(), other.toString());
+        Assertions.assertTrue(tree.getRoot().getChildren().stream()
+                .anyMatch(n -> n.getTerm().getValue().isNumber() && n.getTerm().getValue().getType().name().equals("Long")));
+        Assertions.assertEquals(Canonicalize.key(tree), Canonicalize.key(other));
+        Assertions.assertTrue(Canonicalize.key(tree).startsWith("AND("), Canonicalize.key(tree));
+
+        //the order of the children is stable across compilers
+        QueryCompiler<PrintQuery> compiler = QueryCompiler.createDefault(PrintQuery.class, new PrintQueryCreator())
+                .withOptimization(new Canonicalize())
+                .build();
+        Assertions.assertEquals(Canonicalize.key(tree),
+                Canonicalize.key(compiler.compileTree("x > 1 && z ~= /a\\/b/ && y == 'a'")));
+
+        //strings are escaped
+        Assertions.assertEquals("(x == 'a\\'b')", key("x == \"a'b\""));
+        Assertions.assertEquals("(x == null)", key("x == null"));
+        //fields are keyed by their path parts
+        Assertions.assertEquals("(a.b == 1)", key("a.b == 1"));
+        Assertions.assertEquals("(\"a.b\" == 1)", key("'a.b' == 1"));
+        Assertions.assertNotEquals(key("a.b == 1"), key("'a.b' == 1"));
+    }
+
+    /**
+     * Canonicalizing a tree and building its key should be cheaper than parsing the query.
+     * Runs with <tt>mvn test -P benchmark</tt>.
+     */
+    @Test
+    @Tag("benchmark")
+    public void testCost() {
+        StringBuilder sb = new StringBuilder("a0 > 0");
+        for (int i = 1; i < 50; i++) {
+            sb.append(i % 3 == 0 ? " || " : " && ").append('(').append('f').append(i).append(" == 'v").append(i)
+                    .append("' || g").append(50 - i).append(" > ").append(i).append(".5)");
+        }
+        String query = sb.toString();
+        QueryCompiler<PrintQuery> plain = QueryCompiler.create(PrintQuery.class)
+                .withDefaultCreator(new PrintQueryCreator())
+                .build();
+        Canonicalize canonicalize = new Canonicalize();
+        long parse = 0;
+        long canonical = 0;
+        for (int round = 0; round < 3; round++) {
+            parse = 0;
+            canonical = 0;
+            for (int i = 0; i < 500; i++) {
+                long start = System.nanoTime();
+                QueryTree tree = plain.compileTree(query);
+                long parsed = System.nanoTime();
+                canonicalize.apply(tree);
+                Assertions.assertNotNull(Canonicalize.key(tree));
+                canonical += System.nanoTime() - parsed;
+                parse += parsed - start;
+            }
+        }
+        System.out.println(String.format("parse %.1f us, canonicalize and key %.1f us",
+                parse / 500e3, canonical / 500e3));
+        Assertions.assertTrue(canonical < parse, canonical + " / " + parse);
+    }
+}
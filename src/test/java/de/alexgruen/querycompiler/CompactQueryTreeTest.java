@@ -0,0 +1,181 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.CompactQueryTree;
+import de.alexgruen.query.LogicalOperator;
+import de.alexgruen.query.LogicalOperators;
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.term.Field;
+import de.alexgruen.query.term.Term;
+import de.alexgruen.query.term.TermOperators;
+import de.alexgruen.query.term.Value;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+public class CompactQueryTreeTest {
+    private static final QueryCompiler<PrintQuery> COMPILER = QueryCompiler
+            .createDefault(PrintQuery.class, new PrintQueryCreator())
+            .build();
+
+    @Test
+    public void testRoundTrip() {
+        for (String query : new String[]{"x > 1", "!(x > 1)", "a b -c", "x > 1 nor y > 1 || !(z > 1)",
+                "a > 1 && (b ~= /f.*/ || c IN (1, 2)) && !(d == 'x')"}) {
+            QueryTree tree = COMPILER.compileTree(query);
+            CompactQueryTree compact = CompactQueryTree.of(tree);
+            QueryTree expanded = compact.toQueryTree();
+            Assertions.assertEquals(tree.toString(), expanded.toString());
+            Assertions.assertEquals(COMPILER.compile(tree).toString(), COMPILER.compile(expanded).toString());
+        }
+
+        CompactQueryTree empty = CompactQueryTree.of(COMPILER.compileTree(""));
+        Assertions.assertEquals(1, empty.size());
+        Assertions.assertTrue(empty.toQueryTree().getRoot().getChildren().isEmpty());
+    }
+
+    @Test
+    public void testNavigation() {
+        //siblings are found by skipping subtrees of different sizes
+        CompactQueryTree compact = CompactQueryTree.of(COMPILER.compileTree(
+                "a > 1 && (b > 1 || c > 1 || d > 1) && !(e > 1 && (f > 1 || g > 1)) && h IN (1, 2)"));
+        //AND(a, OR(b, c, d), !AND(e, OR(f, g)), h)
+        Assertions.assertEquals(12, compact.size());
+        Assertions.assertEquals(LogicalOperators.AND, compact.getOperator(0));
+        Assertions.assertEquals(4, compact.getChildCount(0));
+        Assertions.assertEquals(12, compact.getSubtreeSize(0));
+        Assertions.assertEquals(1, compact.getChild(0, 0));
+        Assertions.assertEquals(2, compact.getChild(0, 1));
+        Assertions.assertEquals(4, compact.getSubtreeSize(2));
+        int negated = compact.getChild(0, 2);
+        Assertions.assertEquals(6, negated);
+        Assertions.assertTrue(compact.isNegate(negated));
+        Assertions.assertEquals(5, compact.getSubtreeSize(negated));
+        int or = compact.getChild(negated, 1);
+        Assertions.assertEquals(LogicalOperators.OR, compact.getOperator(or));
+        Assertions.assertEquals("(g > 1)", compact.getTerm(compact.getChild(or, 1)).toString());
+        int h = compact.getChild(0, 3);
+        Assertions.assertEquals(11, h);
+        Assertions.assertEquals("(h IN (1, 2))", compact.getTerm(h).toString());
+        Assertions.assertEquals(0, compact.getChildCount(h));
+        Assertions.assertEquals(1, compact.getSubtreeSize(h));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> compact.getChild(h, 0));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> compact.getChild(0, 4));
+    }
+
+    @Test
+    public void testOperatorTable() {
+        //a tree can use at most 127 different logical operators
+        QueryNode root = new QueryNode();
+        root.setOperator(LogicalOperators.AND);
+        for (int i = 1; i < 127; i++) {
+            QueryNode child = new QueryNode();
+            child.setOperator(new LogicalOperator("OP" + i));
+            child.addChild(new QueryNode(new Term(new Field("x" + i), TermOperators.EQ, Value.of(i))));
+            root.addChild(child);
+        }
+        CompactQueryTree compact = CompactQueryTree.of(root);
+        Assertions.assertEquals(253, compact.size());
+        Assertions.assertEquals("OP126", compact.getOperator(compact.getChild(0, 125)).getName());
+        Assertions.assertEquals(root, compact.toQueryTree().getRoot());
+        QueryNode child = new QueryNode();
+        child.setOperator(new LogicalOperator("OP127"));
+        root.addChild(child);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CompactQueryTree.of(root));
+    }
+
+    @Test
+    public void testDeepAndWideTrees() {
+        //both conversions use explicit stacks
+        QueryNode deep = new QueryNode(new Term(new Field("x"), TermOperators.EQ, Value.of(0)));
+        for (int i = 1; i < 20000; i++) {
+            QueryNode parent = new QueryNode();
+            parent.setOperator(i % 2 == 0 ? LogicalOperators.AND : LogicalOperators.OR);
+            parent.addChild(new QueryNode(new Term(new Field("y"), TermOperators.GT, Value.of(i))));
+            parent.addChild(deep);
+            deep = parent;
+        }
+        CompactQueryTree compact = CompactQueryTree.of(deep);
+        Assertions.assertEquals(39999, compact.size());
+        Assertions.assertEquals(39997, compact.getSubtreeSize(2));
+        Assertions.assertEquals(deep, compact.toQueryTree().getRoot());
+
+        QueryNode wide = new QueryNode();
+        wide.setOperator(LogicalOperators.OR);
+        for (int i = 0; i < 20000; i++) {
+            wide.addChild(new QueryNode(new Term(new Field("y"), TermOperators.GT, Value.of(i))));
+        }
+        compact = CompactQueryTree.of(wide);
+        Assertions.assertEquals(20000, compact.getChildCount(0));
+        Assertions.assertEquals(20000, compact.getChild(0, 19999));
+        Assertions.assertEquals(wide, compact.toQueryTree().getRoot());
+    }
+
+    @Test
+    public void testLeaves() {
+        QueryNode leaf = new QueryNode(new Term(new Field("x"), TermOperators.EQ, new Value(1)));
+        Assertions.assertTrue(leaf.isLeaf());
+        Assertions.assertFalse(leaf.hasAttributes());
+        Assertions.assertNull(leaf.getAttribute("a"));
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                () -> leaf.getChildren().add(new QueryNode()));
+        leaf.setAttribute("a", 1);
+        Assertions.assertTrue(leaf.hasAttributes());
+        Assertions.assertEquals(1, leaf.getAttribute("a"));
+
+        QueryNode other = new QueryNode(new Term(new Field("y"), TermOperators.EQ, new Value(2)));
+        other.addChild(leaf);
+        Assertions.assertEquals(1, other.getChildren().size());
+        //the shared empty list is not changed
+        Assertions.assertTrue(new QueryNode(leaf.getTerm()).getChildren().isEmpty());
+    }
+
+    /**
+     * Compares the retained size of query nodes and compact trees. The terms are shared by all trees,
+     * so only the node structure is measured. Heap measurements depend on the JVM and garbage collector,
+     * the test only runs with <tt>mvn test -P benchmark</tt>.
+     */
+    @Test
+    @Tag("benchmark")
+    public void testMemory() {
+        int count = 100000;
+        QueryTree tree = COMPILER.compileTree("tenant == 'acme' && status IN (1, 2, 3) && created > 1500000000 && "
+                + "(title ~= /rep.*/ || body == 'quarterly report' || !(owner.name == 'x')) && score >= 0.75");
+        CompactQueryTree compact = CompactQueryTree.of(tree);
+        int nodes = compact.size() * count;
+
+        long before = usedMemory();
+        QueryTree[] trees = new QueryTree[count];
+        for (int i = 0; i < count; i++) {
+            trees[i] = compact.toQueryTree();
+        }
+        long treeBytes = usedMemory() - before;
+        Assertions.assertNotNull(trees[count - 1]);
+        trees = null;
+
+        before = usedMemory();
+        CompactQueryTree[] compactTrees = new CompactQueryTree[count];
+        for (int i = 0; i < count; i++) {
+            compactTrees[i] = CompactQueryTree.of(tree);
+        }
+        long compactBytes = usedMemory() - before;
+        Assertions.assertNotNull(compactTrees[count - 1]);
+
+        System.out.println(String.format("retained bytes per node: QueryNode %.1f, CompactQueryTree %.1f",
+                treeBytes / (double) nodes, compactBytes / (double) nodes));
+        Assertions.assertTrue(compactBytes * 2 < treeBytes, compactBytes + " / " + treeBytes);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
@@ -48,6 +48,11 @@ public class CompileTest {
         test("(x == 1 || y == 2 || (d == 0 || (t == 3 || z == 1)))",
                 ("((x == 1) || (y == 2) || (d == 0) || (t == 3) || (z == 1))"));
 
+        //AND binds tighter than OR
+        test("x > 0 || y < 1 && z == 2", "((x > 0) || ((y < 1) && (z == 2)))");
+        test("x > 0 && y < 1 || z == 2 && u == 3", "(((x > 0) && (y < 1)) || ((z == 2) && (u == 3)))");
+        test("!(x > 0 || y < 1) && z == 2", "(!((x > 0) || (y < 1)) && (z == 2))");
+
     }
 
     @Test
@@ -73,6 +78,12 @@ public class CompileTest {
         test("((x > 1) && ((y > 2) && z < 3))",
                 "((x > 1) && (y > 2) && (z < 3))",
                 withOptimizationCompiler,true);
+
+        //NOR is not associative
+        Assertions.assertEquals(noOptimizationCompiler.compile("x > 1 nor (y == 1 nor z == 2)").toString(),
+                withOptimizationCompiler.compile("x > 1 nor (y == 1 nor z == 2)").toString());
+        Assertions.assertEquals(2, withOptimizationCompiler.compileTree("x > 1 nor (y == 1 nor z == 2)")
+                .getRoot().getChildren().size());
     }
 
     @Test
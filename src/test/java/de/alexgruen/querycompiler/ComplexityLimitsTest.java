@@ -0,0 +1,104 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.compiler.ComplexityLimits;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.compiler.QueryCompilerException;
+import de.alexgruen.query.compiler.QueryEditSession;
+import de.alexgruen.query.compiler.QueryError;
+import de.alexgruen.query.compiler.engine.ParserEngineFactory;
+import de.alexgruen.query.compiler.engine.ParserEngines;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+
+public class ComplexityLimitsTest {
+    private static final ComplexityLimits LIMITS = ComplexityLimits.builder()
+            .maxInputLength(1000)
+            .maxDepth(3)
+            .maxTerms(4)
+            .maxValueSetSize(3)
+            .maxRegexLength(10)
+            .maxRegexComplexity(2)
+            .build();
+
+    private static QueryCompiler<PrintQuery> compiler(ParserEngineFactory factory, ComplexityLimits limits) {
+        return QueryCompiler.create(PrintQuery.class)
+                .withDefaultCreator(new PrintQueryCreator())
+                .withParserEngine(factory)
+                .withComplexityLimits(limits)
+                .build();
+    }
+
+    private static void assertRejected(QueryCompiler<PrintQuery> compiler, String query, String message) {
+        QueryError error = compiler.validate(query).getErrors().get(0);
+        Assertions.assertEquals(QueryError.Type.LIMIT_EXCEEDED, error.getType(), query);
+        Assertions.assertFalse(error.isSyntaxError());
+        Assertions.assertTrue(error.getMessage().startsWith(message), error.getMessage());
+    }
+
+    @Test
+    public void testLimits() {
+        for (ParserEngineFactory factory : new ParserEngineFactory[]{ParserEngines.ANTLR, ParserEngines.RECURSIVE_DESCENT}) {
+            QueryCompiler<PrintQuery> compiler = compiler(factory, LIMITS);
+            Assertions.assertEquals("((a == 1) && ((b == 2) || (c ~= /a+b?/)) && (c IN (1, 2, 3)))",
+                    compiler.compile("a == 1 && (((b == 2 || c ~= /a+b?/))) && c IN (1, 2, 3)").toString());
+            Assertions.assertTrue(compiler.validate("a b c -d").isValid());
+
+            assertRejected(compiler, "((((a == 1))))", "nesting depth exceeds the limit of 3");
+            Assertions.assertEquals(12, compiler.validate("x > 1 || ((((a == 1))))").getErrors().get(0).getOffset());
+            assertRejected(compiler, "a == 1 || b == 2 || c == 3 || d == 4 || e == 5", "number of terms exceeds the limit of 4");
+            assertRejected(compiler, "a b c d e", "number of terms exceeds the limit of 4");
+            assertRejected(compiler, "x IN (1, 2, 3, 4)", "value list exceeds the limit of 3 values");
+            assertRejected(compiler, "x ~= /abcdefghijk/", "regular expression of 13 characters exceeds the limit of 10");
+            assertRejected(compiler, "x ~= /a*b*c*/", "regular expression exceeds the complexity limit of 2");
+            //value list and regex errors point at the token
+            Assertions.assertEquals(11, compiler.validate("a > 1 && x IN (1, 2, 3, 4)").getErrors().get(0).getOffset());
+            Assertions.assertEquals(14, compiler.validate("a > 1 && x ~= /abcdefghijk/").getErrors().get(0).getOffset());
+            Assertions.assertEquals(16, compiler.validate("  a > 1 && x ~= /a*b*c*/").getErrors().get(0).getOffset());
+
+            StringBuilder longInput = new StringBuilder("a == 1");
+            while (longInput.length() <= 1000) {
+                longInput.append(' ');
+            }
+            assertRejected(compiler, longInput.toString(), "input length of 1001 characters exceeds the limit of 1000");
+
+            //deep nesting is rejected before the parser recursion gets deep
+            StringBuilder deep = new StringBuilder();
+            for (int i = 0; i < 100000; i++) {
+                deep.append('(');
+            }
+            QueryCompiler<PrintQuery> depthOnly = compiler(factory, ComplexityLimits.builder().maxDepth(100).build());
+            assertRejected(depthOnly, deep.toString(), "nesting depth exceeds the limit of 100");
+        }
+    }
+
+    @Test
+    public void testReaderAndEditSession() {
+        QueryCompiler<PrintQuery> compiler = compiler(ParserEngines.RECURSIVE_DESCENT, LIMITS);
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            input.append(' ');
+        }
+        input.append("x == 1");
+        QueryCompilerException e = Assertions.assertThrows(QueryCompilerException.class,
+                () -> compiler.compile(new StringReader(input.toString())));
+        Assertions.assertEquals(QueryError.Type.LIMIT_EXCEEDED, e.getError().getType());
+        Assertions.assertThrows(QueryCompilerException.class,
+                () -> compiler.compile(new StringReader("(((((x == 1)))))")));
+
+        //reused sub queries are counted in incremental parsing
+        QueryEditSession<PrintQuery> session = compiler.createEditSession();
+        session.setText("((a == 1 && b == 2))");
+        Assertions.assertEquals("((a == 1) && (b == 2))", session.compile().toString());
+        e = Assertions.assertThrows(QueryCompilerException.class, () -> session.edit(0, 0, "(("));
+        Assertions.assertTrue(e.getMessage().startsWith("nesting depth"), e.getMessage());
+        session.edit(0, 2, "");
+        session.edit(18, 0, " && c == 3");
+        Assertions.assertEquals("((a == 1) && (b == 2) && (c == 3))", session.compile().toString());
+        e = Assertions.assertThrows(QueryCompilerException.class, () -> session.edit(28, 0, " && d == 4 && e == 5"));
+        Assertions.assertTrue(e.getMessage().startsWith("number of terms"), e.getMessage());
+    }
+}
@@ -0,0 +1,144 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.QueryPrinter;
+import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.compiler.QueryEditSession;
+import de.alexgruen.query.compiler.engine.ParserEngines;
+import de.alexgruen.query.optimization.RemoveRedundantBrackets;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Compiles, optimizes and prints deep trees on a thread with a small stack
+ */
+public class DeepTreeTest {
+    private static final int DEPTH = 20000;
+    private static final long STACK_SIZE = 256 * 1024;
+
+    private static final QueryCompiler<PrintQuery> COMPILER = QueryCompiler.create(PrintQuery.class)
+            .withDefaultCreator(new PrintQueryCreator())
+            .withParserEngine(ParserEngines.RECURSIVE_DESCENT)
+            .withOptimization(new RemoveRedundantBrackets())
+            .build();
+
+    @Test
+    public void testDeepTrees() throws Throwable {
+        runWithSmallStack(() -> {
+            String alternating = alternating(DEPTH);
+            //!(!(... x > 1)), nested negations of a node are not counted
+            QueryTree tree = COMPILER.compileTree(repeat("!(", DEPTH) + "x > 1" + repeat(")", DEPTH));
+            Assertions.assertTrue(tree.getRoot().isNegate());
+            Assertions.assertEquals("!(x > 1)", COMPILER.compile(tree).toString());
+
+            tree = COMPILER.compileTree(alternating);
+            Assertions.assertEquals(DEPTH, depth(tree.getRoot()));
+            Assertions.assertNotNull(COMPILER.compile(tree));
+            Assertions.assertEquals(DEPTH, depth(COMPILER.compileTree(new StringReader(alternating)).getRoot()));
+
+            //(((x > 1 || y0 > 2) || y1 > 2) ...) is flattened to a single OR node
+            StringBuilder sb = new StringBuilder();
+            sb.append(repeat("(", DEPTH)).append("x > 1");
+            for (int i = 0; i < DEPTH; i++) {
+                sb.append(" || y").append(i).append(" > 2)");
+            }
+            tree = COMPILER.compileTree(sb.toString());
+            Assertions.assertEquals(1, depth(tree.getRoot()));
+            Assertions.assertEquals(DEPTH + 1, tree.getRoot().getChildren().size());
+            Assertions.assertEquals("(y0 > 2)", tree.getRoot().getChildren().get(1).getLabel());
+            //y0 > 2 || (y1 > 2 || (... x > 1))
+            sb.setLength(0);
+            for (int i = 0; i < DEPTH; i++) {
+                sb.append("y").append(i).append(" > 2 || (");
+            }
+            sb.append("x > 1").append(repeat(")", DEPTH));
+            tree = COMPILER.compileTree(sb.toString());
+            Assertions.assertEquals(1, depth(tree.getRoot()));
+            Assertions.assertEquals(DEPTH + 1, tree.getRoot().getChildren().size());
+            Assertions.assertEquals("(y1 > 2)", tree.getRoot().getChildren().get(1).getLabel());
+
+            QueryEditSession<PrintQuery> session = COMPILER.createEditSession();
+            session.setText(alternating);
+            session.edit(1, 2, "z9");
+            Assertions.assertNotNull(session.compile());
+
+            //printing creates a line per node with an indentation that grows with the depth
+            String printed = QueryPrinter.DEFAULT.toString(COMPILER.compileTree(alternating(500)).getRoot());
+            Assertions.assertEquals(1001, printed.split("\n").length);
+        });
+    }
+
+    @Test
+    public void testShallowTrees() {
+        QueryTree tree = COMPILER.compileTree("a > 1 && (b > 1 && (c > 1 || !(d > 1 || e > 1))) || f > 1");
+        Assertions.assertEquals("(((a > 1) && (b > 1) && ((c > 1) || !((d > 1) || (e > 1)))) || (f > 1))",
+                COMPILER.compile(tree).toString());
+        Assertions.assertEquals(
+                "──┐ OR\n" +
+                "  ├──┐ AND\n" +
+                "  │  ├── (a > 1)\n" +
+                "  │  ├── (b > 1)\n" +
+                "  │  └──┐ OR\n" +
+                "  │     ├── (c > 1)\n" +
+                "  │     └──┐ OR\n" +
+                "  │        ├── (d > 1)\n" +
+                "  │        └── (e > 1)\n" +
+                "  └── (f > 1)\n", QueryPrinter.DEFAULT.toString(tree.getRoot()));
+    }
+
+    /**
+     * (x0 > 1 &amp;&amp; (x1 &lt; 1 || (... y &gt; 2))), operators alternate, so brackets are not removed
+     */
+    private static String alternating(int depth) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append("(x").append(i).append(i % 2 == 0 ? " > 1 && " : " < 1 || ");
+        }
+        return sb.append("y > 2").append(repeat(")", depth)).toString();
+    }
+
+    /**
+     * Returns the number of logic nodes or negated nodes on the leftmost path
+     */
+    private static int depth(QueryNode node) {
+        int depth = 0;
+        while (!node.getChildren().isEmpty() || node.isNegate()) {
+            depth++;
+            if (node.getChildren().isEmpty()) {
+                break;
+            }
+            node = node.getChildren().get(node.getChildren().size() - 1);
+        }
+        return depth;
+    }
+
+    private static String repeat(String s, int n) {
+        StringBuilder sb = new StringBuilder(s.length() * n);
+        for (int i = 0; i < n; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    private static void runWithSmallStack(Runnable runnable) throws Throwable {
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try {
+                runnable.run();
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        }, "deep-tree-test", STACK_SIZE);
+        thread.start();
+        thread.join();
+        if (error.get() != null) {
+            throw error.get();
+        }
+    }
+}
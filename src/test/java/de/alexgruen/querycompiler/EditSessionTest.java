@@ -0,0 +1,145 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.compiler.QueryCompilerException;
+import de.alexgruen.query.compiler.QueryEditSession;
+import de.alexgruen.query.compiler.engine.IncrementalParseSession;
+import de.alexgruen.query.compiler.engine.ParserEngines;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class EditSessionTest {
+
+    private static final String[] SNIPPETS = {"x", " ", "1", "> ", " && ", " || ", "(", ")", "!", "'", "a b", "-c",
+            "y == 'z'", " in (1, 2)", ".", "/r/", " ~= ", "\"", "\\", "2.5", "not ", "\n"};
+
+    private final QueryCompiler<PrintQuery> compiler = QueryCompiler.create(PrintQuery.class)
+            .withDefaultCreator(new PrintQueryCreator())
+            .withParserEngine(ParserEngines.RECURSIVE_DESCENT)
+            .build();
+
+    @Test
+    public void testRandomEdits() {
+        Random random = new Random(42);
+        QueryEditSession<PrintQuery> session = compiler.createEditSession();
+        StringBuilder text = new StringBuilder("(a > 1 || b < 2) && c == 'x y' && !(d ~= /e/)");
+        session.setText(text);
+        for (int i = 0; i < 5000; i++) {
+            int offset = random.nextInt(text.length() + 1);
+            int removed = random.nextInt(4) == 0 ? random.nextInt(Math.min(4, text.length() - offset) + 1) : 0;
+            String inserted = removed > 0 && random.nextBoolean() ? "" : SNIPPETS[random.nextInt(SNIPPETS.length)];
+            String before = text.toString();
+            text.replace(offset, offset + removed, inserted);
+            if (text.length() > 200) {
+                text.setLength(0);
+                text.append("a > 1 && b > 2");
+                session.setText(text);
+            }
+
+            String expected;
+            try {
+                expected = compiler.compile(text.toString()).toString();
+            } catch (QueryCompilerException e) {
+                expected = null;
+            }
+            String actual;
+            try {
+                if (text.toString().equals(session.getText())) {
+                    actual = session.compile().toString();
+                } else {
+                    actual = compiler.compile(session.edit(offset, removed, inserted)).toString();
+                }
+            } catch (QueryCompilerException e) {
+                actual = null;
+            }
+            Assertions.assertEquals(text.toString(), session.getText());
+            Assertions.assertEquals(expected, actual, before + " -> " + text);
+        }
+    }
+
+    @Test
+    public void testEditCostAcrossSizes() {
+        int updated = -1;
+        for (int size : new int[]{10, 100, 1000, 10000}) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                text.append(i > 0 ? " || " : "").append("(id == ").append(i).append(" && name == 'n").append(i).append("')");
+            }
+            QueryEditSession<PrintQuery> session = compiler.createEditSession();
+            IncrementalParseSession parseSession = session.getParseSession();
+            session.setText(text);
+
+            //typing in the middle, only the first edit moves the tokens between the end and the edit
+            int offset = text.indexOf("id == " + size / 2 + " ") + 6;
+            session.edit(offset, 0, "1");
+            int max = 0;
+            for (int i = 0; i < 8; i++) {
+                session.edit(offset + 1 + i, 0, "2");
+                Assertions.assertTrue(parseSession.getLastTokenizedCount() <= 2);
+                max = Math.max(max, parseSession.getLastUpdatedCount());
+            }
+            if (updated < 0) {
+                updated = max;
+            }
+            Assertions.assertEquals(updated, max, "size " + size);
+            Assertions.assertTrue(updated <= 4, String.valueOf(updated));
+            Assertions.assertEquals(compiler.compile(parseSession.getText()).toString(), session.compile().toString());
+
+            //positions after the edit follow the inserted characters
+            int end = parseSession.getText().length();
+            QueryCompilerException e = Assertions.assertThrows(QueryCompilerException.class,
+                    () -> session.edit(end, 0, " &&"));
+            Assertions.assertEquals(end + 3, e.getError().getOffset());
+        }
+    }
+
+    @Test
+    public void testReuse() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append(i > 0 ? " || " : "").append("(id == ").append(i).append(" && name == 'n").append(i).append("')");
+        }
+        QueryEditSession<PrintQuery> session = compiler.createEditSession();
+        IncrementalParseSession parseSession = session.getParseSession();
+        session.setText(text);
+        int tokens = parseSession.getTokenCount();
+
+        //typing at the end only tokenizes the last tokens again
+        String suffix = " && x > 5";
+        for (int i = 0; i < suffix.length(); i++) {
+            try {
+                session.edit(text.length(), 0, suffix.substring(i, i + 1));
+            } catch (QueryCompilerException e) {
+                //incomplete term
+            }
+            text.append(suffix.charAt(i));
+            Assertions.assertTrue(parseSession.getLastTokenizedCount() <= 4, text.substring(text.length() - 10));
+        }
+        Assertions.assertEquals(tokens + 4, parseSession.getTokenCount());
+        Assertions.assertEquals(1000, parseSession.getLastReusedCount());
+        Assertions.assertEquals(compiler.compile(text.toString()).toString(), session.compile().toString());
+
+        //editing a value in the middle
+        int offset = text.indexOf("id == 500") + 6;
+        session.edit(offset, 3, "5001");
+        Assertions.assertTrue(parseSession.getLastTokenizedCount() <= 2);
+        //all other brackets, x > 5 and the name term of the edited bracket
+        Assertions.assertEquals(1001, parseSession.getLastReusedCount());
+        Assertions.assertTrue(session.compile().toString().contains("(id == 5001)"));
+    }
+
+    @Test
+    public void testErrors() {
+        QueryEditSession<PrintQuery> session = compiler.createEditSession();
+        session.setText("a > 1");
+        Assertions.assertThrows(QueryCompilerException.class, () -> session.edit(5, 0, " && 'b"));
+        Assertions.assertThrows(QueryCompilerException.class, session::compile);
+        Assertions.assertEquals("((a > 1) && (b == 'x'))", compiler.compile(session.edit(9, 2, "b == 'x'")).toString());
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> session.edit(20, 1, ""));
+        Assertions.assertEquals("((a > 1) && (b == 'x'))", session.compile().toString());
+    }
+}
@@ -0,0 +1,175 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.compiler.engine.ParserEngineFactory;
+import de.alexgruen.query.compiler.engine.ParserEngines;
+import de.alexgruen.query.term.Field;
+import de.alexgruen.query.serialization.QueryTreeWriter;
+import de.alexgruen.query.term.FieldTable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+public class FieldTableTest {
+
+    @Test
+    public void testIntern() {
+        FieldTable table = new FieldTable();
+        Field a = table.intern("test.'field 1'");
+        Assertions.assertEquals(0, a.getId());
+        Assertions.assertArrayEquals(new String[]{"test", "field 1"}, a.getPath());
+        Assertions.assertEquals("test.'field 1'", a.getJoinedPath());
+        Assertions.assertEquals("'field 1'", a.getJoinedPath(1));
+        Assertions.assertSame(a, table.intern("test.'field 1'"));
+        Assertions.assertSame(a, table.intern(new StringBuilder("x > test.'field 1' y"), 4, 18));
+        //other quotation of the same path
+        Assertions.assertSame(a, table.intern("'test'.\"field 1\""));
+
+        Field b = table.intern("b");
+        Assertions.assertEquals(1, b.getId());
+        Assertions.assertEquals(2, table.size());
+        Assertions.assertSame(b, table.get(1));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> table.get(2));
+        Assertions.assertEquals(-1, new Field("c").getId());
+
+        //canonical fields are shared and can not be changed
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> b.setPath(new String[]{"c"}));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> b.setFullPath("c"));
+        Assertions.assertEquals("b", table.intern("b").getFullPath());
+        Field c = new Field("c");
+        c.setPath(new String[]{"d"});
+        Assertions.assertEquals("d", c.getJoinedPath());
+    }
+
+    @Test
+    public void testMaxSize() {
+        FieldTable table = new FieldTable(2);
+        Field a = table.intern("a");
+        table.intern("b");
+        Field c = table.intern("c");
+        Assertions.assertEquals(-1, c.getId());
+        c.setFullPath("c");
+        Assertions.assertNotSame(c, table.intern("c"));
+        Assertions.assertEquals(c, table.intern("c"));
+        Assertions.assertSame(a, table.intern("'a'"));
+        Assertions.assertEquals(2, table.size());
+    }
+
+    @Test
+    public void testConcurrentIntern() throws InterruptedException {
+        FieldTable table = new FieldTable();
+        ConcurrentHashMap<String, Field> seen = new ConcurrentHashMap<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < 500; i++) {
+                        String name = "f" + (i % 200) + ".x";
+                        Field field = table.intern(name);
+                        Field previous = seen.putIfAbsent(name, field);
+                        if (previous != null && previous != field) {
+                            throw new AssertionError("different fields for " + name);
+                        }
+                    }
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertEquals(new ArrayList<>(), errors);
+        Assertions.assertEquals(200, table.size());
+        for (int id = 0; id < table.size(); id++) {
+            Assertions.assertEquals(id, table.get(id).getId());
+            Assertions.assertSame(table.get(id), seen.get(table.get(id).getFullPath()));
+        }
+    }
+
+    @Test
+    public void testCompilers() {
+        for (ParserEngineFactory factory : new ParserEngineFactory[]{ParserEngines.ANTLR, ParserEngines.RECURSIVE_DESCENT}) {
+            FieldTable table = new FieldTable();
+            Field status = table.intern("status");
+            QueryCompiler<PrintQuery> compiler = QueryCompiler.create(PrintQuery.class)
+                    .withDefaultCreator(new PrintQueryCreator())
+                    .withParserEngine(factory)
+                    .withFieldTable(table)
+                    .build();
+            Assertions.assertSame(table, compiler.getContext().getFieldTable());
+            QueryNode root = compiler.compileTree("status == 1 && a.b ~= /x/ || status IN (1, 2)").getRoot();
+            Assertions.assertSame(status, root.getChildren().get(0).getChildren().get(0).getTerm().getField());
+            Assertions.assertSame(status, root.getChildren().get(1).getTerm().getField());
+            Field ab = root.getChildren().get(0).getChildren().get(1).getTerm().getField();
+            Assertions.assertEquals(1, ab.getId());
+            Assertions.assertSame(ab, compiler.compileTree(new StringReader("'a'.b > 2")).getRoot().getTerm().getField());
+            Assertions.assertEquals("(((status == 1) && (a.b ~= /x/)) || (status IN (1, 2)))",
+                    compiler.compile("status == 1 && a.b ~= /x/ || status IN (1, 2)").toString());
+        }
+    }
+
+    @Test
+    public void testSpellingOrder() {
+        //the full path and the encoding of a field do not depend on the spelling it was seen with first
+        String[][] orders = {{"'x.y'.z > 1", "\"x.y\".z > 1"}, {"\"x.y\".z > 1", "'x.y'.z > 1"}};
+        List<byte[]> encoded = new ArrayList<>();
+        for (String[] order : orders) {
+            QueryCompiler<PrintQuery> compiler = QueryCompiler.create(PrintQuery.class)
+                    .withDefaultCreator(new PrintQueryCreator())
+                    .withFieldTable(new FieldTable())
+                    .build();
+            for (String query : order) {
+                QueryTree tree = compiler.compileTree(query);
+                Assertions.assertEquals("'x.y'.z", tree.getRoot().getTerm().getField().getFullPath());
+                encoded.add(new QueryTreeWriter().write(tree));
+            }
+            Assertions.assertEquals("x.y", compiler.compileTree("x.'y' > 1").getRoot().getTerm().getField().getFullPath());
+        }
+        for (byte[] bytes : encoded) {
+            Assertions.assertArrayEquals(encoded.get(0), bytes);
+        }
+        //fields beyond the maximum size are normalized as well
+        Assertions.assertEquals("a.b", new FieldTable(0).intern("'a'.\"b\"").getFullPath());
+    }
+
+    @Test
+    public void testKnownFieldsDoNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assertions.assertTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        FieldTable table = new FieldTable();
+        StringBuilder input = new StringBuilder("tenant.id == 1 && status == 2");
+        Field tenant = table.intern(input, 0, 9);
+        table.intern(input, 18, 24);
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        int sum = 0;
+        for (int i = 0; i < 100000; i++) {
+            sum += table.intern(input, 0, 9).getId() + table.intern(input, 18, 24).getId();
+        }
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        Assertions.assertEquals(100000, sum);
+        Assertions.assertEquals(0, tenant.getId());
+        Assertions.assertTrue(allocated < 10000, "allocated " + allocated + " bytes");
+    }
+}
@@ -0,0 +1,168 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.ImmutableQueryNode;
+import de.alexgruen.query.LogicalOperators;
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.optimization.Canonicalize;
+import de.alexgruen.query.optimization.RemoveRedundantBrackets;
+import de.alexgruen.query.term.Field;
+import de.alexgruen.query.term.Term;
+import de.alexgruen.query.term.TermOperators;
+import de.alexgruen.query.term.Value;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class FingerprintTest {
+    private static final QueryCompiler<PrintQuery> PLAIN = QueryCompiler.create(PrintQuery.class)
+            .withDefaultCreator(new PrintQueryCreator())
+            .build();
+    private static final QueryCompiler<PrintQuery> COMPILER = QueryCompiler
+            .createDefault(PrintQuery.class, new PrintQueryCreator())
+            .build();
+
+    @Test
+    public void testEqualTrees() {
+        //spellings of the same tree: quotation, operator aliases and the order of value sets
+        String[][] equal = {{"a == 'x'", "a == \"x\""}, {"a > 1 && b > 1", "a > 1 and b > 1"}, {"a > 1", "a GT 1"},
+                {"a.b > 1", "'a'.b > 1"}, {"a IN (1, 2)", "a IN (2, 1)"}};
+        for (String[] pair : equal) {
+            QueryTree tree = COMPILER.compileTree(pair[0]);
+            QueryTree same = COMPILER.compileTree(pair[1]);
+            Assertions.assertNotSame(tree.getRoot(), same.getRoot());
+            Assertions.assertEquals(tree.getFingerprint(), same.getFingerprint(), pair[1]);
+            Assertions.assertEquals(tree, same, pair[1]);
+            Assertions.assertEquals(tree.hashCode(), same.hashCode(), pair[1]);
+        }
+        //values with the same text but another type, paths with the same text and moved negations
+        String[][] distinct = {{"a == 1", "a == 1.0"}, {"a == 1", "a == '1'"}, {"a == true", "a == 'true'"},
+                {"a == null", "a == 'null'"}, {"a IN (1, 2)", "a IN ('1', '2')"}, {"a IN (1)", "a == 1"},
+                {"a ~= /x/", "a == 'x'"}, {"a.b > 1", "'a.b' > 1"}, {"!(a > 1) && b > 1", "a > 1 && !(b > 1)"},
+                {"a > 1 && b > 1", "b > 1 && a > 1"}, {"a > 1 && b > 1", "a > 1 || b > 1"}};
+        for (String[] pair : distinct) {
+            QueryTree tree = COMPILER.compileTree(pair[0]);
+            QueryTree other = COMPILER.compileTree(pair[1]);
+            Assertions.assertNotEquals(tree.getFingerprint(), other.getFingerprint(), pair[1]);
+            Assertions.assertNotEquals(tree, other, pair[1]);
+        }
+    }
+
+    @Test
+    public void testDistinctQueries() {
+        Set<Long> fingerprints = new HashSet<>();
+        int count = 0;
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 100; j++) {
+                fingerprints.add(COMPILER.compileTree("f" + i + " > " + j + " && g == 'v" + (i * j) + "'").getFingerprint());
+                count++;
+            }
+        }
+        Assertions.assertEquals(count, fingerprints.size());
+    }
+
+    @Test
+    public void testIncrementalUpdates() {
+        //the redundant brackets are removed on several levels: OR(AND(a, b, c, d), !e)
+        String query = "a > 1 && (b == 'x' && (c < 2.5 && d IN (1, 2))) || !(e ~= /f.*/)";
+        QueryTree optimized = COMPILER.compileTree(query);
+        QueryTree tree = PLAIN.compileTree(query);
+        long before = tree.getFingerprint();
+        Assertions.assertNotEquals(optimized.getFingerprint(), before);
+        //the optimization updates the fingerprints of the changed nodes
+        new RemoveRedundantBrackets().apply(tree);
+        Assertions.assertEquals(optimized.getFingerprint(), tree.getFingerprint());
+        Assertions.assertEquals(optimized, tree);
+
+        Assertions.assertEquals(4, tree.getRoot().getChildren().get(0).getChildren().size());
+
+        QueryTree canonical = PLAIN.compileTree(query);
+        canonical.getFingerprint();
+        new Canonicalize().apply(canonical);
+        long fingerprint = canonical.getFingerprint();
+        canonical.updateFingerprints();
+        Assertions.assertEquals(fingerprint, canonical.getFingerprint());
+
+        //setters reset the fingerprint of the node, ancestors are updated explicitly
+        QueryNode child = tree.getRoot().getChildren().get(1);
+        long childFingerprint = child.getFingerprint();
+        child.setNegate(!child.isNegate());
+        Assertions.assertNotEquals(childFingerprint, child.getFingerprint());
+        //the root keeps its cached fingerprint until it is updated
+        Assertions.assertEquals(optimized.getFingerprint(), tree.getFingerprint());
+        tree.updateFingerprints();
+        Assertions.assertNotEquals(optimized.getFingerprint(), tree.getFingerprint());
+        Assertions.assertNotEquals(optimized, tree);
+        child.setNegate(!child.isNegate());
+        tree.getRoot().updateFingerprint();
+        Assertions.assertEquals(optimized, tree);
+
+        //children are changed through the node, which resets its fingerprint
+        QueryNode root = tree.getRoot();
+        QueryNode first = root.getChildren().get(0);
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> root.getChildren().set(0, child));
+        root.setChild(0, child);
+        Assertions.assertNotEquals(optimized, tree);
+        root.setChild(0, first);
+        Assertions.assertEquals(optimized, tree);
+        Assertions.assertEquals(optimized.getFingerprint(), tree.getFingerprint());
+
+        Term term = new Term(new Field("x"), TermOperators.EQ, Value.of(1));
+        long termFingerprint = term.getFingerprint();
+        term.setValue(Value.of(2));
+        Assertions.assertNotEquals(termFingerprint, term.getFingerprint());
+        term.setValue(Value.parseNumber("1"));
+        Assertions.assertEquals(termFingerprint, term.getFingerprint());
+    }
+
+    @Test
+    public void testChangedDescendant() {
+        QueryTree first = COMPILER.compileTree("(x > 1 && y == 'a') || z < 3");
+        QueryTree second = COMPILER.compileTree("(x > 1 && y == 'b') || z < 3");
+        Set<QueryTree> trees = new HashSet<>();
+        trees.add(second);
+        Assertions.assertNotEquals(first.getFingerprint(), second.getFingerprint());
+        Assertions.assertFalse(trees.contains(first));
+
+        //the cached fingerprints of the ancestors are stale, equals and hashCode compare the current trees
+        QueryNode y = first.getRoot().getChildren().get(0).getChildren().get(1);
+        y.setTerm(second.getRoot().getChildren().get(0).getChildren().get(1).getTerm());
+        Assertions.assertEquals(first.toString(), second.toString());
+        Assertions.assertEquals(first, second);
+        Assertions.assertEquals(second, first);
+        Assertions.assertEquals(second.hashCode(), first.hashCode());
+        Assertions.assertTrue(trees.contains(first));
+
+        QueryNode immutable = ImmutableQueryNode.of(second.getRoot());
+        Assertions.assertEquals(immutable, first.getRoot());
+        Assertions.assertEquals(first.getRoot(), immutable);
+        Assertions.assertEquals(immutable.hashCode(), first.getRoot().hashCode());
+        y.setNegate(true);
+        Assertions.assertNotEquals(immutable, first.getRoot());
+        Assertions.assertNotEquals(first.getRoot(), immutable);
+    }
+
+    @Test
+    public void testDeepTree() {
+        QueryNode root = deepTree(100000);
+        long fingerprint = root.getFingerprint();
+        Assertions.assertEquals(fingerprint, root.getFingerprint());
+        Assertions.assertEquals(root, deepTree(100000));
+        Assertions.assertNotEquals(root, deepTree(99999));
+        Assertions.assertNotEquals(root, root.getChildren().get(0));
+    }
+
+    private static QueryNode deepTree(int depth) {
+        QueryNode node = new QueryNode(new Term(new Field("x"), TermOperators.GT, Value.of(1)));
+        for (int i = 0; i < depth; i++) {
+            node = new QueryNode(i % 2 == 0 ? LogicalOperators.AND : LogicalOperators.OR, node,
+                    new QueryNode(new Term(new Field("y" + i), TermOperators.LT, Value.of(i))));
+        }
+        return node;
+    }
+}
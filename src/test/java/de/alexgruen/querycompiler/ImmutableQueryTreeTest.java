@@ -0,0 +1,157 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.ImmutableQueryNode;
+import de.alexgruen.query.ImmutableQueryTree;
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.optimization.Canonicalize;
+import de.alexgruen.query.optimization.RemoveRedundantBrackets;
+import de.alexgruen.query.term.Field;
+import de.alexgruen.query.term.Term;
+import de.alexgruen.query.term.TermOperators;
+import de.alexgruen.query.term.Value;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ImmutableQueryTreeTest {
+    private static final QueryCompiler<PrintQuery> PLAIN = QueryCompiler.create(PrintQuery.class)
+            .withDefaultCreator(new PrintQueryCreator())
+            .build();
+    private static final QueryCompiler<PrintQuery> COMPILER = QueryCompiler
+            .createDefault(PrintQuery.class, new PrintQueryCreator())
+            .build();
+
+    @Test
+    public void testImmutable() {
+        //value sets, patterns, booleans and negated brackets are all read-only
+        QueryTree tree = COMPILER.compileTree("!(a IN (1, 2)) && b ~= /f.*/ && !(c == true || d == 'x')");
+        ImmutableQueryTree immutable = ImmutableQueryTree.of(tree);
+        Assertions.assertSame(immutable, ImmutableQueryTree.of(immutable));
+        Assertions.assertEquals(tree, immutable);
+        Assertions.assertEquals(immutable, tree);
+        Assertions.assertEquals(tree.getFingerprint(), immutable.getFingerprint());
+        Assertions.assertEquals(tree.toString(), immutable.toString());
+        Assertions.assertEquals(COMPILER.compile(tree).toString(), COMPILER.compile(immutable).toString());
+
+        ImmutableQueryNode root = immutable.getRoot();
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> root.setNegate(true));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> root.getChildren().remove(0));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> root.setAttribute("a", 1));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> immutable.setRoot(new QueryNode()));
+        for (Term term : new Term[]{immutable.get(0).getTerm(), immutable.get(1).getTerm(), immutable.get(2, 0).getTerm()}) {
+            Assertions.assertThrows(UnsupportedOperationException.class, () -> term.setValue(Value.of(2)));
+            Assertions.assertThrows(UnsupportedOperationException.class, () -> term.getField().setFullPath("z"));
+        }
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> immutable.get(2).getChildren().clear());
+
+        //optimizations fail before they change the tree
+        long fingerprint = immutable.getFingerprint();
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                () -> new RemoveRedundantBrackets().apply(ImmutableQueryTree.of(
+                        PLAIN.compileTree("a > 1 && (b > 1 && c > 1)"))));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> new Canonicalize().apply(immutable));
+        Assertions.assertEquals(fingerprint, immutable.getFingerprint());
+        immutable.updateFingerprints();
+        Assertions.assertEquals(tree, immutable);
+
+        //mutable copies can be optimized
+        QueryTree copy = immutable.toQueryTree();
+        new Canonicalize().apply(copy);
+        Assertions.assertEquals(tree, immutable);
+        Assertions.assertEquals(fingerprint, immutable.getFingerprint());
+        Assertions.assertNotSame(copy.getRoot().getChildren().get(1).getTerm(), immutable.get(1).getTerm());
+    }
+
+    @Test
+    public void testStructuralSharing() {
+        //x0 > 0 && (x1 > 1 || (x2 > 2 && ... (y == 0))), the leaf is at the end of a deep path
+        int depth = 40;
+        int[] path = new int[depth];
+        Arrays.fill(path, 1);
+        ImmutableQueryTree tree = ImmutableQueryTree.of(COMPILER.compileTree(deepQuery(depth, 0)));
+        Assertions.assertEquals("(y == 0)", tree.get(path).getLabel());
+        Term term = new Term(new Field("y"), TermOperators.EQ, Value.of(1));
+        ImmutableQueryTree changed = tree.replace(path, new QueryNode(term));
+        Assertions.assertEquals("(y == 1)", changed.get(path).getLabel());
+        Assertions.assertEquals("(y == 0)", tree.get(path).getLabel());
+        Assertions.assertNotEquals(tree, changed);
+        Assertions.assertEquals(COMPILER.compileTree(deepQuery(depth, 1)), changed);
+
+        //only the path to the root is copied, the siblings of all nodes on the path are shared
+        for (int d = 0; d < depth; d++) {
+            int[] ancestor = Arrays.copyOf(path, d);
+            Assertions.assertNotSame(tree.get(ancestor), changed.get(ancestor));
+            int[] sibling = Arrays.copyOf(path, d + 1);
+            sibling[d] = 0;
+            Assertions.assertSame(tree.get(sibling), changed.get(sibling));
+        }
+
+        int[] parent = Arrays.copyOf(path, depth - 1);
+        Assertions.assertSame(tree, tree.update(path, n -> n));
+        Assertions.assertSame(tree, tree.replace(path, tree.get(path)));
+        Assertions.assertTrue(tree.update(path, n -> n.withNegate(true)).get(path).isNegate());
+        Assertions.assertEquals(1, tree.update(parent, n -> n.withoutChild(0)).get(parent).getChildCount());
+        Assertions.assertEquals(3, tree.update(parent, n -> n.withChildAdded(tree.get(0))).get(parent).getChildCount());
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> tree.replace(new int[]{5}, tree.get(0)));
+
+        //bottom-up rewrites share unchanged subtrees, only the parent of two terms is negated
+        Assertions.assertSame(tree, tree.rewrite(n -> n));
+        ImmutableQueryTree rewritten = tree.rewrite(n -> n.getChildCount() == 2
+                && n.getChild(0).getTerm() != null && n.getChild(1).getTerm() != null ? n.withNegate(!n.isNegate()) : n);
+        Assertions.assertTrue(rewritten.get(parent).isNegate());
+        Assertions.assertFalse(rewritten.getRoot().isNegate());
+        Assertions.assertSame(tree.get(0), rewritten.get(0));
+        Assertions.assertSame(tree.get(path), rewritten.get(path));
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        //a shared template that is specialized per request
+        ImmutableQueryTree tree = ImmutableQueryTree.of(COMPILER.compileTree("tenant == 'acme' && status IN (1, 2) || g != 0"));
+        String expected = COMPILER.compile(tree).toString();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int value = t;
+                results.add(executor.submit(() -> {
+                    boolean ok = true;
+                    for (int i = 0; i < 200; i++) {
+                        ImmutableQueryTree specialized = tree.replace(new int[]{1},
+                                new QueryNode(new Term(new Field("g"), TermOperators.NE, Value.of(value))));
+                        ok &= COMPILER.compile(tree).toString().equals(expected);
+                        ok &= COMPILER.compile(specialized).toString().endsWith("|| (g != " + value + "))");
+                    }
+                    return ok;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assertions.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static String deepQuery(int depth, long leaf) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append('x').append(i).append(" > ").append(i).append(i % 2 == 0 ? " && (" : " || (");
+        }
+        sb.append("y == ").append(leaf);
+        for (int i = 0; i < depth; i++) {
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+}
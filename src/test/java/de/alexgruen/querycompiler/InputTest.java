@@ -0,0 +1,149 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.compiler.QueryCompilerException;
+import de.alexgruen.query.compiler.engine.ParserEngineFactory;
+import de.alexgruen.query.compiler.engine.ParserEngines;
+import de.alexgruen.query.util.AsciiCharSequence;
+import de.alexgruen.query.util.StringUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class InputTest {
+
+    @Test
+    public void testInputs() {
+        for (ParserEngineFactory factory : new ParserEngineFactory[]{ParserEngines.ANTLR, ParserEngines.RECURSIVE_DESCENT}) {
+            QueryCompiler<PrintQuery> compiler = QueryCompiler.create(PrintQuery.class)
+                    .withDefaultCreator(new PrintQueryCreator())
+                    .withParserEngine(factory)
+                    .build();
+            String expected = "((x > 1) && (y == 'grün'))";
+
+            Assertions.assertEquals(expected, compiler.compile(new StringBuilder("  x > 1 && y == 'grün' ")).toString());
+
+            char[] chars = "### x > 1 && y == 'grün' ###".toCharArray();
+            Assertions.assertEquals(expected, compiler.compile(chars, 3, chars.length - 6).toString());
+
+            byte[] bytes = "## x > 1 && y == 'grün'##".getBytes(StandardCharsets.UTF_8);
+            Assertions.assertEquals(expected, compiler.compile(bytes, 2, bytes.length - 4).toString());
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(64);
+            direct.put("x > 1 && y == 'abc'".getBytes(StandardCharsets.US_ASCII)).flip();
+            Assertions.assertEquals("((x > 1) && (y == 'abc'))", compiler.compile(direct).toString());
+            Assertions.assertEquals(0, direct.position());
+
+            QueryCompilerException e = Assertions.assertThrows(QueryCompilerException.class,
+                    () -> compiler.compile(CharBuffer.wrap(" (x > 1 ")));
+            Assertions.assertTrue(e.getMessage().contains(": (x > 1)"), e.getMessage());
+
+            Assertions.assertThrows(QueryCompilerException.class,
+                    () -> compiler.compile(new byte[]{'x', ' ', '>', ' ', (byte) 0xC3}, 0, 5));
+        }
+    }
+
+    @Test
+    public void testStreams() {
+        QueryCompiler<PrintQuery> compiler = QueryCompiler.create(PrintQuery.class)
+                .withDefaultCreator(new PrintQueryCreator())
+                .build();
+        for (String query : new String[]{"x > 1 && y == 'grün'", "(a > 1 || b < 2) && !(c.'d e' ~= /x\\/y/)",
+                " asd 'z e d' -x ", "id in (3, 1, 2) || id not in ('a', 'b)')", "x > 1 && \n y < 2"}) {
+            String expected = compiler.compile(query).toString();
+            Assertions.assertEquals(expected, compiler.compile(new SlowReader(query)).toString(), query);
+            Assertions.assertEquals(expected, compiler.compile(
+                    new ByteArrayInputStream(query.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8).toString());
+        }
+        Assertions.assertEquals(0, compiler.compileTree(new StringReader("  \n ")).getRoot().getChildren().size());
+
+        QueryCompilerException e = Assertions.assertThrows(QueryCompilerException.class,
+                () -> compiler.compile(new StringReader("x > 1 && \n(y > 2")));
+        Assertions.assertTrue(e.getMessage().contains("line:2"), e.getMessage());
+        Assertions.assertThrows(QueryCompilerException.class, () -> compiler.compile(
+                new ByteArrayInputStream(new byte[]{'x', ' ', '>', ' ', (byte) 0xC3}), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testLargeStream() {
+        QueryCompiler<PrintQuery> compiler = QueryCompiler.create(PrintQuery.class)
+                .withDefaultCreator(new PrintQueryCreator())
+                .build();
+        //about 4 MB of input that is never held in memory as a whole
+        int terms = 200000;
+        Reader reader = new Reader() {
+            private int term;
+            private String part = "";
+            private int index;
+
+            @Override
+            public int read(char[] cbuf, int off, int len) {
+                int n = 0;
+                while (n < len) {
+                    if (index == part.length()) {
+                        if (term == terms) {
+                            break;
+                        }
+                        part = (term == 0 ? "" : "\n || ") + "field" + term + " == 'value " + term + "'";
+                        index = 0;
+                        term++;
+                    }
+                    cbuf[off + n++] = part.charAt(index++);
+                }
+                return n == 0 ? -1 : n;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        QueryNode root = compiler.compileTree(reader).getRoot();
+        Assertions.assertEquals(terms, root.getChildren().size());
+        Assertions.assertEquals("value 199999", root.getChildren().get(terms - 1).getTerm().getValue().getString());
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append("x").append(i).append(" > 1 && ");
+        }
+        sb.append("\n\n(y > 1");
+        QueryCompilerException e = Assertions.assertThrows(QueryCompilerException.class,
+                () -> compiler.compile(new StringReader(sb.toString())));
+        Assertions.assertTrue(e.getMessage().contains("line:3"), e.getMessage());
+    }
+
+    /**
+     * Reader that returns one character per call
+     */
+    private static class SlowReader extends StringReader {
+        SlowReader(String s) {
+            super(s);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return super.read(cbuf, off, Math.min(len, 1));
+        }
+    }
+
+    @Test
+    public void testUtf8View() {
+        ByteBuffer ascii = ByteBuffer.wrap("abc def".getBytes(StandardCharsets.US_ASCII));
+        CharSequence chars = StringUtil.fromUtf8(ascii);
+        Assertions.assertTrue(chars instanceof AsciiCharSequence);
+        Assertions.assertEquals("def", chars.subSequence(4, 7).toString());
+        Assertions.assertEquals("abc", StringUtil.trim(chars.subSequence(0, 4)).toString());
+
+        CharSequence utf8 = StringUtil.fromUtf8(ByteBuffer.wrap("grün".getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertEquals("grün", utf8.toString());
+    }
+}
@@ -0,0 +1,248 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.compiler.QueryCompilerException;
+import de.alexgruen.query.compiler.QueryContext;
+import de.alexgruen.query.compiler.engine.AntlrParserEngine;
+import de.alexgruen.query.compiler.engine.ParseModeStats;
+import de.alexgruen.query.compiler.engine.ParserEngineFactory;
+import de.alexgruen.query.compiler.engine.ParserEngines;
+import de.alexgruen.query.compiler.engine.QueryParserEngine;
+import de.alexgruen.query.optimization.Optimizations;
+import de.alexgruen.query.term.Term;
+import de.alexgruen.query.term.TermOperator;
+import de.alexgruen.query.term.Value;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Differential test between the generated ANTLR parser and the hand-written recursive descent parser.
+ */
+public class ParserEngineTest {
+
+    private static final List<String> QUERIES = Arrays.asList(
+            //terms
+            "x > 0", "x == 'a'", "x ~= /.+/", "x ~ /a\\/b/", "x < \"a\"", "'x' <= \"a\"", "'x'.y > \"a\"",
+            "'x y' <= \"a\"", "x.'x y' *= \"a\"", "x.'x y' == \"a b\"", "x.'x y' == false", "x.'a b'.\"c\" > 1",
+            ".x > 1", "x == null", "x != NA", "x eq -5", "x GE 1.5", "x le 1,5", "x text 'abc'", "x=1", "x >1",
+            //logical operators
+            "(x > 0) && !(y < 1)", "x > 0 && y < 1", "x > 0 && y < 1 && z == 2", "x > 1 || y > 2 && z > 3",
+            "(x > 0 && y < 1) || z == 2", "(x > 0 && y < 1 || (u == 2 && h != 1)) || z == 2",
+            "(x == 1 || y == 2 || (d == 0 || (t == 3 || z == 1)))", "x > 1 nor y > 2", "x > 1 and y > 2 OR z > 3",
+            "!(!(x > 1))", "-(x > 1 & y > 2)", "((x > 1))", "((x > 1) && ((y > 2) && z < 3))",
+            "(x > 0 && y < 1 || (u == 2 && (h != 1 || z < 2))) || z == 2",
+            "x > 1\n&& y < 2", "\tx > 1 ||\n\n y < 2",
+            //value lists
+            "x in (1, 2, 3)", "x IN(1.5,2)", "x not in ('a', \"b,c\")", "x NOT  IN ( 'a(' )", "x in (a, b) && y > 1",
+            "(x in (1) || !(y not in (2)))", "in in (1)", "x in ('a\\'b')", "in > 1", "x not in(1)",
+            //full text search
+            "xyz", "-xyz", "'xyz'", "-'xyz'", "'xyz' abc", "asd xyz -deg 'z e d' -x", "x>1", "x >=1", "/abc/def",
+            "-5", "1 2 true null", "x y", "x y 'z'", "a.b c.d", "!x", "\"a\\\"b\"",
+            //errors
+            "x > a", "x x > 1", "(x > 1", "x > 1)", "x &= 1", "x == 1,5", "'abc", "+a", "x . y", "a b 'c'",
+            "x > 1 &&", "&& x > 1", "()", "(x > 1 y > 2)", "x ~= abc", "x ~= /[/", "x > 1 && y", "!(x > 1", ")",
+            "x > 1 && (y", "x > 1 x > 2", "x > > 1", "x in ()", "x in (1, 'a')", "x in (1,,2)", "x in (1", "x in 1",
+            "x in ('a)", "x in ((1))", "x notin (1)", "in (1)", "x == in (1)"
+    );
+
+    private static final QueryCompiler<PrintQuery> PRINT_COMPILER = QueryCompiler.create(PrintQuery.class)
+            .withDefaultCreator(new PrintQueryCreator())
+            .build();
+
+    private static final QueryCompiler<PrintQuery> CUSTOM_OPERATOR_COMPILER = QueryCompiler.create(PrintQuery.class)
+            .withDefaultCreator(new PrintQueryCreator())
+            .withTermCreator(new TermOperator("&="), (n, f, v) -> null)
+            .withTermCreator(new TermOperator("near"), (n, f, v) -> null)
+            .build();
+
+    @Test
+    public void testDifferential() {
+        for (String query : QUERIES) {
+            compare(query, PRINT_COMPILER.getContext());
+        }
+    }
+
+    @Test
+    public void testCustomOperator() {
+        for (String query : QUERIES) {
+            compare(query, CUSTOM_OPERATOR_COMPILER.getContext());
+        }
+        for (String query : Arrays.asList("x &= 2", "x near 'a'", "x near 'a' && y &= 2", "x near y", "x near 1 z",
+                "(x near 1)", "x near 1 || a b", "near > 1", "near near 1", "a near", "-near x", "x nearly 1")) {
+            compare(query, CUSTOM_OPERATOR_COMPILER.getContext());
+        }
+    }
+
+    @Test
+    public void testCustomOperatorTokens() {
+        QueryParserEngine engine = ParserEngines.ANTLR.create(CUSTOM_OPERATOR_COMPILER.getContext());
+        QueryNode node = engine.parse("near near 'a'");
+        Assertions.assertEquals("near", node.getTerm().getField().getFullPath());
+        Assertions.assertEquals("near", node.getTerm().getOperator().getName());
+        node = engine.parse("near -x");
+        Assertions.assertEquals(2, node.getChildren().size());
+        Assertions.assertThrows(QueryCompilerException.class, () -> engine.parse("x nearly 1"));
+    }
+
+    @Test
+    public void testRandomQueries() {
+        String[] parts = {"x", "y.z", ".c", "'a b'", "\"q\"", "1", "-2.5", "true", "null", "==", ">", "~=", "/a+/",
+                "&&", "||", "nor", "(", ")", "!", "-", "&=", "near", "in", "not", "(1, 2)", "('a')",
+                " ", " ", " "};
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = 1 + random.nextInt(12);
+            for (int j = 0; j < length; j++) {
+                sb.append(parts[random.nextInt(parts.length)]);
+                if (random.nextBoolean()) {
+                    sb.append(' ');
+                }
+            }
+            compare(sb.toString(), CUSTOM_OPERATOR_COMPILER.getContext());
+        }
+    }
+
+    @Test
+    public void testSessionReuse() throws Exception {
+        QueryParserEngine engine = ParserEngines.ANTLR.create(CUSTOM_OPERATOR_COMPILER.getContext());
+        QueryParserEngine reference = ParserEngines.RECURSIVE_DESCENT.create(CUSTOM_OPERATOR_COMPILER.getContext());
+        Assertions.assertThrows(QueryCompilerException.class, () -> engine.parse("(x > 1"));
+        Assertions.assertEquals(describe(reference.parse("x near 1 && y > 2")), describe(engine.parse("x near 1 && y > 2")));
+        QueryCompilerException e = Assertions.assertThrows(QueryCompilerException.class, () -> engine.parse("x > a"));
+        Assertions.assertTrue(e.getMessage().contains("x > a"), e.getMessage());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (String query : QUERIES) {
+                        compare(query, engine, reference);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSllThenLl() {
+        QueryContext<?> context = CUSTOM_OPERATOR_COMPILER.getContext();
+        QueryParserEngine ll = ParserEngines.ANTLR.create(context);
+        AntlrParserEngine twoStage = (AntlrParserEngine) ParserEngines.ANTLR_SLL_THEN_LL.create(context);
+        int errors = 0;
+        for (String query : QUERIES) {
+            String expected;
+            try {
+                expected = describe(ll.parse(query));
+            } catch (RuntimeException e) {
+                RuntimeException actual = Assertions.assertThrows(e.getClass(), () -> twoStage.parse(query), query);
+                //errors are reported by the LL stage
+                Assertions.assertEquals(e.getMessage(), actual.getMessage());
+                errors++;
+                continue;
+            }
+            Assertions.assertEquals(expected, describe(twoStage.parse(query)), query);
+        }
+        ParseModeStats stats = twoStage.getParseModeStats();
+        Assertions.assertEquals(QUERIES.size(), stats.getParseCount());
+        Assertions.assertTrue(stats.getErrorCount() > 0 && stats.getErrorCount() < errors, stats.toString());
+        Assertions.assertTrue(stats.getSllCount() > 0, stats.toString());
+    }
+
+    @Test
+    public void testNaryChains() {
+        for (ParserEngineFactory factory : new ParserEngineFactory[]{ParserEngines.ANTLR, ParserEngines.RECURSIVE_DESCENT}) {
+            QueryParserEngine engine = factory.create(PRINT_COMPILER.getContext());
+            QueryNode node = engine.parse("a > 1 && b > 1 && c > 1 || d > 1 || e > 1 && f > 1");
+            Assertions.assertEquals("OR", node.getOperator().getName());
+            Assertions.assertEquals(3, node.getChildren().size());
+            Assertions.assertEquals(3, node.getChildren().get(0).getChildren().size());
+            //bracketed sub queries and non associative operators are not merged
+            node = engine.parse("(a > 1 && b > 1) && c > 1 nor d > 1 nor e > 1");
+            Assertions.assertEquals("NOR", node.getOperator().getName());
+            Assertions.assertEquals("NOR", node.getChildren().get(0).getOperator().getName());
+            Assertions.assertEquals(2, node.getChildren().get(0).getChildren().get(0).getChildren().size());
+
+            StringBuilder sb = new StringBuilder("x0 > 0");
+            for (int i = 1; i < 1000; i++) {
+                sb.append(" && x").append(i).append(" > ").append(i);
+            }
+            node = engine.parse(sb.toString());
+            Assertions.assertEquals(1000, node.getChildren().size());
+        }
+    }
+
+    @Test
+    public void testCompile() {
+        QueryCompiler<PrintQuery> compiler = QueryCompiler.create(PrintQuery.class)
+                .withDefaultCreator(new PrintQueryCreator())
+                .withOptimization(Optimizations.RemoveRedundantBrackets)
+                .withParserEngine(ParserEngines.RECURSIVE_DESCENT)
+                .build();
+        Assertions.assertEquals("(((x > 0) && (y < 1)) || (z == 2))",
+                compiler.compile("(x > 0 && y < 1) || z == 2").toString());
+        Assertions.assertEquals("('asd' && 'z e d' && !'x')", compiler.compile("asd 'z e d' -x").toString());
+        Assertions.assertThrows(QueryCompilerException.class, () -> compiler.compile("(x > 1"));
+    }
+
+    private static void compare(String query, QueryContext<?> context) {
+        QueryParserEngine recursiveDescent = ParserEngines.RECURSIVE_DESCENT.create(context);
+        compare(query, ParserEngines.ANTLR.create(context), recursiveDescent);
+        compare(query, ParserEngines.ANTLR_SLL_THEN_LL.create(context), recursiveDescent);
+    }
+
+    private static void compare(String query, QueryParserEngine antlr, QueryParserEngine recursiveDescent) {
+        QueryNode expected;
+        try {
+            expected = antlr.parse(query);
+        } catch (RuntimeException e) {
+            Assertions.assertThrows(RuntimeException.class, () -> recursiveDescent.parse(query),
+                    String.format("'%s' is rejected by the ANTLR parser: %s", query, e.getMessage()));
+            return;
+        }
+        Assertions.assertEquals(describe(expected), describe(recursiveDescent.parse(query)), query);
+    }
+
+    private static String describe(QueryNode node) {
+        StringBuilder sb = new StringBuilder();
+        describe(node, sb);
+        return sb.toString();
+    }
+
+    private static void describe(QueryNode node, StringBuilder sb) {
+        if (node.isNegate()) {
+            sb.append('!');
+        }
+        Term term = node.getTerm();
+        if (term != null) {
+            Value value = term.getValue();
+            sb.append('[').append(term.getField().getFullPath()).append(Arrays.toString(term.getField().getPath()))
+                    .append(' ').append(term.getOperator().getName())
+                    .append(' ').append(value == null ? null : value.getType() + ":" + value).append(']');
+            return;
+        }
+        sb.append(node.getOperator() == null ? null : node.getOperator().getName()).append('(');
+        for (QueryNode child : node.getChildren()) {
+            describe(child, sb);
+            sb.append(',');
+        }
+        sb.append(')');
+    }
+}
@@ -0,0 +1,179 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.compiler.ComplexityLimits;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.compiler.cache.QueryTreeStore;
+import de.alexgruen.query.optimization.RemoveRedundantBrackets;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Collections;
+
+public class QueryTreeStoreTest {
+    private static QueryCompiler<PrintQuery> compiler(Path file) {
+        return QueryCompiler.createDefault(PrintQuery.class, new PrintQueryCreator())
+                .withTreeStore(file)
+                .build();
+    }
+
+    @Test
+    public void testWarmRestart(@TempDir Path dir) throws IOException {
+        //keys are stored as UTF-8, the tree contains every kind of value
+        String query = "title == 'Grüße €' && tags IN ('a', 'b') && score >= 2.5 && !(body ~= /rep.*/)";
+        Path file = dir.resolve("trees.qts");
+        QueryCompiler<PrintQuery> compiler = compiler(file);
+        String expected = compiler.compile(query).toString();
+        compiler.compile("x > 1");
+        Assertions.assertThrows(RuntimeException.class, () -> compiler.compileTree("x >"));
+        Assertions.assertEquals(2, compiler.getTreeStore().size());
+        compiler.getTreeStore().close();
+
+        QueryCompiler<PrintQuery> restarted = compiler(file);
+        QueryTreeStore store = restarted.getTreeStore();
+        Assertions.assertEquals(2, store.size());
+        Assertions.assertTrue(store.contains(query));
+        Assertions.assertEquals(expected, restarted.compile(query).toString());
+        Assertions.assertEquals(expected, restarted.compile(new StringBuilder(query)).toString());
+        //each hit decodes a new tree
+        Assertions.assertNotSame(restarted.compileTree(query), restarted.compileTree(query));
+        Assertions.assertEquals(2, store.size());
+        store.close();
+
+        //another configuration clears the file
+        QueryCompiler<PrintQuery> limited = QueryCompiler.createDefault(PrintQuery.class, new PrintQueryCreator())
+                .withComplexityLimits(ComplexityLimits.builder().maxTerms(3).build())
+                .withTreeStore(file)
+                .build();
+        Assertions.assertEquals(0, limited.getTreeStore().size());
+        Assertions.assertFalse(limited.validate(query).isValid());
+        limited.getTreeStore().close();
+    }
+
+    @Test
+    public void testFingerprint() {
+        QueryCompiler<PrintQuery> compiler = QueryCompiler.createDefault(PrintQuery.class, new PrintQueryCreator()).build();
+        QueryCompiler<PrintQuery> same = QueryCompiler.createDefault(PrintQuery.class, new PrintQueryCreator()).build();
+        QueryCompiler<PrintQuery> plain = QueryCompiler.create(PrintQuery.class)
+                .withDefaultCreator(new PrintQueryCreator()).build();
+        long fingerprint = QueryTreeStore.fingerprint(compiler.getContext(), compiler.getOptimizations());
+        Assertions.assertEquals(fingerprint, QueryTreeStore.fingerprint(same.getContext(), same.getOptimizations()));
+        Assertions.assertNotEquals(fingerprint, QueryTreeStore.fingerprint(plain.getContext(), plain.getOptimizations()));
+        Assertions.assertEquals(fingerprint, QueryTreeStore.fingerprint(plain.getContext(),
+                Collections.singletonList(new RemoveRedundantBrackets())));
+    }
+
+    @Test
+    public void testGrowthAndLimits(@TempDir Path dir) throws IOException {
+        QueryCompiler<PrintQuery> compiler = QueryCompiler.createDefault(PrintQuery.class, new PrintQueryCreator()).build();
+        Path file = dir.resolve("trees.qts");
+        int count = 5000;
+        try (QueryTreeStore store = QueryTreeStore.open(file, 1)) {
+            for (int i = 0; i < count; i++) {
+                String query = "field" + i + " > " + i + " && name == 'n" + i + "'";
+                Assertions.assertTrue(store.put(query, compiler.compileTree(query)));
+            }
+            Assertions.assertFalse(store.put("field0 > 0 && name == 'n0'", compiler.compileTree("x > 1")));
+            Assertions.assertTrue(store.getUsedBytes() > 64 * 1024);
+            Assertions.assertEquals("((field4999 > 4999) && (name == 'n4999'))",
+                    compiler.compile(store.get("field4999 > 4999 && name == 'n4999'", compiler.getContext())).toString());
+            Assertions.assertNull(store.get("y > 1", compiler.getContext()));
+        }
+        try (QueryTreeStore store = QueryTreeStore.open(file, 1)) {
+            Assertions.assertEquals(count, store.size());
+            QueryTree tree = store.get("field17 > 17 && name == 'n17'", null);
+            Assertions.assertEquals(compiler.compileTree("field17 > 17 && name == 'n17'").toString(), tree.toString());
+        }
+
+        //a record that ends exactly at the maximum size fits, larger records are rejected
+        int header;
+        int recordSize;
+        try (QueryTreeStore store = QueryTreeStore.open(dir.resolve("sizes.qts"), 1)) {
+            header = store.getUsedBytes();
+            store.put("x > 1", compiler.compileTree("x > 1"));
+            recordSize = store.getUsedBytes() - header;
+        }
+        Path small = dir.resolve("small.qts");
+        String large = "x > 1 && y IN ('a', 'b', 'c')";
+        try (QueryTreeStore store = QueryTreeStore.open(small, 1, header + 2 * recordSize)) {
+            Assertions.assertTrue(store.put("x > 1", compiler.compileTree("x > 1")));
+            Assertions.assertFalse(store.put(large, compiler.compileTree(large)));
+            Assertions.assertTrue(store.put("x > 2", compiler.compileTree("x > 2")));
+            Assertions.assertEquals(header + 2 * recordSize, store.getUsedBytes());
+            Assertions.assertFalse(store.put("x > 3", compiler.compileTree("x > 3")));
+            Assertions.assertEquals(2, store.size());
+        }
+        try (QueryTreeStore store = QueryTreeStore.open(small, 1, header + 2 * recordSize)) {
+            Assertions.assertEquals(2, store.size());
+            Assertions.assertEquals("(x > 2)", compiler.compile(store.get("x > 2", compiler.getContext())).toString());
+        }
+
+        //the number of trees is limited, a smaller limit drops the last records
+        Path few = dir.resolve("few.qts");
+        try (QueryTreeStore store = QueryTreeStore.open(few, 1, QueryTreeStore.DEFAULT_MAX_SIZE, 2)) {
+            Assertions.assertTrue(store.put("x > 1", compiler.compileTree("x > 1")));
+            Assertions.assertTrue(store.put("x > 2", compiler.compileTree("x > 2")));
+            Assertions.assertFalse(store.put("x > 3", compiler.compileTree("x > 3")));
+            Assertions.assertEquals(2, store.size());
+        }
+        try (QueryTreeStore store = QueryTreeStore.open(few, 1, QueryTreeStore.DEFAULT_MAX_SIZE, 1)) {
+            Assertions.assertEquals(1, store.size());
+            Assertions.assertTrue(store.contains("x > 1"));
+            Assertions.assertFalse(store.put("x > 2", compiler.compileTree("x > 2")));
+        }
+        try (QueryTreeStore store = QueryTreeStore.open(few, 1)) {
+            Assertions.assertEquals(1, store.size());
+        }
+    }
+
+    @Test
+    public void testDamagedFile(@TempDir Path dir) throws IOException {
+        QueryCompiler<PrintQuery> compiler = QueryCompiler.createDefault(PrintQuery.class, new PrintQueryCreator()).build();
+        Path file = dir.resolve("trees.qts");
+        String last = "c IN (1, 2, 3) && d ~= /x+/";
+        int lastRecord;
+        try (QueryTreeStore store = QueryTreeStore.open(file, 1)) {
+            store.put("a > 1", compiler.compileTree("a > 1"));
+            store.put("b > 1", compiler.compileTree("b > 1"));
+            lastRecord = store.getUsedBytes();
+            store.put(last, compiler.compileTree(last));
+        }
+        //a changed byte in the last record fails the checksum
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(lastRecord + 20);
+            int b = raf.read();
+            raf.seek(lastRecord + 20);
+            raf.write(b ^ 0xFF);
+        }
+        try (QueryTreeStore store = QueryTreeStore.open(file, 1)) {
+            Assertions.assertEquals(2, store.size());
+            Assertions.assertFalse(store.contains(last));
+            Assertions.assertEquals(lastRecord, store.getUsedBytes());
+            Assertions.assertTrue(store.put(last, compiler.compileTree(last)));
+        }
+        try (QueryTreeStore store = QueryTreeStore.open(file, 1)) {
+            Assertions.assertEquals(3, store.size());
+        }
+        //a record that was cut off is dropped
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(lastRecord + 10);
+        }
+        try (QueryTreeStore store = QueryTreeStore.open(file, 1)) {
+            Assertions.assertEquals(2, store.size());
+            Assertions.assertTrue(store.contains("b > 1"));
+            Assertions.assertEquals(lastRecord, store.getUsedBytes());
+            Assertions.assertTrue(store.put(last, compiler.compileTree(last)));
+            Assertions.assertEquals(compiler.compileTree(last).getRoot(), store.get(last, compiler.getContext()).getRoot());
+        }
+        //another fingerprint clears the file
+        try (QueryTreeStore store = QueryTreeStore.open(file, 2)) {
+            Assertions.assertEquals(0, store.size());
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.LogicalOperators;
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.QueryTreeWalker;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.compiler.cache.QueryTreeStore;
+import de.alexgruen.query.optimization.Optimizations;
+import de.alexgruen.query.optimization.PassManager;
+import de.alexgruen.query.optimization.QueryOptimization;
+import de.alexgruen.query.optimization.RemoveRedundantBrackets;
+import de.alexgruen.query.optimization.RewritePass;
+import de.alexgruen.query.optimization.RewritePassStats;
+import de.alexgruen.query.optimization.RewriteRule;
+import de.alexgruen.query.term.Term;
+import de.alexgruen.query.term.TermOperators;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RewritePassTest {
+    private static final QueryCompiler<PrintQuery> PLAIN = QueryCompiler.create(PrintQuery.class)
+            .withDefaultCreator(new PrintQueryCreator())
+            .build();
+
+    //!(A && B) -> !A || !B, !(A || B) -> !A && !B
+    private static final RewriteRule DE_MORGAN = node -> {
+        if (!node.isNegate() || node.getOperator() == null) {
+            return null;
+        }
+        node.setNegate(false);
+        node.setOperator(node.getOperator() == LogicalOperators.AND ? LogicalOperators.OR : LogicalOperators.AND);
+        for (QueryNode child : node.getChildren()) {
+            child.setNegate(!child.isNegate());
+        }
+        return node;
+    };
+
+    //!(x == v) -> x != v, !(x != v) -> x == v
+    private static final RewriteRule NEGATE_EQUALITY = node -> {
+        Term term = node.getTerm();
+        if (!node.isNegate() || term == null
+                || (term.getOperator() != TermOperators.EQ && term.getOperator() != TermOperators.NE)) {
+            return null;
+        }
+        Term negated = new Term(term.getField(), term.getOperator() == TermOperators.EQ ? TermOperators.NE : TermOperators.EQ,
+                term.getValue());
+        return new QueryNode(negated);
+    };
+
+    @Test
+    public void testFixpoint() {
+        RewritePass pass = new RewritePass("negation", DE_MORGAN, NEGATE_EQUALITY, new RemoveRedundantBrackets());
+        QueryTree tree = PLAIN.compileTree("!(a == 1 || !(b == 2 && (c != 3 || d == 4))) && e == 5");
+        pass.apply(tree);
+        QueryTree expected = PLAIN.compileTree("a != 1 && b == 2 && (c != 3 || d == 4) && e == 5");
+        Optimizations.RemoveRedundantBrackets.apply(expected);
+        Assertions.assertEquals(expected.toString(), tree.toString());
+        Assertions.assertEquals(expected, tree);
+        //the cached fingerprints are up to date
+        long fingerprint = tree.getFingerprint();
+        tree.updateFingerprints();
+        Assertions.assertEquals(fingerprint, tree.getFingerprint());
+
+        RewritePassStats stats = pass.getStats();
+        Assertions.assertEquals("negation", stats.getName());
+        Assertions.assertEquals(1, stats.getRunCount());
+        Assertions.assertTrue(stats.getIterationCount() > 1, stats.toString());
+        Assertions.assertTrue(stats.getRewriteCount() >= 4, stats.toString());
+        Assertions.assertEquals(0, stats.getLimitCount());
+        //unchanged subtrees are not visited again
+        Assertions.assertTrue(stats.getVisitCount() < stats.getIterationCount() * count(tree), stats.toString());
+
+        //a tree at a fixpoint is visited once
+        pass.apply(tree);
+        stats = pass.getStats();
+        Assertions.assertEquals(expected, tree);
+        Assertions.assertEquals(2, stats.getRunCount());
+        Assertions.assertTrue(stats.getTotalNanos() > 0);
+    }
+
+    @Test
+    public void testSkipsUnchangedSubtrees() {
+        AtomicInteger calls = new AtomicInteger();
+        RewriteRule counting = node -> {
+            calls.incrementAndGet();
+            return null;
+        };
+        RewritePass pass = new RewritePass("flatten", counting, new RemoveRedundantBrackets());
+        StringBuilder query = new StringBuilder("(x == 0 || y == 0)");
+        for (int i = 1; i < 200; i++) {
+            query.append(" && (x == ").append(i).append(" || y == ").append(i).append(')');
+        }
+        query.append(" && !(z == 1 && !(z == 2 && z == 3))");
+        QueryTree tree = PLAIN.compileTree(query);
+        QueryTree expected = PLAIN.compileTree(query);
+        new RemoveRedundantBrackets().apply(expected);
+        int nodes = count(tree);
+        pass.apply(tree);
+        Assertions.assertEquals(expected, tree);
+        //the first iteration visits all nodes, the second one only the changed nodes
+        Assertions.assertTrue(calls.get() < nodes + nodes / 2, calls.get() + " calls for " + nodes + " nodes");
+    }
+
+    @Test
+    public void testIterationLimit() {
+        RewriteRule toggle = node -> {
+            if (node.getTerm() == null) {
+                return null;
+            }
+            node.setNegate(!node.isNegate());
+            return node;
+        };
+        RewritePass pass = new RewritePass("toggle", 3, Collections.singletonList(toggle));
+        pass.apply(PLAIN.compileTree("x > 1 && y > 2"));
+        RewritePassStats stats = pass.getStats();
+        Assertions.assertEquals(3, stats.getIterationCount());
+        Assertions.assertEquals(1, stats.getLimitCount());
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new RewritePass("none", 0, Collections.singletonList(toggle)));
+    }
+
+    @Test
+    public void testPassManager() {
+        RewritePass negation = new RewritePass("negation", DE_MORGAN, NEGATE_EQUALITY);
+        RewritePass flatten = new RewritePass("flatten", new RemoveRedundantBrackets());
+        PassManager passes = new PassManager(negation, flatten);
+        QueryCompiler<PrintQuery> compiler = QueryCompiler.create(PrintQuery.class)
+                .withDefaultCreator(new PrintQueryCreator())
+                .withOptimization(passes)
+                .build();
+        Assertions.assertEquals("((a != 1) && (b != 2) && (c > 1))", compiler.compile("!(a == 1 || b == 2) && c > 1").toString());
+        Assertions.assertEquals(Arrays.asList("negation", "flatten"), Arrays.asList(
+                passes.getStats().get(0).getName(), passes.getStats().get(1).getName()));
+        Assertions.assertEquals(1, passes.getStats().get(0).getRunCount());
+        Assertions.assertEquals(1, passes.getStats().get(1).getRewriteCount());
+
+        //the rule names are part of the tree store fingerprint, lambdas need a name
+        Assertions.assertThrows(IllegalStateException.class, () -> fingerprint(compiler, passes));
+        PassManager named = new PassManager(new RewritePass("negation",
+                RewriteRule.named("deMorgan", DE_MORGAN), RewriteRule.named("negateEquality", NEGATE_EQUALITY)));
+        PassManager other = new PassManager(new RewritePass("negation",
+                RewriteRule.named("deMorgan", DE_MORGAN), RewriteRule.named("negateEquality.v2", NEGATE_EQUALITY)));
+        Assertions.assertEquals(fingerprint(compiler, named), fingerprint(compiler, named));
+        Assertions.assertNotEquals(fingerprint(compiler, named), fingerprint(compiler, other));
+        Assertions.assertNotEquals(fingerprint(compiler, named),
+                fingerprint(compiler, new PassManager(new RewritePass("flatten", new RemoveRedundantBrackets()))));
+        Assertions.assertEquals("negation(lambda, lambda)", negation.toString());
+    }
+
+    private static long fingerprint(QueryCompiler<?> compiler, QueryOptimization optimization) {
+        return QueryTreeStore.fingerprint(compiler.getContext(), Collections.singletonList(optimization));
+    }
+
+    private static int count(QueryTree tree) {
+        int[] count = new int[1];
+        new QueryTreeWalker().postOrder(tree.getRoot(), n -> count[0]++);
+        return count[0];
+    }
+}
@@ -0,0 +1,246 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.compiler.QueryCompilerException;
+import de.alexgruen.query.compiler.engine.ParserEngines;
+import de.alexgruen.query.serialization.QueryTreeReader;
+import de.alexgruen.query.serialization.QueryTreeWriter;
+import de.alexgruen.query.term.Field;
+import de.alexgruen.query.term.Term;
+import de.alexgruen.query.term.TermOperator;
+import de.alexgruen.query.term.TermOperators;
+import de.alexgruen.query.term.Value;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class SerializationTest {
+    private static final List<String> QUERIES = Arrays.asList(
+            "", "x > 0", "x == 'a'", "x ~= /.+/", "'x y'.z <= \"a\"", "x.'a b'.\"c\" > 1", ".x > 1", "x == null",
+            "x eq -5", "x GE 1.5", "x == false", "x == 'äöü €'", "(x > 0) && !(y < 1)", "x > 1 || y > 2 && z > 3",
+            "(x > 0 && y < 1 || (u == 2 && (h != 1 || z < 2))) || z == 2", "x > 1 nor y > 2", "!(!(x > 1))",
+            "x in (1, -2, 3)", "x IN(1.5,2)", "x not in ('a', \"b,c\")", "(x in (1) || !(y not in (2)))",
+            "asd xyz -deg 'z e d' -x", "1 2 true null", "a.b c.d");
+
+    private static final QueryCompiler<PrintQuery> COMPILER = QueryCompiler
+            .createDefault(PrintQuery.class, new PrintQueryCreator())
+            .withTermCreator(new TermOperator("near"), (n, f, v) -> null)
+            .build();
+
+    @Test
+    public void testRoundTrip() {
+        QueryTreeWriter writer = new QueryTreeWriter();
+        QueryTreeReader reader = new QueryTreeReader(COMPILER.getContext());
+        for (String query : QUERIES) {
+            QueryTree tree = COMPILER.compileTree(query);
+            byte[] bytes = writer.write(tree);
+            QueryTree decoded = reader.read(bytes);
+            Assertions.assertEquals(tree.getRoot(), decoded.getRoot(), query);
+            Assertions.assertEquals(compile(tree), compile(decoded), query);
+            //operators and fields are the canonical objects of the compiler
+            assertSameTerms(tree.getRoot(), decoded.getRoot());
+            Assertions.assertEquals(tree.getRoot(), new QueryTreeReader().read(bytes).getRoot(), query);
+        }
+
+        QueryTree custom = COMPILER.compileTree("x near 'a' && y == 1");
+        QueryTree decoded = new QueryTreeReader().read(writer.write(custom));
+        Assertions.assertEquals(custom.getRoot(), decoded.getRoot());
+        Assertions.assertEquals("near", decoded.getRoot().getChildren().get(0).getTerm().getOperator().getName());
+
+        //values that are not created by the parser
+        QueryNode node = new QueryNode(new Term(new Field("a", "x", "y"), TermOperators.REGEX,
+                new Value(Pattern.compile("a.c", Pattern.CASE_INSENSITIVE))));
+        node.setNegate(true);
+        QueryNode root = new QueryNode(null, node, new QueryNode(new Term(null, TermOperators.EQ, new Value(null))),
+                new QueryNode(new Term(new Field("b"), TermOperators.EQ, Value.of(Long.MIN_VALUE))));
+        QueryNode decodedRoot = reader.read(writer.write(new QueryTree(root))).getRoot();
+        Assertions.assertEquals(root, decodedRoot);
+        Assertions.assertEquals("a", decodedRoot.getChildren().get(0).getTerm().getField().getFullPath());
+    }
+
+    @Test
+    public void testBuffersAndStreams() throws IOException {
+        QueryTreeWriter writer = new QueryTreeWriter();
+        QueryTreeReader reader = new QueryTreeReader(COMPILER.getContext());
+        for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(4096), ByteBuffer.allocateDirect(4096),
+                ByteBuffer.wrap(new byte[4200], 100, 4000).slice()}) {
+            buffer.put((byte) 7);
+            for (String query : QUERIES) {
+                writer.write(COMPILER.compileTree(query), buffer);
+            }
+            buffer.flip();
+            Assertions.assertEquals(7, buffer.get());
+            for (String query : QUERIES) {
+                Assertions.assertEquals(COMPILER.compileTree(query).getRoot(), reader.read(buffer).getRoot(), query);
+            }
+            Assertions.assertFalse(buffer.hasRemaining());
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (String query : QUERIES) {
+            writer.write(COMPILER.compileTree(query), out);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (String query : QUERIES) {
+            Assertions.assertEquals(COMPILER.compileTree(query).getRoot(), reader.read(in).getRoot(), query);
+        }
+        Assertions.assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testDeepTree() {
+        QueryCompiler<PrintQuery> compiler = QueryCompiler.create(PrintQuery.class)
+                .withDefaultCreator(new PrintQueryCreator())
+                .withParserEngine(ParserEngines.RECURSIVE_DESCENT)
+                .build();
+        StringBuilder sb = new StringBuilder();
+        int depth = 20000;
+        for (int i = 0; i < depth; i++) {
+            sb.append("(x").append(i % 10).append(i % 2 == 0 ? " > 1 && " : " < 1 || ");
+        }
+        for (sb.append("y > 2"); depth > 0; depth--) {
+            sb.append(')');
+        }
+        String query = sb.toString();
+        QueryTree tree = compiler.compileTree(query);
+        byte[] bytes = new QueryTreeWriter().write(tree);
+        Assertions.assertEquals(tree.getRoot(), new QueryTreeReader(compiler.getContext()).read(bytes).getRoot());
+        //the field and operator dictionaries keep the encoding small
+        Assertions.assertTrue(bytes.length < query.length(), bytes.length + " / " + query.length());
+    }
+
+    @Test
+    public void testInvalidInput() {
+        byte[] bytes = new QueryTreeWriter().write(COMPILER.compileTree(QUERIES.get(14) + " && x in ('a', 'b') && y ~= /a+/"));
+        QueryTreeReader reader = new QueryTreeReader(COMPILER.getContext());
+        assertInvalid(reader, new byte[0]);
+        assertInvalid(reader, "QX".getBytes());
+        byte[] version = bytes.clone();
+        version[2] = 2;
+        QueryCompilerException e = assertInvalid(reader, version);
+        Assertions.assertEquals("invalid query tree encoding: unsupported version 2", e.getMessage());
+        for (int length = 0; length < bytes.length; length++) {
+            assertInvalid(reader, Arrays.copyOf(bytes, length));
+        }
+        //corrupt bytes are rejected or decoded to some tree, but never cause other exceptions
+        for (int i = 0; i < bytes.length; i++) {
+            for (int bit = 0; bit < 8; bit++) {
+                byte[] corrupt = bytes.clone();
+                corrupt[i] ^= 1 << bit;
+                try {
+                    Assertions.assertNotNull(reader.read(corrupt));
+                } catch (QueryCompilerException ignored) {
+                    //rejected
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOversizedNumbers() throws IOException {
+        byte[] bytes = new QueryTreeWriter().write(COMPILER.compileTree("a > 1"));
+        //the body ends with the term operator index, the value tag and the value of the only node
+        int operator = bytes.length - 3;
+        Assertions.assertEquals(1, bytes[operator]);
+        byte[] negative = {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80,
+                (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01};
+        ByteArrayOutputStream corrupt = new ByteArrayOutputStream();
+        corrupt.write(bytes, 0, operator);
+        corrupt.write(negative);
+        corrupt.write(bytes, operator + 1, 2);
+        byte[] index = corrupt.toByteArray();
+        index[3] += negative.length - 1;
+        QueryCompilerException e = assertInvalid(new QueryTreeReader(COMPILER.getContext()), index);
+        Assertions.assertTrue(e.getMessage().contains("dictionary index"), e.getMessage());
+
+        //a corrupt body length fails at the end of the stream instead of allocating the stated length
+        QueryTreeReader reader = new QueryTreeReader();
+        byte[] header = {'Q', 'T', 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 0, 0, 0};
+        Assertions.assertThrows(EOFException.class,
+                () -> reader.read(new DataInputStream(new ByteArrayInputStream(header))));
+        ByteArrayOutputStream length = new ByteArrayOutputStream();
+        length.write(new byte[]{'Q', 'T', 1});
+        length.write(negative);
+        Assertions.assertThrows(QueryCompilerException.class,
+                () -> reader.read(new DataInputStream(new ByteArrayInputStream(length.toByteArray()))));
+        //bodies longer than a chunk are read completely
+        StringBuilder sb = new StringBuilder("x0 > 0");
+        for (int i = 1; i < 2000; i++) {
+            sb.append(" && x").append(i).append(" > ").append(i);
+        }
+        QueryTree tree = COMPILER.compileTree(sb.toString());
+        byte[] large = new QueryTreeWriter().write(tree);
+        Assertions.assertTrue(large.length > 20000);
+        Assertions.assertEquals(tree.getRoot(), reader.read(new DataInputStream(new ByteArrayInputStream(large))).getRoot());
+    }
+
+    /**
+     * Decoding should be much faster than parsing the query text again.
+     * Runs with <tt>mvn test -P benchmark</tt>.
+     */
+    @Test
+    @Tag("benchmark")
+    public void testDecodeSpeed() {
+        String query = "(tenant == 'acme' && status IN (1, 2, 3) && created > 1500000000) && "
+                + "(title ~= /rep.*/ || body *= 'quarterly report' || !(owner.name == \"John Doe\")) && score >= 0.75";
+        QueryTreeWriter writer = new QueryTreeWriter();
+        QueryTreeReader reader = new QueryTreeReader(COMPILER.getContext());
+        byte[] bytes = writer.write(COMPILER.compileTree(query));
+        long parse = Long.MAX_VALUE;
+        long decode = Long.MAX_VALUE;
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 2000; i++) {
+                COMPILER.compileTree(query);
+            }
+            parse = Math.min(parse, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < 2000; i++) {
+                reader.read(bytes);
+            }
+            decode = Math.min(decode, System.nanoTime() - start);
+        }
+        System.out.println(String.format("%d bytes for %d characters, parse %.2f us, decode %.2f us",
+                bytes.length, query.length(), parse / 2000e3, decode / 2000e3));
+        Assertions.assertTrue(decode * 2 < parse, decode + " / " + parse);
+    }
+
+    private static QueryCompilerException assertInvalid(QueryTreeReader reader, byte[] bytes) {
+        return Assertions.assertThrows(QueryCompilerException.class, () -> reader.read(bytes), Arrays.toString(bytes));
+    }
+
+    private static String compile(QueryTree tree) {
+        try {
+            return String.valueOf(COMPILER.compile(tree));
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+    }
+
+    private static void assertSameTerms(QueryNode expected, QueryNode actual) {
+        Assertions.assertSame(expected.getOperator(), actual.getOperator());
+        if (expected.getTerm() != null) {
+            Assertions.assertSame(expected.getTerm().getField(), actual.getTerm().getField());
+            Assertions.assertSame(expected.getTerm().getOperator(), actual.getTerm().getOperator());
+        }
+        for (int i = 0; i < expected.getChildren().size(); i++) {
+            assertSameTerms(expected.getChildren().get(i), actual.getChildren().get(i));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.QueryNodeInterner;
+import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.term.Field;
+import de.alexgruen.query.term.Term;
+import de.alexgruen.query.term.TermOperators;
+import de.alexgruen.query.term.Value;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class SubtreeInterningTest {
+    private static final String QUERY = "(tenant == 'a' && status IN (1, 2) && x > 1)"
+            + " || (tenant == 'a' && status IN (1, 2) && y ~= /z.*/)"
+            + " || (tenant == 'a' && status IN (1, 2) && x > 1)";
+
+    private static final QueryCompiler<PrintQuery> COMPILER = QueryCompiler
+            .createDefault(PrintQuery.class, new PrintQueryCreator())
+            .build();
+    private static final QueryCompiler<PrintQuery> INTERNING_COMPILER = QueryCompiler
+            .createDefault(PrintQuery.class, new PrintQueryCreator())
+            .withSubtreeInterning(true)
+            .build();
+
+    @Test
+    public void testInterning() {
+        QueryTree tree = INTERNING_COMPILER.compileTree(QUERY);
+        List<QueryNode> branches = tree.getRoot().getChildren();
+        Assertions.assertEquals(3, branches.size());
+        Assertions.assertSame(branches.get(0), branches.get(2));
+        Assertions.assertNotSame(branches.get(0), branches.get(1));
+        //the tenant and status clauses are shared by all branches
+        Assertions.assertSame(branches.get(0).getChildren().get(0), branches.get(1).getChildren().get(0));
+        Assertions.assertSame(branches.get(0).getChildren().get(1), branches.get(1).getChildren().get(1));
+        Assertions.assertSame(branches.get(0).getChildren().get(0).getTerm().getField(),
+                branches.get(1).getChildren().get(0).getTerm().getField());
+
+        Assertions.assertEquals(COMPILER.compile(QUERY).toString(), INTERNING_COMPILER.compile(QUERY).toString());
+        Assertions.assertEquals(COMPILER.compileTree(QUERY).toString(), tree.toString());
+        Assertions.assertEquals(COMPILER.compileTree(QUERY).getRoot(), tree.getRoot());
+    }
+
+    @Test
+    public void testInternerAcrossTrees() {
+        QueryNodeInterner interner = new QueryNodeInterner();
+        QueryNode a = interner.intern(COMPILER.compileTree("x > 1 && !(y == 'b' || z == null)").getRoot());
+        int size = interner.size();
+        QueryNode b = interner.intern(COMPILER.compileTree("x > 1 && !(y == 'b' || z == null)").getRoot());
+        Assertions.assertSame(a, b);
+        Assertions.assertEquals(size, interner.size());
+
+        //negation is part of the structure
+        QueryNode c = interner.intern(COMPILER.compileTree("x > 1 && (y == 'b' || z == null)").getRoot());
+        Assertions.assertNotSame(a, c);
+        Assertions.assertNotEquals(a, c);
+        Assertions.assertSame(a.getChildren().get(0), c.getChildren().get(0));
+
+        //nodes with attributes are not shared
+        QueryNode withAttribute = COMPILER.compileTree("x > 1").getRoot();
+        withAttribute.setAttribute("boost", 2);
+        Assertions.assertSame(withAttribute, interner.intern(withAttribute));
+        Assertions.assertEquals(a.getChildren().get(0), withAttribute);
+
+        interner.clear();
+        Assertions.assertEquals(0, interner.size());
+    }
+
+    @Test
+    public void testStructuralEquality() {
+        QueryNode a = COMPILER.compileTree(QUERY).getRoot();
+        QueryNode b = COMPILER.compileTree(QUERY).getRoot();
+        Assertions.assertNotSame(a, b);
+        Assertions.assertEquals(a, b);
+        Assertions.assertEquals(a.hashCode(), b.hashCode());
+        Assertions.assertNotEquals(a, COMPILER.compileTree("x > 1").getRoot());
+
+        Assertions.assertEquals(new Term(new Field("a.b", "a", "b"), TermOperators.EQ, new Value(1)),
+                new Term(new Field("'a'.b", "a", "b"), TermOperators.EQ, new Value(1L)));
+        Assertions.assertNotEquals(new Value(1L), new Value(1.0));
+        Assertions.assertEquals(new Value(Pattern.compile("a.*")), new Value(Pattern.compile("a.*")));
+        Assertions.assertNotEquals(new Value(Pattern.compile("a.*")),
+                new Value(Pattern.compile("a.*", Pattern.CASE_INSENSITIVE)));
+        Assertions.assertEquals(new Value(null), new Value(null));
+    }
+}
@@ -0,0 +1,138 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.QueryTree;
+import de.alexgruen.query.QueryTreeWalker;
+import de.alexgruen.query.compiler.QueryCompiler;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Compares the explicit stack traversals of the {@link QueryTreeWalker} with the recursion they replaced
+ * on a shallow tree, the shape of most queries. Both sides get a new walker or call per tree like
+ * {@link QueryCompiler#compile(QueryTree)}, the median of interleaved rounds is compared.
+ * Run with <tt>mvn test -P benchmark</tt>.
+ */
+@Tag("benchmark")
+public class TraversalBenchmarkTest {
+    private static final String QUERY = "(a > 1 && b < 2) || (c == 'x' && !(d ~= /e/)) || f IN (1, 2) || g > 3 && h < 4";
+    private static final int WARM_UP_ROUNDS = 10;
+    private static final int ROUNDS = 21;
+    private static final int ITERATIONS = 20000;
+    //allowed slowdown of the walker compared to recursion
+    private static final double MAX_RATIO = 1.5;
+
+    private static final QueryCompiler<PrintQuery> COMPILER = QueryCompiler.create(PrintQuery.class)
+            .withDefaultCreator(new PrintQueryCreator())
+            .build();
+
+    private final QueryTree tree = COMPILER.compileTree(QUERY);
+
+    @Test
+    public void testFold() {
+        QueryNode root = tree.getRoot();
+        Assertions.assertEquals(recursiveFold(root), (int) new QueryTreeWalker().fold(root, Integer[]::new, TraversalBenchmarkTest::count));
+        compare("fold", () -> {
+            long sum = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                sum += new QueryTreeWalker().fold(root, Integer[]::new, TraversalBenchmarkTest::count);
+            }
+            return sum;
+        }, () -> {
+            long sum = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                sum += recursiveFold(root);
+            }
+            return sum;
+        });
+    }
+
+    @Test
+    public void testPostOrder() {
+        QueryNode root = tree.getRoot();
+        compare("post-order", () -> {
+            long[] sum = new long[1];
+            for (int i = 0; i < ITERATIONS; i++) {
+                new QueryTreeWalker().postOrder(root, n -> sum[0] += n.getChildren().size());
+            }
+            return sum[0];
+        }, () -> {
+            long[] sum = new long[1];
+            for (int i = 0; i < ITERATIONS; i++) {
+                recursivePostOrder(root, sum);
+            }
+            return sum[0];
+        });
+    }
+
+    @Test
+    public void testCompile() {
+        //absolute time of a tree compilation with creators, for comparison with the traversal alone
+        long[] times = new long[ROUNDS];
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                Assertions.assertNotNull(COMPILER.compile(tree));
+            }
+            times[r] = System.nanoTime() - start;
+        }
+        System.out.println(String.format("compile(tree) of a shallow query: %.0f ns", median(times) / ITERATIONS));
+    }
+
+    private static void compare(String name, LongSupplier walker, LongSupplier recursion) {
+        for (int r = 0; r < WARM_UP_ROUNDS; r++) {
+            Assertions.assertEquals(recursion.getAsLong(), walker.getAsLong());
+        }
+        long[] walkerTimes = new long[ROUNDS];
+        long[] recursionTimes = new long[ROUNDS];
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            long a = walker.getAsLong();
+            walkerTimes[r] = System.nanoTime() - start;
+            start = System.nanoTime();
+            long b = recursion.getAsLong();
+            recursionTimes[r] = System.nanoTime() - start;
+            Assertions.assertEquals(b, a);
+        }
+        double walkerTime = median(walkerTimes) / ITERATIONS;
+        double recursionTime = median(recursionTimes) / ITERATIONS;
+        System.out.println(String.format("%s of a shallow query: walker %.0f ns, recursion %.0f ns", name, walkerTime, recursionTime));
+        Assertions.assertTrue(walkerTime <= recursionTime * MAX_RATIO,
+                String.format("%s: walker %.0f ns, recursion %.0f ns", name, walkerTime, recursionTime));
+    }
+
+    private static double median(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static Integer count(QueryNode node, Integer[] children) {
+        int count = 1;
+        for (Integer child : children) {
+            count += child;
+        }
+        return count;
+    }
+
+    private static int recursiveFold(QueryNode node) {
+        Integer[] children = new Integer[node.getChildren().size()];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = recursiveFold(node.getChildren().get(i));
+        }
+        return count(node, children);
+    }
+
+    private static void recursivePostOrder(QueryNode node, long[] sum) {
+        for (QueryNode child : node.getChildren()) {
+            recursivePostOrder(child, sum);
+        }
+        sum[0] += node.getChildren().size();
+    }
+}
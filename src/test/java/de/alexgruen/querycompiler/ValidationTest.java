@@ -0,0 +1,92 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.compiler.QueryCompileResult;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.compiler.QueryCompilerException;
+import de.alexgruen.query.compiler.QueryError;
+import de.alexgruen.query.compiler.engine.ParserEngineFactory;
+import de.alexgruen.query.compiler.engine.ParserEngines;
+import de.alexgruen.query.term.Field;
+import de.alexgruen.query.term.ValueSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+public class ValidationTest {
+
+    @Test
+    public void testSyntaxErrors() {
+        for (ParserEngineFactory factory : new ParserEngineFactory[]{ParserEngines.ANTLR, ParserEngines.RECURSIVE_DESCENT}) {
+            QueryCompiler<PrintQuery> compiler = QueryCompiler.create(PrintQuery.class)
+                    .withDefaultCreator(new PrintQueryCreator())
+                    .withParserEngine(factory)
+                    .build();
+            QueryCompileResult<PrintQuery> result = compiler.tryCompile("x > 1 && y > 2");
+            Assertions.assertTrue(result.isValid());
+            Assertions.assertEquals("((x > 1) && (y > 2))", result.getQuery().toString());
+            Assertions.assertTrue(compiler.validate("x > 1").isValid());
+
+            result = compiler.tryCompile("  x > 1 && y >");
+            Assertions.assertFalse(result.isValid());
+            Assertions.assertNull(result.getQuery());
+            QueryError error = result.getErrors().get(0);
+            //ANTLR reports a missing token
+            Assertions.assertTrue(error.getType() == QueryError.Type.MISMATCHED_INPUT || error.getType() == QueryError.Type.MISSING_TOKEN);
+            Assertions.assertEquals(14, error.getOffset());
+            Assertions.assertEquals(1, error.getLine());
+            Assertions.assertEquals(14, error.getColumn());
+            Assertions.assertEquals("<EOF>", error.getOffendingText());
+            Assertions.assertEquals(Arrays.asList("NUMBER", "BOOLEAN_VALUE", "TEXT_VALUE", "NULL"), error.getExpected());
+
+            error = compiler.validate("x > 1)").getErrors().get(0);
+            Assertions.assertEquals(QueryError.Type.EXTRANEOUS_INPUT, error.getType());
+            Assertions.assertEquals(5, error.getOffset());
+            Assertions.assertEquals(")", error.getOffendingText());
+            Assertions.assertEquals("<EOF>", error.getExpected().get(0));
+
+            error = compiler.validate("x > 1 && \n y > '1").getErrors().get(0);
+            Assertions.assertEquals(QueryError.Type.TOKEN_RECOGNITION, error.getType());
+            Assertions.assertEquals(2, error.getLine());
+            Assertions.assertEquals(5, error.getColumn());
+            Assertions.assertTrue(error.getMessage().startsWith("syntax error (token recognition error at: ''"), error.getMessage());
+
+            QueryCompilerException e = Assertions.assertThrows(QueryCompilerException.class, () -> compiler.compile("x > 1 && y >"));
+            Assertions.assertTrue(e.getMessage().startsWith("syntax error ("), e.getMessage());
+            Assertions.assertTrue(e.getMessage().endsWith(" : x > 1 && y >) line:1, pos:12 "), e.getMessage());
+            Assertions.assertEquals(0, e.getStackTrace().length);
+        }
+    }
+
+    @Test
+    public void testInvalidInput() {
+        QueryCompiler<PrintQuery> compiler = QueryCompiler.create(PrintQuery.class)
+                .withDefaultCreator(new PrintQueryCreator())
+                .build();
+        QueryCompileResult<PrintQuery> result = compiler.tryCompile("x > 99999999999999999999");
+        QueryError error = result.getErrors().get(0);
+        Assertions.assertEquals(QueryError.Type.INVALID_INPUT, error.getType());
+        Assertions.assertFalse(error.isSyntaxError());
+        Assertions.assertEquals(-1, error.getOffset());
+        Assertions.assertEquals("error parsing value '99999999999999999999'", error.getMessage());
+
+        Assertions.assertEquals(QueryError.Type.INVALID_INPUT, compiler.tryCompile("x ~= /[/").getErrors().get(0).getType());
+        Assertions.assertEquals(QueryError.Type.INVALID_INPUT, compiler.tryCompile("x like 5").getErrors().get(0).getType());
+
+        //validation does not call creators
+        QueryCompiler<PrintQuery> restricted = QueryCompiler.create(PrintQuery.class)
+                .withDefaultCreator(new PrintQueryCreator() {
+                    @Override
+                    public PrintQuery in(Field field, ValueSet values) {
+                        throw new QueryCompilerException("'in' operator is not allowed");
+                    }
+                })
+                .build();
+        Assertions.assertTrue(restricted.validate("x in (1, 2)").isValid());
+        error = restricted.tryCompile("x in (1, 2)").getErrors().get(0);
+        Assertions.assertEquals(QueryError.Type.INVALID_INPUT, error.getType());
+        Assertions.assertEquals("'in' operator is not allowed", error.getMessage());
+    }
+}
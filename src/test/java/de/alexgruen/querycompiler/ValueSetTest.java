@@ -0,0 +1,82 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.QueryNode;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.compiler.QueryCompilerException;
+import de.alexgruen.query.compiler.engine.ParserEngineFactory;
+import de.alexgruen.query.compiler.engine.ParserEngines;
+import de.alexgruen.query.term.TermOperators;
+import de.alexgruen.query.term.Value;
+import de.alexgruen.query.term.ValueSet;
+import de.alexgruen.query.util.ValueSetParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ValueSetTest {
+
+    @Test
+    public void testParse() {
+        ValueSet set = ValueSetParser.parse("in (3, 1, 2, 3, -7)");
+        Assertions.assertEquals(ValueSet.Type.Long, set.getType());
+        Assertions.assertArrayEquals(new long[]{-7, 1, 2, 3}, set.toLongArray());
+        Assertions.assertTrue(set.contains(2));
+        Assertions.assertTrue(set.contains(2.0));
+        Assertions.assertFalse(set.contains(2.5));
+        Assertions.assertFalse(set.contains("2"));
+
+        set = ValueSetParser.parse("IN(1.5, 2)");
+        Assertions.assertEquals(ValueSet.Type.Double, set.getType());
+        Assertions.assertArrayEquals(new double[]{1.5, 2.0}, set.toDoubleArray());
+        Assertions.assertTrue(set.contains(2));
+
+        set = ValueSetParser.parse("not in ('b', a, \"c,)\", 'b', 'it\\'s')");
+        Assertions.assertEquals(ValueSet.Type.String, set.getType());
+        Assertions.assertArrayEquals(new String[]{"a", "b", "c,)", "it's"}, set.toStringArray());
+        Assertions.assertTrue(set.contains(new Value("c,)")));
+        Assertions.assertEquals("('a', 'b', 'c,)', 'it\\'s')", set.toString());
+        Assertions.assertEquals(set, ValueSetParser.parse("in " + set));
+
+        Assertions.assertEquals(Long.MIN_VALUE, ValueSetParser.parse("in (-9223372036854775808)").getLong(0));
+        Assertions.assertThrows(QueryCompilerException.class, () -> ValueSetParser.parse("in (9223372036854775808)"));
+        Assertions.assertThrows(QueryCompilerException.class, () -> ValueSetParser.parse("in ( )"));
+        Assertions.assertThrows(QueryCompilerException.class, () -> ValueSetParser.parse("in (1, )"));
+        Assertions.assertThrows(QueryCompilerException.class, () -> ValueSetParser.parse("in (1, 'a')"));
+    }
+
+    @Test
+    public void testQueryNodes() {
+        for (ParserEngineFactory factory : new ParserEngineFactory[]{ParserEngines.ANTLR, ParserEngines.RECURSIVE_DESCENT}) {
+            QueryCompiler<PrintQuery> compiler = QueryCompiler.create(PrintQuery.class)
+                    .withDefaultCreator(new PrintQueryCreator())
+                    .withParserEngine(factory)
+                    .build();
+            QueryNode node = compiler.compileTree("id in (5, 1, 5) && x > 1").getRoot().getChildren().get(0);
+            Assertions.assertEquals(TermOperators.IN, node.getTerm().getOperator());
+            Assertions.assertTrue(node.getTerm().getValue().isValueSet());
+            Assertions.assertEquals(2, node.getTerm().getValue().getValueSet().size());
+
+            Assertions.assertEquals("((id IN (1, 5)) && (x > 1))", compiler.compile("id in (5, 1, 5) && x > 1").toString());
+            Assertions.assertEquals("!(id IN ('a', 'b'))", compiler.compile("id NOT IN ('b', 'a')").toString());
+            Assertions.assertThrows(QueryCompilerException.class, () -> compiler.compile("id in 5"));
+            Assertions.assertThrows(QueryCompilerException.class, () -> compiler.compile("id in (1, 'a')"));
+        }
+    }
+
+    @Test
+    public void testLargeList() {
+        StringBuilder sb = new StringBuilder("id in (");
+        for (int i = 0; i < 10000; i++) {
+            sb.append(i > 0 ? ", " : "").append(i * 7 % 10000);
+        }
+        sb.append(")");
+        QueryCompiler<PrintQuery> compiler = QueryCompiler.create(PrintQuery.class)
+                .withDefaultCreator(new PrintQueryCreator())
+                .build();
+        ValueSet set = compiler.compileTree(sb.toString()).getRoot().getTerm().getValue().getValueSet();
+        Assertions.assertEquals(10000, set.size());
+        Assertions.assertEquals(0, set.getLong(0));
+        Assertions.assertEquals(9999, set.getLong(9999));
+    }
+}
@@ -0,0 +1,98 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.compiler.QueryCompilerException;
+import de.alexgruen.query.compiler.engine.ParserEngineFactory;
+import de.alexgruen.query.compiler.engine.ParserEngines;
+import de.alexgruen.query.term.Value;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+public class ValueTest {
+
+    @Test
+    public void testParseNumber() {
+        Value l = Value.parseNumber("-42");
+        Assertions.assertEquals(Value.Type.Long, l.getType());
+        Assertions.assertEquals(-42L, l.longValue());
+        Assertions.assertEquals(-42.0, l.doubleValue());
+        Assertions.assertEquals("-42", l.getText());
+        Assertions.assertEquals(-42L, l.getValue());
+        Assertions.assertSame(l.getValue(), l.getValue());
+        Assertions.assertEquals(new Value(-42), l);
+        Assertions.assertEquals(new Value(-42L).hashCode(), l.hashCode());
+
+        Value d = Value.parseNumber("1.50");
+        Assertions.assertEquals(Value.Type.Double, d.getType());
+        Assertions.assertEquals("1.50", d.getText());
+        Assertions.assertEquals(1.5, d.doubleValue());
+        Assertions.assertEquals(1L, d.longValue());
+        Assertions.assertEquals("1.5", d.toString());
+        Assertions.assertEquals(Value.of(1.5), d);
+        Assertions.assertEquals(new Value(1.5f).hashCode(), Value.parseNumber("1.5").hashCode());
+
+        Assertions.assertEquals(Long.MAX_VALUE, Value.parseNumber(Long.toString(Long.MAX_VALUE)).longValue());
+        Assertions.assertEquals(Long.MIN_VALUE, Value.parseNumber(Long.toString(Long.MIN_VALUE)).longValue());
+        for (String invalid : new String[]{"9223372036854775808", "-9223372036854775809", "1,5", "1.", "-", "", "1.2.3", "a"}) {
+            QueryCompilerException e = Assertions.assertThrows(QueryCompilerException.class,
+                    () -> Value.parseNumber(invalid), invalid);
+            Assertions.assertEquals("error parsing value '" + invalid + "'", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testBooleansAndObjects() {
+        Assertions.assertTrue(Value.parseBoolean("TRUE").booleanValue());
+        Assertions.assertFalse(Value.parseBoolean("f").booleanValue());
+        Assertions.assertEquals(Boolean.FALSE, Value.parseBoolean("false").getValue());
+        Assertions.assertEquals(Value.of(true), new Value(true));
+        Assertions.assertThrows(QueryCompilerException.class, () -> Value.parseBoolean("yes"));
+        Assertions.assertThrows(QueryCompilerException.class, () -> Value.of(true).longValue());
+        Assertions.assertThrows(QueryCompilerException.class, () -> new Value("x").doubleValue());
+
+        Value v = Value.parseNumber("2.5");
+        v.setValue("text");
+        Assertions.assertEquals(Value.Type.String, v.getType());
+        Assertions.assertNull(v.getText());
+        Assertions.assertEquals("text", v.getString());
+        Assertions.assertTrue(new Value(null).isNull());
+        Assertions.assertNull(new Value(null).getValue());
+    }
+
+    @Test
+    public void testCompiledValues() {
+        for (ParserEngineFactory factory : new ParserEngineFactory[]{ParserEngines.ANTLR, ParserEngines.RECURSIVE_DESCENT}) {
+            QueryCompiler<PrintQuery> compiler = QueryCompiler.create(PrintQuery.class)
+                    .withDefaultCreator(new PrintQueryCreator())
+                    .withParserEngine(factory)
+                    .build();
+            Value value = compiler.compileTree("x > -1.25").getRoot().getTerm().getValue();
+            Assertions.assertEquals("-1.25", value.getText());
+            Assertions.assertEquals(-1.25, value.doubleValue());
+            Assertions.assertEquals("((x > 1) && (y == true) && (z < 2.5))",
+                    compiler.compile("x > 1 && y == true && z < 2.50").toString());
+        }
+    }
+
+    @Test
+    public void testPrimitiveAccessDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Value l = Value.parseNumber("12345");
+        Value d = Value.parseNumber("1.5");
+        Value b = Value.parseBoolean("true");
+        d.doubleValue();
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        double sum = 0;
+        for (int i = 0; i < 100000; i++) {
+            sum += l.longValue() + d.doubleValue() + (b.booleanValue() ? 1 : 0);
+        }
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        Assertions.assertEquals(100000 * 12347.5, sum);
+        Assertions.assertTrue(allocated < 10000, "allocated " + allocated + " bytes");
+    }
+}
@@ -0,0 +1,43 @@
+package de.alexgruen.querycompiler;
+
+import de.alexgruen.query.PrintQuery;
+import de.alexgruen.query.PrintQueryCreator;
+import de.alexgruen.query.compiler.QueryCompiler;
+import de.alexgruen.query.compiler.engine.AntlrDfaCache;
+import de.alexgruen.query.compiler.engine.AntlrParseMode;
+import de.alexgruen.query.compiler.engine.AntlrParserEngine;
+import de.alexgruen.query.compiler.engine.DfaCachePolicy;
+import de.alexgruen.query.compiler.engine.ParserEngines;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+public class WarmUpTest {
+
+    @Test
+    public void testWarmUp() {
+        QueryCompiler<PrintQuery> compiler = QueryCompiler.create(PrintQuery.class)
+                .withDefaultCreator(new PrintQueryCreator())
+                .build();
+        AntlrDfaCache.clear();
+        Assertions.assertEquals(0, AntlrDfaCache.getStateCount());
+        int parsed = compiler.warmUp(Arrays.asList("x > 1 && (y < 2 || !(z == 'a'))", "a -b 'c d'", "(x > 1"));
+        Assertions.assertEquals(2, parsed);
+        Assertions.assertTrue(AntlrDfaCache.getStateCount() > 0);
+        Assertions.assertEquals("((x > 1) && (y < 2))", compiler.compile("x > 1 && y < 2").toString());
+    }
+
+    @Test
+    public void testDfaCachePolicy() {
+        QueryCompiler<PrintQuery> compiler = QueryCompiler.create(PrintQuery.class)
+                .withDefaultCreator(new PrintQueryCreator())
+                .withParserEngine(ParserEngines.antlr(AntlrParseMode.LL, new DfaCachePolicy(1, 2)))
+                .build();
+        AntlrParserEngine engine = (AntlrParserEngine) compiler.getParserEngine();
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertEquals("((x > 1) || (y == 'a'))", compiler.compile("x > 1 || y == 'a'").toString());
+        }
+        Assertions.assertEquals(5, engine.getDfaClearCount());
+    }
+}